@@ -1,8 +1,8 @@
 package org.hypertrace.core.query.service;
 
 import com.google.inject.Guice;
+import io.grpc.BindableService;
 import java.util.List;
-import org.hypertrace.core.query.service.api.QueryServiceGrpc.QueryServiceImplBase;
 import org.hypertrace.core.serviceframework.grpc.GrpcPlatformService;
 import org.hypertrace.core.serviceframework.grpc.GrpcPlatformServiceFactory;
 import org.hypertrace.core.serviceframework.grpc.GrpcServiceContainerEnvironment;
@@ -19,6 +19,6 @@ public class QueryServiceFactory implements GrpcPlatformServiceFactory {
                     new QueryServiceModule(
                         environment.getConfig(SERVICE_NAME).getConfig(QUERY_SERVICE_CONFIG),
                         environment.getChannelRegistry()))
-                .getInstance(QueryServiceImplBase.class)));
+                .getInstance(BindableService.class)));
   }
 }
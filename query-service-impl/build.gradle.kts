@@ -2,12 +2,19 @@ plugins {
   `java-library`
   jacoco
   id("org.hypertrace.jacoco-report-plugin")
+  id("me.champeau.jmh") version "0.6.8"
 }
 
 tasks.test {
   useJUnitPlatform()
 }
 
+jmh {
+  fork.set(1)
+  warmupIterations.set(3)
+  iterations.set(5)
+}
+
 dependencies {
   constraints {
     implementation("org.jetbrains.kotlin:kotlin-stdlib:1.6.0") {
@@ -65,6 +72,8 @@ dependencies {
   }
   implementation("org.slf4j:slf4j-api:1.7.32")
   implementation("commons-codec:commons-codec:1.15")
+  implementation("com.clearspring.analytics:stream:2.9.8")
+  implementation("com.tdunning:t-digest:3.2")
   implementation("org.hypertrace.core.serviceframework:platform-metrics:0.1.60")
   implementation("com.google.protobuf:protobuf-java-util:3.22.0")
   implementation("com.google.guava:guava:32.1.2-jre")
@@ -72,6 +81,8 @@ dependencies {
   implementation("com.squareup.okhttp3:okhttp:4.11.0")
   implementation("org.postgresql:postgresql:42.4.3")
   implementation("io.trino:trino-jdbc:423")
+  implementation("org.codehaus.janino:janino:3.1.10")
+  implementation("org.apache.calcite:calcite-core:1.34.0")
 
   annotationProcessor("org.projectlombok:lombok:1.18.20")
   compileOnly("org.projectlombok:lombok:1.18.20")
@@ -82,4 +93,8 @@ dependencies {
   testImplementation("org.mockito:mockito-junit-jupiter:3.8.0")
   testImplementation("org.apache.logging.log4j:log4j-slf4j-impl:2.17.1")
   testImplementation("com.squareup.okhttp3:mockwebserver:4.11.0")
+  testImplementation("io.grpc:grpc-core")
+
+  // Stands in for the Pinot result set groups, which can't be built outside of the Pinot client
+  jmh("org.mockito:mockito-core:3.8.0")
 }
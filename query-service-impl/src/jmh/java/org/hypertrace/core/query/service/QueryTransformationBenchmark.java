@@ -0,0 +1,233 @@
+package org.hypertrace.core.query.service;
+
+import io.reactivex.rxjava3.core.Single;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.query.service.QueryTransformation.QueryTransformationContext;
+import org.hypertrace.core.query.service.api.AttributeExpression;
+import org.hypertrace.core.query.service.api.ColumnIdentifier;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.OrderByExpression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares a {@link FusedQueryTransformation} against applying the same transformations in a pass
+ * each, with all the attribute metadata cached. The transformations mirror the attribute
+ * normalization, projection and multi value transformations. Run with {@code ./gradlew
+ * :query-service-impl:jmh}, adding {@code -Pjmh.profilers=gc} style profiler arguments to see the
+ * allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryTransformationBenchmark {
+
+  @Param({"selection", "aggregation", "largeFilter"})
+  private String requestShape;
+
+  private final QueryTransformationContext context = new QueryTransformationContext() {};
+  private final List<AbstractQueryTransformation> transformations =
+      List.of(
+          new NormalizingTransformation(),
+          new ProjectingTransformation(),
+          new DistinctCountTransformation());
+  private final FusedQueryTransformation fusedTransformation =
+      new FusedQueryTransformation(this.transformations);
+  private QueryRequest request;
+
+  @Setup
+  public void setup() {
+    switch (requestShape) {
+      case "selection":
+        request =
+            QueryRequest.newBuilder()
+                .addSelection(column("SERVICE.name"))
+                .addSelection(column("API.displayName"))
+                .addSelection(column("API.duration"))
+                .setFilter(and(timeFilter(), equalsFilter("SERVICE.id", "service")))
+                .addOrderBy(orderBy(column("API.duration")))
+                .setLimit(100)
+                .build();
+        break;
+      case "aggregation":
+        request =
+            QueryRequest.newBuilder()
+                .addSelection(column("API.displayName"))
+                .addAggregation(function("AVG", column("API.duration")))
+                .addAggregation(function("DISTINCTCOUNT", column("API.tags")))
+                .addAggregation(function("COUNT", column("API.id")))
+                .setFilter(and(timeFilter(), equalsFilter("SERVICE.id", "service")))
+                .addGroupBy(column("API.displayName"))
+                .addOrderBy(orderBy(function("AVG", column("API.duration"))))
+                .setLimit(10)
+                .build();
+        break;
+      case "largeFilter":
+        Filter.Builder filter = Filter.newBuilder().setOperator(Operator.OR);
+        for (int i = 0; i < 50; i++) {
+          filter.addChildFilter(equalsFilter("API.displayName", "api-" + i));
+        }
+        request =
+            QueryRequest.newBuilder()
+                .addSelection(column("API.id"))
+                .addSelection(column("API.displayName"))
+                .setFilter(and(timeFilter(), filter.build()))
+                .setLimit(1000)
+                .build();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown request shape: " + requestShape);
+    }
+  }
+
+  @Benchmark
+  public QueryRequest passPerTransformation() {
+    QueryRequest transformed = request;
+    for (AbstractQueryTransformation transformation : transformations) {
+      transformed = transformation.transform(transformed, context).blockingGet();
+    }
+    return transformed;
+  }
+
+  @Benchmark
+  public QueryRequest fusedPass() {
+    return fusedTransformation.transform(request, context).blockingGet();
+  }
+
+  private static Expression column(String columnName) {
+    return Expression.newBuilder()
+        .setColumnIdentifier(ColumnIdentifier.newBuilder().setColumnName(columnName))
+        .build();
+  }
+
+  private static Expression function(String functionName, Expression argument) {
+    return Expression.newBuilder()
+        .setFunction(Function.newBuilder().setFunctionName(functionName).addArguments(argument))
+        .build();
+  }
+
+  private static OrderByExpression orderBy(Expression expression) {
+    return OrderByExpression.newBuilder()
+        .setExpression(expression)
+        .setOrder(SortOrder.DESC)
+        .build();
+  }
+
+  private static Filter timeFilter() {
+    return Filter.newBuilder()
+        .setLhs(column("API.startTime"))
+        .setOperator(Operator.GE)
+        .setRhs(
+            Expression.newBuilder()
+                .setLiteral(
+                    LiteralConstant.newBuilder()
+                        .setValue(Value.newBuilder().setValueType(ValueType.LONG).setLong(1000))))
+        .build();
+  }
+
+  private static Filter equalsFilter(String columnName, String value) {
+    return Filter.newBuilder()
+        .setLhs(column(columnName))
+        .setOperator(Operator.EQ)
+        .setRhs(
+            Expression.newBuilder()
+                .setLiteral(
+                    LiteralConstant.newBuilder()
+                        .setValue(
+                            Value.newBuilder().setValueType(ValueType.STRING).setString(value))))
+        .build();
+  }
+
+  private static Filter and(Filter... filters) {
+    return Filter.newBuilder()
+        .setOperator(Operator.AND)
+        .addAllChildFilter(List.of(filters))
+        .build();
+  }
+
+  private abstract static class BenchmarkTransformation extends AbstractQueryTransformation {
+    @Override
+    protected Logger getLogger() {
+      return LoggerFactory.getLogger(QueryTransformationBenchmark.class);
+    }
+
+    @Override
+    protected boolean isFusable() {
+      return true;
+    }
+  }
+
+  private static final class NormalizingTransformation extends BenchmarkTransformation {
+    @Override
+    protected Single<Expression> transformColumnIdentifier(ColumnIdentifier columnIdentifier) {
+      return Single.just(
+          QueryRequestUtil.createSimpleAttributeExpression(columnIdentifier.getColumnName())
+              .build());
+    }
+  }
+
+  /** Projects the display name from a cached projection. */
+  private static final class ProjectingTransformation extends BenchmarkTransformation {
+    private final Map<String, Single<Expression>> cachedProjections =
+        Map.of(
+            "API.displayName",
+            Single.just(
+                    function(
+                        "CONCAT",
+                        QueryRequestUtil.createSimpleAttributeExpression("API.name").build()))
+                .cache());
+
+    @Override
+    protected Single<Expression> transformAttributeExpression(
+        AttributeExpression attributeExpression) {
+      Single<Expression> projection =
+          this.cachedProjections.get(attributeExpression.getAttributeId());
+      return projection == null
+          ? super.transformAttributeExpression(attributeExpression)
+          : projection;
+    }
+  }
+
+  /** Turns distinct counts of array attributes, known from cached metadata, into their MV form. */
+  private static final class DistinctCountTransformation extends BenchmarkTransformation {
+    private final Map<String, Single<Boolean>> cachedIsArray =
+        Map.of("API.tags", Single.just(true).cache());
+
+    @Override
+    protected Single<Expression> rewriteFunction(Function function) {
+      if (!function.getFunctionName().equals("DISTINCTCOUNT")
+          || !function.getArguments(0).hasAttributeExpression()) {
+        return super.rewriteFunction(function);
+      }
+      return this.cachedIsArray
+          .getOrDefault(
+              function.getArguments(0).getAttributeExpression().getAttributeId(),
+              Single.just(false))
+          .map(
+              isArray ->
+                  isArray
+                      ? Expression.newBuilder()
+                          .setFunction(function.toBuilder().setFunctionName("DISTINCTCOUNTMV"))
+                          .build()
+                      : Expression.newBuilder().setFunction(function).build());
+    }
+  }
+}
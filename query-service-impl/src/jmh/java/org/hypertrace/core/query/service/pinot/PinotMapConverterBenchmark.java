@@ -0,0 +1,63 @@
+package org.hypertrace.core.query.service.pinot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the streaming {@link PinotMapConverter#merge(String, String)} against the map based
+ * merge it replaced. Run with {@code ./gradlew :query-service-impl:jmh}, adding {@code
+ * -Pjmh.profilers=gc} style profiler arguments to see the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PinotMapConverterBenchmark {
+
+  @Param({"0", "5", "30"})
+  private int mapSize;
+
+  private final PinotMapConverter converter = new PinotMapConverter();
+  private String keyData;
+  private String valueData;
+
+  @Setup
+  public void setup() throws IOException {
+    if (mapSize == 0) {
+      // This is how empty list is represented in Pinot
+      keyData = "[\"\"]";
+      valueData = "[\"\"]";
+      return;
+    }
+
+    List<String> keys = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < mapSize; i++) {
+      keys.add("http.request.header.x-custom-" + i);
+      values.add("value \"" + i + "\" for /api/v1/resource?id=" + i);
+    }
+    ObjectMapper objectMapper = new ObjectMapper();
+    keyData = objectMapper.writeValueAsString(keys);
+    valueData = objectMapper.writeValueAsString(values);
+  }
+
+  @Benchmark
+  public String streamingMerge() throws IOException {
+    return converter.merge(keyData, valueData);
+  }
+
+  @Benchmark
+  public String mapBasedMerge() throws IOException {
+    return converter.mergeUsingMap(keyData, valueData);
+  }
+}
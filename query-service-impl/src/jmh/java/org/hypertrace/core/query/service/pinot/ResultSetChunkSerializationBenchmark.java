@@ -0,0 +1,177 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.protobuf.ProtoUtils;
+import io.reactivex.rxjava3.core.Observable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.pinot.client.ResultSet;
+import org.apache.pinot.client.ResultSetGroup;
+import org.hypertrace.core.query.service.RowChunkingOperator;
+import org.hypertrace.core.query.service.SerializedResultSetChunk;
+import org.hypertrace.core.query.service.SerializedRowChunkingOperator;
+import org.hypertrace.core.query.service.api.ColumnIdentifier;
+import org.hypertrace.core.query.service.api.ColumnMetadata;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.ResultSetChunk;
+import org.hypertrace.core.query.service.api.ResultSetMetadata;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares serving a Pinot selection result as chunks built from the rows converted by {@code
+ * PinotBasedRequestHandler} and serialized by the generated protobuf marshaller, against the rows
+ * written straight into pre-serialized chunks by the handler. Both variants drain the marshalled
+ * chunks into a null output stream, like gRPC does into its transport buffers. Results in the
+ * table format are the ones Pinot returns to sql queries, selection results are written by the
+ * compiled converters. Run with {@code ./gradlew :query-service-impl:jmh}, adding {@code
+ * -Pjmh.profilers=gc} style profiler arguments to see the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResultSetChunkSerializationBenchmark {
+  private static final Marshaller<ResultSetChunk> CHUNK_MARSHALLER =
+      ProtoUtils.marshaller(ResultSetChunk.getDefaultInstance());
+
+  @Param({"100", "10000"})
+  private int rowCount;
+
+  @Param({"10"})
+  private int columnCount;
+
+  @Param({"true", "false"})
+  private boolean tableFormat;
+
+  private PinotBasedRequestHandler handler;
+  private LinkedHashSet<Expression> selections;
+  private ResultSetGroup resultSetGroup;
+  private ResultSetMetadata resultSetMetadata;
+
+  @Setup
+  public void setup() {
+    StringBuilder fieldMap = new StringBuilder();
+    this.selections = new LinkedHashSet<>();
+    ResultSetMetadata.Builder metadataBuilder = ResultSetMetadata.newBuilder();
+    List<String> columnNames = new ArrayList<>();
+    for (int i = 0; i < this.columnCount; i++) {
+      fieldMap.append("\"Span.column").append(i).append("\": \"column_").append(i).append("\"\n");
+      this.selections.add(column("Span.column" + i));
+      columnNames.add("column_" + i);
+      metadataBuilder.addColumnMetadata(
+          ColumnMetadata.newBuilder()
+              .setColumnName("Span.column" + i)
+              .setValueType(ValueType.STRING));
+    }
+    this.resultSetMetadata = metadataBuilder.build();
+
+    Config config =
+        ConfigFactory.parseString(
+            "tenantColumnName = tenant_id\n"
+                + "compiledSelectionConverters.enabled = true\n"
+                + "viewDefinition = {\n"
+                + "  viewName = spanView\n"
+                + "  fieldMap = {\n"
+                + fieldMap
+                + "  }\n"
+                + "}");
+    boolean tableFormat = this.tableFormat;
+    this.handler =
+        new PinotBasedRequestHandler(
+            "span-view-handler",
+            config,
+            new ResultSetTypePredicateProvider() {
+              @Override
+              public boolean isSelectionResultSetType(ResultSet resultSet) {
+                return !tableFormat;
+              }
+
+              @Override
+              public boolean isResultTableResultSetType(ResultSet resultSet) {
+                return tableFormat;
+              }
+            },
+            PinotClientFactory.get());
+
+    ResultSet resultSet = resultSet(columnNames, this.rowCount);
+    this.resultSetGroup = mock(ResultSetGroup.class);
+    when(this.resultSetGroup.getResultSetCount()).thenReturn(1);
+    when(this.resultSetGroup.getResultSet(0)).thenReturn(resultSet);
+  }
+
+  @Benchmark
+  public long chunkedMessages() {
+    return this.handler
+        .convert(this.resultSetGroup, this.selections)
+        .lift(RowChunkingOperator.chunkRows(this.resultSetMetadata))
+        .map(chunk -> drain(CHUNK_MARSHALLER.stream(chunk)))
+        .reduce(0L, Long::sum)
+        .blockingGet();
+  }
+
+  @Benchmark
+  public long preSerializedChunks() {
+    return Observable.just(this.handler.encode(this.resultSetGroup, this.selections))
+        .lift(SerializedRowChunkingOperator.chunkRows(() -> this.resultSetMetadata))
+        .map(chunk -> drain(SerializedResultSetChunk.MARSHALLER.stream(chunk)))
+        .reduce(0L, Long::sum)
+        .blockingGet();
+  }
+
+  private static long drain(InputStream stream) throws IOException {
+    return ((Drainable) stream).drainTo(OutputStream.nullOutputStream());
+  }
+
+  private static Expression column(String columnName) {
+    return Expression.newBuilder()
+        .setColumnIdentifier(ColumnIdentifier.newBuilder().setColumnName(columnName))
+        .build();
+  }
+
+  /** A result set of distinct strings per cell, answering only what the conversions read. */
+  private static ResultSet resultSet(List<String> columnNames, int rowCount) {
+    String[][] rows = new String[rowCount][columnNames.size()];
+    for (int row = 0; row < rowCount; row++) {
+      for (int column = 0; column < columnNames.size(); column++) {
+        rows[row][column] = "value-" + row + "-" + column;
+      }
+    }
+    return (ResultSet)
+        Proxy.newProxyInstance(
+            ResultSet.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getRowCount":
+                  return rowCount;
+                case "getColumnCount":
+                  return columnNames.size();
+                case "getColumnName":
+                  return columnNames.get((int) args[0]);
+                case "getString":
+                  return rows[(int) args[0]][(int) args[1]];
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+}
@@ -0,0 +1,142 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.pinot.client.ResultSet;
+import org.apache.pinot.client.ResultSetGroup;
+import org.hypertrace.core.query.service.api.ColumnIdentifier;
+import org.hypertrace.core.query.service.api.Expression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures converting a Pinot selection result into rows with {@code PinotBasedRequestHandler},
+ * with its compiled selection converters enabled and disabled. Without them, the handler looks up
+ * the result column of each cell by its logical name. The selections are plain columns and a map
+ * column. Run with {@code ./gradlew :query-service-impl:jmh}, adding {@code -Pjmh.profilers=gc}
+ * style profiler arguments to see the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SelectionConverterBenchmark {
+  private static final int ROW_COUNT = 100;
+
+  @Param({"4", "16"})
+  private int columnCount;
+
+  @Param({"false", "true"})
+  private boolean nativeMapValues;
+
+  @Param({"false", "true"})
+  private boolean compiledSelectionConverters;
+
+  private PinotBasedRequestHandler handler;
+  private LinkedHashSet<Expression> selections;
+  private ResultSetGroup resultSetGroup;
+
+  @Setup
+  public void setup() {
+    StringBuilder fieldMap = new StringBuilder("\"Span.tags\": \"tags\"");
+    this.selections = new LinkedHashSet<>();
+    List<String> columnNames = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < this.columnCount; i++) {
+      fieldMap.append(", \"Span.column").append(i).append("\": \"column_").append(i).append("\"");
+      this.selections.add(column("Span.column" + i));
+      columnNames.add("column_" + i);
+      values.add("value-" + i);
+    }
+    this.selections.add(column("Span.tags"));
+    columnNames.add("tags" + ViewDefinition.MAP_KEYS_SUFFIX);
+    columnNames.add("tags" + ViewDefinition.MAP_VALUES_SUFFIX);
+    values.add("[\"http.method\",\"http.status_code\"]");
+    values.add("[\"GET\",\"200\"]");
+
+    Config config =
+        ConfigFactory.parseString(
+            "tenantColumnName = tenant_id\n"
+                + "nativeMapValuesEnabled = "
+                + this.nativeMapValues
+                + "\n"
+                + "compiledSelectionConverters.enabled = "
+                + this.compiledSelectionConverters
+                + "\n"
+                + "viewDefinition = {\n"
+                + "  viewName = spanView\n"
+                + "  mapFields = [\"tags\"]\n"
+                + "  fieldMap = {"
+                + fieldMap
+                + "}\n"
+                + "}");
+    this.handler =
+        new PinotBasedRequestHandler(
+            "span-view-handler",
+            config,
+            new ResultSetTypePredicateProvider() {
+              @Override
+              public boolean isSelectionResultSetType(ResultSet resultSet) {
+                return true;
+              }
+
+              @Override
+              public boolean isResultTableResultSetType(ResultSet resultSet) {
+                return false;
+              }
+            },
+            PinotClientFactory.get());
+
+    ResultSet resultSet = resultSet(columnNames, values);
+    this.resultSetGroup = mock(ResultSetGroup.class);
+    when(this.resultSetGroup.getResultSetCount()).thenReturn(1);
+    when(this.resultSetGroup.getResultSet(0)).thenReturn(resultSet);
+  }
+
+  @Benchmark
+  public void convert(Blackhole blackhole) {
+    this.handler.convert(this.resultSetGroup, this.selections).blockingForEach(blackhole::consume);
+  }
+
+  private static Expression column(String columnName) {
+    return Expression.newBuilder()
+        .setColumnIdentifier(ColumnIdentifier.newBuilder().setColumnName(columnName))
+        .build();
+  }
+
+  /** A result set of the given row repeated, answering only what the conversions read. */
+  private static ResultSet resultSet(List<String> columnNames, List<String> row) {
+    return (ResultSet)
+        Proxy.newProxyInstance(
+            ResultSet.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getRowCount":
+                  return ROW_COUNT;
+                case "getColumnCount":
+                  return columnNames.size();
+                case "getColumnName":
+                  return columnNames.get((int) args[0]);
+                case "getString":
+                  return row.get((int) args[1]);
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+}
@@ -19,6 +19,17 @@ public abstract class AbstractQueryTransformation implements QueryTransformation
 
   protected abstract Logger getLogger();
 
+  /**
+   * Whether this transformation only rewrites single nodes through {@link
+   * #transformColumnIdentifier}, {@link #transformAttributeExpression}, {@link #transformLiteral}
+   * and {@link #rewriteFunction}, so it can be fused with other such transformations into a single
+   * pass over the request. Transformations overriding the recursive methods or {@link
+   * #rebuildRequest} must not be fused.
+   */
+  protected boolean isFusable() {
+    return false;
+  }
+
   @Override
   public Single<QueryRequest> transform(
       QueryRequest queryRequest, QueryTransformationContext transformationContext) {
@@ -99,8 +110,33 @@ public abstract class AbstractQueryTransformation implements QueryTransformation
     return this.transformExpressionList(function.getArgumentsList())
         .map(expressions -> function.toBuilder().clearArguments().addAllArguments(expressions))
         .map(Function.Builder::build)
-        .map(Expression.newBuilder()::setFunction)
-        .map(Expression.Builder::build);
+        .flatMap(this::rewriteFunction);
+  }
+
+  /** Rewrites a function whose arguments have already been transformed. */
+  protected Single<Expression> rewriteFunction(Function function) {
+    return Single.just(Expression.newBuilder().setFunction(function).build());
+  }
+
+  /**
+   * Rewrites a single node, whose children have already been transformed, through the hook of its
+   * type. Order by expressions are rewritten through their expression only.
+   */
+  Single<Expression> transformNode(Expression expression) {
+    switch (expression.getValueCase()) {
+      case COLUMNIDENTIFIER:
+        return this.transformColumnIdentifier(expression.getColumnIdentifier());
+      case ATTRIBUTE_EXPRESSION:
+        return this.transformAttributeExpression(expression.getAttributeExpression());
+      case FUNCTION:
+        return this.rewriteFunction(expression.getFunction());
+      case LITERAL:
+        return this.transformLiteral(expression.getLiteral());
+      case ORDERBY:
+      case VALUE_NOT_SET:
+      default:
+        return Single.just(expression);
+    }
   }
 
   protected Single<OrderByExpression> transformOrderBy(OrderByExpression orderBy) {
@@ -0,0 +1,55 @@
+package org.hypertrace.core.query.service;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable in memory buffer of encoded rows or chunks. Its array can be handed over once written,
+ * in which case the buffer starts a new one sized after the previous one.
+ */
+final class ChunkBuffer extends OutputStream {
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+
+  private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+  private int count;
+
+  @Override
+  public void write(int b) {
+    this.ensureCapacity(this.count + 1);
+    this.bytes[this.count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] source, int offset, int length) {
+    this.ensureCapacity(this.count + length);
+    System.arraycopy(source, offset, this.bytes, this.count, length);
+    this.count += length;
+  }
+
+  int size() {
+    return this.count;
+  }
+
+  /** The current array of the buffer, valid up to {@link #size()}. */
+  byte[] array() {
+    return this.bytes;
+  }
+
+  void reset() {
+    this.count = 0;
+  }
+
+  /** Hands the written bytes over to a chunk, and starts a new array for the next chunk. */
+  SerializedResultSetChunk detach() {
+    SerializedResultSetChunk chunk = new SerializedResultSetChunk(this.bytes, this.count);
+    this.bytes = new byte[Math.max(INITIAL_BUFFER_SIZE, this.count)];
+    this.count = 0;
+    return chunk;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > this.bytes.length) {
+      this.bytes = Arrays.copyOf(this.bytes, Math.max(capacity, this.bytes.length * 2));
+    }
+  }
+}
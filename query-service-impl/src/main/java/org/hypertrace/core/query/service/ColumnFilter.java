@@ -0,0 +1,13 @@
+package org.hypertrace.core.query.service;
+
+import java.util.Set;
+
+/**
+ * A filter on a column which all the rows of a view match, so that the view can only serve the
+ * requests restricting the column to values the filter accepts.
+ */
+public interface ColumnFilter {
+
+  /** Returns whether the rows of every one of the given values of the column match the filter. */
+  boolean matchesAll(Set<String> values);
+}
@@ -0,0 +1,45 @@
+package org.hypertrace.core.query.service;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+import java.util.List;
+import org.hypertrace.core.query.service.api.ResultSetChunk;
+import org.hypertrace.core.query.service.api.Row;
+
+/**
+ * Rows written by a {@link RowWriter}, encoded as the row fields of a {@link ResultSetChunk}. Any
+ * range of the rows can be copied into a chunk as is.
+ */
+public final class EncodedRows {
+  private final byte[] bytes;
+  // The offset of each row in the bytes, followed by the end of the last row
+  private final int[] rowOffsets;
+
+  EncodedRows(byte[] bytes, int[] rowOffsets) {
+    this.bytes = bytes;
+    this.rowOffsets = rowOffsets;
+  }
+
+  public int getRowCount() {
+    return this.rowOffsets.length - 1;
+  }
+
+  /** Writes the rows from the given index, inclusive, to the other one, exclusive. */
+  void writeTo(CodedOutputStream output, int fromRow, int toRow) throws IOException {
+    int offset = this.rowOffsets[fromRow];
+    output.writeRawBytes(this.bytes, offset, this.rowOffsets[toRow] - offset);
+  }
+
+  /** Parses the rows back into messages. */
+  public List<Row> toRows() {
+    try {
+      return ResultSetChunk.parser()
+          .parseFrom(this.bytes, 0, this.rowOffsets[this.getRowCount()])
+          .getRowList();
+    } catch (InvalidProtocolBufferException e) {
+      // The rows are encoded by a row writer, so this is never expected
+      throw new IllegalStateException("Unable to parse encoded rows", e);
+    }
+  }
+}
@@ -1,36 +1,30 @@
 package org.hypertrace.core.query.service;
 
-import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_COUNT;
 import static org.hypertrace.core.query.service.QueryRequestUtil.getAlias;
-import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.removeAlias;
 import static org.hypertrace.core.query.service.api.Expression.ValueCase.ATTRIBUTE_EXPRESSION;
 import static org.hypertrace.core.query.service.api.Expression.ValueCase.COLUMNIDENTIFIER;
 import static org.hypertrace.core.query.service.api.Expression.ValueCase.FUNCTION;
 
-import com.google.common.base.Supplier;
-import com.google.common.base.Suppliers;
 import java.time.Duration;
-import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.query.service.api.Accuracy;
 import org.hypertrace.core.query.service.api.ColumnMetadata;
 import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.Expression.ValueCase;
-import org.hypertrace.core.query.service.api.Filter;
 import org.hypertrace.core.query.service.api.Function;
-import org.hypertrace.core.query.service.api.Operator;
-import org.hypertrace.core.query.service.api.OrderByExpression;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.ResultSetMetadata;
+import org.hypertrace.core.query.service.api.Row;
 import org.hypertrace.core.query.service.api.ValueType;
 
 /**
@@ -39,7 +33,7 @@ import org.hypertrace.core.query.service.api.ValueType;
  */
 public class ExecutionContext {
 
-  private Set<String> referencedColumns;
+  private final RequestAnalysis requestAnalysis;
   private ResultSetMetadata resultSetMetadata;
   private String timeFilterColumn = null;
 
@@ -53,19 +47,23 @@ public class ExecutionContext {
   private final String tenantId;
   private final LinkedHashSet<String> selectedColumns;
   private final LinkedHashSet<Expression> allSelections;
+  // The distinct expressions of allSelections when ignoring their aliases, and for each selection
+  // the index of the one computing it
+  private final LinkedHashSet<Expression> computedSelections;
+  private int[] computedSelectionIndexes;
   private final Optional<Duration> timeSeriesPeriod;
-  private final Filter queryRequestFilter;
-  private final Supplier<Optional<QueryTimeRange>> queryTimeRangeSupplier;
+  private final Accuracy accuracy;
+  // Approximate aggregation functions by the name of the column they were used to compute
+  private final Map<String, String> approximations = new ConcurrentHashMap<>();
 
   public ExecutionContext(String tenantId, QueryRequest request) {
     this.tenantId = tenantId;
     this.selectedColumns = new LinkedHashSet<>();
     this.allSelections = new LinkedHashSet<>();
+    this.computedSelections = new LinkedHashSet<>();
     this.timeSeriesPeriod = calculateTimeSeriesPeriod(request);
-    this.queryRequestFilter = request.getFilter();
-    queryTimeRangeSupplier =
-        Suppliers.memoize(
-            () -> buildQueryTimeRange(this.queryRequestFilter, this.timeFilterColumn));
+    this.accuracy = request.getAccuracy();
+    this.requestAnalysis = RequestAnalysis.of(request);
     analyze(request);
   }
 
@@ -89,53 +87,49 @@ public class ExecutionContext {
   }
 
   private void analyze(QueryRequest request) {
-    List<String> filterColumns = new ArrayList<>();
-    LinkedList<Filter> filterQueue = new LinkedList<>();
-    filterQueue.add(request.getFilter());
-    while (!filterQueue.isEmpty()) {
-      Filter filter = filterQueue.pop();
-      if (filter.getChildFilterCount() > 0) {
-        filterQueue.addAll(filter.getChildFilterList());
-      } else {
-        extractColumns(filterColumns, filter.getLhs());
-        extractColumns(filterColumns, filter.getRhs());
-      }
-    }
-
-    List<String> postFilterColumns = new ArrayList<>();
     List<String> selectedList = new ArrayList<>();
     LinkedHashSet<ColumnMetadata> columnMetadataSet = new LinkedHashSet<>();
 
     // group by columns must be first in the response
     if (request.getGroupByCount() > 0) {
       for (Expression expression : request.getGroupByList()) {
-        extractColumns(postFilterColumns, expression);
         columnMetadataSet.add(toColumnMetadata(expression));
         allSelections.add(expression);
       }
     }
     if (request.getSelectionCount() > 0) {
       for (Expression expression : request.getSelectionList()) {
-        extractColumns(selectedList, expression);
-        postFilterColumns.addAll(selectedList);
+        RequestAnalysis.extractColumns(selectedList, expression);
         columnMetadataSet.add(toColumnMetadata(expression));
         allSelections.add(expression);
       }
     }
     if (request.getAggregationCount() > 0) {
       for (Expression expression : request.getAggregationList()) {
-        extractColumns(postFilterColumns, expression);
         columnMetadataSet.add(toColumnMetadata(expression));
         allSelections.add(expression);
       }
     }
 
-    referencedColumns = new HashSet<>();
-    referencedColumns.addAll(filterColumns);
-    referencedColumns.addAll(postFilterColumns);
     resultSetMetadata =
         ResultSetMetadata.newBuilder().addAllColumnMetadata(columnMetadataSet).build();
     selectedColumns.addAll(selectedList);
+    analyzeComputedSelections();
+  }
+
+  private void analyzeComputedSelections() {
+    Map<Expression, Integer> indexesByUnaliasedSelection = new HashMap<>();
+    computedSelectionIndexes = new int[allSelections.size()];
+    int position = 0;
+    for (Expression selection : allSelections) {
+      Integer index = indexesByUnaliasedSelection.get(removeAlias(selection));
+      if (index == null) {
+        index = computedSelections.size();
+        indexesByUnaliasedSelection.put(removeAlias(selection), index);
+        computedSelections.add(selection);
+      }
+      computedSelectionIndexes[position++] = index;
+    }
   }
 
   private ColumnMetadata toColumnMetadata(Expression expression) {
@@ -158,82 +152,6 @@ public class ExecutionContext {
     return builder.build();
   }
 
-  private void extractColumns(List<String> columns, Expression expression) {
-    ValueCase valueCase = expression.getValueCase();
-    switch (valueCase) {
-      case COLUMNIDENTIFIER:
-      case ATTRIBUTE_EXPRESSION:
-        String logicalColumnName =
-            getLogicalColumnName(expression).orElseThrow(IllegalArgumentException::new);
-        columns.add(logicalColumnName);
-        break;
-      case LITERAL:
-        // no columns
-        break;
-      case FUNCTION:
-        Function function = expression.getFunction();
-        // ignore argument list for COUNT function as it is just converted to COUNT(*) at the end
-        if (function.getFunctionName().equalsIgnoreCase(QUERY_FUNCTION_COUNT)) {
-          break;
-        }
-        for (Expression childExpression : function.getArgumentsList()) {
-          extractColumns(columns, childExpression);
-        }
-        break;
-      case ORDERBY:
-        OrderByExpression orderBy = expression.getOrderBy();
-        extractColumns(columns, orderBy.getExpression());
-        break;
-      case VALUE_NOT_SET:
-        break;
-    }
-  }
-
-  private Optional<QueryTimeRange> buildQueryTimeRange(Filter filter, String timeFilterColumn) {
-
-    // time filter will always be present with AND operator
-    if (filter.getOperator() != Operator.AND) {
-      return Optional.empty();
-    }
-
-    Optional<Long> timeRangeStart =
-        filter.getChildFilterList().stream()
-            .filter(
-                childFilter ->
-                    this.isMatchingFilter(
-                        childFilter, timeFilterColumn, List.of(Operator.GE, Operator.GT)))
-            .map(matchingFilter -> matchingFilter.getRhs().getLiteral().getValue().getLong())
-            .findFirst();
-
-    Optional<Long> timeRangeEnd =
-        filter.getChildFilterList().stream()
-            .filter(
-                childFilter ->
-                    this.isMatchingFilter(
-                        childFilter, timeFilterColumn, List.of(Operator.LT, Operator.LE)))
-            .map(matchingFilter -> matchingFilter.getRhs().getLiteral().getValue().getLong())
-            .findFirst();
-
-    if (timeRangeStart.isPresent() && timeRangeEnd.isPresent()) {
-      return Optional.of(
-          new QueryTimeRange(
-              Instant.ofEpochMilli(timeRangeStart.get()),
-              Instant.ofEpochMilli(timeRangeEnd.get()),
-              Duration.ofMillis(timeRangeEnd.get() - timeRangeStart.get())));
-    }
-
-    return filter.getChildFilterList().stream()
-        .map(childFilter -> this.buildQueryTimeRange(childFilter, timeFilterColumn))
-        .flatMap(Optional::stream)
-        .findFirst();
-  }
-
-  private boolean isMatchingFilter(Filter filter, String column, Collection<Operator> operators) {
-    return getLogicalColumnName(filter.getLhs()).map(column::equals).orElse(false)
-        && (operators.stream()
-            .anyMatch(operator -> Objects.equals(operator, filter.getOperator())));
-  }
-
   private Duration parseDuration(String timeSeriesPeriod) {
     String[] splitPeriodString = timeSeriesPeriod.split(":");
     long amount = Long.parseLong(splitPeriodString[0]);
@@ -250,11 +168,59 @@ public class ExecutionContext {
   }
 
   public Set<String> getReferencedColumns() {
-    return referencedColumns;
+    return requestAnalysis.getReferencedColumns();
   }
 
+  /** Returns the facts about the request that handlers select and cost themselves with. */
+  public RequestAnalysis getRequestAnalysis() {
+    return this.requestAnalysis;
+  }
+
+  /**
+   * Returns the metadata of the result, including the approximations recorded while converting
+   * the request for the handler.
+   */
   public ResultSetMetadata getResultSetMetadata() {
-    return resultSetMetadata;
+    if (this.approximations.isEmpty()) {
+      return resultSetMetadata;
+    }
+    ResultSetMetadata.Builder builder = resultSetMetadata.toBuilder();
+    for (ColumnMetadata.Builder columnMetadata : builder.getColumnMetadataBuilderList()) {
+      String approximation = this.approximations.get(columnMetadata.getColumnName());
+      if (approximation != null) {
+        columnMetadata.setApproximation(approximation);
+      }
+    }
+    return builder.build();
+  }
+
+  public Accuracy getAccuracy() {
+    return this.accuracy;
+  }
+
+  /**
+   * Records that the given aggregation is computed with the given approximate function, to report
+   * it in the metadata of the result.
+   */
+  public void recordApproximation(Function function, String approximateFunction) {
+    Expression expression = Expression.newBuilder().setFunction(function).build();
+    getAlias(expression)
+        .ifPresent(columnName -> this.approximations.put(columnName, approximateFunction));
+    // The same aggregation may be requested under several aliases but computed once
+    for (Expression selection : this.allSelections) {
+      if (removeAlias(selection).equals(removeAlias(expression))) {
+        getAlias(selection)
+            .ifPresent(columnName -> this.approximations.put(columnName, approximateFunction));
+      }
+    }
+  }
+
+  /**
+   * Records the approximations recorded in the context of a request executed for a part of this
+   * one, such as a part of a split request, which selects the same columns.
+   */
+  public void recordApproximations(ExecutionContext partContext) {
+    this.approximations.putAll(partContext.approximations);
   }
 
   public LinkedHashSet<String> getSelectedColumns() {
@@ -265,16 +231,37 @@ public class ExecutionContext {
     return this.allSelections;
   }
 
+  /**
+   * Returns the distinct expressions of {@link #getAllSelections()} when ignoring their aliases,
+   * for stores to compute each of them once. Rows of these are fanned out to all selections with
+   * {@link #expandComputedRow(Row)}.
+   */
+  public LinkedHashSet<Expression> getComputedSelections() {
+    return this.computedSelections;
+  }
+
+  /** Fans out a row of the computed selections to a row of all selections. */
+  public Row expandComputedRow(Row row) {
+    if (this.computedSelections.size() == this.allSelections.size()) {
+      return row;
+    }
+    Row.Builder builder = Row.newBuilder();
+    for (int index : this.computedSelectionIndexes) {
+      builder.addColumn(row.getColumn(index));
+    }
+    return builder.build();
+  }
+
   public Optional<Duration> getTimeSeriesPeriod() {
     return this.timeSeriesPeriod;
   }
 
   public Optional<Duration> getTimeRangeDuration() {
-    return queryTimeRangeSupplier.get().map(QueryTimeRange::getDuration);
+    return getQueryTimeRange().map(QueryTimeRange::getDuration);
   }
 
   public Optional<QueryTimeRange> getQueryTimeRange() {
-    return queryTimeRangeSupplier.get();
+    return requestAnalysis.getQueryTimeRange(timeFilterColumn);
   }
 
   public String getTimeFilterColumn() {
@@ -0,0 +1,293 @@
+package org.hypertrace.core.query.service;
+
+import io.grpc.Context;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.OrderByExpression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+
+/**
+ * Applies a sequence of fusable transformations, see {@link
+ * AbstractQueryTransformation#isFusable()}, in a single pass over the request instead of a pass
+ * per transformation. The request is walked bottom up, and each node is rewritten by every
+ * transformation in order once its children are transformed. Nodes introduced by a rewrite, such as
+ * the arguments of a projected attribute, are walked by the later transformations only. Parts of
+ * the request are only rebuilt if one of their nodes changed.
+ *
+ * <p>The rewrites of a node are expected to be available immediately when the attribute metadata
+ * they depend on is cached, in which case the pass runs synchronously on the calling thread. If a
+ * rewrite is still pending, the pass is rerun in the gRPC context of the caller once the rewrite
+ * is available, reusing the rewrites which were pending in previous passes instead of starting
+ * them again.
+ */
+@Slf4j
+class FusedQueryTransformation implements QueryTransformation {
+  private final List<AbstractQueryTransformation> transformations;
+
+  FusedQueryTransformation(List<AbstractQueryTransformation> transformations) {
+    this.transformations = transformations;
+  }
+
+  @Override
+  public int getPriority() {
+    return this.transformations.get(0).getPriority();
+  }
+
+  @Override
+  public Single<QueryRequest> transform(
+      QueryRequest queryRequest, QueryTransformationContext transformationContext) {
+    return this.transform(queryRequest, new HashMap<>());
+  }
+
+  private Single<QueryRequest> transform(
+      QueryRequest queryRequest, Map<RewriteKey, SingleSubject<Expression>> pendingRewrites) {
+    QueryRequest transformed;
+    try {
+      transformed = new Pass(this.transformations, pendingRewrites).transformRequest(queryRequest);
+    } catch (PendingRewriteException e) {
+      // The rewrites of the rerun may look up attributes of the request context again
+      Context context = Context.current();
+      return e.rewrite.flatMap(
+          unused -> context.call(() -> this.transform(queryRequest, pendingRewrites)));
+    } catch (FailedRewriteException e) {
+      return Single.error(e.getCause());
+    }
+    return Single.just(this.debugLogIfRequestTransformed(queryRequest, transformed));
+  }
+
+  private QueryRequest debugLogIfRequestTransformed(
+      QueryRequest original, QueryRequest transformed) {
+    if (original != transformed) {
+      log.debug(
+          "Fused request transformation occurred. Original request: {} Transformed Request: {}",
+          original,
+          transformed);
+    }
+    return transformed;
+  }
+
+  private static final class Pass {
+    private final List<AbstractQueryTransformation> transformations;
+    private final Map<RewriteKey, SingleSubject<Expression>> pendingRewrites;
+
+    private Pass(
+        List<AbstractQueryTransformation> transformations,
+        Map<RewriteKey, SingleSubject<Expression>> pendingRewrites) {
+      this.transformations = transformations;
+      this.pendingRewrites = pendingRewrites;
+    }
+
+    /** Returns the same request if none of its nodes changed. */
+    private QueryRequest transformRequest(QueryRequest request) {
+      List<Expression> selections =
+          transformList(request.getSelectionList(), this::transformExpression);
+      List<Expression> aggregations =
+          transformList(request.getAggregationList(), this::transformExpression);
+      Filter filter = this.transformFilter(request.getFilter());
+      List<Expression> groupBys =
+          transformList(request.getGroupByList(), this::transformExpression);
+      List<OrderByExpression> orderBys =
+          transformList(request.getOrderByList(), this::transformOrderBy);
+      if (selections == request.getSelectionList()
+          && aggregations == request.getAggregationList()
+          && filter == request.getFilter()
+          && groupBys == request.getGroupByList()
+          && orderBys == request.getOrderByList()) {
+        return request;
+      }
+
+      QueryRequest.Builder builder = request.toBuilder();
+      if (Filter.getDefaultInstance().equals(filter)) {
+        builder.clearFilter();
+      } else {
+        builder.setFilter(filter);
+      }
+      return builder
+          .clearSelection()
+          .addAllSelection(selections)
+          .clearAggregation()
+          .addAllAggregation(aggregations)
+          .clearGroupBy()
+          .addAllGroupBy(groupBys)
+          .clearOrderBy()
+          .addAllOrderBy(orderBys)
+          .build();
+    }
+
+    private Filter transformFilter(Filter filter) {
+      if (filter.equals(Filter.getDefaultInstance())) {
+        return filter;
+      }
+      Expression lhs = this.transformExpression(filter.getLhs());
+      Expression rhs = this.transformExpression(filter.getRhs());
+      List<Filter> childFilters = transformList(filter.getChildFilterList(), this::transformFilter);
+      if (lhs == filter.getLhs()
+          && rhs == filter.getRhs()
+          && childFilters == filter.getChildFilterList()) {
+        return filter;
+      }
+
+      Filter.Builder builder = filter.toBuilder();
+      if (Expression.getDefaultInstance().equals(lhs)) {
+        builder.clearLhs();
+      } else {
+        builder.setLhs(lhs);
+      }
+      if (Expression.getDefaultInstance().equals(rhs)) {
+        builder.clearRhs();
+      } else {
+        builder.setRhs(rhs);
+      }
+      return builder.clearChildFilter().addAllChildFilter(childFilters).build();
+    }
+
+    private OrderByExpression transformOrderBy(OrderByExpression orderBy) {
+      Expression expression = this.transformExpression(orderBy.getExpression());
+      return expression == orderBy.getExpression()
+          ? orderBy
+          : orderBy.toBuilder().setExpression(expression).build();
+    }
+
+    private Expression transformExpression(Expression expression) {
+      return this.transformExpression(expression, 0);
+    }
+
+    /** Applies the transformations from the given index on to the expression and its children. */
+    private Expression transformExpression(Expression expression, int firstTransformation) {
+      Expression current = this.transformChildren(expression, firstTransformation, List.of());
+      for (int i = firstTransformation; i < this.transformations.size(); i++) {
+        Expression rewritten = this.rewrite(i, current);
+        if (rewritten.equals(current)) {
+          continue;
+        }
+        // Children introduced by the rewrite haven't been seen by the later transformations yet
+        current = this.transformChildren(rewritten, i + 1, getChildren(current));
+      }
+      return current;
+    }
+
+    /**
+     * Returns the node rewritten by the transformation at the given index, if the rewrite is
+     * available immediately or was pending in a previous pass.
+     */
+    private Expression rewrite(int transformation, Expression node) {
+      SingleSubject<Expression> rewrite =
+          this.pendingRewrites.isEmpty()
+              ? null
+              : this.pendingRewrites.get(new RewriteKey(transformation, node));
+      if (rewrite == null) {
+        rewrite = SingleSubject.create();
+        this.transformations.get(transformation).transformNode(node).subscribe(rewrite);
+      }
+      if (rewrite.hasThrowable()) {
+        throw new FailedRewriteException(rewrite.getThrowable());
+      }
+      if (!rewrite.hasValue()) {
+        this.pendingRewrites.put(new RewriteKey(transformation, node), rewrite);
+        throw new PendingRewriteException(rewrite);
+      }
+      return rewrite.getValue();
+    }
+
+    /** Transforms the children of the expression, except the given ones already transformed. */
+    private Expression transformChildren(
+        Expression expression, int firstTransformation, List<Expression> transformedChildren) {
+      UnaryOperator<Expression> childTransformer =
+          child ->
+              containsSame(transformedChildren, child)
+                  ? child
+                  : this.transformExpression(child, firstTransformation);
+      switch (expression.getValueCase()) {
+        case FUNCTION:
+          List<Expression> arguments =
+              transformList(expression.getFunction().getArgumentsList(), childTransformer);
+          return arguments == expression.getFunction().getArgumentsList()
+              ? expression
+              : Expression.newBuilder()
+                  .setFunction(
+                      expression.getFunction().toBuilder()
+                          .clearArguments()
+                          .addAllArguments(arguments))
+                  .build();
+        case ORDERBY:
+          OrderByExpression orderBy = expression.getOrderBy();
+          Expression orderByExpression = childTransformer.apply(orderBy.getExpression());
+          return orderByExpression == orderBy.getExpression()
+              ? expression
+              : Expression.newBuilder()
+                  .setOrderBy(orderBy.toBuilder().setExpression(orderByExpression))
+                  .build();
+        default:
+          return expression;
+      }
+    }
+
+    private static List<Expression> getChildren(Expression expression) {
+      switch (expression.getValueCase()) {
+        case FUNCTION:
+          return expression.getFunction().getArgumentsList();
+        case ORDERBY:
+          return List.of(expression.getOrderBy().getExpression());
+        default:
+          return List.of();
+      }
+    }
+
+    private static boolean containsSame(List<Expression> expressions, Expression expression) {
+      for (Expression candidate : expressions) {
+        if (candidate == expression) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Returns the same list if none of its elements changed. */
+    private static <T> List<T> transformList(List<T> list, UnaryOperator<T> transformer) {
+      List<T> transformed = null;
+      for (int i = 0; i < list.size(); i++) {
+        T element = list.get(i);
+        T transformedElement = transformer.apply(element);
+        if (transformed == null && transformedElement != element) {
+          transformed = new ArrayList<>(list.subList(0, i));
+        }
+        if (transformed != null) {
+          transformed.add(transformedElement);
+        }
+      }
+      return transformed == null ? list : transformed;
+    }
+  }
+
+  /** A node and the index of the transformation rewriting it. */
+  @Value
+  private static class RewriteKey {
+    int transformation;
+    Expression node;
+  }
+
+  /** Thrown when a rewrite isn't available immediately, to rerun the pass once it is. */
+  private static final class PendingRewriteException extends RuntimeException {
+    private final Single<Expression> rewrite;
+
+    private PendingRewriteException(Single<Expression> rewrite) {
+      super(null, null, false, false);
+      this.rewrite = rewrite;
+    }
+  }
+
+  private static final class FailedRewriteException extends RuntimeException {
+    private FailedRewriteException(Throwable cause) {
+      super(cause);
+    }
+  }
+}
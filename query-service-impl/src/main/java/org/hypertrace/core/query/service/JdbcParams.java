@@ -0,0 +1,58 @@
+package org.hypertrace.core.query.service;
+
+import com.google.protobuf.ByteString;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/** The params of a SQL query executed as a JDBC prepared statement, by their zero based index. */
+public interface JdbcParams {
+
+  Map<Integer, Integer> getIntegerParams();
+
+  Map<Integer, Long> getLongParams();
+
+  Map<Integer, String> getStringParams();
+
+  Map<Integer, Float> getFloatParams();
+
+  Map<Integer, Double> getDoubleParams();
+
+  Map<Integer, ByteString> getByteStringParams();
+
+  default Map<Integer, Boolean> getBooleanParams() {
+    return Map.of();
+  }
+
+  /** Binds the params to the statement by their type. */
+  default void bindTo(PreparedStatement preparedStatement) throws SQLException {
+    for (Entry<Integer, String> param : this.getStringParams().entrySet()) {
+      this.bindString(preparedStatement, param.getKey() + 1, param.getValue());
+    }
+    for (Entry<Integer, Integer> param : this.getIntegerParams().entrySet()) {
+      preparedStatement.setInt(param.getKey() + 1, param.getValue());
+    }
+    for (Entry<Integer, Long> param : this.getLongParams().entrySet()) {
+      preparedStatement.setLong(param.getKey() + 1, param.getValue());
+    }
+    for (Entry<Integer, Float> param : this.getFloatParams().entrySet()) {
+      preparedStatement.setFloat(param.getKey() + 1, param.getValue());
+    }
+    for (Entry<Integer, Double> param : this.getDoubleParams().entrySet()) {
+      preparedStatement.setDouble(param.getKey() + 1, param.getValue());
+    }
+    for (Entry<Integer, ByteString> param : this.getByteStringParams().entrySet()) {
+      preparedStatement.setBytes(param.getKey() + 1, param.getValue().toByteArray());
+    }
+    for (Entry<Integer, Boolean> param : this.getBooleanParams().entrySet()) {
+      preparedStatement.setBoolean(param.getKey() + 1, param.getValue());
+    }
+  }
+
+  /** Binds a string param, for the driver to write it as a typed literal by default. */
+  default void bindString(PreparedStatement preparedStatement, int parameterIndex, String value)
+      throws SQLException {
+    preparedStatement.setString(parameterIndex, value);
+  }
+}
@@ -0,0 +1,480 @@
+package org.hypertrace.core.query.service;
+
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_AVG;
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_COUNT;
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_MAX;
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_MIN;
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_SUM;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createLongLiteralExpression;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createSimpleAttributeExpression;
+import static org.hypertrace.core.query.service.QueryRequestUtil.getAlias;
+import static org.hypertrace.core.query.service.QueryRequestUtil.indexOfIgnoringAlias;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.OrderByExpression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/**
+ * An aggregation whose result is merged from the results of the same aggregation over disjoint
+ * parts of its time range. SUM, COUNT, MIN and MAX results of the parts are combined directly, AVG
+ * is computed from the SUM and COUNT queried for each part. Other aggregations can only be merged
+ * by one of the given {@link SketchMerge}s, which queries them as sketches of the parts.
+ *
+ * <p>Each part returns up to as many groups as the offset and limit of the request need, or all of
+ * its time buckets if the request is grouped by time buckets only. Ordering, offset and limit of
+ * the request are applied to the merged rows. A part having more groups than that, which can only
+ * happen if the request is not grouped by time buckets only, is incomplete and its result can't be
+ * merged.
+ */
+public class PartialAggregation {
+  private final QueryRequest request;
+  private final QueryRequest partialRequest;
+  private final Optional<Duration> timeSeriesPeriod;
+  private final boolean groupedByTimeBucketsOnly;
+  private final List<Integer> groupKeyIndexes;
+  private final List<MergedColumn> columns;
+  private final Comparator<Row> rowComparator;
+
+  private PartialAggregation(
+      QueryRequest request,
+      QueryRequest partialRequest,
+      Optional<Duration> timeSeriesPeriod,
+      List<Integer> groupKeyIndexes,
+      List<MergedColumn> columns,
+      Comparator<Row> rowComparator) {
+    this.request = request;
+    this.partialRequest = partialRequest;
+    this.timeSeriesPeriod = timeSeriesPeriod;
+    this.groupedByTimeBucketsOnly =
+        request.getGroupByList().stream().allMatch(QueryRequestUtil::isDateTimeFunction);
+    this.groupKeyIndexes = groupKeyIndexes;
+    this.columns = columns;
+    this.rowComparator = rowComparator;
+  }
+
+  /**
+   * Returns the partial aggregation of the given request, if it aggregates anything and all of its
+   * aggregations can be merged. Records the approximations of the aggregations merged from
+   * sketches in the execution context.
+   */
+  public static Optional<PartialAggregation> forRequest(
+      QueryRequest request, ExecutionContext executionContext, List<SketchMerge> sketchMerges) {
+    if (request.getDistinctSelections()) {
+      return Optional.empty();
+    }
+
+    QueryRequest.Builder partialRequest =
+        request.toBuilder().clearSelection().clearAggregation().clearOrderBy().clearOffset();
+    List<Expression> countExpressions = new ArrayList<>();
+    for (Expression selection : request.getSelectionList()) {
+      partialRequest.addSelection(toPartialExpression(selection, sketchMerges, countExpressions));
+    }
+    for (Expression aggregation : request.getAggregationList()) {
+      partialRequest.addAggregation(
+          toPartialExpression(aggregation, sketchMerges, countExpressions));
+    }
+    partialRequest.addAllAggregation(countExpressions);
+    // The part results are only read by position, which the partial context resolves
+    List<Expression> partialSelections =
+        new ArrayList<>(
+            new ExecutionContext(executionContext.getTenantId(), partialRequest.build())
+                .getAllSelections());
+
+    List<Integer> groupKeyIndexes = new ArrayList<>();
+    List<MergedColumn> columns = new ArrayList<>();
+    Map<Function, String> approximations = new LinkedHashMap<>();
+    for (Expression selection : executionContext.getAllSelections()) {
+      if (request.getGroupByList().contains(selection)) {
+        int keyIndex = partialSelections.indexOf(selection);
+        groupKeyIndexes.add(keyIndex);
+        columns.add(new MergedColumn(MergeFunction.KEY, keyIndex, -1, null, null));
+        continue;
+      }
+      Optional<MergeFunction> mergeFunction = getMergeFunction(selection);
+      Optional<SketchMerge> sketchMerge =
+          mergeFunction.isEmpty() ? getSketchMerge(selection, sketchMerges) : Optional.empty();
+      if (mergeFunction.isEmpty() && sketchMerge.isEmpty()) {
+        return Optional.empty();
+      }
+      int valueIndex =
+          partialSelections.indexOf(
+              toPartialExpression(selection, sketchMerges, new ArrayList<>()));
+      if (sketchMerge.isPresent()) {
+        columns.add(
+            new MergedColumn(
+                MergeFunction.SKETCH, valueIndex, -1, sketchMerge.get(), selection.getFunction()));
+        approximations.put(selection.getFunction(), sketchMerge.get().getApproximation());
+        continue;
+      }
+      int countIndex =
+          mergeFunction.get() == MergeFunction.AVG
+              ? partialSelections.indexOf(createCountExpression(selection))
+              : -1;
+      columns.add(new MergedColumn(mergeFunction.get(), valueIndex, countIndex, null, null));
+    }
+    if (groupKeyIndexes.size() == columns.size()) {
+      return Optional.empty();
+    }
+
+    List<Expression> selections = new ArrayList<>(executionContext.getAllSelections());
+    Comparator<Row> rowComparator = (row, otherRow) -> 0;
+    for (OrderByExpression orderBy : request.getOrderByList()) {
+      int columnIndex = indexOfIgnoringAlias(selections, orderBy.getExpression());
+      if (columnIndex < 0) {
+        return Optional.empty();
+      }
+      Comparator<Row> columnComparator =
+          Comparator.comparing(row -> row.getColumn(columnIndex), PartialAggregation::compare);
+      rowComparator =
+          rowComparator.thenComparing(
+              orderBy.getOrder() == SortOrder.DESC
+                  ? columnComparator.reversed()
+                  : columnComparator);
+    }
+
+    approximations.forEach(executionContext::recordApproximation);
+    return Optional.of(
+        new PartialAggregation(
+            request,
+            partialRequest.build(),
+            executionContext.getTimeSeriesPeriod(),
+            groupKeyIndexes,
+            columns,
+            rowComparator));
+  }
+
+  /** Returns whether the parts of the aggregation return all of their groups without a limit. */
+  public boolean hasBoundedGroups() {
+    return this.request.getGroupByCount() == 0
+        || (this.groupedByTimeBucketsOnly && this.timeSeriesPeriod.isPresent());
+  }
+
+  /**
+   * Returns the request for the part of the time range from the given start time, inclusive, to
+   * the given end time, exclusive.
+   */
+  public QueryRequest forTimeRange(
+      String timeFilterColumn, long startTimeMillis, long endTimeMillis) {
+    Filter.Builder filter = Filter.newBuilder().setOperator(Operator.AND);
+    if (!Filter.getDefaultInstance().equals(this.request.getFilter())) {
+      filter.addChildFilter(this.request.getFilter());
+    }
+    filter
+        .addChildFilter(createTimeFilter(timeFilterColumn, Operator.GE, startTimeMillis))
+        .addChildFilter(createTimeFilter(timeFilterColumn, Operator.LT, endTimeMillis));
+
+    QueryRequest.Builder partRequest = this.partialRequest.toBuilder().setFilter(filter);
+    if (this.request.getGroupByCount() > 0) {
+      long limit =
+          this.request.getLimit() > 0
+              ? (long) this.request.getOffset() + this.request.getLimit()
+              : 0;
+      if (this.hasBoundedGroups()) {
+        // Enough to return every time bucket of the part, even if it is not aligned to the period
+        limit = (endTimeMillis - startTimeMillis) / this.timeSeriesPeriod.get().toMillis() + 2;
+      }
+      if (limit > 0) {
+        partRequest.setLimit((int) Math.min(Integer.MAX_VALUE, limit));
+      } else {
+        partRequest.clearLimit();
+      }
+    }
+    return partRequest.build();
+  }
+
+  /** Returns whether the given number of rows are all the groups of the given part request. */
+  public boolean isComplete(QueryRequest partRequest, int rowCount) {
+    return partRequest.getGroupByCount() == 0 || rowCount < partRequest.getLimit();
+  }
+
+  /** Merges the rows of all the parts into the rows of the aggregation. */
+  public List<Row> merge(List<Row> partRows) {
+    Map<List<Value>, List<MergedValue>> groups = new LinkedHashMap<>();
+    for (Row partRow : partRows) {
+      List<Value> groupKey =
+          this.groupKeyIndexes.stream().map(partRow::getColumn).collect(Collectors.toList());
+      List<MergedValue> mergedValues =
+          groups.computeIfAbsent(
+              groupKey,
+              unused ->
+                  this.columns.stream().map(MergedValue::new).collect(Collectors.toList()));
+      mergedValues.forEach(mergedValue -> mergedValue.add(partRow));
+    }
+
+    List<Row> rows = new ArrayList<>(groups.size());
+    for (List<MergedValue> mergedValues : groups.values()) {
+      Row.Builder row = Row.newBuilder();
+      mergedValues.forEach(mergedValue -> row.addColumn(mergedValue.toValue()));
+      rows.add(row.build());
+    }
+    rows.sort(this.rowComparator);
+
+    int fromIndex = Math.min(rows.size(), this.request.getOffset());
+    int toIndex =
+        this.request.getLimit() > 0
+            ? (int) Math.min(rows.size(), (long) fromIndex + this.request.getLimit())
+            : rows.size();
+    return rows.subList(fromIndex, toIndex);
+  }
+
+  private static Expression toPartialExpression(
+      Expression expression, List<SketchMerge> sketchMerges, List<Expression> countExpressions) {
+    Optional<MergeFunction> mergeFunction = getMergeFunction(expression);
+    if (mergeFunction.isEmpty()) {
+      return getSketchMerge(expression, sketchMerges)
+          .flatMap(sketchMerge -> sketchMerge.toSketchAggregation(expression.getFunction()))
+          .map(sketch -> expression.toBuilder().setFunction(sketch).build())
+          .orElse(expression);
+    }
+    if (mergeFunction.get() != MergeFunction.AVG) {
+      return expression;
+    }
+    countExpressions.add(createCountExpression(expression));
+    return expression.toBuilder()
+        .setFunction(expression.getFunction().toBuilder().setFunctionName(QUERY_FUNCTION_SUM))
+        .build();
+  }
+
+  private static Expression createCountExpression(Expression averageExpression) {
+    Function average = averageExpression.getFunction();
+    return Expression.newBuilder()
+        .setFunction(
+            Function.newBuilder()
+                .setFunctionName(QUERY_FUNCTION_COUNT)
+                .addAllArguments(average.getArgumentsList())
+                .setAlias(getAlias(averageExpression).orElseThrow() + "_count"))
+        .build();
+  }
+
+  private static Optional<MergeFunction> getMergeFunction(Expression expression) {
+    if (!expression.hasFunction()) {
+      return Optional.empty();
+    }
+    switch (expression.getFunction().getFunctionName().toUpperCase()) {
+      case QUERY_FUNCTION_SUM:
+      case QUERY_FUNCTION_COUNT:
+        return Optional.of(MergeFunction.SUM);
+      case QUERY_FUNCTION_MIN:
+        return Optional.of(MergeFunction.MIN);
+      case QUERY_FUNCTION_MAX:
+        return Optional.of(MergeFunction.MAX);
+      case QUERY_FUNCTION_AVG:
+        return Optional.of(MergeFunction.AVG);
+      default:
+        return Optional.empty();
+    }
+  }
+
+  private static Optional<SketchMerge> getSketchMerge(
+      Expression expression, List<SketchMerge> sketchMerges) {
+    if (!expression.hasFunction()) {
+      return Optional.empty();
+    }
+    return sketchMerges.stream()
+        .filter(
+            sketchMerge -> sketchMerge.toSketchAggregation(expression.getFunction()).isPresent())
+        .findFirst();
+  }
+
+  private static Filter createTimeFilter(String column, Operator operator, long timeMillis) {
+    return Filter.newBuilder()
+        .setLhs(createSimpleAttributeExpression(column))
+        .setOperator(operator)
+        .setRhs(createLongLiteralExpression(timeMillis))
+        .build();
+  }
+
+  /** Compares numerically if both values are numbers, as the results are mostly strings. */
+  private static int compare(Value value, Value otherValue) {
+    Optional<Double> number = toDouble(value);
+    Optional<Double> otherNumber = toDouble(otherValue);
+    if (number.isPresent() && otherNumber.isPresent()) {
+      return Double.compare(number.get(), otherNumber.get());
+    }
+    return value.getString().compareTo(otherValue.getString());
+  }
+
+  private static Optional<Double> toDouble(Value value) {
+    switch (value.getValueType()) {
+      case INT:
+        return Optional.of((double) value.getInt());
+      case LONG:
+        return Optional.of((double) value.getLong());
+      case FLOAT:
+        return Optional.of((double) value.getFloat());
+      case DOUBLE:
+        return Optional.of(value.getDouble());
+      case STRING:
+        try {
+          return Optional.of(Double.parseDouble(value.getString()));
+        } catch (NumberFormatException e) {
+          return Optional.empty();
+        }
+      default:
+        return Optional.empty();
+    }
+  }
+
+  private static Optional<Long> toLong(Value value) {
+    switch (value.getValueType()) {
+      case INT:
+        return Optional.of((long) value.getInt());
+      case LONG:
+        return Optional.of(value.getLong());
+      case STRING:
+        try {
+          return Optional.of(Long.parseLong(value.getString()));
+        } catch (NumberFormatException e) {
+          return Optional.empty();
+        }
+      default:
+        return Optional.empty();
+    }
+  }
+
+  /**
+   * Merges an aggregation which can't be combined from its results over the parts, by querying a
+   * sketch of its values for each part and computing its result from the merged sketches.
+   */
+  public interface SketchMerge {
+
+    /**
+     * Returns the aggregation querying the sketch of the given aggregation, if it is merged by this
+     * sketch merge.
+     */
+    Optional<Function> toSketchAggregation(Function aggregation);
+
+    /** Returns the name of the function approximating the aggregations merged from sketches. */
+    String getApproximation();
+
+    /** Returns the result of the given aggregation computed from the sketches of the parts. */
+    Value merge(Function aggregation, List<Value> sketches);
+  }
+
+  private enum MergeFunction {
+    KEY,
+    SUM,
+    MIN,
+    MAX,
+    AVG,
+    SKETCH
+  }
+
+  /** A column of the aggregation's rows and where to find its values in the rows of the parts. */
+  private static final class MergedColumn {
+    private final MergeFunction function;
+    private final int valueIndex;
+    private final int countIndex;
+    private final SketchMerge sketchMerge;
+    private final Function aggregation;
+
+    private MergedColumn(
+        MergeFunction function,
+        int valueIndex,
+        int countIndex,
+        SketchMerge sketchMerge,
+        Function aggregation) {
+      this.function = function;
+      this.valueIndex = valueIndex;
+      this.countIndex = countIndex;
+      this.sketchMerge = sketchMerge;
+      this.aggregation = aggregation;
+    }
+  }
+
+  /** Accumulates the values of a column for a group across the parts. */
+  private static final class MergedValue {
+    private final MergedColumn column;
+    private final List<Value> sketches = new ArrayList<>();
+    private Value key;
+    private double value;
+    private double count;
+    // Sums of integral values, like counts, are kept exact and returned without a fraction
+    private long integralSum;
+    private boolean integral = true;
+    private boolean empty = true;
+
+    private MergedValue(MergedColumn column) {
+      this.column = column;
+      this.value =
+          column.function == MergeFunction.MIN
+              ? Double.POSITIVE_INFINITY
+              : column.function == MergeFunction.MAX ? Double.NEGATIVE_INFINITY : 0;
+    }
+
+    private void add(Row partRow) {
+      Value partValue = partRow.getColumn(this.column.valueIndex);
+      switch (this.column.function) {
+        case KEY:
+          this.key = partValue;
+          return;
+        case SKETCH:
+          this.sketches.add(partValue);
+          return;
+        default:
+          break;
+      }
+      Optional<Double> number = toDouble(partValue);
+      if (number.isEmpty()) {
+        return;
+      }
+      this.empty = false;
+      switch (this.column.function) {
+        case SUM:
+          this.value += number.get();
+          Optional<Long> integralNumber = toLong(partValue);
+          this.integral &= integralNumber.isPresent();
+          this.integralSum += integralNumber.orElse(0L);
+          break;
+        case MIN:
+          this.value = Math.min(this.value, number.get());
+          break;
+        case MAX:
+          this.value = Math.max(this.value, number.get());
+          break;
+        case AVG:
+          this.value += number.get();
+          this.count += toDouble(partRow.getColumn(this.column.countIndex)).orElse(0D);
+          break;
+        default:
+          throw new IllegalStateException("Unexpected merge function: " + this.column.function);
+      }
+    }
+
+    private Value toValue() {
+      String mergedValue;
+      switch (this.column.function) {
+        case KEY:
+          return this.key;
+        case SKETCH:
+          return this.column.sketchMerge.merge(this.column.aggregation, this.sketches);
+        case AVG:
+          // An empty range averages to negative infinity, same as in Pinot
+          mergedValue =
+              String.valueOf(this.count > 0 ? this.value / this.count : Double.NEGATIVE_INFINITY);
+          break;
+        default:
+          mergedValue =
+              this.column.function == MergeFunction.SUM && this.integral && !this.empty
+                  ? String.valueOf(this.integralSum)
+                  : String.valueOf(this.value);
+      }
+      return Value.newBuilder().setValueType(ValueType.STRING).setString(mergedValue).build();
+    }
+  }
+}
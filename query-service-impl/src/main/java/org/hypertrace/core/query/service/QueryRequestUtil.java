@@ -2,6 +2,7 @@ package org.hypertrace.core.query.service;
 
 import static org.hypertrace.core.query.service.api.Expression.ValueCase.ATTRIBUTE_EXPRESSION;
 
+import java.util.Iterator;
 import java.util.Optional;
 import org.hypertrace.core.query.service.api.AttributeExpression;
 import org.hypertrace.core.query.service.api.Expression;
@@ -17,6 +18,12 @@ import org.hypertrace.core.query.service.api.ValueType;
  * selections and filters.
  */
 public class QueryRequestUtil {
+  private static final Filter ALWAYS_FALSE_FILTER =
+      Filter.newBuilder()
+          .setLhs(createBooleanLiteralExpression(false))
+          .setOperator(Operator.EQ)
+          .setRhs(createBooleanLiteralExpression(true))
+          .build();
 
   public static Expression createStringLiteralExpression(String value) {
     return Expression.newBuilder()
@@ -98,6 +105,20 @@ public class QueryRequestUtil {
         .build();
   }
 
+  /**
+   * Creates the filter no row can match, a comparison of the literals false and true. Unlike an
+   * empty composite filter, which clients may send, it never matches for whoever evaluates it, so
+   * it is safe to recognize. It is never sent to the data stores, requests with this filter are
+   * answered with an empty result right away.
+   */
+  public static Filter createAlwaysFalseFilter() {
+    return ALWAYS_FALSE_FILTER;
+  }
+
+  public static boolean isAlwaysFalseFilter(Filter filter) {
+    return ALWAYS_FALSE_FILTER.equals(filter);
+  }
+
   public static Expression.Builder createSimpleAttributeExpression(String columnName) {
     return Expression.newBuilder()
         .setAttributeExpression(AttributeExpression.newBuilder().setAttributeId(columnName));
@@ -162,4 +183,38 @@ public class QueryRequestUtil {
         ? attributeExpression.getAttributeId()
         : attributeExpression.getAlias();
   }
+
+  /**
+   * Returns the index of the first of the given expressions that equals the given one when
+   * ignoring aliases, or -1 if there is none.
+   */
+  public static int indexOfIgnoringAlias(Iterable<Expression> expressions, Expression expression) {
+    Expression unaliased = removeAlias(expression);
+    Iterator<Expression> iterator = expressions.iterator();
+    for (int i = 0; iterator.hasNext(); i++) {
+      if (removeAlias(iterator.next()).equals(unaliased)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public static Expression removeAlias(Expression expression) {
+    switch (expression.getValueCase()) {
+      case COLUMNIDENTIFIER:
+        return expression.toBuilder()
+            .setColumnIdentifier(expression.getColumnIdentifier().toBuilder().clearAlias())
+            .build();
+      case ATTRIBUTE_EXPRESSION:
+        return expression.toBuilder()
+            .setAttributeExpression(expression.getAttributeExpression().toBuilder().clearAlias())
+            .build();
+      case FUNCTION:
+        return expression.toBuilder()
+            .setFunction(expression.getFunction().toBuilder().clearAlias())
+            .build();
+      default:
+        return expression;
+    }
+  }
 }
@@ -1,8 +1,12 @@
 package org.hypertrace.core.query.service;
 
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import lombok.Value;
@@ -16,11 +20,26 @@ public class QueryServiceConfig {
   private static final String CONFIG_PATH_HANDLER_CONFIG_LIST = "queryRequestHandlersConfig";
   private static final String CONFIG_PATH_ATTRIBUTE_CLIENT = "attribute.client";
   private static final String CONFIG_PATH_LIMIT_VALIDATION = "validation.limit";
+  private static final String CONFIG_PATH_COST_VALIDATION = "validation.cost";
+  private static final String CONFIG_PATH_TIME_RANGE_SPLITTING = "federation.timeRangeSplitting";
+  private static final String CONFIG_PATH_IN_LIST_SPLITTING = "federation.inListSplitting";
+  private static final String CONFIG_PATH_LATENCY_COST_MODEL = "selection.latencyCostModel";
+  private static final String CONFIG_PATH_POINT_LOOKUP_BATCHING = "batching.pointLookups";
+  private static final String CONFIG_PATH_CALCITE_FILTER_SIMPLIFICATION =
+      "optimization.calciteFilterSimplification";
+  private static final String CONFIG_PATH_SERIALIZED_CHUNKS = "response.serializedChunks";
 
   List<RequestHandlerClientConfig> requestHandlerClientConfigs;
   List<RequestHandlerConfig> queryRequestHandlersConfigs;
   ClientHostPortConfig attributeClientConfig;
   LimitValidationConfig limitValidationConfig;
+  CostValidationConfig costValidationConfig;
+  TimeRangeSplittingConfig timeRangeSplittingConfig;
+  InListSplittingConfig inListSplittingConfig;
+  LatencyCostModelConfig latencyCostModelConfig;
+  PointLookupBatchingConfig pointLookupBatchingConfig;
+  CalciteFilterSimplificationConfig calciteFilterSimplificationConfig;
+  SerializedChunksConfig serializedChunksConfig;
 
   QueryServiceConfig(Config config) {
     Config resolved = config.resolve();
@@ -36,6 +55,41 @@ public class QueryServiceConfig {
             .collect(Collectors.toUnmodifiableList());
     this.limitValidationConfig =
         new LimitValidationConfig(resolved.getConfig(CONFIG_PATH_LIMIT_VALIDATION));
+    this.costValidationConfig =
+        new CostValidationConfig(
+            resolved.hasPath(CONFIG_PATH_COST_VALIDATION)
+                ? resolved.getConfig(CONFIG_PATH_COST_VALIDATION)
+                : ConfigFactory.empty());
+    this.timeRangeSplittingConfig =
+        new TimeRangeSplittingConfig(
+            resolved.hasPath(CONFIG_PATH_TIME_RANGE_SPLITTING)
+                ? resolved.getConfig(CONFIG_PATH_TIME_RANGE_SPLITTING)
+                : ConfigFactory.empty());
+    this.inListSplittingConfig =
+        new InListSplittingConfig(
+            resolved.hasPath(CONFIG_PATH_IN_LIST_SPLITTING)
+                ? resolved.getConfig(CONFIG_PATH_IN_LIST_SPLITTING)
+                : ConfigFactory.empty());
+    this.latencyCostModelConfig =
+        new LatencyCostModelConfig(
+            resolved.hasPath(CONFIG_PATH_LATENCY_COST_MODEL)
+                ? resolved.getConfig(CONFIG_PATH_LATENCY_COST_MODEL)
+                : ConfigFactory.empty());
+    this.pointLookupBatchingConfig =
+        new PointLookupBatchingConfig(
+            resolved.hasPath(CONFIG_PATH_POINT_LOOKUP_BATCHING)
+                ? resolved.getConfig(CONFIG_PATH_POINT_LOOKUP_BATCHING)
+                : ConfigFactory.empty());
+    this.calciteFilterSimplificationConfig =
+        new CalciteFilterSimplificationConfig(
+            resolved.hasPath(CONFIG_PATH_CALCITE_FILTER_SIMPLIFICATION)
+                ? resolved.getConfig(CONFIG_PATH_CALCITE_FILTER_SIMPLIFICATION)
+                : ConfigFactory.empty());
+    this.serializedChunksConfig =
+        new SerializedChunksConfig(
+            resolved.hasPath(CONFIG_PATH_SERIALIZED_CHUNKS)
+                ? resolved.getConfig(CONFIG_PATH_SERIALIZED_CHUNKS)
+                : ConfigFactory.empty());
   }
 
   @Value
@@ -68,6 +122,7 @@ public class QueryServiceConfig {
     private static final String CONFIG_PATH_PASSWORD = "password";
     private static final String CONFIG_PATH_MAX_CONNECTION_ATTEMPTS = "maxConnectionAttempts";
     private static final String CONFIG_PATH_CONNECTION_RETRY_BACKOFF = "connectionRetryBackoff";
+    private static final String CONFIG_PATH_CONNECTION_PROPERTIES = "connectionProperties";
 
     String type;
     String connectionString;
@@ -75,6 +130,8 @@ public class QueryServiceConfig {
     Optional<String> password;
     Optional<Integer> maxConnectionAttempts;
     Optional<Duration> connectionRetryBackoff;
+    // Driver specific properties of the JDBC connections
+    Map<String, String> connectionProperties;
 
     private RequestHandlerClientConfig(Config config) {
       this.type = config.getString(CONFIG_PATH_TYPE);
@@ -95,6 +152,13 @@ public class QueryServiceConfig {
           config.hasPath(CONFIG_PATH_CONNECTION_RETRY_BACKOFF)
               ? Optional.of(config.getDuration(CONFIG_PATH_CONNECTION_RETRY_BACKOFF))
               : Optional.empty();
+      this.connectionProperties =
+          config.hasPath(CONFIG_PATH_CONNECTION_PROPERTIES)
+              ? config.getConfig(CONFIG_PATH_CONNECTION_PROPERTIES).entrySet().stream()
+                  .collect(
+                      Collectors.toUnmodifiableMap(
+                          Entry::getKey, entry -> entry.getValue().unwrapped().toString()))
+              : Map.of();
     }
   }
 
@@ -134,4 +198,258 @@ public class QueryServiceConfig {
       ERROR
     }
   }
+
+  @Value
+  @NonFinal
+  public static class CostValidationConfig {
+    private static final String CONFIG_PATH_MODE = "mode";
+    private static final String CONFIG_PATH_MAX_SCANNED_ROWS = "maxScannedRows";
+    private static final String CONFIG_PATH_MAX_GROUPS = "maxGroups";
+    private static final String CONFIG_PATH_TENANTS = "tenants";
+    private static final String CONFIG_PATH_ROWS_PER_HOUR = "rowsPerHour";
+    private static final String CONFIG_PATH_ROLLUP_ROWS_PER_HOUR = "rollupRowsPerHour";
+    private static final String CONFIG_PATH_ROLLUP_GRANULARITY = "rollupGranularity";
+    private static final String CONFIG_PATH_FILTER_SELECTIVITY = "filterSelectivity";
+    private static final String CONFIG_PATH_DEFAULT_GROUP_BY_CARDINALITY =
+        "defaultGroupByCardinality";
+    private static final String CONFIG_PATH_GROUP_BY_CARDINALITIES = "groupByCardinalities";
+    private static final String CONFIG_PATH_SMOOTHING_FACTOR = "smoothingFactor";
+    private static final String CONFIG_PATH_MAX_FINGERPRINTS = "maxFingerprints";
+
+    CostValidationMode mode;
+    CostBudget defaultBudget;
+    Map<String, CostBudget> tenantBudgets;
+    long rowsPerHour;
+    long rollupRowsPerHour;
+    Duration rollupGranularity;
+    double filterSelectivity;
+    long defaultGroupByCardinality;
+    Map<String, Long> groupByCardinalities;
+    double smoothingFactor;
+    int maxFingerprints;
+
+    public CostValidationConfig(Config config) {
+      this.mode =
+          config.hasPath(CONFIG_PATH_MODE)
+              ? config.getEnum(CostValidationMode.class, CONFIG_PATH_MODE)
+              : CostValidationMode.DISABLED;
+      this.defaultBudget = new CostBudget(config, CostBudget.UNLIMITED);
+      // Tenant ids are the keys, read from the root so dots in them do not nest
+      this.tenantBudgets =
+          config.hasPath(CONFIG_PATH_TENANTS)
+              ? config.getObject(CONFIG_PATH_TENANTS).entrySet().stream()
+                  .collect(
+                      Collectors.toUnmodifiableMap(
+                          Entry::getKey,
+                          entry ->
+                              new CostBudget(
+                                  ((ConfigObject) entry.getValue()).toConfig(),
+                                  this.defaultBudget)))
+              : Map.of();
+      this.rowsPerHour =
+          config.hasPath(CONFIG_PATH_ROWS_PER_HOUR)
+              ? config.getLong(CONFIG_PATH_ROWS_PER_HOUR)
+              : 1_000_000;
+      this.rollupRowsPerHour =
+          config.hasPath(CONFIG_PATH_ROLLUP_ROWS_PER_HOUR)
+              ? config.getLong(CONFIG_PATH_ROLLUP_ROWS_PER_HOUR)
+              : this.rowsPerHour;
+      this.rollupGranularity =
+          config.hasPath(CONFIG_PATH_ROLLUP_GRANULARITY)
+              ? config.getDuration(CONFIG_PATH_ROLLUP_GRANULARITY)
+              : Duration.ofHours(1);
+      this.filterSelectivity =
+          config.hasPath(CONFIG_PATH_FILTER_SELECTIVITY)
+              ? config.getDouble(CONFIG_PATH_FILTER_SELECTIVITY)
+              : 0.1;
+      this.defaultGroupByCardinality =
+          config.hasPath(CONFIG_PATH_DEFAULT_GROUP_BY_CARDINALITY)
+              ? config.getLong(CONFIG_PATH_DEFAULT_GROUP_BY_CARDINALITY)
+              : 1000;
+      if (config.hasPath(CONFIG_PATH_GROUP_BY_CARDINALITIES)) {
+        Config cardinalitiesConfig = config.getConfig(CONFIG_PATH_GROUP_BY_CARDINALITIES);
+        this.groupByCardinalities =
+            cardinalitiesConfig.entrySet().stream()
+                .collect(
+                    Collectors.toUnmodifiableMap(
+                        Entry::getKey, entry -> cardinalitiesConfig.getLong(entry.getKey())));
+      } else {
+        this.groupByCardinalities = Map.of();
+      }
+      this.smoothingFactor =
+          config.hasPath(CONFIG_PATH_SMOOTHING_FACTOR)
+              ? config.getDouble(CONFIG_PATH_SMOOTHING_FACTOR)
+              : 0.2;
+      this.maxFingerprints =
+          config.hasPath(CONFIG_PATH_MAX_FINGERPRINTS)
+              ? config.getInt(CONFIG_PATH_MAX_FINGERPRINTS)
+              : 1000;
+    }
+
+    public CostBudget getBudget(String tenantId) {
+      return this.tenantBudgets.getOrDefault(tenantId, this.defaultBudget);
+    }
+
+    public enum CostValidationMode {
+      DISABLED,
+      WARN,
+      ERROR
+    }
+
+    @Value
+    @NonFinal
+    public static class CostBudget {
+      private static final CostBudget UNLIMITED = new CostBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+
+      long maxScannedRows;
+      long maxGroups;
+
+      private CostBudget(long maxScannedRows, long maxGroups) {
+        this.maxScannedRows = maxScannedRows;
+        this.maxGroups = maxGroups;
+      }
+
+      private CostBudget(Config config, CostBudget defaults) {
+        this.maxScannedRows =
+            config.hasPath(CONFIG_PATH_MAX_SCANNED_ROWS)
+                ? config.getLong(CONFIG_PATH_MAX_SCANNED_ROWS)
+                : defaults.getMaxScannedRows();
+        this.maxGroups =
+            config.hasPath(CONFIG_PATH_MAX_GROUPS)
+                ? config.getLong(CONFIG_PATH_MAX_GROUPS)
+                : defaults.getMaxGroups();
+      }
+    }
+  }
+
+  @Value
+  @NonFinal
+  public static class TimeRangeSplittingConfig {
+    private static final String CONFIG_PATH_ENABLED = "enabled";
+    boolean enabled;
+
+    private TimeRangeSplittingConfig(Config config) {
+      this.enabled = config.hasPath(CONFIG_PATH_ENABLED) && config.getBoolean(CONFIG_PATH_ENABLED);
+    }
+  }
+
+  @Value
+  @NonFinal
+  public static class InListSplittingConfig {
+    private static final String CONFIG_PATH_ENABLED = "enabled";
+    private static final String CONFIG_PATH_MAX_VALUES_PER_QUERY = "maxValuesPerQuery";
+    private static final String CONFIG_PATH_MAX_CONCURRENT_QUERIES = "maxConcurrentQueries";
+    boolean enabled;
+    int maxValuesPerQuery;
+    int maxConcurrentQueries;
+
+    private InListSplittingConfig(Config config) {
+      this.enabled = config.hasPath(CONFIG_PATH_ENABLED) && config.getBoolean(CONFIG_PATH_ENABLED);
+      this.maxValuesPerQuery =
+          config.hasPath(CONFIG_PATH_MAX_VALUES_PER_QUERY)
+              ? config.getInt(CONFIG_PATH_MAX_VALUES_PER_QUERY)
+              : 1000;
+      this.maxConcurrentQueries =
+          config.hasPath(CONFIG_PATH_MAX_CONCURRENT_QUERIES)
+              ? config.getInt(CONFIG_PATH_MAX_CONCURRENT_QUERIES)
+              : 4;
+    }
+  }
+
+  @Value
+  @NonFinal
+  public static class CalciteFilterSimplificationConfig {
+    private static final String CONFIG_PATH_ENABLED = "enabled";
+    boolean enabled;
+
+    private CalciteFilterSimplificationConfig(Config config) {
+      this.enabled = config.hasPath(CONFIG_PATH_ENABLED) && config.getBoolean(CONFIG_PATH_ENABLED);
+    }
+  }
+
+  @Value
+  @NonFinal
+  public static class SerializedChunksConfig {
+    private static final String CONFIG_PATH_ENABLED = "enabled";
+    boolean enabled;
+
+    private SerializedChunksConfig(Config config) {
+      this.enabled = config.hasPath(CONFIG_PATH_ENABLED) && config.getBoolean(CONFIG_PATH_ENABLED);
+    }
+  }
+
+  @Value
+  @NonFinal
+  public static class PointLookupBatchingConfig {
+    private static final String CONFIG_PATH_ENABLED = "enabled";
+    private static final String CONFIG_PATH_WINDOW = "window";
+    private static final String CONFIG_PATH_MAX_BATCH_SIZE = "maxBatchSize";
+    boolean enabled;
+    Duration window;
+    int maxBatchSize;
+
+    private PointLookupBatchingConfig(Config config) {
+      this.enabled = config.hasPath(CONFIG_PATH_ENABLED) && config.getBoolean(CONFIG_PATH_ENABLED);
+      this.window =
+          config.hasPath(CONFIG_PATH_WINDOW)
+              ? config.getDuration(CONFIG_PATH_WINDOW)
+              : Duration.ofMillis(2);
+      this.maxBatchSize =
+          config.hasPath(CONFIG_PATH_MAX_BATCH_SIZE)
+              ? config.getInt(CONFIG_PATH_MAX_BATCH_SIZE)
+              : 100;
+    }
+  }
+
+  @Value
+  @NonFinal
+  public static class LatencyCostModelConfig {
+    private static final String CONFIG_PATH_ENABLED = "enabled";
+    private static final String CONFIG_PATH_SMOOTHING_FACTOR = "smoothingFactor";
+    private static final String CONFIG_PATH_EXPLORATION_RATE = "explorationRate";
+    private static final String CONFIG_PATH_MIN_SAMPLES = "minSamples";
+    private static final String CONFIG_PATH_LEARNED_COST_WEIGHT = "learnedCostWeight";
+    private static final String CONFIG_PATH_REFERENCE_LATENCY = "referenceLatency";
+    private static final String CONFIG_PATH_STATIC_COST_TOLERANCE = "staticCostTolerance";
+    private static final String CONFIG_PATH_MAX_FINGERPRINTS = "maxFingerprints";
+
+    boolean enabled;
+    double smoothingFactor;
+    double explorationRate;
+    int minSamples;
+    double learnedCostWeight;
+    Duration referenceLatency;
+    double staticCostTolerance;
+    int maxFingerprints;
+
+    public LatencyCostModelConfig(Config config) {
+      this.enabled = config.hasPath(CONFIG_PATH_ENABLED) && config.getBoolean(CONFIG_PATH_ENABLED);
+      this.smoothingFactor =
+          config.hasPath(CONFIG_PATH_SMOOTHING_FACTOR)
+              ? config.getDouble(CONFIG_PATH_SMOOTHING_FACTOR)
+              : 0.2;
+      this.explorationRate =
+          config.hasPath(CONFIG_PATH_EXPLORATION_RATE)
+              ? config.getDouble(CONFIG_PATH_EXPLORATION_RATE)
+              : 0.05;
+      this.minSamples =
+          config.hasPath(CONFIG_PATH_MIN_SAMPLES) ? config.getInt(CONFIG_PATH_MIN_SAMPLES) : 10;
+      this.learnedCostWeight =
+          config.hasPath(CONFIG_PATH_LEARNED_COST_WEIGHT)
+              ? config.getDouble(CONFIG_PATH_LEARNED_COST_WEIGHT)
+              : 0.8;
+      this.referenceLatency =
+          config.hasPath(CONFIG_PATH_REFERENCE_LATENCY)
+              ? config.getDuration(CONFIG_PATH_REFERENCE_LATENCY)
+              : Duration.ofSeconds(1);
+      this.staticCostTolerance =
+          config.hasPath(CONFIG_PATH_STATIC_COST_TOLERANCE)
+              ? config.getDouble(CONFIG_PATH_STATIC_COST_TOLERANCE)
+              : 0.1;
+      this.maxFingerprints =
+          config.hasPath(CONFIG_PATH_MAX_FINGERPRINTS)
+              ? config.getInt(CONFIG_PATH_MAX_FINGERPRINTS)
+              : 1000;
+    }
+  }
 }
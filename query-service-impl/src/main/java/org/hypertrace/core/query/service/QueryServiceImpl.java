@@ -9,6 +9,8 @@ import io.grpc.stub.StreamObserver;
 import io.micrometer.core.instrument.Counter;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
@@ -17,6 +19,9 @@ import org.hypertrace.core.grpcutils.server.rx.ServerCallStreamRxObserver;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.QueryServiceGrpc;
 import org.hypertrace.core.query.service.api.ResultSetChunk;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.cost.QueryCostEstimator;
+import org.hypertrace.core.query.service.pagination.KeysetPagination;
 import org.hypertrace.core.query.service.validation.QueryValidator;
 import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
 
@@ -27,6 +32,7 @@ class QueryServiceImpl extends QueryServiceGrpc.QueryServiceImplBase {
   private final RequestHandlerSelector handlerSelector;
   private final QueryTransformationPipeline queryTransformationPipeline;
   private final QueryValidator queryValidator;
+  private final QueryCostEstimator queryCostEstimator;
 
   private Counter requestStatusErrorCounter;
   private Counter requestStatusSuccessCounter;
@@ -37,10 +43,12 @@ class QueryServiceImpl extends QueryServiceGrpc.QueryServiceImplBase {
   public QueryServiceImpl(
       RequestHandlerSelector handlerSelector,
       QueryTransformationPipeline queryTransformationPipeline,
-      QueryValidator queryValidator) {
+      QueryValidator queryValidator,
+      QueryCostEstimator queryCostEstimator) {
     this.handlerSelector = handlerSelector;
     this.queryTransformationPipeline = queryTransformationPipeline;
     this.queryValidator = queryValidator;
+    this.queryCostEstimator = queryCostEstimator;
     initMetrics();
   }
 
@@ -57,6 +65,20 @@ class QueryServiceImpl extends QueryServiceGrpc.QueryServiceImplBase {
   @Override
   public void execute(
       QueryRequest originalRequest, StreamObserver<ResultSetChunk> callStreamObserver) {
+    this.execute(originalRequest, callStreamObserver, MESSAGE_CHUNKS);
+  }
+
+  /**
+   * Same as {@link #execute}, with the chunks pre-serialized. The rows of handlers encoding them
+   * are copied into their chunks as is. Served by {@link SerializedChunkQueryService}.
+   */
+  void executeSerialized(
+      QueryRequest originalRequest, StreamObserver<SerializedResultSetChunk> callStreamObserver) {
+    this.execute(originalRequest, callStreamObserver, SERIALIZED_CHUNKS);
+  }
+
+  private <T> void execute(
+      QueryRequest originalRequest, StreamObserver<T> callStreamObserver, ChunkFormat<T> format) {
     RequestContext requestContext = RequestContext.CURRENT.get();
     this.queryValidator
         .validate(originalRequest, requestContext)
@@ -64,7 +86,7 @@ class QueryServiceImpl extends QueryServiceGrpc.QueryServiceImplBase {
             Observable.defer(
                 () ->
                     this.transformAndExecute(
-                        originalRequest, requestContext.getTenantId().orElseThrow())))
+                        originalRequest, requestContext.getTenantId().orElseThrow(), format)))
         .doOnError(
             error -> {
               log.error("Query failed: {}", originalRequest, error);
@@ -72,22 +94,33 @@ class QueryServiceImpl extends QueryServiceGrpc.QueryServiceImplBase {
             })
         .doOnComplete(() -> requestStatusSuccessCounter.increment())
         .subscribe(
-            new ServerCallStreamRxObserver<>(
-                (ServerCallStreamObserver<ResultSetChunk>) callStreamObserver));
+            new ServerCallStreamRxObserver<>((ServerCallStreamObserver<T>) callStreamObserver));
   }
 
-  private Observable<ResultSetChunk> transformAndExecute(
-      QueryRequest originalRequest, String tenantId) {
+  private <T> Observable<T> transformAndExecute(
+      QueryRequest originalRequest, String tenantId, ChunkFormat<T> format) {
     return this.queryTransformationPipeline
         .transform(originalRequest, tenantId)
         .flatMapObservable(
             transformedRequest ->
                 this.executeTransformedRequest(
-                    transformedRequest, new ExecutionContext(tenantId, transformedRequest)));
+                    originalRequest,
+                    transformedRequest,
+                    new ExecutionContext(tenantId, transformedRequest),
+                    format));
   }
 
-  private Observable<ResultSetChunk> executeTransformedRequest(
-      QueryRequest transformedRequest, ExecutionContext context) {
+  private <T> Observable<T> executeTransformedRequest(
+      QueryRequest originalRequest,
+      QueryRequest transformedRequest,
+      ExecutionContext context,
+      ChunkFormat<T> format) {
+    Optional<KeysetPagination> keysetPagination =
+        KeysetPagination.forRequest(transformedRequest, context);
+    if (QueryRequestUtil.isAlwaysFalseFilter(transformedRequest.getFilter())) {
+      log.debug("Filter never matches, skipping execution of request: {}", transformedRequest);
+      return format.chunkRows(Observable.empty(), context, keysetPagination);
+    }
     return Maybe.fromOptional(this.handlerSelector.select(transformedRequest, context))
         .switchIfEmpty(
             Maybe.error(
@@ -97,8 +130,88 @@ class QueryServiceImpl extends QueryServiceGrpc.QueryServiceImplBase {
         .flatMapObservable(
             handler -> {
               handler.getTimeFilterColumn().ifPresent(context::setTimeFilterColumn);
-              return handler.handleRequest(transformedRequest, context);
-            })
-        .lift(chunkRows(context.getResultSetMetadata()));
+              AtomicLong rowCount = new AtomicLong();
+              Observable<T> chunks =
+                  format
+                      .chunkEncodedRows(
+                          handler, transformedRequest, context, keysetPagination, rowCount)
+                      .orElseGet(
+                          () ->
+                              format.chunkRows(
+                                  handler
+                                      .handleRequest(transformedRequest, context)
+                                      .doOnNext(row -> rowCount.incrementAndGet()),
+                                  context,
+                                  keysetPagination));
+              // The cost is validated before the transformations, so learn it from there
+              return chunks.doOnComplete(
+                  () ->
+                      this.queryCostEstimator.record(
+                          context.getTenantId(), originalRequest, rowCount.get()));
+            });
   }
+
+  /** How the rows of a request are chunked into the response. */
+  private interface ChunkFormat<T> {
+    /**
+     * Handlers may execute parts of the request lazily, so the metadata is read once the first
+     * chunk is complete to include the approximations recorded by all of them.
+     */
+    Observable<T> chunkRows(
+        Observable<Row> rows,
+        ExecutionContext context,
+        Optional<KeysetPagination> keysetPagination);
+
+    /**
+     * Returns the chunks of the rows encoded by the handler, counting them, if it encodes the rows
+     * of the request.
+     */
+    default Optional<Observable<T>> chunkEncodedRows(
+        RequestHandler handler,
+        QueryRequest request,
+        ExecutionContext context,
+        Optional<KeysetPagination> keysetPagination,
+        AtomicLong rowCount) {
+      return Optional.empty();
+    }
+  }
+
+  private static final ChunkFormat<ResultSetChunk> MESSAGE_CHUNKS =
+      (rows, context, keysetPagination) ->
+          rows.lift(chunkRows(context::getResultSetMetadata, keysetPagination));
+
+  private static final ChunkFormat<SerializedResultSetChunk> SERIALIZED_CHUNKS =
+      new ChunkFormat<>() {
+        @Override
+        public Observable<SerializedResultSetChunk> chunkRows(
+            Observable<Row> rows,
+            ExecutionContext context,
+            Optional<KeysetPagination> keysetPagination) {
+          return MESSAGE_CHUNKS
+              .chunkRows(rows, context, keysetPagination)
+              .map(SerializedResultSetChunk::of);
+        }
+
+        @Override
+        public Optional<Observable<SerializedResultSetChunk>> chunkEncodedRows(
+            RequestHandler handler,
+            QueryRequest request,
+            ExecutionContext context,
+            Optional<KeysetPagination> keysetPagination,
+            AtomicLong rowCount) {
+          // The continuation token of a page is built from its last row
+          if (keysetPagination.isPresent()) {
+            return Optional.empty();
+          }
+          return handler
+              .handleRequestEncoded(request, context)
+              .map(
+                  encodedRows ->
+                      encodedRows
+                          .doOnNext(rows -> rowCount.addAndGet(rows.getRowCount()))
+                          .lift(
+                              SerializedRowChunkingOperator.chunkRows(
+                                  context::getResultSetMetadata)));
+        }
+      };
 }
@@ -1,14 +1,18 @@
 package org.hypertrace.core.query.service;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
 import com.google.inject.multibindings.Multibinder;
 import com.typesafe.config.Config;
+import io.grpc.BindableService;
 import javax.inject.Singleton;
 import org.hypertrace.core.attribute.service.cachingclient.CachingAttributeClient;
 import org.hypertrace.core.grpcutils.client.GrpcChannelRegistry;
 import org.hypertrace.core.query.service.api.QueryServiceGrpc.QueryServiceImplBase;
 import org.hypertrace.core.query.service.attribubteexpression.AttributeExpressionModule;
+import org.hypertrace.core.query.service.filter.FilterModule;
 import org.hypertrace.core.query.service.multivalue.MutliValueModule;
+import org.hypertrace.core.query.service.pagination.PaginationModule;
 import org.hypertrace.core.query.service.pinot.PinotModule;
 import org.hypertrace.core.query.service.postgres.PostgresModule;
 import org.hypertrace.core.query.service.projection.ProjectionModule;
@@ -42,6 +46,16 @@ class QueryServiceModule extends AbstractModule {
     install(new MutliValueModule());
     install(new PrometheusModule());
     install(new AttributeExpressionModule());
+    install(new PaginationModule());
+    install(new FilterModule());
     install(new QueryValidationModule());
   }
+
+  @Provides
+  @Singleton
+  BindableService provideQueryService(QueryServiceImpl queryService) {
+    return this.config.getSerializedChunksConfig().isEnabled()
+        ? new SerializedChunkQueryService(queryService)
+        : queryService;
+  }
 }
@@ -2,7 +2,10 @@ package org.hypertrace.core.query.service;
 
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
 import org.hypertrace.core.query.service.QueryTransformation.QueryTransformationContext;
 import org.hypertrace.core.query.service.api.QueryRequest;
@@ -11,20 +14,23 @@ import org.hypertrace.core.query.service.api.QueryRequest;
  * A query transformation pipeline that invokes each registered transformation and applies the
  * result to the next transformation. In the current implementation, there is no guarantee of the
  * transformation order to allow decoupled registration, but this may change in the future.
+ *
+ * <p>Consecutive fusable transformations are applied in a single pass over the request by a {@link
+ * FusedQueryTransformation}.
  */
 class QueryTransformationPipeline {
-  private final Set<QueryTransformation> transformations;
+  private final List<QueryTransformation> transformations;
 
   @Inject
   QueryTransformationPipeline(Set<QueryTransformation> transformations) {
-    this.transformations = transformations;
+    this.transformations =
+        fuse(transformations.stream().sorted().collect(Collectors.toUnmodifiableList()));
   }
 
   Single<QueryRequest> transform(QueryRequest originalRequest, String tenantId) {
     QueryTransformationContext transformationContext =
         new DefaultQueryTransformationContext(tenantId);
     return Observable.fromIterable(transformations)
-        .sorted()
         .reduce(
             Single.just(originalRequest),
             (requestSingle, transformation) ->
@@ -33,6 +39,27 @@ class QueryTransformationPipeline {
         .flatMap(request -> request);
   }
 
+  private static List<QueryTransformation> fuse(List<QueryTransformation> sortedTransformations) {
+    List<QueryTransformation> fused = new ArrayList<>();
+    List<AbstractQueryTransformation> fusable = new ArrayList<>();
+    for (QueryTransformation transformation : sortedTransformations) {
+      if (transformation instanceof AbstractQueryTransformation
+          && ((AbstractQueryTransformation) transformation).isFusable()) {
+        fusable.add((AbstractQueryTransformation) transformation);
+        continue;
+      }
+      if (!fusable.isEmpty()) {
+        fused.add(new FusedQueryTransformation(List.copyOf(fusable)));
+        fusable.clear();
+      }
+      fused.add(transformation);
+    }
+    if (!fusable.isEmpty()) {
+      fused.add(new FusedQueryTransformation(List.copyOf(fusable)));
+    }
+    return fused;
+  }
+
   private static class DefaultQueryTransformationContext implements QueryTransformationContext {
     private final String tenantId;
 
@@ -0,0 +1,379 @@
+package org.hypertrace.core.query.service;
+
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_COUNT;
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+
+import com.google.common.collect.Sets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/**
+ * The facts about a request that handlers need to decide whether and at which cost they can serve
+ * it, derived in a single walk over its filter when the request is received. Every handler reads
+ * them from the analysis instead of walking the filter again, so selecting a handler doesn't get
+ * slower with each view added.
+ */
+public final class RequestAnalysis {
+  private final Filter filter;
+  private final Set<String> referencedColumns;
+  private final Map<String, List<Filter>> leafFiltersByColumn;
+  private final Map<Filter, Set<String>> literalValues;
+  // The lowest lower bound and the highest upper bound on each column compared to a long
+  private final Map<String, Long> lowerBounds;
+  private final Map<String, Long> upperBounds;
+  // The time range of each column bounded on both sides by the conjuncts of the top level ANDs
+  private final Map<String, QueryTimeRange> timeRanges;
+
+  private RequestAnalysis(
+      Filter filter,
+      Set<String> referencedColumns,
+      Map<String, List<Filter>> leafFiltersByColumn,
+      Map<Filter, Set<String>> literalValues,
+      Map<String, Long> lowerBounds,
+      Map<String, Long> upperBounds,
+      Map<String, QueryTimeRange> timeRanges) {
+    this.filter = filter;
+    this.referencedColumns = referencedColumns;
+    this.leafFiltersByColumn = leafFiltersByColumn;
+    this.literalValues = literalValues;
+    this.lowerBounds = lowerBounds;
+    this.upperBounds = upperBounds;
+    this.timeRanges = timeRanges;
+  }
+
+  public static RequestAnalysis of(QueryRequest request) {
+    Builder builder = new Builder();
+    builder.analyzeFilter(request.getFilter());
+    builder.analyzeTimeRanges(request.getFilter());
+    for (Expression groupBy : request.getGroupByList()) {
+      extractColumns(builder.referencedColumns, groupBy);
+    }
+    for (Expression selection : request.getSelectionList()) {
+      extractColumns(builder.referencedColumns, selection);
+    }
+    for (Expression aggregation : request.getAggregationList()) {
+      extractColumns(builder.referencedColumns, aggregation);
+    }
+    return builder.build(request.getFilter());
+  }
+
+  /** Returns the columns referenced anywhere in the request. */
+  public Set<String> getReferencedColumns() {
+    return this.referencedColumns;
+  }
+
+  /** Returns the leaf filters of the request whose left hand side is the given column. */
+  public List<Filter> getLeafFilters(String column) {
+    return this.leafFiltersByColumn.getOrDefault(column, List.of());
+  }
+
+  /** Returns whether the filter of the request has a leaf filter on the given column. */
+  public boolean hasLeafFilters(String column) {
+    return this.leafFiltersByColumn.containsKey(column);
+  }
+
+  /**
+   * Returns the string forms of the values of the literal on the right hand side of the given
+   * leaf filter, as compared with the values of view column filters.
+   *
+   * @throws IllegalArgumentException if the literal is of a type that can't be compared
+   */
+  public Set<String> getLiteralValues(Filter leafFilter) {
+    Set<String> values = this.literalValues.get(leafFilter);
+    return values == null ? getLiteralValues(leafFilter.getRhs().getLiteral()) : values;
+  }
+
+  /**
+   * Returns the string forms of the values of the given literal, for the filters not part of an
+   * analyzed request.
+   *
+   * @throws IllegalArgumentException if the literal is of a type that can't be compared
+   */
+  public static Set<String> getLiteralValues(LiteralConstant literalConstant) {
+    return toStringValues(literalConstant)
+        .orElseThrow(
+            () -> new IllegalArgumentException("Unsupported value type in subset check."));
+  }
+
+  /**
+   * Returns whether the filter of the request restricts each of the columns of the given filters
+   * to values they match, so that a view filtered by them has all the rows the request matches. A
+   * column is restricted by a matching EQ or IN leaf filter conjunct of the request, or by one in
+   * each branch of a disjunction.
+   */
+  public boolean matchesColumnFilters(Map<String, ? extends ColumnFilter> columnFilters) {
+    if (columnFilters.isEmpty()) {
+      return true;
+    }
+    // Most views filter on columns the request doesn't, which is known without walking its filter
+    if (!columnFilters.keySet().stream().allMatch(this::hasLeafFilters)) {
+      return false;
+    }
+    Set<Filter> matchingLeafFilters = Collections.newSetFromMap(new IdentityHashMap<>());
+    columnFilters.forEach(
+        (column, columnFilter) -> {
+          for (Filter leafFilter : this.getLeafFilters(column)) {
+            if ((leafFilter.getOperator() == Operator.IN || leafFilter.getOperator() == Operator.EQ)
+                && leafFilter.getRhs().hasLiteral()
+                && columnFilter.matchesAll(this.getLiteralValues(leafFilter))) {
+              matchingLeafFilters.add(leafFilter);
+            }
+          }
+        });
+    if (matchingLeafFilters.isEmpty()) {
+      return false;
+    }
+    return columnFilters.keySet().equals(getRestrictedColumns(this.filter, matchingLeafFilters));
+  }
+
+  /**
+   * Returns the lowest bound of the GE, GT or EQ filters on the given column, or {@link
+   * Long#MAX_VALUE} if it has none.
+   */
+  public long getStartTime(String column) {
+    return this.lowerBounds.getOrDefault(column, Long.MAX_VALUE);
+  }
+
+  /**
+   * Returns the highest bound of the LE or LT filters on the given column, or {@link
+   * Long#MIN_VALUE} if it has none.
+   */
+  public long getEndTime(String column) {
+    return this.upperBounds.getOrDefault(column, Long.MIN_VALUE);
+  }
+
+  /**
+   * Returns the time range of the given column, from the first AND of the request bounding it on
+   * both sides.
+   */
+  public Optional<QueryTimeRange> getQueryTimeRange(String timeFilterColumn) {
+    return timeFilterColumn == null
+        ? Optional.empty()
+        : Optional.ofNullable(this.timeRanges.get(timeFilterColumn));
+  }
+
+  /** Adds the columns referenced by the given expression to the given list. */
+  static void extractColumns(Collection<String> columns, Expression expression) {
+    switch (expression.getValueCase()) {
+      case COLUMNIDENTIFIER:
+      case ATTRIBUTE_EXPRESSION:
+        String logicalColumnName =
+            getLogicalColumnName(expression).orElseThrow(IllegalArgumentException::new);
+        columns.add(logicalColumnName);
+        break;
+      case FUNCTION:
+        Function function = expression.getFunction();
+        // ignore argument list for COUNT function as it is just converted to COUNT(*) at the end
+        if (function.getFunctionName().equalsIgnoreCase(QUERY_FUNCTION_COUNT)) {
+          break;
+        }
+        for (Expression childExpression : function.getArgumentsList()) {
+          extractColumns(columns, childExpression);
+        }
+        break;
+      case ORDERBY:
+        extractColumns(columns, expression.getOrderBy().getExpression());
+        break;
+      case LITERAL:
+      case VALUE_NOT_SET:
+      default:
+        break;
+    }
+  }
+
+  /** Returns the columns of the matching leaf filters every row matched by the filter has. */
+  private static Set<String> getRestrictedColumns(Filter filter, Set<Filter> matchingLeafFilters) {
+    if (filter.getChildFilterCount() == 0) {
+      return matchingLeafFilters.contains(filter)
+          ? Set.of(getLogicalColumnName(filter.getLhs()).orElseThrow(IllegalArgumentException::new))
+          : Set.of();
+    }
+    Set<String> result = null;
+    for (Filter childFilter : filter.getChildFilterList()) {
+      Set<String> childResult = getRestrictedColumns(childFilter, matchingLeafFilters);
+      if (result == null) {
+        result = childResult;
+      } else {
+        // The rows of an OR only match the columns restricted in all of its children, and those
+        // of an AND the ones restricted in any
+        result =
+            filter.getOperator() == Operator.OR
+                ? Sets.intersection(result, childResult)
+                : Sets.union(result, childResult);
+      }
+    }
+    return result;
+  }
+
+  private static Optional<Set<String>> toStringValues(LiteralConstant literalConstant) {
+    Value value = literalConstant.getValue();
+    switch (value.getValueType()) {
+      case STRING:
+        return Optional.of(Set.of(value.getString()));
+      case STRING_ARRAY:
+        return Optional.of(Set.copyOf(value.getStringArrayList()));
+      case INT:
+        return Optional.of(Set.of(String.valueOf(value.getInt())));
+      case INT_ARRAY:
+        return Optional.of(toStringSet(value.getIntArrayList()));
+      case LONG:
+        return Optional.of(Set.of(String.valueOf(value.getLong())));
+      case LONG_ARRAY:
+        return Optional.of(toStringSet(value.getLongArrayList()));
+      case DOUBLE:
+        return Optional.of(Set.of(String.valueOf(value.getDouble())));
+      case DOUBLE_ARRAY:
+        return Optional.of(toStringSet(value.getDoubleArrayList()));
+      case FLOAT:
+        return Optional.of(Set.of(String.valueOf(value.getFloat())));
+      case FLOAT_ARRAY:
+        return Optional.of(toStringSet(value.getFloatArrayList()));
+      case BOOL:
+        return Optional.of(Set.of(String.valueOf(value.getBoolean()).toLowerCase()));
+      case BOOLEAN_ARRAY:
+        return Optional.of(
+            value.getBooleanArrayList().stream()
+                .map(bool -> bool.toString().toLowerCase())
+                .collect(Collectors.toUnmodifiableSet()));
+      default:
+        return Optional.empty();
+    }
+  }
+
+  private static Set<String> toStringSet(List<?> values) {
+    return values.stream()
+        .map(Object::toString)
+        .collect(Collectors.toUnmodifiableSet());
+  }
+
+  private static final class Builder {
+    private final Set<String> referencedColumns = new HashSet<>();
+    private final Map<String, List<Filter>> leafFiltersByColumn = new HashMap<>();
+    private final Map<Filter, Set<String>> literalValues = new HashMap<>();
+    private final Map<String, Long> lowerBounds = new HashMap<>();
+    private final Map<String, Long> upperBounds = new HashMap<>();
+    private final Map<String, QueryTimeRange> timeRanges = new HashMap<>();
+
+    private void analyzeFilter(Filter filter) {
+      if (filter.getChildFilterCount() > 0) {
+        for (Filter childFilter : filter.getChildFilterList()) {
+          this.analyzeFilter(childFilter);
+        }
+        return;
+      }
+      extractColumns(this.referencedColumns, filter.getLhs());
+      extractColumns(this.referencedColumns, filter.getRhs());
+
+      Optional<String> column = getLogicalColumnName(filter.getLhs());
+      if (column.isEmpty()) {
+        return;
+      }
+      this.leafFiltersByColumn
+          .computeIfAbsent(column.get(), unused -> new ArrayList<>())
+          .add(filter);
+      if (!filter.getRhs().hasLiteral()) {
+        return;
+      }
+      if (filter.getOperator() == Operator.IN || filter.getOperator() == Operator.EQ) {
+        toStringValues(filter.getRhs().getLiteral())
+            .ifPresent(values -> this.literalValues.put(filter, values));
+      }
+      Value value = filter.getRhs().getLiteral().getValue();
+      if (value.getValueType() != ValueType.LONG) {
+        return;
+      }
+      switch (filter.getOperator()) {
+        case GE:
+        case GT:
+        case EQ:
+          this.lowerBounds.merge(column.get(), value.getLong(), Math::min);
+          break;
+        case LE:
+        case LT:
+          this.upperBounds.merge(column.get(), value.getLong(), Math::max);
+          break;
+        default:
+          break;
+      }
+    }
+
+    /**
+     * The time range of a column is the first one found in pre-order of an AND bounding the column
+     * on both sides with its direct children, through ANDs only from the top level filter.
+     */
+    private void analyzeTimeRanges(Filter filter) {
+      if (filter.getOperator() != Operator.AND) {
+        return;
+      }
+      Map<String, Long> starts = new HashMap<>();
+      Map<String, Long> ends = new HashMap<>();
+      for (Filter childFilter : filter.getChildFilterList()) {
+        Optional<String> column = getLogicalColumnName(childFilter.getLhs());
+        if (column.isEmpty()) {
+          continue;
+        }
+        long bound = childFilter.getRhs().getLiteral().getValue().getLong();
+        switch (childFilter.getOperator()) {
+          case GE:
+          case GT:
+            starts.putIfAbsent(column.get(), bound);
+            break;
+          case LT:
+          case LE:
+            ends.putIfAbsent(column.get(), bound);
+            break;
+          default:
+            break;
+        }
+      }
+      starts.forEach(
+          (column, start) -> {
+            Long end = ends.get(column);
+            if (end != null) {
+              this.timeRanges.putIfAbsent(
+                  column,
+                  new QueryTimeRange(
+                      Instant.ofEpochMilli(start),
+                      Instant.ofEpochMilli(end),
+                      Duration.ofMillis(end - start)));
+            }
+          });
+      for (Filter childFilter : filter.getChildFilterList()) {
+        this.analyzeTimeRanges(childFilter);
+      }
+    }
+
+    private RequestAnalysis build(Filter filter) {
+      Map<String, List<Filter>> leafFilters = new HashMap<>();
+      this.leafFiltersByColumn.forEach(
+          (column, filters) -> leafFilters.put(column, List.copyOf(filters)));
+      return new RequestAnalysis(
+          filter,
+          Set.copyOf(this.referencedColumns),
+          Map.copyOf(leafFilters),
+          Map.copyOf(this.literalValues),
+          Map.copyOf(this.lowerBounds),
+          Map.copyOf(this.upperBounds),
+          Map.copyOf(this.timeRanges));
+    }
+  }
+}
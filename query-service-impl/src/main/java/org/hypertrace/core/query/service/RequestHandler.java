@@ -1,6 +1,7 @@
 package org.hypertrace.core.query.service;
 
 import io.reactivex.rxjava3.core.Observable;
+import java.time.Duration;
 import java.util.Optional;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.Row;
@@ -23,8 +24,31 @@ public interface RequestHandler {
 
   Optional<String> getTimeFilterColumn();
 
+  /**
+   * How far back from now the data of this handler is retained, if it is limited. Used along with
+   * {@link #getTimeGranularity()} to split a query's time range across handlers.
+   */
+  default Optional<Duration> getRetention() {
+    return Optional.empty();
+  }
+
+  /** The granularity of the time column if the data of this handler is rolled up. */
+  default Optional<Duration> getTimeGranularity() {
+    return Optional.empty();
+  }
+
   QueryCost canHandle(QueryRequest request, ExecutionContext context);
 
   /** Handle the request and add rows to the collector. */
   Observable<Row> handleRequest(QueryRequest request, ExecutionContext executionContext);
+
+  /**
+   * Handles the request like {@link #handleRequest}, with the rows written straight into their wire
+   * format by a {@link RowWriter}. Returns empty if the handler doesn't encode the rows of the
+   * request itself, in which case they are handled by {@link #handleRequest}.
+   */
+  default Optional<Observable<EncodedRows>> handleRequestEncoded(
+      QueryRequest request, ExecutionContext executionContext) {
+    return Optional.empty();
+  }
 }
@@ -1,8 +1,14 @@
 package org.hypertrace.core.query.service;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.batching.PointLookupBatcher;
+import org.hypertrace.core.query.service.cost.LatencyCostModel;
+import org.hypertrace.core.query.service.federation.InListSplitter;
+import org.hypertrace.core.query.service.federation.TimeRangeSplitter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,10 +17,32 @@ public class RequestHandlerSelector {
   private static final Logger LOG = LoggerFactory.getLogger(RequestHandlerSelector.class);
 
   private final RequestHandlerRegistry registry;
+  private final TimeRangeSplitter timeRangeSplitter;
+  private final InListSplitter inListSplitter;
+  private final LatencyCostModel latencyCostModel;
+  private final PointLookupBatcher pointLookupBatcher;
 
-  @Inject
   public RequestHandlerSelector(RequestHandlerRegistry registry) {
+    this(
+        registry,
+        TimeRangeSplitter.DISABLED,
+        InListSplitter.DISABLED,
+        LatencyCostModel.DISABLED,
+        PointLookupBatcher.DISABLED);
+  }
+
+  @Inject
+  public RequestHandlerSelector(
+      RequestHandlerRegistry registry,
+      TimeRangeSplitter timeRangeSplitter,
+      InListSplitter inListSplitter,
+      LatencyCostModel latencyCostModel,
+      PointLookupBatcher pointLookupBatcher) {
     this.registry = registry;
+    this.timeRangeSplitter = timeRangeSplitter;
+    this.inListSplitter = inListSplitter;
+    this.latencyCostModel = latencyCostModel;
+    this.pointLookupBatcher = pointLookupBatcher;
   }
 
   public Optional<RequestHandler> select(QueryRequest request, ExecutionContext executionContext) {
@@ -23,12 +51,16 @@ public class RequestHandlerSelector {
     // that query
     double minCost = Double.MAX_VALUE;
     RequestHandler selectedHandler = null;
+    Map<RequestHandler, Double> capableHandlerCosts = new LinkedHashMap<>();
     for (RequestHandler requestHandler : registry.getAll()) {
       QueryCost queryCost = requestHandler.canHandle(request, executionContext);
       double cost = queryCost.getCost();
       if (LOG.isDebugEnabled()) {
         LOG.debug("Request handler: {}, query cost: {}", requestHandler.getName(), cost);
       }
+      if (cost >= 0) {
+        capableHandlerCosts.put(requestHandler, cost);
+      }
       if (cost >= 0 && cost < minCost) {
         minCost = cost;
         selectedHandler = requestHandler;
@@ -36,6 +68,17 @@ public class RequestHandlerSelector {
     }
 
     if (selectedHandler != null) {
+      Optional<RequestHandler> splitHandler =
+          this.timeRangeSplitter.split(request, executionContext, capableHandlerCosts.keySet());
+      if (splitHandler.isPresent()) {
+        selectedHandler = splitHandler.get();
+      } else if (this.latencyCostModel.isEnabled()) {
+        selectedHandler = this.latencyCostModel.select(request, capableHandlerCosts);
+      }
+      selectedHandler =
+          this.inListSplitter.split(request, selectedHandler).orElse(selectedHandler);
+      selectedHandler =
+          this.pointLookupBatcher.batch(request, selectedHandler).orElse(selectedHandler);
       if (LOG.isDebugEnabled()) {
         LOG.debug(
             "Selected requestHandler: {} for the query: {}; referencedColumns: {}, cost: {}",
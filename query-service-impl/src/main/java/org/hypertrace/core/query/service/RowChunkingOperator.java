@@ -5,14 +5,19 @@ import io.reactivex.rxjava3.core.ObservableOperator;
 import io.reactivex.rxjava3.core.Observer;
 import io.reactivex.rxjava3.observers.DisposableObserver;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+import java.util.Optional;
+import java.util.function.Supplier;
 import org.hypertrace.core.query.service.api.ResultSetChunk;
 import org.hypertrace.core.query.service.api.ResultSetMetadata;
 import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.pagination.KeysetPagination;
 
 /**
  * Batches received rows into chunks. The first chunk will contain result metadata, and the last
- * chunk will be marked with the `isLastChunk` flag. Always emits at least one chunk, unless
- * receiving an error, which is propagated as is.
+ * chunk will be marked with the `isLastChunk` flag, along with the continuation token for the next
+ * page if the request is paginated by keyset. Always emits at least one chunk, unless receiving an
+ * error, which is propagated as is. The metadata may be supplied lazily, to be read once the first
+ * chunk is complete.
  */
 public class RowChunkingOperator implements ObservableOperator<ResultSetChunk, Row> {
   private static final int DEFAULT_CHUNK_ROWS = 10_000;
@@ -21,37 +26,66 @@ public class RowChunkingOperator implements ObservableOperator<ResultSetChunk, R
     return chunkRows(resultSetMetadata, DEFAULT_CHUNK_ROWS);
   }
 
+  public static RowChunkingOperator chunkRows(
+      ResultSetMetadata resultSetMetadata, Optional<KeysetPagination> keysetPagination) {
+    return chunkRows(() -> resultSetMetadata, keysetPagination);
+  }
+
+  public static RowChunkingOperator chunkRows(
+      Supplier<ResultSetMetadata> resultSetMetadata, Optional<KeysetPagination> keysetPagination) {
+    return new RowChunkingOperator(resultSetMetadata, DEFAULT_CHUNK_ROWS, keysetPagination);
+  }
+
   public static RowChunkingOperator chunkRows(ResultSetMetadata resultSetMetadata, int maxRows) {
-    return new RowChunkingOperator(resultSetMetadata, maxRows);
+    return new RowChunkingOperator(() -> resultSetMetadata, maxRows, Optional.empty());
+  }
+
+  public static RowChunkingOperator chunkRows(
+      ResultSetMetadata resultSetMetadata,
+      int maxRows,
+      Optional<KeysetPagination> keysetPagination) {
+    return new RowChunkingOperator(() -> resultSetMetadata, maxRows, keysetPagination);
   }
 
   private final int chunkRows;
-  private final ResultSetChunk.Builder initialBuilder;
+  private final Supplier<ResultSetMetadata> resultSetMetadata;
+  private final Optional<KeysetPagination> keysetPagination;
 
-  private RowChunkingOperator(ResultSetMetadata resultSetMetadata, int chunkRows) {
-    this.initialBuilder = ResultSetChunk.newBuilder().setResultSetMetadata(resultSetMetadata);
+  private RowChunkingOperator(
+      Supplier<ResultSetMetadata> resultSetMetadata,
+      int chunkRows,
+      Optional<KeysetPagination> keysetPagination) {
+    this.resultSetMetadata = resultSetMetadata;
     this.chunkRows = chunkRows;
+    this.keysetPagination = keysetPagination;
   }
 
   @Override
   public @NonNull Observer<? super Row> apply(@NonNull Observer<? super ResultSetChunk> observer) {
-    return new ChunkingRowObserver(this.initialBuilder.clone(), this.chunkRows, observer);
+    return new ChunkingRowObserver(
+        this.resultSetMetadata, this.chunkRows, this.keysetPagination, observer);
   }
 
   static class ChunkingRowObserver extends DisposableObserver<Row> {
+    private final Supplier<ResultSetMetadata> resultSetMetadata;
     private final int maxChunkRows;
+    private final Optional<KeysetPagination> keysetPagination;
     private final Observer<? super ResultSetChunk> downstream;
-    private final ResultSetChunk.Builder currentBuilder;
+    private final ResultSetChunk.Builder currentBuilder = ResultSetChunk.newBuilder();
     private int currentChunkRows;
     private int chunkId;
+    private long totalRows;
+    private Row lastRow;
     private boolean done;
 
     ChunkingRowObserver(
-        ResultSetChunk.Builder initialBuilder,
+        Supplier<ResultSetMetadata> resultSetMetadata,
         int maxChunkRows,
+        Optional<KeysetPagination> keysetPagination,
         Observer<? super ResultSetChunk> chunkObserver) {
-      this.currentBuilder = initialBuilder;
+      this.resultSetMetadata = resultSetMetadata;
       this.maxChunkRows = maxChunkRows;
+      this.keysetPagination = keysetPagination;
       this.downstream = chunkObserver;
     }
 
@@ -67,7 +101,7 @@ public class RowChunkingOperator implements ObservableOperator<ResultSetChunk, R
       }
       this.currentChunkRows++;
       if (this.currentChunkRows > this.maxChunkRows) {
-        ResultSetChunk resultSetChunk = this.currentBuilder.build();
+        ResultSetChunk resultSetChunk = this.buildChunk();
         this.downstream.onNext(resultSetChunk);
         this.currentBuilder.clear();
         this.chunkId++;
@@ -76,6 +110,8 @@ public class RowChunkingOperator implements ObservableOperator<ResultSetChunk, R
       }
 
       this.currentBuilder.addRow(row);
+      this.totalRows++;
+      this.lastRow = row;
     }
 
     @Override
@@ -95,9 +131,21 @@ public class RowChunkingOperator implements ObservableOperator<ResultSetChunk, R
       }
       this.done = true;
       this.currentBuilder.setIsLastChunk(true);
-      ResultSetChunk resultSetChunk = this.currentBuilder.build();
+      if (this.lastRow != null) {
+        this.keysetPagination
+            .flatMap(pagination -> pagination.continuationToken(this.lastRow, this.totalRows))
+            .ifPresent(this.currentBuilder::setContinuationToken);
+      }
+      ResultSetChunk resultSetChunk = this.buildChunk();
       this.downstream.onNext(resultSetChunk);
       this.downstream.onComplete();
     }
+
+    private ResultSetChunk buildChunk() {
+      if (this.chunkId == 0) {
+        this.currentBuilder.setResultSetMetadata(this.resultSetMetadata.get());
+      }
+      return this.currentBuilder.build();
+    }
   }
 }
@@ -0,0 +1,101 @@
+package org.hypertrace.core.query.service;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.util.Arrays;
+import org.hypertrace.core.query.service.api.ResultSetChunk;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+
+/**
+ * Writes rows straight into their wire format in a {@link ResultSetChunk}, for converters of store
+ * results to skip building the {@link Value} and {@link Row} messages of their cells. String
+ * cells, which make up most results, are written from the string itself. The cells of a row are
+ * written as they are added, and the row is completed by {@link #endRow()}.
+ *
+ * <p>The generated converters of Pinot results write into this class, which is why it is public.
+ */
+public final class RowWriter {
+  private static final int INITIAL_ROW_COUNT = 64;
+
+  // Cells of the current row, which is prefixed by its size once complete
+  private final ChunkBuffer rowBuffer = new ChunkBuffer();
+  private final CodedOutputStream rowOutput = CodedOutputStream.newInstance(this.rowBuffer);
+  private final ChunkBuffer buffer = new ChunkBuffer();
+  private final CodedOutputStream output = CodedOutputStream.newInstance(this.buffer);
+  private int[] rowOffsets = new int[INITIAL_ROW_COUNT + 1];
+  private int rowCount;
+
+  /** Adds a cell of a string value to the current row. */
+  public void addString(String value) {
+    try {
+      this.rowOutput.writeTag(Row.COLUMN_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      // The value type of strings is the default one, so only non empty strings have a field
+      if (value.isEmpty()) {
+        this.rowOutput.writeUInt32NoTag(0);
+      } else {
+        this.rowOutput.writeUInt32NoTag(
+            CodedOutputStream.computeStringSize(Value.STRING_FIELD_NUMBER, value));
+        this.rowOutput.writeString(Value.STRING_FIELD_NUMBER, value);
+      }
+    } catch (IOException e) {
+      throw writeFailure(e);
+    }
+  }
+
+  /** Adds a cell to the current row. */
+  public void addValue(Value value) {
+    try {
+      this.rowOutput.writeMessage(Row.COLUMN_FIELD_NUMBER, value);
+    } catch (IOException e) {
+      throw writeFailure(e);
+    }
+  }
+
+  /** Completes the current row. */
+  public void endRow() {
+    try {
+      this.rowOutput.flush();
+      this.output.writeTag(ResultSetChunk.ROW_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      this.output.writeUInt32NoTag(this.rowBuffer.size());
+      this.output.writeRawBytes(this.rowBuffer.array(), 0, this.rowBuffer.size());
+    } catch (IOException e) {
+      throw writeFailure(e);
+    }
+    this.rowBuffer.reset();
+    this.addRowOffset();
+  }
+
+  /** Adds a row already built as a message. */
+  public void addRow(Row row) {
+    try {
+      this.output.writeMessage(ResultSetChunk.ROW_FIELD_NUMBER, row);
+    } catch (IOException e) {
+      throw writeFailure(e);
+    }
+    this.addRowOffset();
+  }
+
+  public EncodedRows build() {
+    try {
+      this.output.flush();
+    } catch (IOException e) {
+      throw writeFailure(e);
+    }
+    return new EncodedRows(this.buffer.array(), Arrays.copyOf(this.rowOffsets, this.rowCount + 1));
+  }
+
+  private void addRowOffset() {
+    this.rowCount++;
+    if (this.rowCount == this.rowOffsets.length) {
+      this.rowOffsets = Arrays.copyOf(this.rowOffsets, this.rowOffsets.length * 2);
+    }
+    this.rowOffsets[this.rowCount] = (int) this.output.getTotalBytesWritten();
+  }
+
+  private static IllegalStateException writeFailure(IOException e) {
+    // The buffers are in memory, so this is never expected
+    return new IllegalStateException("Unable to write rows", e);
+  }
+}
@@ -0,0 +1,44 @@
+package org.hypertrace.core.query.service;
+
+import io.grpc.BindableService;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.stub.ServerCalls;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.QueryServiceGrpc;
+import org.hypertrace.core.query.service.api.ResultSetChunk;
+
+/**
+ * Serves the query service with pre-serialized result set chunks. The wire format of the chunks is
+ * unchanged, only the response marshaller of the execute method is replaced, so clients are not
+ * affected.
+ */
+class SerializedChunkQueryService implements BindableService {
+  private final QueryServiceImpl queryService;
+
+  SerializedChunkQueryService(QueryServiceImpl queryService) {
+    this.queryService = queryService;
+  }
+
+  @Override
+  public ServerServiceDefinition bindService() {
+    MethodDescriptor<QueryRequest, ResultSetChunk> generatedMethod =
+        QueryServiceGrpc.getExecuteMethod();
+    MethodDescriptor<QueryRequest, SerializedResultSetChunk> executeMethod =
+        generatedMethod.toBuilder(
+                generatedMethod.getRequestMarshaller(), SerializedResultSetChunk.MARSHALLER)
+            .build();
+    ServiceDescriptor generatedService = QueryServiceGrpc.getServiceDescriptor();
+    ServiceDescriptor serviceDescriptor =
+        ServiceDescriptor.newBuilder(generatedService.getName())
+            .setSchemaDescriptor(generatedService.getSchemaDescriptor())
+            .addMethod(executeMethod)
+            .build();
+    return ServerServiceDefinition.builder(serviceDescriptor)
+        .addMethod(
+            executeMethod,
+            ServerCalls.asyncServerStreamingCall(this.queryService::executeSerialized))
+        .build();
+  }
+}
@@ -0,0 +1,81 @@
+package org.hypertrace.core.query.service;
+
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor.Marshaller;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import org.hypertrace.core.query.service.api.ResultSetChunk;
+
+/**
+ * A {@link ResultSetChunk} already encoded in its wire format, which is shipped as is by {@link
+ * #MARSHALLER} instead of being serialized from a message.
+ */
+public final class SerializedResultSetChunk {
+  public static final Marshaller<SerializedResultSetChunk> MARSHALLER =
+      new SerializedResultSetChunkMarshaller();
+
+  private final byte[] buffer;
+  private final int length;
+
+  SerializedResultSetChunk(byte[] buffer, int length) {
+    this.buffer = buffer;
+    this.length = length;
+  }
+
+  public static SerializedResultSetChunk of(ResultSetChunk chunk) {
+    byte[] bytes = chunk.toByteArray();
+    return new SerializedResultSetChunk(bytes, bytes.length);
+  }
+
+  public int getSerializedSize() {
+    return this.length;
+  }
+
+  public ResultSetChunk toResultSetChunk() throws InvalidProtocolBufferException {
+    return ResultSetChunk.parser().parseFrom(this.buffer, 0, this.length);
+  }
+
+  private static final class SerializedResultSetChunkMarshaller
+      implements Marshaller<SerializedResultSetChunk> {
+
+    @Override
+    public InputStream stream(SerializedResultSetChunk chunk) {
+      return new ChunkInputStream(chunk.buffer, chunk.length);
+    }
+
+    @Override
+    public SerializedResultSetChunk parse(InputStream stream) {
+      try {
+        byte[] bytes = ByteStreams.toByteArray(stream);
+        return new SerializedResultSetChunk(bytes, bytes.length);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Lets gRPC size the message up front and copy the chunk straight into its transport buffers.
+   */
+  private static final class ChunkInputStream extends ByteArrayInputStream
+      implements KnownLength, Drainable {
+
+    private ChunkInputStream(byte[] buffer, int length) {
+      super(buffer, 0, length);
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+      int drained = this.count - this.pos;
+      target.write(this.buf, this.pos, drained);
+      this.pos = this.count;
+      return drained;
+    }
+  }
+}
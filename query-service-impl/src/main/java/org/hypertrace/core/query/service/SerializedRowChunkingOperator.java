@@ -0,0 +1,142 @@
+package org.hypertrace.core.query.service;
+
+import com.google.protobuf.CodedOutputStream;
+import io.reactivex.rxjava3.annotations.NonNull;
+import io.reactivex.rxjava3.core.ObservableOperator;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.observers.DisposableObserver;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+import java.io.IOException;
+import java.util.function.Supplier;
+import org.hypertrace.core.query.service.api.ResultSetChunk;
+import org.hypertrace.core.query.service.api.ResultSetMetadata;
+
+/**
+ * Same as {@link RowChunkingOperator}, for rows encoded by the handlers. The encoded rows are
+ * copied into the wire format of their chunk as is, so the chunk is neither built as a message nor
+ * serialized by gRPC. Protobuf parsers accept fields in any order, so the metadata of the first
+ * chunk and the flag of the last one are written after their rows. Requests paginated by keyset
+ * are not supported, as their continuation token is built from the last row.
+ */
+public class SerializedRowChunkingOperator
+    implements ObservableOperator<SerializedResultSetChunk, EncodedRows> {
+  private static final int DEFAULT_CHUNK_ROWS = 10_000;
+
+  public static SerializedRowChunkingOperator chunkRows(
+      Supplier<ResultSetMetadata> resultSetMetadata) {
+    return chunkRows(resultSetMetadata, DEFAULT_CHUNK_ROWS);
+  }
+
+  public static SerializedRowChunkingOperator chunkRows(
+      Supplier<ResultSetMetadata> resultSetMetadata, int maxRows) {
+    return new SerializedRowChunkingOperator(resultSetMetadata, maxRows);
+  }
+
+  private final Supplier<ResultSetMetadata> resultSetMetadata;
+  private final int chunkRows;
+
+  private SerializedRowChunkingOperator(
+      Supplier<ResultSetMetadata> resultSetMetadata, int chunkRows) {
+    this.resultSetMetadata = resultSetMetadata;
+    this.chunkRows = chunkRows;
+  }
+
+  @Override
+  public @NonNull Observer<? super EncodedRows> apply(
+      @NonNull Observer<? super SerializedResultSetChunk> observer) {
+    return new SerializingRowObserver(this.resultSetMetadata, this.chunkRows, observer);
+  }
+
+  static class SerializingRowObserver extends DisposableObserver<EncodedRows> {
+    private final Supplier<ResultSetMetadata> resultSetMetadata;
+    private final int maxChunkRows;
+    private final Observer<? super SerializedResultSetChunk> downstream;
+    private final ChunkBuffer buffer = new ChunkBuffer();
+    private final CodedOutputStream output = CodedOutputStream.newInstance(this.buffer);
+    private int currentChunkRows;
+    private int chunkId;
+    private boolean done;
+
+    SerializingRowObserver(
+        Supplier<ResultSetMetadata> resultSetMetadata,
+        int maxChunkRows,
+        Observer<? super SerializedResultSetChunk> chunkObserver) {
+      this.resultSetMetadata = resultSetMetadata;
+      this.maxChunkRows = maxChunkRows;
+      this.downstream = chunkObserver;
+    }
+
+    @Override
+    public void onStart() {
+      this.downstream.onSubscribe(this);
+    }
+
+    @Override
+    public void onNext(@NonNull EncodedRows rows) {
+      if (this.done) {
+        return;
+      }
+      try {
+        int row = 0;
+        while (row < rows.getRowCount()) {
+          if (this.currentChunkRows == this.maxChunkRows) {
+            this.downstream.onNext(this.completeChunk());
+            this.chunkId++;
+            this.currentChunkRows = 0;
+            this.output.writeInt32(ResultSetChunk.CHUNK_ID_FIELD_NUMBER, this.chunkId);
+          }
+          int chunkRows =
+              Math.min(rows.getRowCount() - row, this.maxChunkRows - this.currentChunkRows);
+          rows.writeTo(this.output, row, row + chunkRows);
+          row += chunkRows;
+          this.currentChunkRows += chunkRows;
+        }
+      } catch (IOException e) {
+        throw writeFailure(e);
+      }
+    }
+
+    @Override
+    public void onError(@NonNull Throwable error) {
+      if (this.done) {
+        RxJavaPlugins.onError(error);
+        return;
+      }
+      this.done = true;
+      this.downstream.onError(error);
+    }
+
+    @Override
+    public void onComplete() {
+      if (this.done) {
+        return;
+      }
+      this.done = true;
+      try {
+        this.output.writeBool(ResultSetChunk.IS_LAST_CHUNK_FIELD_NUMBER, true);
+      } catch (IOException e) {
+        throw writeFailure(e);
+      }
+      this.downstream.onNext(this.completeChunk());
+      this.downstream.onComplete();
+    }
+
+    private SerializedResultSetChunk completeChunk() {
+      try {
+        if (this.chunkId == 0) {
+          this.output.writeMessage(
+              ResultSetChunk.RESULT_SET_METADATA_FIELD_NUMBER, this.resultSetMetadata.get());
+        }
+        this.output.flush();
+      } catch (IOException e) {
+        throw writeFailure(e);
+      }
+      return this.buffer.detach();
+    }
+
+    private static IllegalStateException writeFailure(IOException e) {
+      // The buffer is in memory, so this is never expected
+      return new IllegalStateException("Unable to write result set chunk", e);
+    }
+  }
+}
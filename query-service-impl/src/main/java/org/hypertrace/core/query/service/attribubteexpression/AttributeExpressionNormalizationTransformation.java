@@ -22,6 +22,11 @@ final class AttributeExpressionNormalizationTransformation extends AbstractQuery
     return log;
   }
 
+  @Override
+  protected boolean isFusable() {
+    return true;
+  }
+
   @Override
   protected Single<Expression> transformColumnIdentifier(ColumnIdentifier columnIdentifier) {
     Expression.Builder expressionBuilder =
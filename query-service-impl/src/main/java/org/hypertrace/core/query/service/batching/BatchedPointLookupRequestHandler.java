@@ -0,0 +1,44 @@
+package org.hypertrace.core.query.service.batching;
+
+import io.reactivex.rxjava3.core.Observable;
+import java.util.Optional;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryCost;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+
+/** Executes a point lookup on the same handler as part of a batch of concurrent lookups. */
+class BatchedPointLookupRequestHandler implements RequestHandler {
+  private final PointLookupBatcher batcher;
+  private final RequestHandler handler;
+  private final PointLookup lookup;
+
+  BatchedPointLookupRequestHandler(
+      PointLookupBatcher batcher, RequestHandler handler, PointLookup lookup) {
+    this.batcher = batcher;
+    this.handler = handler;
+    this.lookup = lookup;
+  }
+
+  @Override
+  public String getName() {
+    return "batched[" + this.handler.getName() + "]";
+  }
+
+  @Override
+  public Optional<String> getTimeFilterColumn() {
+    return this.handler.getTimeFilterColumn();
+  }
+
+  @Override
+  public QueryCost canHandle(QueryRequest request, ExecutionContext context) {
+    return this.handler.canHandle(request, context);
+  }
+
+  @Override
+  public Observable<Row> handleRequest(QueryRequest request, ExecutionContext executionContext) {
+    return Observable.defer(
+        () -> this.batcher.enqueue(this.lookup, this.handler, request, executionContext));
+  }
+}
@@ -0,0 +1,144 @@
+package org.hypertrace.core.query.service.batching;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.isSimpleAttributeExpression;
+import static org.hypertrace.core.query.service.QueryRequestUtil.removeAlias;
+
+import java.util.Collection;
+import java.util.Optional;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/**
+ * A selection of the rows with a single key, filtered by an equality on the key column, optionally
+ * along with other conjuncts like a time range. Lookups with the same template, which is the
+ * request without its key and limit, only differ by their key and can be executed as a single
+ * query filtering on all their keys.
+ */
+class PointLookup {
+  private final QueryRequest template;
+  // The index of the key filter among the conjuncts of the filter, -1 if it is the filter itself
+  private final int keyFilterIndex;
+  private final String key;
+  private final int limit;
+
+  private PointLookup(QueryRequest template, int keyFilterIndex, String key, int limit) {
+    this.template = template;
+    this.keyFilterIndex = keyFilterIndex;
+    this.key = key;
+    this.limit = limit;
+  }
+
+  /**
+   * Returns the lookup of the given request if it is a selection without ordering or offset, with
+   * a limit, filtered by an equality of a column to a string.
+   */
+  static Optional<PointLookup> forRequest(QueryRequest request) {
+    if (request.getAggregationCount() > 0
+        || request.getGroupByCount() > 0
+        || request.getOrderByCount() > 0
+        || request.getDistinctSelections()
+        || request.getOffset() > 0
+        || request.getLimit() <= 0) {
+      return Optional.empty();
+    }
+    Filter filter = request.getFilter();
+    if (isKeyFilter(filter)) {
+      return Optional.of(create(request, -1, filter));
+    }
+    if (filter.getOperator() != Operator.AND) {
+      return Optional.empty();
+    }
+    int keyFilterIndex = -1;
+    for (int i = 0; i < filter.getChildFilterCount(); i++) {
+      if (isKeyFilter(filter.getChildFilter(i))) {
+        if (keyFilterIndex >= 0) {
+          // Which of the equalities is the key is ambiguous
+          return Optional.empty();
+        }
+        keyFilterIndex = i;
+      }
+    }
+    return keyFilterIndex < 0
+        ? Optional.empty()
+        : Optional.of(create(request, keyFilterIndex, filter.getChildFilter(keyFilterIndex)));
+  }
+
+  private static PointLookup create(QueryRequest request, int keyFilterIndex, Filter keyFilter) {
+    Filter keylessFilter = keyFilter.toBuilder().clearRhs().build();
+    QueryRequest.Builder template = request.toBuilder().clearLimit();
+    if (keyFilterIndex < 0) {
+      template.setFilter(keylessFilter);
+    } else {
+      template.getFilterBuilder().setChildFilter(keyFilterIndex, keylessFilter);
+    }
+    return new PointLookup(
+        template.build(),
+        keyFilterIndex,
+        keyFilter.getRhs().getLiteral().getValue().getString(),
+        request.getLimit());
+  }
+
+  private static boolean isKeyFilter(Filter filter) {
+    return filter.getOperator() == Operator.EQ
+        && filter.getChildFilterCount() == 0
+        && isSimpleAttributeExpression(filter.getLhs())
+        && filter.getRhs().hasLiteral()
+        && filter.getRhs().getLiteral().getValue().getValueType() == ValueType.STRING;
+  }
+
+  QueryRequest getTemplate() {
+    return this.template;
+  }
+
+  String getKey() {
+    return this.key;
+  }
+
+  int getLimit() {
+    return this.limit;
+  }
+
+  Expression getKeyColumn() {
+    return removeAlias(this.getKeyFilter(this.template).getLhs());
+  }
+
+  /**
+   * Returns the request selecting the rows of all the given keys, the key column included, with a
+   * limit enough for all the given lookups.
+   */
+  QueryRequest forKeys(Collection<String> keys, long limit) {
+    Filter inFilter =
+        this.getKeyFilter(this.template).toBuilder()
+            .setOperator(Operator.IN)
+            .setRhs(
+                Expression.newBuilder()
+                    .setLiteral(
+                        LiteralConstant.newBuilder()
+                            .setValue(
+                                Value.newBuilder()
+                                    .setValueType(ValueType.STRING_ARRAY)
+                                    .addAllStringArray(keys))))
+            .build();
+    QueryRequest.Builder request =
+        this.template.toBuilder()
+            .addSelection(this.getKeyColumn())
+            .setLimit((int) Math.min(Integer.MAX_VALUE, limit));
+    if (this.keyFilterIndex < 0) {
+      request.setFilter(inFilter);
+    } else {
+      request.getFilterBuilder().setChildFilter(this.keyFilterIndex, inFilter);
+    }
+    return request.build();
+  }
+
+  private Filter getKeyFilter(QueryRequest request) {
+    return this.keyFilterIndex < 0
+        ? request.getFilter()
+        : request.getFilter().getChildFilter(this.keyFilterIndex);
+  }
+}
@@ -0,0 +1,306 @@
+package org.hypertrace.core.query.service.batching;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+
+import com.google.common.io.BaseEncoding;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.Value;
+import org.hypertrace.core.attribute.service.cachingclient.CachingAttributeClient;
+import org.hypertrace.core.attribute.service.v1.AttributeKind;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryServiceConfig;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+
+/**
+ * Batches point lookups, such as the spans or entity attributes of a single id requested by many
+ * concurrent callers, into a single query filtering on an IN list of their keys. The first lookup
+ * of a batch waits for a short window for other lookups with the same template on the same handler
+ * and tenant, and the batch is executed when the window elapses or it reaches its maximum size.
+ *
+ * <p>Only lookups of string key columns are batched, since the values of other columns may be
+ * returned in another format than the one they are requested in. The rows of the batch are
+ * demultiplexed to its lookups by the value of the key column. Each lookup falls back to executing
+ * on its own if the rows of its key may be incomplete, because the batch was truncated by its limit
+ * or returned no row for its key, or if a row can't be attributed to a key.
+ */
+@Singleton
+public class PointLookupBatcher {
+  // Never batches a lookup, so never looks up the type of a key column
+  public static final PointLookupBatcher DISABLED =
+      new PointLookupBatcher(false, Duration.ZERO, 1, Schedulers.computation(), null);
+
+  private static final String BATCH_SIZE_METRIC = "query.point.lookup.batch.size";
+  private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+  private final boolean enabled;
+  private final Duration window;
+  private final int maxBatchSize;
+  private final Scheduler scheduler;
+  private final CachingAttributeClient attributeClient;
+  private final Map<BatchKey, Batch> pendingBatches = new HashMap<>();
+  private final Map<String, DistributionSummary> batchSizeSummaries = new ConcurrentHashMap<>();
+
+  @Inject
+  PointLookupBatcher(QueryServiceConfig config, CachingAttributeClient attributeClient) {
+    this(
+        config.getPointLookupBatchingConfig().isEnabled(),
+        config.getPointLookupBatchingConfig().getWindow(),
+        config.getPointLookupBatchingConfig().getMaxBatchSize(),
+        Schedulers.computation(),
+        attributeClient);
+  }
+
+  PointLookupBatcher(
+      boolean enabled,
+      Duration window,
+      int maxBatchSize,
+      Scheduler scheduler,
+      CachingAttributeClient attributeClient) {
+    this.enabled = enabled;
+    this.window = window;
+    this.maxBatchSize = maxBatchSize;
+    this.scheduler = scheduler;
+    this.attributeClient = attributeClient;
+  }
+
+  /**
+   * Returns a handler batching the request with concurrent lookups of other keys on the given
+   * handler if it is a point lookup.
+   */
+  public Optional<RequestHandler> batch(QueryRequest request, RequestHandler handler) {
+    if (!this.enabled || this.maxBatchSize <= 1) {
+      return Optional.empty();
+    }
+    return PointLookup.forRequest(request)
+        .map(lookup -> new BatchedPointLookupRequestHandler(this, handler, lookup));
+  }
+
+  Observable<Row> enqueue(
+      PointLookup lookup, RequestHandler handler, QueryRequest request, ExecutionContext context) {
+    return this.hasStringKeyColumn(lookup)
+        .flatMapObservable(
+            stringKey ->
+                stringKey
+                    ? this.enqueueLookup(lookup, handler, request, context)
+                    : handler.handleRequest(request, context));
+  }
+
+  /**
+   * Returns whether the key column of the given lookup is a string attribute. Keys of attributes
+   * without metadata are not trusted to be strings.
+   */
+  private Single<Boolean> hasStringKeyColumn(PointLookup lookup) {
+    return Maybe.fromOptional(getLogicalColumnName(lookup.getKeyColumn()))
+        .flatMapSingle(this.attributeClient::get)
+        .map(metadata -> metadata.getValueKind() == AttributeKind.TYPE_STRING)
+        .onErrorComplete()
+        .defaultIfEmpty(false);
+  }
+
+  private Observable<Row> enqueueLookup(
+      PointLookup lookup, RequestHandler handler, QueryRequest request, ExecutionContext context) {
+    PendingLookup pendingLookup =
+        new PendingLookup(lookup, request, context, SingleSubject.create());
+    BatchKey batchKey =
+        new BatchKey(context.getTenantId(), handler.getName(), lookup.getTemplate());
+    Batch fullBatch = null;
+    synchronized (this.pendingBatches) {
+      Batch batch = this.pendingBatches.get(batchKey);
+      if (batch == null) {
+        Batch newBatch = new Batch(handler);
+        this.pendingBatches.put(batchKey, newBatch);
+        this.scheduler.scheduleDirect(
+            () -> this.flush(batchKey, newBatch), this.window.toNanos(), TimeUnit.NANOSECONDS);
+        batch = newBatch;
+      }
+      batch.lookups.add(pendingLookup);
+      if (batch.lookups.size() >= this.maxBatchSize) {
+        this.pendingBatches.remove(batchKey);
+        fullBatch = batch;
+      }
+    }
+    if (fullBatch != null) {
+      this.execute(fullBatch);
+    }
+    return pendingLookup.getRows().flatMapObservable(rows -> rows);
+  }
+
+  private void flush(BatchKey batchKey, Batch batch) {
+    synchronized (this.pendingBatches) {
+      // The batch may have been executed already when it reached its maximum size
+      if (!this.pendingBatches.remove(batchKey, batch)) {
+        return;
+      }
+    }
+    this.execute(batch);
+  }
+
+  private void execute(Batch batch) {
+    List<PendingLookup> lookups = batch.lookups;
+    this.getBatchSizeSummary(batch.handler.getName()).record(lookups.size());
+    if (lookups.size() == 1) {
+      executeIndividually(batch.handler, lookups.get(0));
+      return;
+    }
+
+    PointLookup template = lookups.get(0).getLookup();
+    LinkedHashSet<String> keys =
+        lookups.stream()
+            .map(lookup -> lookup.getLookup().getKey())
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    long limit = lookups.stream().mapToLong(lookup -> lookup.getLookup().getLimit()).sum();
+    QueryRequest batchRequest = template.forKeys(keys, limit);
+    ExecutionContext batchContext =
+        new ExecutionContext(lookups.get(0).getContext().getTenantId(), batchRequest);
+    batch.handler.getTimeFilterColumn().ifPresent(batchContext::setTimeFilterColumn);
+    int keyIndex = indexOf(batchContext.getAllSelections(), template.getKeyColumn());
+    int lookupColumnCount = lookups.get(0).getContext().getAllSelections().size();
+
+    Observable.defer(
+            () -> {
+              Observable<Row> rows = batch.handler.handleRequest(batchRequest, batchContext);
+              lookups.forEach(lookup -> lookup.getContext().recordApproximations(batchContext));
+              return rows;
+            })
+        .subscribeOn(Schedulers.io())
+        .toList()
+        .subscribe(
+            rows -> {
+              boolean truncated = rows.size() >= limit;
+              demultiplex(batch.handler, lookups, rows, truncated, keyIndex, lookupColumnCount);
+            },
+            error ->
+                lookups.forEach(lookup -> lookup.getRows().onSuccess(Observable.error(error))));
+  }
+
+  private static void demultiplex(
+      RequestHandler handler,
+      List<PendingLookup> lookups,
+      List<Row> rows,
+      boolean truncated,
+      int keyIndex,
+      int lookupColumnCount) {
+    Map<String, List<Row>> rowsByKey = new LinkedHashMap<>();
+    for (Row row : rows) {
+      Optional<String> key =
+          keyIndex < row.getColumnCount() ? getKey(row.getColumn(keyIndex)) : Optional.empty();
+      if (key.isEmpty()) {
+        // The rows of no key can be trusted to be complete
+        lookups.forEach(lookup -> executeIndividually(handler, lookup));
+        return;
+      }
+      Row lookupRow = keyIndex >= lookupColumnCount ? removeColumn(row, keyIndex) : row;
+      rowsByKey.computeIfAbsent(key.get(), unused -> new ArrayList<>()).add(lookupRow);
+    }
+
+    for (PendingLookup lookup : lookups) {
+      List<Row> keyRows = rowsByKey.getOrDefault(lookup.getLookup().getKey(), List.of());
+      int lookupLimit = lookup.getLookup().getLimit();
+      if (keyRows.isEmpty() || (truncated && keyRows.size() < lookupLimit)) {
+        // Rows of this key may have been cut off by the limit of the batch, or returned with a key
+        // in another format than the requested one
+        executeIndividually(handler, lookup);
+      } else {
+        List<Row> lookupRows = keyRows.subList(0, Math.min(lookupLimit, keyRows.size()));
+        lookup.getRows().onSuccess(Observable.fromIterable(lookupRows));
+      }
+    }
+  }
+
+  private static void executeIndividually(RequestHandler handler, PendingLookup lookup) {
+    lookup
+        .getRows()
+        .onSuccess(
+            Observable.defer(() -> handler.handleRequest(lookup.getRequest(), lookup.getContext()))
+                .subscribeOn(Schedulers.io()));
+  }
+
+  /** Keys are strings, but stores may return the key column as bytes, as hex strings. */
+  private static Optional<String> getKey(org.hypertrace.core.query.service.api.Value value) {
+    switch (value.getValueType()) {
+      case STRING:
+        return Optional.of(value.getString());
+      case BYTES:
+        return Optional.of(HEX.encode(value.getBytes().toByteArray()));
+      default:
+        return Optional.empty();
+    }
+  }
+
+  private static Row removeColumn(Row row, int index) {
+    Row.Builder builder = row.toBuilder().clearColumn();
+    for (int i = 0; i < row.getColumnCount(); i++) {
+      if (i != index) {
+        builder.addColumn(row.getColumn(i));
+      }
+    }
+    return builder.build();
+  }
+
+  private static int indexOf(LinkedHashSet<Expression> selections, Expression column) {
+    int index = 0;
+    for (Expression selection : selections) {
+      if (selection.equals(column)) {
+        return index;
+      }
+      index++;
+    }
+    throw new IllegalStateException("Key column not selected by the batch: " + column);
+  }
+
+  private DistributionSummary getBatchSizeSummary(String handlerName) {
+    return this.batchSizeSummaries.computeIfAbsent(
+        handlerName,
+        unused ->
+            DistributionSummary.builder(BATCH_SIZE_METRIC)
+                .tag("handler", handlerName)
+                .register(PlatformMetricsRegistry.getMeterRegistry()));
+  }
+
+  @Value
+  private static class BatchKey {
+    String tenantId;
+    String handlerName;
+    QueryRequest template;
+  }
+
+  @Value
+  private static class PendingLookup {
+    PointLookup lookup;
+    QueryRequest request;
+    ExecutionContext context;
+    SingleSubject<Observable<Row>> rows;
+  }
+
+  private static class Batch {
+    private final RequestHandler handler;
+    private final List<PendingLookup> lookups = new ArrayList<>();
+
+    private Batch(RequestHandler handler) {
+      this.handler = handler;
+    }
+  }
+}
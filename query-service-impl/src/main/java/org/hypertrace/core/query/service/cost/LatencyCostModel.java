@@ -0,0 +1,199 @@
+package org.hypertrace.core.query.service.cost;
+
+import com.google.common.util.concurrent.AtomicDouble;
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.Value;
+import org.hypertrace.core.query.service.QueryServiceConfig;
+import org.hypertrace.core.query.service.QueryServiceConfig.LatencyCostModelConfig;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Learns the latency and the error rate of the handlers from the requests they execute, as
+ * exponentially weighted moving averages per handler and {@link QueryFingerprint}, and uses them
+ * to choose between the handlers whose static costs are within a tolerance of the lowest one.
+ *
+ * <p>The learned cost of a handler is blended into its static cost with a weight growing with the
+ * number of samples. A small share of the requests is sent to a random one of those handlers
+ * instead of the cheapest, so a handler that got slow or failing for a while gets the chance to
+ * prove it recovered.
+ *
+ * <p>The learned latencies and error rates are exposed as gauges with handler and fingerprint
+ * tags, served by the metrics endpoint of the admin port.
+ */
+@Singleton
+public class LatencyCostModel {
+  private static final Logger LOG = LoggerFactory.getLogger(LatencyCostModel.class);
+  private static final String LEARNED_LATENCY_GAUGE = "query.handler.learned.latency.millis";
+  private static final String LEARNED_ERROR_RATE_GAUGE = "query.handler.learned.error.rate";
+
+  public static final LatencyCostModel DISABLED =
+      new LatencyCostModel(new LatencyCostModelConfig(ConfigFactory.empty()), new Random());
+
+  private final LatencyCostModelConfig config;
+  private final Random random;
+  private final Map<LearnedCostKey, LearnedCost> learnedCosts = new ConcurrentHashMap<>();
+
+  @Inject
+  LatencyCostModel(QueryServiceConfig config) {
+    this(config.getLatencyCostModelConfig(), new Random());
+  }
+
+  LatencyCostModel(LatencyCostModelConfig config, Random random) {
+    this.config = config;
+    this.random = random;
+  }
+
+  public boolean isEnabled() {
+    return this.config.isEnabled();
+  }
+
+  /**
+   * Chooses the handler to execute the request with among the ones able to, given with their
+   * static costs. The chosen handler is returned wrapped to record its latency and errors.
+   */
+  public RequestHandler select(QueryRequest request, Map<RequestHandler, Double> staticCosts) {
+    double minStaticCost =
+        staticCosts.values().stream().mapToDouble(Double::doubleValue).min().orElseThrow();
+    List<RequestHandler> candidates = new ArrayList<>();
+    for (Entry<RequestHandler, Double> staticCost : staticCosts.entrySet()) {
+      if (staticCost.getValue() <= minStaticCost + this.config.getStaticCostTolerance()) {
+        candidates.add(staticCost.getKey());
+      }
+    }
+
+    String fingerprint = QueryFingerprint.of(request);
+    RequestHandler selectedHandler = null;
+    if (candidates.size() > 1 && this.random.nextDouble() < this.config.getExplorationRate()) {
+      selectedHandler = candidates.get(this.random.nextInt(candidates.size()));
+      LOG.debug(
+          "Exploring requestHandler: {} for fingerprint: {}",
+          selectedHandler.getName(),
+          fingerprint);
+    } else {
+      double minCost = Double.MAX_VALUE;
+      for (RequestHandler candidate : candidates) {
+        double cost = this.getCost(candidate, fingerprint, staticCosts.get(candidate));
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(
+              "Request handler: {}, fingerprint: {}, blended cost: {}",
+              candidate.getName(),
+              fingerprint,
+              cost);
+        }
+        if (cost < minCost) {
+          minCost = cost;
+          selectedHandler = candidate;
+        }
+      }
+    }
+    return new LatencyRecordingRequestHandler(selectedHandler, fingerprint, this);
+  }
+
+  /** Returns the static cost of the handler blended with its learned cost for the fingerprint. */
+  double getCost(RequestHandler handler, String fingerprint, double staticCost) {
+    LearnedCost learnedCost =
+        this.learnedCosts.get(new LearnedCostKey(handler.getName(), fingerprint));
+    if (learnedCost == null) {
+      return staticCost;
+    }
+    synchronized (learnedCost) {
+      double sampleRatio =
+          learnedCost.samples / (double) Math.max(1, this.config.getMinSamples());
+      double weight = this.config.getLearnedCostWeight() * Math.min(1, sampleRatio);
+      return (1 - weight) * staticCost
+          + weight * learnedCost.getCost(this.config.getReferenceLatency());
+    }
+  }
+
+  void record(String handlerName, String fingerprint, Duration latency, boolean error) {
+    LearnedCostKey key = new LearnedCostKey(handlerName, fingerprint);
+    LearnedCost learnedCost = this.learnedCosts.get(key);
+    if (learnedCost == null) {
+      if (this.learnedCosts.size() >= this.config.getMaxFingerprints()) {
+        LOG.debug("Not learning the cost of {}, the maximum number is reached", key);
+        return;
+      }
+      learnedCost = this.learnedCosts.computeIfAbsent(key, LearnedCost::register);
+    }
+    synchronized (learnedCost) {
+      learnedCost.add(latency, error, this.config.getSmoothingFactor());
+    }
+  }
+
+  @Value
+  private static class LearnedCostKey {
+    String handlerName;
+    String fingerprint;
+  }
+
+  /** The moving averages of a handler for a fingerprint. Guarded by its own lock. */
+  private static final class LearnedCost {
+    private final AtomicDouble latencyMillis;
+    private final AtomicDouble errorRate;
+    private long samples;
+    private boolean hasLatency;
+
+    private LearnedCost(AtomicDouble latencyMillis, AtomicDouble errorRate) {
+      this.latencyMillis = latencyMillis;
+      this.errorRate = errorRate;
+    }
+
+    private static LearnedCost register(LearnedCostKey key) {
+      Map<String, String> tags =
+          Map.of("handler", key.getHandlerName(), "fingerprint", key.getFingerprint());
+      AtomicDouble latencyMillis =
+          PlatformMetricsRegistry.registerGauge(LEARNED_LATENCY_GAUGE, tags, new AtomicDouble());
+      AtomicDouble errorRate =
+          PlatformMetricsRegistry.registerGauge(LEARNED_ERROR_RATE_GAUGE, tags, new AtomicDouble());
+      return new LearnedCost(latencyMillis, errorRate);
+    }
+
+    private void add(Duration latency, boolean error, double smoothingFactor) {
+      double errorSample = error ? 1 : 0;
+      this.errorRate.set(
+          this.samples == 0
+              ? errorSample
+              : ewma(this.errorRate.get(), errorSample, smoothingFactor));
+      // Failures tend to be fast, so only successful executions count towards the latency
+      if (!error) {
+        double latencySample = latency.toNanos() / 1e6;
+        this.latencyMillis.set(
+            this.hasLatency
+                ? ewma(this.latencyMillis.get(), latencySample, smoothingFactor)
+                : latencySample);
+        this.hasLatency = true;
+      }
+      this.samples++;
+    }
+
+    /**
+     * Maps the latency to [0, 1), reaching 0.5 at the reference latency, and adds the error rate.
+     * A handler that never succeeded has the highest cost.
+     */
+    private double getCost(Duration referenceLatency) {
+      if (!this.hasLatency) {
+        return 1;
+      }
+      double latencyMillis = this.latencyMillis.get();
+      double latencyCost = latencyMillis / (latencyMillis + referenceLatency.toMillis());
+      return Math.min(1, latencyCost + this.errorRate.get());
+    }
+
+    private static double ewma(double average, double sample, double smoothingFactor) {
+      return average + smoothingFactor * (sample - average);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.hypertrace.core.query.service.cost;
+
+import io.reactivex.rxjava3.core.Observable;
+import java.time.Duration;
+import java.util.Optional;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryCost;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+
+/**
+ * Records the latency and the outcome of the requests executed by the wrapped handler to the cost
+ * model. Executions that are cancelled before completing are not recorded.
+ */
+class LatencyRecordingRequestHandler implements RequestHandler {
+  private final RequestHandler delegate;
+  private final String fingerprint;
+  private final LatencyCostModel costModel;
+
+  LatencyRecordingRequestHandler(
+      RequestHandler delegate, String fingerprint, LatencyCostModel costModel) {
+    this.delegate = delegate;
+    this.fingerprint = fingerprint;
+    this.costModel = costModel;
+  }
+
+  RequestHandler getDelegate() {
+    return this.delegate;
+  }
+
+  @Override
+  public String getName() {
+    return this.delegate.getName();
+  }
+
+  @Override
+  public Optional<String> getTimeFilterColumn() {
+    return this.delegate.getTimeFilterColumn();
+  }
+
+  @Override
+  public Optional<Duration> getRetention() {
+    return this.delegate.getRetention();
+  }
+
+  @Override
+  public Optional<Duration> getTimeGranularity() {
+    return this.delegate.getTimeGranularity();
+  }
+
+  @Override
+  public QueryCost canHandle(QueryRequest request, ExecutionContext context) {
+    return this.delegate.canHandle(request, context);
+  }
+
+  @Override
+  public Observable<Row> handleRequest(QueryRequest request, ExecutionContext executionContext) {
+    // Deferred, as handlers may already query their data store when handling the request
+    return Observable.defer(
+        () -> {
+          long startTimeNanos = System.nanoTime();
+          return this.delegate
+              .handleRequest(request, executionContext)
+              .doOnComplete(() -> this.record(startTimeNanos, false))
+              .doOnError(error -> this.record(startTimeNanos, true));
+        });
+  }
+
+  private void record(long startTimeNanos, boolean error) {
+    this.costModel.record(
+        this.delegate.getName(),
+        this.fingerprint,
+        Duration.ofNanos(System.nanoTime() - startTimeNanos),
+        error);
+  }
+}
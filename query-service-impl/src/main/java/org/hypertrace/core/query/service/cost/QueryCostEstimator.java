@@ -0,0 +1,170 @@
+package org.hypertrace.core.query.service.cost;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isDateTimeFunction;
+
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.Value;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryServiceConfig;
+import org.hypertrace.core.query.service.QueryServiceConfig.CostValidationConfig;
+import org.hypertrace.core.query.service.QueryServiceConfig.CostValidationConfig.CostValidationMode;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates the rows a request scans and the groups it computes before it is executed.
+ *
+ * <p>The scanned rows are the configured ingestion rate times the hours of the time range, reduced
+ * by the selectivity of each equality filter. Requests that only aggregate in periods aligned to
+ * the rollup granularity are expected to be served by a rollup view, and use its rate instead. The
+ * groups are the number of time buckets times the configured cardinalities of the other group by
+ * columns, until the results of a {@link QueryFingerprint} of the tenant were observed without
+ * being cut off by the limit: those are the actual number of groups.
+ */
+@Singleton
+public class QueryCostEstimator {
+  private static final Logger LOG = LoggerFactory.getLogger(QueryCostEstimator.class);
+  private static final double HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+  public static final QueryCostEstimator DISABLED =
+      new QueryCostEstimator(new CostValidationConfig(ConfigFactory.empty()));
+
+  private final CostValidationConfig config;
+  private final Map<String, ObservedGroups> observedGroups = new ConcurrentHashMap<>();
+
+  @Inject
+  QueryCostEstimator(QueryServiceConfig config) {
+    this(config.getCostValidationConfig());
+  }
+
+  public QueryCostEstimator(CostValidationConfig config) {
+    this.config = config;
+  }
+
+  /** Returns the estimated cost of the request, unless it has no time range to estimate it by. */
+  public Optional<QueryCostEstimate> estimate(String tenantId, QueryRequest request) {
+    Optional<Duration> timeRange = QueryFingerprint.getTimeRangeDuration(request.getFilter());
+    if (timeRange.isEmpty()) {
+      return Optional.empty();
+    }
+    Optional<Duration> period = new ExecutionContext(tenantId, request).getTimeSeriesPeriod();
+    long rowsPerHour =
+        this.isRollupEligible(request, period.orElse(timeRange.get()))
+            ? this.config.getRollupRowsPerHour()
+            : this.config.getRowsPerHour();
+    double scannedRows =
+        rowsPerHour
+            * (timeRange.get().toMillis() / HOUR_MILLIS)
+            * this.getSelectivity(request.getFilter());
+
+    double groups = 1;
+    if (request.getGroupByCount() > 0) {
+      ObservedGroups observed = this.observedGroups.get(getKey(tenantId, request));
+      if (observed != null && !observed.isTruncated()) {
+        groups = observed.getGroups();
+      } else {
+        groups = Math.min(scannedRows, this.getStaticGroups(request, timeRange.get(), period));
+      }
+    }
+    return Optional.of(
+        new QueryCostEstimate(
+            (long) Math.ceil(Math.min(scannedRows, Long.MAX_VALUE)),
+            (long) Math.ceil(Math.min(groups, Long.MAX_VALUE)),
+            timeRange.get(),
+            period));
+  }
+
+  /** Records the number of rows the request returned, to learn the groups it computes. */
+  public void record(String tenantId, QueryRequest request, long rowCount) {
+    if (this.config.getMode() == CostValidationMode.DISABLED || request.getGroupByCount() == 0) {
+      return;
+    }
+    // The groups of the same query differ with the data of each tenant
+    String key = getKey(tenantId, request);
+    if (!this.observedGroups.containsKey(key)
+        && this.observedGroups.size() >= this.config.getMaxFingerprints()) {
+      LOG.debug("Not learning the groups of {}, the maximum number is reached", key);
+      return;
+    }
+    // Reaching the limit only tells the groups are at least as many
+    boolean truncated = request.getLimit() > 0 && rowCount >= request.getLimit();
+    this.observedGroups.merge(
+        key,
+        new ObservedGroups(rowCount, truncated),
+        (previous, sample) ->
+            new ObservedGroups(
+                previous.getGroups()
+                    + this.config.getSmoothingFactor()
+                        * (sample.getGroups() - previous.getGroups()),
+                sample.isTruncated()));
+  }
+
+  private static String getKey(String tenantId, QueryRequest request) {
+    return tenantId + ":" + QueryFingerprint.of(request);
+  }
+
+  private boolean isRollupEligible(QueryRequest request, Duration period) {
+    long granularityMillis = this.config.getRollupGranularity().toMillis();
+    return request.getAggregationCount() > 0
+        && request.getGroupByList().containsAll(request.getSelectionList())
+        && granularityMillis > 0
+        && period.toMillis() % granularityMillis == 0;
+  }
+
+  /** Multiplies the selectivity of every equality filter of the conjunction. */
+  private double getSelectivity(Filter filter) {
+    if (filter.getOperator() == Operator.AND && filter.getChildFilterCount() > 0) {
+      return filter.getChildFilterList().stream()
+          .mapToDouble(this::getSelectivity)
+          .reduce(1, (left, right) -> left * right);
+    }
+    if (filter.getChildFilterCount() == 0
+        && (filter.getOperator() == Operator.EQ || filter.getOperator() == Operator.IN)) {
+      return this.config.getFilterSelectivity();
+    }
+    return 1;
+  }
+
+  private double getStaticGroups(
+      QueryRequest request, Duration timeRange, Optional<Duration> period) {
+    double groups =
+        period
+            .filter(duration -> !duration.isZero())
+            .map(duration -> Math.ceil(timeRange.toMillis() / (double) duration.toMillis()))
+            .orElse(1D);
+    for (Expression groupBy : request.getGroupByList()) {
+      if (!isDateTimeFunction(groupBy)) {
+        groups *=
+            getLogicalColumnName(groupBy)
+                .map(this.config.getGroupByCardinalities()::get)
+                .orElse(this.config.getDefaultGroupByCardinality());
+      }
+    }
+    return groups;
+  }
+
+  @Value
+  public static class QueryCostEstimate {
+    long scannedRows;
+    long groups;
+    Duration timeRange;
+    Optional<Duration> period;
+  }
+
+  @Value
+  private static class ObservedGroups {
+    double groups;
+    boolean truncated;
+  }
+}
@@ -0,0 +1,108 @@
+package org.hypertrace.core.query.service.cost;
+
+import com.google.common.hash.Hashing;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/**
+ * Identifies the shape of a request, which is what the latency of a handler mostly depends on: the
+ * selections, aggregations, group bys, order bys and the structure of the filter, but not the
+ * literal values compared against, nor the limit. As the time range drives how much data is
+ * scanned, its duration is part of the fingerprint, rounded to a power of two hours.
+ */
+public final class QueryFingerprint {
+  private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+  private QueryFingerprint() {}
+
+  public static String of(QueryRequest request) {
+    QueryRequest shape =
+        request.toBuilder()
+            .setFilter(withoutLiteralValues(request.getFilter()))
+            .clearLimit()
+            .clearOffset()
+            .clearContinuationToken()
+            .build();
+    String shapeHash = Hashing.murmur3_128().hashBytes(shape.toByteArray()).toString();
+    return getTimeRangeDuration(request.getFilter())
+        .map(duration -> shapeHash.substring(0, 16) + ":" + toHoursBucket(duration))
+        .orElse(shapeHash.substring(0, 16));
+  }
+
+  private static Filter withoutLiteralValues(Filter filter) {
+    if (filter.getChildFilterCount() > 0) {
+      Filter.Builder builder = filter.toBuilder().clearChildFilter();
+      filter
+          .getChildFilterList()
+          .forEach(child -> builder.addChildFilter(withoutLiteralValues(child)));
+      return builder.build();
+    }
+    if (!filter.getRhs().hasLiteral()) {
+      return filter;
+    }
+    ValueType valueType = filter.getRhs().getLiteral().getValue().getValueType();
+    return filter.toBuilder()
+        .setRhs(
+            Expression.newBuilder()
+                .setLiteral(
+                    LiteralConstant.newBuilder()
+                        .setValue(Value.newBuilder().setValueType(valueType))))
+        .build();
+  }
+
+  /**
+   * Returns the duration between the lower and upper bound on the same column in the conjunction
+   * of the filter, which is how the time range of a request is expressed.
+   */
+  static Optional<Duration> getTimeRangeDuration(Filter filter) {
+    Map<Expression, Long> lowerBounds = new HashMap<>();
+    Map<Expression, Long> upperBounds = new HashMap<>();
+    collectBounds(filter, lowerBounds, upperBounds);
+    return lowerBounds.entrySet().stream()
+        .filter(lowerBound -> upperBounds.containsKey(lowerBound.getKey()))
+        .map(lowerBound -> upperBounds.get(lowerBound.getKey()) - lowerBound.getValue())
+        .filter(durationMillis -> durationMillis >= 0)
+        .findFirst()
+        .map(Duration::ofMillis);
+  }
+
+  private static void collectBounds(
+      Filter filter, Map<Expression, Long> lowerBounds, Map<Expression, Long> upperBounds) {
+    if (filter.getOperator() == Operator.AND) {
+      filter.getChildFilterList().forEach(child -> collectBounds(child, lowerBounds, upperBounds));
+      return;
+    }
+    if (filter.getChildFilterCount() > 0
+        || !filter.getRhs().hasLiteral()
+        || filter.getRhs().getLiteral().getValue().getValueType() != ValueType.LONG) {
+      return;
+    }
+    long bound = filter.getRhs().getLiteral().getValue().getLong();
+    switch (filter.getOperator()) {
+      case GE:
+      case GT:
+        lowerBounds.merge(filter.getLhs(), bound, Math::max);
+        break;
+      case LE:
+      case LT:
+        upperBounds.merge(filter.getLhs(), bound, Math::min);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static String toHoursBucket(Duration duration) {
+    long hours = duration.toMillis() / HOUR_MILLIS;
+    return hours == 0 ? "<1h" : "<" + (Long.highestOneBit(hours) << 1) + "h";
+  }
+}
@@ -0,0 +1,91 @@
+package org.hypertrace.core.query.service.federation;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryCost;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+
+/**
+ * Executes the parts of a split IN list in parallel on the same handler, and merges their rows into
+ * the result of the whole list. The whole request is executed instead if the rows of the parts
+ * turn out not to be mergeable.
+ */
+class InListSplitRequestHandler implements RequestHandler {
+  private final RequestHandler handler;
+  private final List<QueryRequest> partRequests;
+  private final boolean distinct;
+  private final Single<Boolean> mergeable;
+  private final int maxConcurrentQueries;
+
+  InListSplitRequestHandler(
+      RequestHandler handler,
+      List<QueryRequest> partRequests,
+      boolean distinct,
+      Single<Boolean> mergeable,
+      int maxConcurrentQueries) {
+    this.handler = handler;
+    this.partRequests = partRequests;
+    this.distinct = distinct;
+    this.mergeable = mergeable;
+    this.maxConcurrentQueries = maxConcurrentQueries;
+  }
+
+  @Override
+  public String getName() {
+    return "in-list-split[" + this.handler.getName() + "]";
+  }
+
+  @Override
+  public Optional<String> getTimeFilterColumn() {
+    return this.handler.getTimeFilterColumn();
+  }
+
+  @Override
+  public QueryCost canHandle(QueryRequest request, ExecutionContext context) {
+    return this.handler.canHandle(request, context);
+  }
+
+  @Override
+  public Observable<Row> handleRequest(QueryRequest request, ExecutionContext executionContext) {
+    return this.mergeable.flatMapObservable(
+        mergeable ->
+            mergeable
+                ? this.executeParts(request, executionContext)
+                : this.handler.handleRequest(request, executionContext));
+  }
+
+  private Observable<Row> executeParts(QueryRequest request, ExecutionContext executionContext) {
+    List<Observable<Row>> partRows =
+        this.partRequests.stream()
+            .map(partRequest -> this.execute(partRequest, executionContext))
+            .collect(Collectors.toList());
+    Observable<Row> rows = Observable.merge(partRows, this.maxConcurrentQueries);
+    if (this.distinct) {
+      rows = rows.distinct();
+    }
+    return request.getLimit() > 0 ? rows.take(request.getLimit()) : rows;
+  }
+
+  private Observable<Row> execute(QueryRequest partRequest, ExecutionContext executionContext) {
+    ExecutionContext partContext =
+        new ExecutionContext(executionContext.getTenantId(), partRequest);
+    this.handler.getTimeFilterColumn().ifPresent(partContext::setTimeFilterColumn);
+    // Handlers query their data store while handling the request, so it is deferred to a separate
+    // thread per part for the parts to be queried in parallel. They convert the request eagerly,
+    // so the approximations they chose are recorded by the time they return.
+    return Observable.defer(
+            () -> {
+              Observable<Row> rows = this.handler.handleRequest(partRequest, partContext);
+              executionContext.recordApproximations(partContext);
+              return rows;
+            })
+        .subscribeOn(Schedulers.io());
+  }
+}
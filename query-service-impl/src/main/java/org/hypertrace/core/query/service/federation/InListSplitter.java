@@ -0,0 +1,191 @@
+package org.hypertrace.core.query.service.federation;
+
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_BOOL_ARRAY;
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_DOUBLE_ARRAY;
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_INT64_ARRAY;
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_STRING_ARRAY;
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+
+import com.google.common.collect.Lists;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import org.hypertrace.core.attribute.service.cachingclient.CachingAttributeClient;
+import org.hypertrace.core.attribute.service.v1.AttributeKind;
+import org.hypertrace.core.query.service.QueryServiceConfig;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Value;
+
+/**
+ * Splits a selection filtering on a large IN list, such as the trace or span ids of a drill down,
+ * into requests of at most a configured number of values each. Each value of the list on a single
+ * valued column matches a disjoint set of rows, so the rows of the whole list are the union of the
+ * rows of its parts. A row of a multi-valued column may match values of several parts though, so
+ * those are only split for distinct selections, whose rows are deduplicated when merged.
+ *
+ * <p>Only requests whose rows can be merged by concatenation are split: selections without
+ * aggregations, group by, order by or offset. The limit of a request applies to every part as well
+ * as to the merged rows.
+ */
+public class InListSplitter {
+  // Never splits a request, so never looks up the kind of an IN list column
+  public static final InListSplitter DISABLED =
+      new InListSplitter(false, Integer.MAX_VALUE, 1, null);
+
+  private static final List<AttributeKind> ARRAY_KINDS =
+      List.of(TYPE_STRING_ARRAY, TYPE_BOOL_ARRAY, TYPE_DOUBLE_ARRAY, TYPE_INT64_ARRAY);
+
+  private final boolean enabled;
+  private final int maxValuesPerQuery;
+  private final int maxConcurrentQueries;
+  private final CachingAttributeClient attributeClient;
+
+  @Inject
+  InListSplitter(QueryServiceConfig config, CachingAttributeClient attributeClient) {
+    this(
+        config.getInListSplittingConfig().isEnabled(),
+        config.getInListSplittingConfig().getMaxValuesPerQuery(),
+        config.getInListSplittingConfig().getMaxConcurrentQueries(),
+        attributeClient);
+  }
+
+  InListSplitter(
+      boolean enabled,
+      int maxValuesPerQuery,
+      int maxConcurrentQueries,
+      CachingAttributeClient attributeClient) {
+    this.enabled = enabled;
+    this.maxValuesPerQuery = maxValuesPerQuery;
+    this.maxConcurrentQueries = maxConcurrentQueries;
+    this.attributeClient = attributeClient;
+  }
+
+  /**
+   * Returns a handler executing the request in parts on the given handler if it filters on an IN
+   * list of more values than a single query may have, and the rows of its parts can be merged.
+   */
+  public Optional<RequestHandler> split(QueryRequest request, RequestHandler handler) {
+    if (!this.enabled || !isMergeableByConcatenation(request)) {
+      return Optional.empty();
+    }
+    Filter filter = request.getFilter();
+    if (this.isSplittable(filter)) {
+      return Optional.of(this.createHandler(request, handler, filter, Function.identity()));
+    }
+    if (filter.getOperator() != Operator.AND) {
+      return Optional.empty();
+    }
+    // Splits the first IN list that is too large, the other conjuncts are kept in every part
+    for (int i = 0; i < filter.getChildFilterCount(); i++) {
+      Filter childFilter = filter.getChildFilter(i);
+      if (this.isSplittable(childFilter)) {
+        int childIndex = i;
+        return Optional.of(
+            this.createHandler(
+                request,
+                handler,
+                childFilter,
+                partFilter -> filter.toBuilder().setChildFilter(childIndex, partFilter).build()));
+      }
+    }
+    return Optional.empty();
+  }
+
+  private RequestHandler createHandler(
+      QueryRequest request,
+      RequestHandler handler,
+      Filter inFilter,
+      Function<Filter, Filter> toRequestFilter) {
+    List<QueryRequest> partRequests =
+        this.splitValues(inFilter.getRhs().getLiteral().getValue()).stream()
+            .map(
+                values ->
+                    inFilter.toBuilder()
+                        .setRhs(
+                            Expression.newBuilder()
+                                .setLiteral(LiteralConstant.newBuilder().setValue(values)))
+                        .build())
+            .map(
+                partFilter ->
+                    request.toBuilder().setFilter(toRequestFilter.apply(partFilter)).build())
+            .collect(Collectors.toUnmodifiableList());
+    return new InListSplitRequestHandler(
+        handler,
+        partRequests,
+        request.getDistinctSelections(),
+        this.canMergeParts(inFilter, request.getDistinctSelections()),
+        this.maxConcurrentQueries);
+  }
+
+  /**
+   * Returns whether the rows of the parts can be merged: those of distinct selections are
+   * deduplicated, the others only if the column is single valued. Columns without attribute
+   * metadata are not trusted to be single valued.
+   */
+  private Single<Boolean> canMergeParts(Filter inFilter, boolean distinct) {
+    if (distinct) {
+      return Single.just(true);
+    }
+    return Maybe.fromOptional(getLogicalColumnName(inFilter.getLhs()))
+        .flatMapSingle(this.attributeClient::get)
+        .map(metadata -> !ARRAY_KINDS.contains(metadata.getValueKind()))
+        .onErrorComplete()
+        .defaultIfEmpty(false);
+  }
+
+  /** Deduplicated first, for no row to be matched by two parts. */
+  private List<Value> splitValues(Value value) {
+    switch (value.getValueType()) {
+      case STRING_ARRAY:
+        return Lists.partition(distinct(value.getStringArrayList()), this.maxValuesPerQuery)
+            .stream()
+            .map(part -> value.toBuilder().clearStringArray().addAllStringArray(part).build())
+            .collect(Collectors.toUnmodifiableList());
+      case BYTES_ARRAY:
+        return Lists.partition(distinct(value.getBytesArrayList()), this.maxValuesPerQuery)
+            .stream()
+            .map(part -> value.toBuilder().clearBytesArray().addAllBytesArray(part).build())
+            .collect(Collectors.toUnmodifiableList());
+      default:
+        throw new IllegalArgumentException("Unsupported IN list value type: " + value);
+    }
+  }
+
+  private static <T> List<T> distinct(List<T> values) {
+    return values.stream().distinct().collect(Collectors.toUnmodifiableList());
+  }
+
+  private boolean isSplittable(Filter filter) {
+    return filter.getOperator() == Operator.IN
+        && filter.getChildFilterCount() == 0
+        && filter.getRhs().getValueCase() == Expression.ValueCase.LITERAL
+        && getValueCount(filter.getRhs().getLiteral().getValue()) > this.maxValuesPerQuery;
+  }
+
+  private static int getValueCount(Value value) {
+    switch (value.getValueType()) {
+      case STRING_ARRAY:
+        return value.getStringArrayCount();
+      case BYTES_ARRAY:
+        return value.getBytesArrayCount();
+      default:
+        return 0;
+    }
+  }
+
+  private static boolean isMergeableByConcatenation(QueryRequest request) {
+    return request.getAggregationCount() == 0
+        && request.getGroupByCount() == 0
+        && request.getOrderByCount() == 0
+        && request.getOffset() == 0;
+  }
+}
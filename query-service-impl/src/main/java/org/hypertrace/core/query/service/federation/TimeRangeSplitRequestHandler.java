@@ -0,0 +1,78 @@
+package org.hypertrace.core.query.service.federation;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.PartialAggregation;
+import org.hypertrace.core.query.service.QueryCost;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.federation.TimeRangeSplitter.TimeRangePart;
+
+/**
+ * Executes the parts of a split time range in parallel, each on its own handler, and merges their
+ * rows into the result of the whole time range.
+ */
+class TimeRangeSplitRequestHandler implements RequestHandler {
+  private final PartialAggregation aggregation;
+  private final List<TimeRangePart> parts;
+  private final String timeFilterColumn;
+
+  TimeRangeSplitRequestHandler(
+      PartialAggregation aggregation, List<TimeRangePart> parts, String timeFilterColumn) {
+    this.aggregation = aggregation;
+    this.parts = parts;
+    this.timeFilterColumn = timeFilterColumn;
+  }
+
+  @Override
+  public String getName() {
+    return this.parts.stream()
+        .map(part -> part.getHandler().getName())
+        .collect(Collectors.joining(",", "time-range-split[", "]"));
+  }
+
+  @Override
+  public Optional<String> getTimeFilterColumn() {
+    return Optional.of(this.timeFilterColumn);
+  }
+
+  /** The cost of the most expensive part, as the parts are executed in parallel. */
+  @Override
+  public QueryCost canHandle(QueryRequest request, ExecutionContext context) {
+    double maxCost = 0;
+    for (TimeRangePart part : this.parts) {
+      double cost = part.getHandler().canHandle(request, context).getCost();
+      if (cost < 0) {
+        return QueryCost.UNSUPPORTED;
+      }
+      maxCost = Math.max(maxCost, cost);
+    }
+    return new QueryCost(maxCost);
+  }
+
+  @Override
+  public Observable<Row> handleRequest(QueryRequest request, ExecutionContext executionContext) {
+    List<Observable<Row>> partRows =
+        this.parts.stream()
+            .map(part -> this.execute(part, executionContext.getTenantId()))
+            .collect(Collectors.toList());
+    return Observable.merge(partRows).toList().flattenAsObservable(this.aggregation::merge);
+  }
+
+  private Observable<Row> execute(TimeRangePart part, String tenantId) {
+    QueryRequest partRequest =
+        this.aggregation.forTimeRange(
+            this.timeFilterColumn, part.getStartTimeMillis(), part.getEndTimeMillis());
+    ExecutionContext partContext = new ExecutionContext(tenantId, partRequest);
+    partContext.setTimeFilterColumn(this.timeFilterColumn);
+    // Handlers query their data store while handling the request, so it is deferred to a separate
+    // thread per part for the parts to be queried in parallel.
+    return Observable.defer(() -> part.getHandler().handleRequest(partRequest, partContext))
+        .subscribeOn(Schedulers.io());
+  }
+}
@@ -0,0 +1,172 @@
+package org.hypertrace.core.query.service.federation;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import lombok.Value;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.PartialAggregation;
+import org.hypertrace.core.query.service.QueryServiceConfig;
+import org.hypertrace.core.query.service.QueryTimeRange;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.QueryRequest;
+
+/**
+ * Splits the time range of an aggregation across handlers of different granularities: the recent
+ * part is served by the handler with the finest granularity, as far back as it retains data, and
+ * older parts by handlers of coarser granularities and longer retentions. The oldest part goes to
+ * the handler with the longest retention, even if it does not retain all of it, which is what
+ * happens without splitting as well.
+ *
+ * <p>The boundaries between parts are aligned to the granularity of the coarser handler and to the
+ * time series period of the request, so no time bucket is queried from two handlers.
+ */
+public class TimeRangeSplitter {
+  public static final TimeRangeSplitter DISABLED = new TimeRangeSplitter(false, Clock.systemUTC());
+
+  private final boolean enabled;
+  private final Clock clock;
+
+  @Inject
+  TimeRangeSplitter(QueryServiceConfig config) {
+    this(config.getTimeRangeSplittingConfig().isEnabled(), Clock.systemUTC());
+  }
+
+  TimeRangeSplitter(boolean enabled, Clock clock) {
+    this.enabled = enabled;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns a handler executing the request in parts across the given handlers, all of which can
+   * handle the request, if the handler with the finest granularity does not retain its whole time
+   * range and the aggregations of the parts can be merged.
+   */
+  public Optional<RequestHandler> split(
+      QueryRequest request,
+      ExecutionContext executionContext,
+      Collection<RequestHandler> handlers) {
+    if (!this.enabled || handlers.size() < 2) {
+      return Optional.empty();
+    }
+
+    List<RequestHandler> splittableHandlers = getSplittableHandlers(handlers);
+    if (splittableHandlers.size() < 2) {
+      return Optional.empty();
+    }
+    String timeFilterColumn = splittableHandlers.get(0).getTimeFilterColumn().orElseThrow();
+    Optional<QueryTimeRange> timeRange =
+        getTimeRange(request, executionContext.getTenantId(), timeFilterColumn);
+    if (timeRange.isEmpty()) {
+      return Optional.empty();
+    }
+
+    List<TimeRangePart> parts =
+        this.plan(
+            splittableHandlers,
+            timeRange.get().getStartTime().toEpochMilli(),
+            timeRange.get().getEndTime().toEpochMilli(),
+            executionContext.getTimeSeriesPeriod());
+    if (parts.size() < 2) {
+      return Optional.empty();
+    }
+    // The handlers are only known to return all groups of a part if they are bounded by its range
+    return PartialAggregation.forRequest(request, executionContext, List.of())
+        .filter(PartialAggregation::hasBoundedGroups)
+        .map(aggregation -> new TimeRangeSplitRequestHandler(aggregation, parts, timeFilterColumn));
+  }
+
+  /**
+   * Plans the parts of the given time range from the most recent one backwards. The handlers are
+   * ordered by granularity, each with a longer retention than the previous one.
+   */
+  List<TimeRangePart> plan(
+      List<RequestHandler> handlers,
+      long startTimeMillis,
+      long endTimeMillis,
+      Optional<Duration> timeSeriesPeriod) {
+    long nowMillis = this.clock.millis();
+    List<TimeRangePart> parts = new ArrayList<>();
+    long partEndTimeMillis = endTimeMillis;
+    for (int i = 0; i < handlers.size() && partEndTimeMillis > startTimeMillis; i++) {
+      RequestHandler handler = handlers.get(i);
+      long partStartTimeMillis = startTimeMillis;
+      if (i < handlers.size() - 1) {
+        long alignmentMillis =
+            Math.max(
+                getTimeGranularity(handlers.get(i + 1)).toMillis(),
+                timeSeriesPeriod.map(Duration::toMillis).orElse(1L));
+        long retentionStartMillis = nowMillis - getRetention(handler).toMillis();
+        partStartTimeMillis =
+            Math.max(startTimeMillis, alignUp(retentionStartMillis, alignmentMillis));
+      }
+      if (partStartTimeMillis < partEndTimeMillis) {
+        parts.add(0, new TimeRangePart(handler, partStartTimeMillis, partEndTimeMillis));
+        partEndTimeMillis = partStartTimeMillis;
+      }
+    }
+    return parts;
+  }
+
+  private static List<RequestHandler> getSplittableHandlers(Collection<RequestHandler> handlers) {
+    List<RequestHandler> sortedHandlers =
+        handlers.stream()
+            .filter(
+                handler ->
+                    handler.getTimeFilterColumn().isPresent()
+                        && handler.getRetention().isPresent()
+                        && handler.getTimeGranularity().isPresent())
+            .sorted(
+                Comparator.comparing(TimeRangeSplitter::getTimeGranularity)
+                    .thenComparing(TimeRangeSplitter::getRetention, Comparator.reverseOrder()))
+            .collect(Collectors.toList());
+    if (sortedHandlers.isEmpty()) {
+      return sortedHandlers;
+    }
+
+    // A coarser handler is only of use if it retains data for longer
+    String timeFilterColumn = sortedHandlers.get(0).getTimeFilterColumn().orElseThrow();
+    List<RequestHandler> splittableHandlers = new ArrayList<>();
+    Duration longestRetention = Duration.ZERO;
+    for (RequestHandler handler : sortedHandlers) {
+      if (handler.getTimeFilterColumn().orElseThrow().equals(timeFilterColumn)
+          && getRetention(handler).compareTo(longestRetention) > 0) {
+        splittableHandlers.add(handler);
+        longestRetention = getRetention(handler);
+      }
+    }
+    return splittableHandlers;
+  }
+
+  private static Optional<QueryTimeRange> getTimeRange(
+      QueryRequest request, String tenantId, String timeFilterColumn) {
+    ExecutionContext executionContext = new ExecutionContext(tenantId, request);
+    executionContext.setTimeFilterColumn(timeFilterColumn);
+    return executionContext.getQueryTimeRange();
+  }
+
+  private static long alignUp(long timeMillis, long alignmentMillis) {
+    return Math.floorDiv(timeMillis + alignmentMillis - 1, alignmentMillis) * alignmentMillis;
+  }
+
+  private static Duration getRetention(RequestHandler handler) {
+    return handler.getRetention().orElseThrow();
+  }
+
+  private static Duration getTimeGranularity(RequestHandler handler) {
+    return handler.getTimeGranularity().orElseThrow();
+  }
+
+  @Value
+  static class TimeRangePart {
+    RequestHandler handler;
+    long startTimeMillis;
+    long endTimeMillis;
+  }
+}
@@ -0,0 +1,544 @@
+package org.hypertrace.core.query.service.filter;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.createAlwaysFalseFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isAlwaysFalseFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isSimpleAttributeExpression;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.plan.RelOptPredicateList;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexSimplify;
+import org.apache.calcite.rex.RexUnknownAs;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlOperator;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.NlsString;
+import org.apache.calcite.util.Sarg;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/**
+ * Simplifies a filter tree with the predicate simplification and constant folding of Calcite,
+ * which reasons about the comparisons of each column as sets of ranges. It catches what {@link
+ * FilterOptimizer} doesn't, such as ranges subsumed by others inside an OR, negations of
+ * comparisons and contradictions between equalities and ranges.
+ *
+ * <p>Only the comparisons of single-valued columns with literals are given to Calcite, as its
+ * rules assume a column holds a single value, and string literals only for string columns, as the
+ * data stores convert them to the type of other columns first. Every other filter is an opaque
+ * boolean input that is kept as is. A simplified filter that has no equivalent in the filter API,
+ * such as a null check, leaves the filter unchanged.
+ */
+class CalciteFilterSimplifier {
+  private static final Filter ALWAYS_TRUE = Filter.getDefaultInstance();
+  private static final Filter ALWAYS_FALSE = createAlwaysFalseFilter();
+
+  private final RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+  private final RexBuilder rexBuilder = new RexBuilder(this.typeFactory);
+  private final RexSimplify rexSimplify =
+      new RexSimplify(this.rexBuilder, RelOptPredicateList.EMPTY, RexUtil.EXECUTOR);
+
+  Filter simplify(
+      Filter filter, Predicate<String> isSingleValuedColumn, Predicate<String> isStringColumn) {
+    FilterConversion conversion = new FilterConversion(isSingleValuedColumn, isStringColumn);
+    // Filters drop the rows they evaluate to unknown for, like a where clause
+    RexNode simplifiedRex = this.rexSimplify.simplifyUnknownAsFalse(conversion.toRex(filter));
+    // Calcite may expand a filter, such as a NOT IN of a few values into ranges
+    return conversion
+        .toFilter(simplifiedRex)
+        .filter(simplified -> simplified.getSerializedSize() <= filter.getSerializedSize())
+        .orElse(filter);
+  }
+
+  /** The inputs of a filter converted to Calcite, which are either columns or opaque filters. */
+  private final class FilterConversion {
+    private final Predicate<String> isSingleValuedColumn;
+    private final Predicate<String> isStringColumn;
+    private final Map<Object, RexInputRef> inputRefs = new LinkedHashMap<>();
+    private final List<Object> inputs = new ArrayList<>();
+
+    private FilterConversion(
+        Predicate<String> isSingleValuedColumn, Predicate<String> isStringColumn) {
+      this.isSingleValuedColumn = isSingleValuedColumn;
+      this.isStringColumn = isStringColumn;
+    }
+
+    private RexNode toRex(Filter filter) {
+      if (ALWAYS_TRUE.equals(filter)) {
+        return rexBuilder.makeLiteral(true);
+      }
+      if (isAlwaysFalseFilter(filter)) {
+        return rexBuilder.makeLiteral(false);
+      }
+      if (filter.getChildFilterCount() > 0) {
+        return this.toRexComposite(filter);
+      }
+      return this.toRexComparison(filter).orElseGet(() -> this.getOpaqueInputRef(filter));
+    }
+
+    private RexNode toRexComposite(Filter filter) {
+      List<RexNode> children = new ArrayList<>(filter.getChildFilterCount());
+      filter.getChildFilterList().forEach(child -> children.add(this.toRex(child)));
+      switch (filter.getOperator()) {
+        case AND:
+          return rexBuilder.makeCall(SqlStdOperatorTable.AND, children);
+        case OR:
+          return rexBuilder.makeCall(SqlStdOperatorTable.OR, children);
+        case NOT:
+          if (children.size() == 1) {
+            return rexBuilder.makeCall(SqlStdOperatorTable.NOT, children);
+          }
+          return this.getOpaqueInputRef(filter);
+        default:
+          return this.getOpaqueInputRef(filter);
+      }
+    }
+
+    private Optional<RexNode> toRexComparison(Filter filter) {
+      Optional<String> columnName = getLogicalColumnName(filter.getLhs());
+      if (!isSimpleAttributeExpression(filter.getLhs())
+          || !filter.getRhs().hasLiteral()
+          || columnName.isEmpty()
+          || !this.isSingleValuedColumn.test(columnName.get())) {
+        return Optional.empty();
+      }
+      Value value = filter.getRhs().getLiteral().getValue();
+      Optional<ValueType> scalarType = getScalarType(value.getValueType());
+      if (scalarType.isEmpty()
+          || (scalarType.get() == ValueType.STRING
+              && !this.isStringColumn.test(columnName.get()))) {
+        return Optional.empty();
+      }
+      RelDataType type = toRelDataType(scalarType.get());
+      RexNode column = this.getInputRef(new Column(filter.getLhs(), scalarType.get()), type);
+      List<RexNode> literals = this.toRexLiterals(value, type);
+      if (value.getValueType() == scalarType.get()) {
+        return getComparisonOperator(filter.getOperator())
+            .map(operator -> rexBuilder.makeCall(operator, column, literals.get(0)));
+      }
+      if (literals.isEmpty()) {
+        return Optional.empty();
+      }
+      switch (filter.getOperator()) {
+        case IN:
+          return Optional.of(rexBuilder.makeIn(column, literals));
+        case NOT_IN:
+          return Optional.of(
+              rexBuilder.makeCall(SqlStdOperatorTable.NOT, rexBuilder.makeIn(column, literals)));
+        default:
+          return Optional.empty();
+      }
+    }
+
+    private List<RexNode> toRexLiterals(Value value, RelDataType type) {
+      List<RexNode> literals = new ArrayList<>();
+      getComparableValues(value).forEach(item -> literals.add(rexBuilder.makeLiteral(item, type)));
+      return literals;
+    }
+
+    private RexNode getOpaqueInputRef(Filter filter) {
+      // Nullable, as the data stores may evaluate any filter to unknown
+      return this.getInputRef(filter, toRelDataType(ValueType.BOOL));
+    }
+
+    private RexInputRef getInputRef(Object input, RelDataType type) {
+      return this.inputRefs.computeIfAbsent(
+          input,
+          unused -> {
+            this.inputs.add(input);
+            return rexBuilder.makeInputRef(type, this.inputs.size() - 1);
+          });
+    }
+
+    /** Converts back a simplified node, unless it has no equivalent in the filter API. */
+    private Optional<Filter> toFilter(RexNode node) {
+      switch (node.getKind()) {
+        case LITERAL:
+          // A null literal is unknown, which drops all the rows as false does
+          return Optional.of(
+              Boolean.TRUE.equals(((RexLiteral) node).getValueAs(Boolean.class))
+                  ? ALWAYS_TRUE
+                  : ALWAYS_FALSE);
+        case INPUT_REF:
+          Object input = this.inputs.get(((RexInputRef) node).getIndex());
+          return input instanceof Filter ? Optional.of((Filter) input) : Optional.empty();
+        case AND:
+          return this.toCompositeFilter(Operator.AND, ((RexCall) node).getOperands());
+        case OR:
+          return this.toCompositeFilter(Operator.OR, ((RexCall) node).getOperands());
+        case NOT:
+          return this.toCompositeFilter(Operator.NOT, ((RexCall) node).getOperands());
+        case EQUALS:
+          return this.toComparisonFilter(Operator.EQ, Operator.EQ, (RexCall) node);
+        case NOT_EQUALS:
+          return this.toComparisonFilter(Operator.NEQ, Operator.NEQ, (RexCall) node);
+        case GREATER_THAN:
+          return this.toComparisonFilter(Operator.GT, Operator.LT, (RexCall) node);
+        case GREATER_THAN_OR_EQUAL:
+          return this.toComparisonFilter(Operator.GE, Operator.LE, (RexCall) node);
+        case LESS_THAN:
+          return this.toComparisonFilter(Operator.LT, Operator.GT, (RexCall) node);
+        case LESS_THAN_OR_EQUAL:
+          return this.toComparisonFilter(Operator.LE, Operator.GE, (RexCall) node);
+        case SEARCH:
+          return this.toSearchFilter((RexCall) node);
+        default:
+          return Optional.empty();
+      }
+    }
+
+    private Optional<Filter> toCompositeFilter(Operator operator, List<RexNode> operands) {
+      Filter.Builder builder = Filter.newBuilder().setOperator(operator);
+      for (RexNode operand : operands) {
+        Optional<Filter> child = this.toFilter(operand);
+        if (child.isEmpty()) {
+          return Optional.empty();
+        }
+        builder.addChildFilter(child.get());
+      }
+      return Optional.of(builder.build());
+    }
+
+    /**
+     * Converts a comparison of a column with a literal, given the operator to use if the column is
+     * on the right hand side instead.
+     */
+    private Optional<Filter> toComparisonFilter(
+        Operator operator, Operator flippedOperator, RexCall call) {
+      RexNode left = call.getOperands().get(0);
+      RexNode right = call.getOperands().get(1);
+      if (left instanceof RexInputRef && right instanceof RexLiteral) {
+        return this.toLeafFilter(operator, (RexInputRef) left, List.of(getValue(right)));
+      }
+      if (left instanceof RexLiteral && right instanceof RexInputRef) {
+        return this.toLeafFilter(flippedOperator, (RexInputRef) right, List.of(getValue(left)));
+      }
+      return Optional.empty();
+    }
+
+    private Optional<Filter> toSearchFilter(RexCall call) {
+      RexNode ref = call.getOperands().get(0);
+      Sarg<?> sarg = ((RexLiteral) call.getOperands().get(1)).getValueAs(Sarg.class);
+      if (!(ref instanceof RexInputRef) || sarg == null || sarg.nullAs == RexUnknownAs.TRUE) {
+        return Optional.empty();
+      }
+      RexInputRef inputRef = (RexInputRef) ref;
+      if (sarg.isPoints()) {
+        return this.toPointsFilter(Operator.EQ, Operator.IN, inputRef, sarg.rangeSet.asRanges());
+      }
+      if (sarg.isComplementedPoints()) {
+        return this.toPointsFilter(
+            Operator.NEQ, Operator.NOT_IN, inputRef, sarg.rangeSet.complement().asRanges());
+      }
+      List<Filter> rangeFilters = new ArrayList<>();
+      for (Range<?> range : sarg.rangeSet.asRanges()) {
+        Optional<Filter> rangeFilter = this.toRangeFilter(inputRef, range);
+        if (rangeFilter.isEmpty()) {
+          return Optional.empty();
+        }
+        rangeFilters.add(rangeFilter.get());
+      }
+      return Optional.of(
+          rangeFilters.size() == 1
+              ? rangeFilters.get(0)
+              : Filter.newBuilder()
+                  .setOperator(Operator.OR)
+                  .addAllChildFilter(rangeFilters)
+                  .build());
+    }
+
+    private Optional<Filter> toPointsFilter(
+        Operator singleOperator,
+        Operator multipleOperator,
+        RexInputRef inputRef,
+        Iterable<? extends Range<?>> points) {
+      List<Comparable<?>> values = new ArrayList<>();
+      points.forEach(point -> values.add(point.lowerEndpoint()));
+      return values.size() == 1
+          ? this.toLeafFilter(singleOperator, inputRef, values)
+          : this.toLeafFilter(multipleOperator, inputRef, values);
+    }
+
+    private Optional<Filter> toRangeFilter(RexInputRef inputRef, Range<?> range) {
+      List<Filter> bounds = new ArrayList<>(2);
+      if (range.hasLowerBound()) {
+        Optional<Filter> lowerBound =
+            this.toLeafFilter(
+                range.lowerBoundType() == BoundType.CLOSED ? Operator.GE : Operator.GT,
+                inputRef,
+                List.of(range.lowerEndpoint()));
+        if (lowerBound.isEmpty()) {
+          return Optional.empty();
+        }
+        bounds.add(lowerBound.get());
+      }
+      if (range.hasUpperBound()) {
+        Optional<Filter> upperBound =
+            this.toLeafFilter(
+                range.upperBoundType() == BoundType.CLOSED ? Operator.LE : Operator.LT,
+                inputRef,
+                List.of(range.upperEndpoint()));
+        if (upperBound.isEmpty()) {
+          return Optional.empty();
+        }
+        bounds.add(upperBound.get());
+      }
+      if (bounds.isEmpty()) {
+        return Optional.of(ALWAYS_TRUE);
+      }
+      return Optional.of(
+          bounds.size() == 1
+              ? bounds.get(0)
+              : Filter.newBuilder().setOperator(Operator.AND).addAllChildFilter(bounds).build());
+    }
+
+    private Optional<Filter> toLeafFilter(
+        Operator operator, RexInputRef inputRef, List<Comparable<?>> values) {
+      Object input = this.inputs.get(inputRef.getIndex());
+      if (!(input instanceof Column)) {
+        return Optional.empty();
+      }
+      Column column = (Column) input;
+      boolean isArray = operator == Operator.IN || operator == Operator.NOT_IN;
+      return toValue(column.getValueType(), isArray, values)
+          .map(
+              value ->
+                  Filter.newBuilder()
+                      .setLhs(column.getExpression())
+                      .setOperator(operator)
+                      .setRhs(
+                          Expression.newBuilder()
+                              .setLiteral(LiteralConstant.newBuilder().setValue(value)))
+                      .build());
+    }
+  }
+
+  private static Optional<SqlOperator> getComparisonOperator(Operator operator) {
+    switch (operator) {
+      case EQ:
+        return Optional.of(SqlStdOperatorTable.EQUALS);
+      case NEQ:
+        return Optional.of(SqlStdOperatorTable.NOT_EQUALS);
+      case GT:
+        return Optional.of(SqlStdOperatorTable.GREATER_THAN);
+      case GE:
+        return Optional.of(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL);
+      case LT:
+        return Optional.of(SqlStdOperatorTable.LESS_THAN);
+      case LE:
+        return Optional.of(SqlStdOperatorTable.LESS_THAN_OR_EQUAL);
+      default:
+        return Optional.empty();
+    }
+  }
+
+  private RelDataType toRelDataType(ValueType scalarType) {
+    SqlTypeName typeName;
+    switch (scalarType) {
+      case STRING:
+        typeName = SqlTypeName.VARCHAR;
+        break;
+      case LONG:
+      case INT:
+      case TIMESTAMP:
+        typeName = SqlTypeName.BIGINT;
+        break;
+      case DOUBLE:
+      case FLOAT:
+        typeName = SqlTypeName.DOUBLE;
+        break;
+      case BOOL:
+        typeName = SqlTypeName.BOOLEAN;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported column type: " + scalarType);
+    }
+    return this.typeFactory.createTypeWithNullability(
+        this.typeFactory.createSqlType(typeName), true);
+  }
+
+  /** Returns the type of the values of a literal, or empty if Calcite can't compare them. */
+  private static Optional<ValueType> getScalarType(ValueType valueType) {
+    switch (valueType) {
+      case STRING:
+      case STRING_ARRAY:
+        return Optional.of(ValueType.STRING);
+      case LONG:
+      case LONG_ARRAY:
+        return Optional.of(ValueType.LONG);
+      case INT:
+      case INT_ARRAY:
+        return Optional.of(ValueType.INT);
+      case DOUBLE:
+      case DOUBLE_ARRAY:
+        return Optional.of(ValueType.DOUBLE);
+      case FLOAT:
+      case FLOAT_ARRAY:
+        return Optional.of(ValueType.FLOAT);
+      case BOOL:
+      case BOOLEAN_ARRAY:
+        return Optional.of(ValueType.BOOL);
+      case TIMESTAMP:
+        return Optional.of(ValueType.TIMESTAMP);
+      default:
+        return Optional.empty();
+    }
+  }
+
+  /** Returns the values of a literal as Calcite represents them, with numbers as decimals. */
+  private static List<Object> getComparableValues(Value value) {
+    switch (value.getValueType()) {
+      case STRING:
+        return List.of(value.getString());
+      case LONG:
+        return List.of(BigDecimal.valueOf(value.getLong()));
+      case INT:
+        return List.of(BigDecimal.valueOf(value.getInt()));
+      case TIMESTAMP:
+        return List.of(BigDecimal.valueOf(value.getTimestamp()));
+      case DOUBLE:
+        return List.of(new BigDecimal(value.getDouble()));
+      case FLOAT:
+        return List.of(new BigDecimal(value.getFloat()));
+      case BOOL:
+        return List.of(value.getBoolean());
+      case STRING_ARRAY:
+        return List.copyOf(value.getStringArrayList());
+      case LONG_ARRAY:
+        return value.getLongArrayList().stream()
+            .map(BigDecimal::valueOf)
+            .collect(Collectors.toUnmodifiableList());
+      case INT_ARRAY:
+        return value.getIntArrayList().stream()
+            .map(BigDecimal::valueOf)
+            .collect(Collectors.toUnmodifiableList());
+      case DOUBLE_ARRAY:
+        return value.getDoubleArrayList().stream()
+            .map(BigDecimal::new)
+            .collect(Collectors.toUnmodifiableList());
+      case FLOAT_ARRAY:
+        return value.getFloatArrayList().stream()
+            .map(BigDecimal::new)
+            .collect(Collectors.toUnmodifiableList());
+      case BOOLEAN_ARRAY:
+        return List.copyOf(value.getBooleanArrayList());
+      default:
+        throw new IllegalArgumentException("Unsupported literal type: " + value.getValueType());
+    }
+  }
+
+  private static Comparable<?> getValue(RexNode literal) {
+    return ((RexLiteral) literal).getValue();
+  }
+
+  /**
+   * Converts the values Calcite compares back to a literal of the type of the column, or empty if
+   * there is no such literal, such as a timestamp array.
+   */
+  private static Optional<Value> toValue(
+      ValueType scalarType, boolean isArray, List<Comparable<?>> values) {
+    Value.Builder builder =
+        Value.newBuilder();
+    for (Comparable<?> value : values) {
+      if (value == null) {
+        return Optional.empty();
+      }
+      switch (scalarType) {
+        case STRING:
+          String string = ((NlsString) value).getValue();
+          if (isArray) {
+            builder.setValueType(ValueType.STRING_ARRAY).addStringArray(string);
+          } else {
+            builder.setValueType(ValueType.STRING).setString(string);
+          }
+          break;
+        case LONG:
+          long longValue = ((BigDecimal) value).longValueExact();
+          if (isArray) {
+            builder.setValueType(ValueType.LONG_ARRAY).addLongArray(longValue);
+          } else {
+            builder.setValueType(ValueType.LONG).setLong(longValue);
+          }
+          break;
+        case INT:
+          int intValue = ((BigDecimal) value).intValueExact();
+          if (isArray) {
+            builder.setValueType(ValueType.INT_ARRAY).addIntArray(intValue);
+          } else {
+            builder.setValueType(ValueType.INT).setInt(intValue);
+          }
+          break;
+        case TIMESTAMP:
+          if (isArray) {
+            return Optional.empty();
+          }
+          builder
+              .setValueType(ValueType.TIMESTAMP)
+              .setTimestamp(((BigDecimal) value).longValueExact());
+          break;
+        case DOUBLE:
+          double doubleValue = ((BigDecimal) value).doubleValue();
+          if (isArray) {
+            builder.setValueType(ValueType.DOUBLE_ARRAY).addDoubleArray(doubleValue);
+          } else {
+            builder.setValueType(ValueType.DOUBLE).setDouble(doubleValue);
+          }
+          break;
+        case FLOAT:
+          float floatValue = ((BigDecimal) value).floatValue();
+          if (isArray) {
+            builder.setValueType(ValueType.FLOAT_ARRAY).addFloatArray(floatValue);
+          } else {
+            builder.setValueType(ValueType.FLOAT).setFloat(floatValue);
+          }
+          break;
+        case BOOL:
+          boolean booleanValue = (Boolean) value;
+          if (isArray) {
+            builder.setValueType(ValueType.BOOLEAN_ARRAY).addBooleanArray(booleanValue);
+          } else {
+            builder.setValueType(ValueType.BOOL).setBoolean(booleanValue);
+          }
+          break;
+        default:
+          return Optional.empty();
+      }
+    }
+    return Optional.of(builder.build());
+  }
+
+  /** A column compared with literals of the given type. */
+  @Getter
+  @EqualsAndHashCode
+  @AllArgsConstructor
+  private static class Column {
+    // Values of different types are compared separately, to convert them back to the same type
+    private final Expression expression;
+    private final ValueType valueType;
+  }
+}
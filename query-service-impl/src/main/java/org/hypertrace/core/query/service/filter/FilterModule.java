@@ -0,0 +1,15 @@
+package org.hypertrace.core.query.service.filter;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.multibindings.Multibinder;
+import org.hypertrace.core.query.service.QueryTransformation;
+
+public class FilterModule extends AbstractModule {
+
+  @Override
+  protected void configure() {
+    Multibinder.newSetBinder(binder(), QueryTransformation.class)
+        .addBinding()
+        .to(FilterOptimizationTransformation.class);
+  }
+}
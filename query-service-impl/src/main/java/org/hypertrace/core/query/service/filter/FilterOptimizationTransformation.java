@@ -0,0 +1,130 @@
+package org.hypertrace.core.query.service.filter;
+
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_BOOL_ARRAY;
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_DOUBLE_ARRAY;
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_INT64_ARRAY;
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_STRING;
+import static org.hypertrace.core.attribute.service.v1.AttributeKind.TYPE_STRING_ARRAY;
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import javax.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.hypertrace.core.attribute.service.cachingclient.CachingAttributeClient;
+import org.hypertrace.core.attribute.service.v1.AttributeKind;
+import org.hypertrace.core.query.service.QueryServiceConfig;
+import org.hypertrace.core.query.service.QueryTransformation;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.QueryRequest;
+
+/**
+ * Normalizes the filter of a request with the {@link FilterOptimizer}, so the data stores get the
+ * smallest equivalent filter. A filter that can never match is replaced by {@link
+ * org.hypertrace.core.query.service.QueryRequestUtil#createAlwaysFalseFilter()}, which is answered
+ * with an empty result without calling any data store.
+ *
+ * <p>If enabled, the filter is first simplified with the {@link CalciteFilterSimplifier}, once for
+ * all the data stores the request may go to.
+ */
+@Slf4j
+final class FilterOptimizationTransformation implements QueryTransformation {
+  private static final List<AttributeKind> ARRAY_KINDS =
+      List.of(TYPE_STRING_ARRAY, TYPE_BOOL_ARRAY, TYPE_DOUBLE_ARRAY, TYPE_INT64_ARRAY);
+
+  private final CachingAttributeClient attributeClient;
+  private final Optional<CalciteFilterSimplifier> calciteFilterSimplifier;
+
+  @Inject
+  FilterOptimizationTransformation(
+      CachingAttributeClient attributeClient, QueryServiceConfig queryServiceConfig) {
+    this.attributeClient = attributeClient;
+    this.calciteFilterSimplifier =
+        queryServiceConfig.getCalciteFilterSimplificationConfig().isEnabled()
+            ? Optional.of(new CalciteFilterSimplifier())
+            : Optional.empty();
+  }
+
+  @Override
+  public Single<QueryRequest> transform(
+      QueryRequest queryRequest, QueryTransformationContext transformationContext) {
+    Filter filter = queryRequest.getFilter();
+    if (filter.getChildFilterCount() == 0) {
+      // Column types only matter when combining filters
+      return Single.just(
+          this.rebuildRequest(
+              queryRequest,
+              new FilterOptimizer(column -> false, column -> false).optimize(filter)));
+    }
+    return this.getColumnKinds(filter)
+        .map(columnKinds -> this.optimize(filter, columnKinds))
+        .map(optimizedFilter -> this.rebuildRequest(queryRequest, optimizedFilter));
+  }
+
+  @Override
+  public int getPriority() {
+    // Run last, so the filters added by the other transformations are optimized as well
+    return 200;
+  }
+
+  private Filter optimize(Filter filter, Map<String, AttributeKind> columnKinds) {
+    Predicate<String> isSingleValuedColumn =
+        column -> columnKinds.containsKey(column) && !ARRAY_KINDS.contains(columnKinds.get(column));
+    Predicate<String> isStringColumn = column -> columnKinds.get(column) == TYPE_STRING;
+    Filter simplifiedFilter =
+        this.calciteFilterSimplifier
+            .map(simplifier -> simplifier.simplify(filter, isSingleValuedColumn, isStringColumn))
+            .orElse(filter);
+    return new FilterOptimizer(isSingleValuedColumn, isStringColumn).optimize(simplifiedFilter);
+  }
+
+  private QueryRequest rebuildRequest(QueryRequest original, Filter optimizedFilter) {
+    if (original.getFilter().equals(optimizedFilter)) {
+      return original;
+    }
+    QueryRequest.Builder builder = original.toBuilder();
+    if (Filter.getDefaultInstance().equals(optimizedFilter)) {
+      builder.clearFilter();
+    } else {
+      builder.setFilter(optimizedFilter);
+    }
+    QueryRequest transformed = builder.build();
+    log.debug(
+        "Request filter optimized. Original request: {} Transformed Request: {}",
+        original,
+        transformed);
+    return transformed;
+  }
+
+  /**
+   * Looks up the kinds of the filtered columns. Columns without attribute metadata are treated as
+   * multi-valued columns of an unknown type, which only makes the optimization more conservative.
+   */
+  private Single<Map<String, AttributeKind>> getColumnKinds(Filter filter) {
+    return Observable.fromIterable(this.getFilteredColumns(filter, new LinkedHashSet<>()))
+        .concatMapMaybe(
+            column ->
+                this.attributeClient
+                    .get(column)
+                    .map(metadata -> Map.entry(column, metadata.getValueKind()))
+                    .toMaybe()
+                    .onErrorComplete())
+        .toMap(Map.Entry::getKey, Map.Entry::getValue);
+  }
+
+  private Set<String> getFilteredColumns(Filter filter, Set<String> columns) {
+    if (filter.getChildFilterCount() == 0) {
+      getLogicalColumnName(filter.getLhs()).ifPresent(columns::add);
+    }
+    filter
+        .getChildFilterList()
+        .forEach(childFilter -> this.getFilteredColumns(childFilter, columns));
+    return columns;
+  }
+}
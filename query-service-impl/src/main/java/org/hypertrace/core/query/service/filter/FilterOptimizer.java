@@ -0,0 +1,415 @@
+package org.hypertrace.core.query.service.filter;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.createAlwaysFalseFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isAlwaysFalseFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isSimpleAttributeExpression;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/**
+ * Normalizes a filter tree into an equivalent, smaller one:
+ *
+ * <ul>
+ *   <li>nested ANDs and ORs are flattened, single child ones unwrapped and duplicate children
+ *       dropped
+ *   <li>EQ and IN string filters on a column are merged into a single IN inside an OR, and into
+ *       the most restrictive one inside an AND
+ *   <li>range filters on a column are reduced to the tightest lower and upper bound inside an AND
+ *   <li>filters that always match, like NOT IN an empty list, are dropped
+ *   <li>filters that can never match, like IN an empty list or disjoint bounds, turn the whole tree
+ *       into {@link org.hypertrace.core.query.service.QueryRequestUtil#createAlwaysFalseFilter()}
+ * </ul>
+ *
+ * A filter that always matches is represented by the default filter, i.e. no filter at all.
+ *
+ * <p>Multi-valued columns match a filter if any of their values does, so for them two filters in
+ * an AND can both match through different values. Intersecting value sets and detecting disjoint
+ * bounds is hence only done on the columns known to be single-valued. Value sets are further only
+ * intersected on string columns, as the data stores convert the string values of other columns
+ * first, so that e.g. {@code "10"} and {@code "10.0"} may be the same number.
+ */
+class FilterOptimizer {
+  private static final Filter ALWAYS_TRUE = Filter.getDefaultInstance();
+  private static final Filter ALWAYS_FALSE = createAlwaysFalseFilter();
+
+  private final Predicate<String> isSingleValuedColumn;
+  private final Predicate<String> isStringColumn;
+
+  FilterOptimizer(Predicate<String> isSingleValuedColumn, Predicate<String> isStringColumn) {
+    this.isSingleValuedColumn = isSingleValuedColumn;
+    this.isStringColumn = isStringColumn;
+  }
+
+  Filter optimize(Filter filter) {
+    if (filter.getChildFilterCount() == 0) {
+      return this.optimizeLeaf(filter);
+    }
+    switch (filter.getOperator()) {
+      case AND:
+        return this.optimizeAnd(filter.getChildFilterList());
+      case OR:
+        return this.optimizeOr(filter.getChildFilterList());
+      case NOT:
+        return this.optimizeNot(filter);
+      default:
+        return filter;
+    }
+  }
+
+  private Filter optimizeLeaf(Filter filter) {
+    Optional<Value> literal = getLiteralValue(filter);
+    if (literal.isEmpty() || !isEmptyArray(literal.get())) {
+      return filter;
+    }
+    switch (filter.getOperator()) {
+      case IN:
+        return ALWAYS_FALSE;
+      case NOT_IN:
+        return ALWAYS_TRUE;
+      default:
+        return filter;
+    }
+  }
+
+  private Filter optimizeNot(Filter filter) {
+    if (filter.getChildFilterCount() != 1) {
+      return filter;
+    }
+    Filter child = this.optimize(filter.getChildFilter(0));
+    if (ALWAYS_TRUE.equals(child)) {
+      return ALWAYS_FALSE;
+    }
+    if (isAlwaysFalseFilter(child)) {
+      return ALWAYS_TRUE;
+    }
+    return filter.toBuilder().clearChildFilter().addChildFilter(child).build();
+  }
+
+  private Filter optimizeAnd(List<Filter> children) {
+    Set<Filter> flattened = new LinkedHashSet<>();
+    for (Filter child : children) {
+      Filter optimizedChild = this.optimize(child);
+      if (isAlwaysFalseFilter(optimizedChild)) {
+        return ALWAYS_FALSE;
+      }
+      if (ALWAYS_TRUE.equals(optimizedChild)) {
+        continue;
+      }
+      if (isComposite(optimizedChild, Operator.AND)) {
+        flattened.addAll(optimizedChild.getChildFilterList());
+      } else {
+        flattened.add(optimizedChild);
+      }
+    }
+
+    return this.mergeConjunction(new ArrayList<>(flattened))
+        .map(merged -> combine(Operator.AND, merged, ALWAYS_TRUE))
+        .orElse(ALWAYS_FALSE);
+  }
+
+  private Filter optimizeOr(List<Filter> children) {
+    Set<Filter> flattened = new LinkedHashSet<>();
+    for (Filter child : children) {
+      Filter optimizedChild = this.optimize(child);
+      if (ALWAYS_TRUE.equals(optimizedChild)) {
+        return ALWAYS_TRUE;
+      }
+      if (isAlwaysFalseFilter(optimizedChild)) {
+        continue;
+      }
+      if (isComposite(optimizedChild, Operator.OR)) {
+        flattened.addAll(optimizedChild.getChildFilterList());
+      } else {
+        flattened.add(optimizedChild);
+      }
+    }
+
+    return combine(Operator.OR, this.mergeDisjunction(new ArrayList<>(flattened)), ALWAYS_FALSE);
+  }
+
+  /** Merges the EQ and IN string filters on the same column into a single IN. */
+  private List<Filter> mergeDisjunction(List<Filter> filters) {
+    Map<Expression, List<Filter>> valueFiltersByColumn =
+        groupByColumn(filters, this::isValueFilter);
+    List<Filter> merged = new ArrayList<>(filters.size());
+    for (Filter filter : filters) {
+      List<Filter> columnFilters = valueFiltersByColumn.get(filter.getLhs());
+      if (columnFilters == null || !this.isValueFilter(filter) || columnFilters.size() == 1) {
+        merged.add(filter);
+      } else if (columnFilters.get(0) == filter) {
+        Set<String> values = new LinkedHashSet<>();
+        columnFilters.forEach(columnFilter -> values.addAll(getStringValues(columnFilter)));
+        merged.add(createInFilter(filter.getLhs(), values));
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Reduces the value and range filters on the same column to the most restrictive ones. Returns
+   * empty if the filters can never match together.
+   */
+  private Optional<List<Filter>> mergeConjunction(List<Filter> filters) {
+    Map<Expression, List<Filter>> valueFiltersByColumn =
+        groupByColumn(filters, this::isValueFilter);
+    Map<Expression, List<Filter>> rangeFiltersByColumn =
+        groupByColumn(filters, this::isRangeFilter);
+    List<Filter> merged = new ArrayList<>(filters.size());
+    for (Filter filter : filters) {
+      List<Filter> columnFilters =
+          this.isValueFilter(filter)
+              ? valueFiltersByColumn.get(filter.getLhs())
+              : this.isRangeFilter(filter) ? rangeFiltersByColumn.get(filter.getLhs()) : null;
+      if (columnFilters == null || columnFilters.size() == 1) {
+        merged.add(filter);
+        continue;
+      }
+      if (columnFilters.get(0) != filter) {
+        // Already merged at the position of the first filter on the column
+        continue;
+      }
+      Optional<List<Filter>> mergedColumnFilters =
+          this.isValueFilter(filter)
+              ? this.intersectValueFilters(columnFilters)
+              : this.intersectRangeFilters(columnFilters);
+      if (mergedColumnFilters.isEmpty()) {
+        return Optional.empty();
+      }
+      merged.addAll(mergedColumnFilters.get());
+    }
+    return Optional.of(merged);
+  }
+
+  private Optional<List<Filter>> intersectValueFilters(List<Filter> columnFilters) {
+    Expression column = columnFilters.get(0).getLhs();
+    if (!this.isSingleValued(column) || !this.isStringColumn(column)) {
+      // Only a filter implied by all the others can replace them, if there is one
+      for (Filter candidate : columnFilters) {
+        Set<String> candidateValues = getStringValues(candidate);
+        if (columnFilters.stream()
+            .allMatch(other -> getStringValues(other).containsAll(candidateValues))) {
+          return Optional.of(List.of(candidate));
+        }
+      }
+      return Optional.of(columnFilters);
+    }
+
+    Set<String> values = getStringValues(columnFilters.get(0));
+    columnFilters.forEach(columnFilter -> values.retainAll(getStringValues(columnFilter)));
+    if (values.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        List.of(
+            columnFilters.stream()
+                .filter(columnFilter -> getStringValues(columnFilter).equals(values))
+                .findFirst()
+                .orElseGet(() -> createInFilter(columnFilters.get(0).getLhs(), values))));
+  }
+
+  private Optional<List<Filter>> intersectRangeFilters(List<Filter> columnFilters) {
+    Filter lowerBound = null;
+    Filter upperBound = null;
+    for (Filter filter : columnFilters) {
+      if (isLowerBound(filter)) {
+        lowerBound = lowerBound == null ? filter : tighterBound(lowerBound, filter, 1);
+      } else {
+        upperBound = upperBound == null ? filter : tighterBound(upperBound, filter, -1);
+      }
+    }
+    if (lowerBound == null || upperBound == null) {
+      return Optional.of(List.of(lowerBound == null ? upperBound : lowerBound));
+    }
+
+    if (this.isSingleValued(lowerBound.getLhs())) {
+      int comparison = getNumber(lowerBound).compareTo(getNumber(upperBound));
+      boolean exclusive =
+          lowerBound.getOperator() == Operator.GT || upperBound.getOperator() == Operator.LT;
+      if (comparison > 0 || (comparison == 0 && exclusive)) {
+        return Optional.empty();
+      }
+    }
+    return Optional.of(List.of(lowerBound, upperBound));
+  }
+
+  /**
+   * Returns the more restrictive of the two bounds, where direction 1 stands for lower bounds and
+   * -1 for upper bounds. On equal values the exclusive bound is the more restrictive one.
+   */
+  private static Filter tighterBound(Filter bound, Filter otherBound, int direction) {
+    int comparison = getNumber(otherBound).compareTo(getNumber(bound)) * direction;
+    if (comparison > 0) {
+      return otherBound;
+    }
+    if (comparison == 0 && isExclusive(otherBound) && !isExclusive(bound)) {
+      return otherBound;
+    }
+    return bound;
+  }
+
+  private boolean isSingleValued(Expression column) {
+    return getLogicalColumnName(column).map(this.isSingleValuedColumn::test).orElse(false);
+  }
+
+  private boolean isStringColumn(Expression column) {
+    return getLogicalColumnName(column).map(this.isStringColumn::test).orElse(false);
+  }
+
+  private boolean isValueFilter(Filter filter) {
+    if (filter.getChildFilterCount() > 0 || !isSimpleAttributeExpression(filter.getLhs())) {
+      return false;
+    }
+    Optional<Value> literal = getLiteralValue(filter);
+    switch (filter.getOperator()) {
+      case EQ:
+        return literal.map(Value::getValueType).orElse(null) == ValueType.STRING;
+      case IN:
+        return literal.map(Value::getValueType).orElse(null) == ValueType.STRING_ARRAY;
+      default:
+        return false;
+    }
+  }
+
+  private boolean isRangeFilter(Filter filter) {
+    if (filter.getChildFilterCount() > 0 || !isSimpleAttributeExpression(filter.getLhs())) {
+      return false;
+    }
+    switch (filter.getOperator()) {
+      case GT:
+      case GE:
+      case LT:
+      case LE:
+        return getLiteralValue(filter).filter(FilterOptimizer::isNumber).isPresent();
+      default:
+        return false;
+    }
+  }
+
+  private static Map<Expression, List<Filter>> groupByColumn(
+      List<Filter> filters, Predicate<Filter> groupedFilter) {
+    Map<Expression, List<Filter>> filtersByColumn = new LinkedHashMap<>();
+    for (Filter filter : filters) {
+      if (groupedFilter.test(filter)) {
+        filtersByColumn.computeIfAbsent(filter.getLhs(), unused -> new ArrayList<>()).add(filter);
+      }
+    }
+    return filtersByColumn;
+  }
+
+  private static Filter combine(Operator operator, List<Filter> children, Filter whenEmpty) {
+    if (children.isEmpty()) {
+      return whenEmpty;
+    }
+    if (children.size() == 1) {
+      return children.get(0);
+    }
+    return Filter.newBuilder().setOperator(operator).addAllChildFilter(children).build();
+  }
+
+  private static boolean isComposite(Filter filter, Operator operator) {
+    return filter.getOperator() == operator && filter.getChildFilterCount() > 0;
+  }
+
+  private static Filter createInFilter(Expression column, Set<String> values) {
+    return Filter.newBuilder()
+        .setLhs(column)
+        .setOperator(Operator.IN)
+        .setRhs(
+            Expression.newBuilder()
+                .setLiteral(
+                    LiteralConstant.newBuilder()
+                        .setValue(
+                            Value.newBuilder()
+                                .setValueType(ValueType.STRING_ARRAY)
+                                .addAllStringArray(values))))
+        .build();
+  }
+
+  private static Optional<Value> getLiteralValue(Filter filter) {
+    return filter.getRhs().hasLiteral()
+        ? Optional.of(filter.getRhs().getLiteral().getValue())
+        : Optional.empty();
+  }
+
+  private static Set<String> getStringValues(Filter filter) {
+    Value value = filter.getRhs().getLiteral().getValue();
+    return value.getValueType() == ValueType.STRING
+        ? new LinkedHashSet<>(List.of(value.getString()))
+        : new LinkedHashSet<>(value.getStringArrayList());
+  }
+
+  private static boolean isLowerBound(Filter filter) {
+    return filter.getOperator() == Operator.GT || filter.getOperator() == Operator.GE;
+  }
+
+  private static boolean isExclusive(Filter filter) {
+    return filter.getOperator() == Operator.GT || filter.getOperator() == Operator.LT;
+  }
+
+  private static boolean isNumber(Value value) {
+    switch (value.getValueType()) {
+      case LONG:
+      case INT:
+      case FLOAT:
+      case DOUBLE:
+      case TIMESTAMP:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static BigDecimal getNumber(Filter filter) {
+    Value value = filter.getRhs().getLiteral().getValue();
+    switch (value.getValueType()) {
+      case LONG:
+        return BigDecimal.valueOf(value.getLong());
+      case INT:
+        return BigDecimal.valueOf(value.getInt());
+      case FLOAT:
+        return new BigDecimal(value.getFloat());
+      case DOUBLE:
+        return new BigDecimal(value.getDouble());
+      case TIMESTAMP:
+        return BigDecimal.valueOf(value.getTimestamp());
+      default:
+        throw new IllegalArgumentException("Not a numeric literal: " + value);
+    }
+  }
+
+  private static boolean isEmptyArray(Value value) {
+    switch (value.getValueType()) {
+      case STRING_ARRAY:
+        return value.getStringArrayCount() == 0;
+      case LONG_ARRAY:
+        return value.getLongArrayCount() == 0;
+      case INT_ARRAY:
+        return value.getIntArrayCount() == 0;
+      case FLOAT_ARRAY:
+        return value.getFloatArrayCount() == 0;
+      case DOUBLE_ARRAY:
+        return value.getDoubleArrayCount() == 0;
+      case BYTES_ARRAY:
+        return value.getBytesArrayCount() == 0;
+      case BOOLEAN_ARRAY:
+        return value.getBooleanArrayCount() == 0;
+      default:
+        return false;
+    }
+  }
+}
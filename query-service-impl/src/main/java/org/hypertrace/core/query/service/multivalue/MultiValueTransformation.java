@@ -1,8 +1,6 @@
 package org.hypertrace.core.query.service.multivalue;
 
-import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
-import java.util.List;
 import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import org.hypertrace.core.query.service.AbstractQueryTransformation;
@@ -25,17 +23,15 @@ public class MultiValueTransformation extends AbstractQueryTransformation {
   }
 
   @Override
-  protected Single<Expression> transformFunction(Function function) {
-    return this.transformExpressionList(function.getArgumentsList())
-        .map(function.toBuilder().clearArguments()::addAllArguments)
-        .flatMap(functionTransformation::transformFunction)
-        .map(Expression.newBuilder()::setFunction)
-        .map(Expression.Builder::build);
+  protected boolean isFusable() {
+    return true;
   }
 
-  private Single<List<Expression>> transformExpressionList(List<Expression> expressionList) {
-    return Observable.fromIterable(expressionList)
-        .concatMapSingle(this::transformExpression)
-        .toList();
+  @Override
+  protected Single<Expression> rewriteFunction(Function function) {
+    return this.functionTransformation
+        .transformFunction(function.toBuilder())
+        .map(Expression.newBuilder()::setFunction)
+        .map(Expression.Builder::build);
   }
 }
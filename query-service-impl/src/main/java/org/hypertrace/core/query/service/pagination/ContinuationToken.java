@@ -0,0 +1,32 @@
+package org.hypertrace.core.query.service.pagination;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.Base64;
+import java.util.List;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+
+/**
+ * Encodes the sort key values of the last row of a page into the opaque continuation token handed
+ * out to clients, and back. The values are kept as a serialized {@link Row} so they keep their
+ * types across the round trip.
+ */
+final class ContinuationToken {
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private ContinuationToken() {}
+
+  static String encode(List<Value> sortKeyValues) {
+    return ENCODER.encodeToString(
+        Row.newBuilder().addAllColumn(sortKeyValues).build().toByteArray());
+  }
+
+  static List<Value> decode(String token) {
+    try {
+      return Row.parseFrom(DECODER.decode(token)).getColumnList();
+    } catch (IllegalArgumentException | InvalidProtocolBufferException e) {
+      throw new IllegalArgumentException("Invalid continuation token: " + token, e);
+    }
+  }
+}
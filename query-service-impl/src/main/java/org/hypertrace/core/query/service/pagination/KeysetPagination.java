@@ -0,0 +1,167 @@
+package org.hypertrace.core.query.service.pagination;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.indexOfIgnoringAlias;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.hypertrace.core.attribute.service.v1.AttributeKind;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.OrderByExpression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/**
+ * Keyset (seek) pagination over the order by expressions of a request. Instead of skipping {@code
+ * offset} rows, which the data stores do by scanning and discarding them, the sort key values of
+ * the last row of a page are handed out as a continuation token and turned into a predicate that
+ * seeks right past that row on the next request. Deep pages then cost the same as the first one.
+ *
+ * <p>Only plain selections are supported, as the predicate has to be applied before any grouping,
+ * and every order by expression has to be selected so its value can be read from the last row. For
+ * a stable page boundary the order by expressions need to identify a row, e.g. by ending with an id
+ * column.
+ */
+public class KeysetPagination {
+  private final int limit;
+  private final List<Integer> sortKeyColumnIndexes;
+
+  private KeysetPagination(int limit, List<Integer> sortKeyColumnIndexes) {
+    this.limit = limit;
+    this.sortKeyColumnIndexes = sortKeyColumnIndexes;
+  }
+
+  /**
+   * Returns the pagination of the given transformed request, if it can be paginated by keyset.
+   * Column indexes of the sort keys are resolved against the selections of the execution context,
+   * which map one to one to the columns of the returned rows.
+   */
+  public static Optional<KeysetPagination> forRequest(
+      QueryRequest request, ExecutionContext executionContext) {
+    if (request.getLimit() <= 0 || !supportsKeysetPagination(request)) {
+      return Optional.empty();
+    }
+
+    List<Integer> sortKeyColumnIndexes = new ArrayList<>(request.getOrderByCount());
+    for (OrderByExpression orderBy : request.getOrderByList()) {
+      int columnIndex =
+          indexOfIgnoringAlias(executionContext.getAllSelections(), orderBy.getExpression());
+      if (columnIndex < 0) {
+        return Optional.empty();
+      }
+      sortKeyColumnIndexes.add(columnIndex);
+    }
+    return Optional.of(new KeysetPagination(request.getLimit(), sortKeyColumnIndexes));
+  }
+
+  /**
+   * Returns the continuation token pointing past the given last row of a page, as long as the page
+   * is full and hence more rows may follow.
+   */
+  public Optional<String> continuationToken(Row lastRow, long rowCount) {
+    if (rowCount < limit) {
+      return Optional.empty();
+    }
+    List<Value> sortKeyValues = new ArrayList<>(sortKeyColumnIndexes.size());
+    for (int columnIndex : sortKeyColumnIndexes) {
+      sortKeyValues.add(lastRow.getColumn(columnIndex));
+    }
+    return Optional.of(ContinuationToken.encode(sortKeyValues));
+  }
+
+  static boolean supportsKeysetPagination(QueryRequest request) {
+    return request.getOrderByCount() > 0
+        && request.getGroupByCount() == 0
+        && request.getAggregationCount() == 0;
+  }
+
+  /**
+   * Builds the predicate selecting the rows that sort after the given sort key values. For order by
+   * {@code a ASC, b DESC} this is {@code a > va OR (a = va AND b < vb)}, which unlike a row value
+   * comparison is supported by all the data stores.
+   */
+  static Filter buildSeekFilter(List<OrderByExpression> orderBys, List<Value> sortKeyValues) {
+    if (orderBys.size() != sortKeyValues.size()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Continuation token has %s sort keys while the request orders by %s expressions",
+              sortKeyValues.size(), orderBys.size()));
+    }
+
+    Filter.Builder seekFilter = Filter.newBuilder().setOperator(Operator.OR);
+    for (int i = 0; i < orderBys.size(); i++) {
+      Filter.Builder branch = Filter.newBuilder().setOperator(Operator.AND);
+      for (int j = 0; j < i; j++) {
+        branch.addChildFilter(
+            createFilter(orderBys.get(j).getExpression(), Operator.EQ, sortKeyValues.get(j)));
+      }
+      OrderByExpression orderBy = orderBys.get(i);
+      Operator operator = orderBy.getOrder() == SortOrder.DESC ? Operator.LT : Operator.GT;
+      branch.addChildFilter(createFilter(orderBy.getExpression(), operator, sortKeyValues.get(i)));
+      seekFilter.addChildFilter(unwrapSingleChild(branch));
+    }
+    return unwrapSingleChild(seekFilter);
+  }
+
+  /**
+   * Converts a sort key value read from a result row to the declared type of its sort column. Some
+   * data stores return all the values as strings, which compared as such would order {@code "9"}
+   * after {@code "10"}. Values of other types and columns of other kinds are kept as they are.
+   */
+  static Value toSortKeyType(Value value, AttributeKind sortColumnKind) {
+    if (value.getValueType() != ValueType.STRING) {
+      return value;
+    }
+    try {
+      switch (sortColumnKind) {
+        case TYPE_INT64:
+          return Value.newBuilder()
+              .setValueType(ValueType.LONG)
+              .setLong(new BigDecimal(value.getString()).longValueExact())
+              .build();
+        case TYPE_TIMESTAMP:
+          return Value.newBuilder()
+              .setValueType(ValueType.TIMESTAMP)
+              .setTimestamp(new BigDecimal(value.getString()).longValueExact())
+              .build();
+        case TYPE_DOUBLE:
+          return Value.newBuilder()
+              .setValueType(ValueType.DOUBLE)
+              .setDouble(Double.parseDouble(value.getString()))
+              .build();
+        case TYPE_BOOL:
+          return Value.newBuilder()
+              .setValueType(ValueType.BOOL)
+              .setBoolean(Boolean.parseBoolean(value.getString()))
+              .build();
+        default:
+          return value;
+      }
+    } catch (ArithmeticException | NumberFormatException e) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Continuation token value %s is not a valid %s", value.getString(), sortColumnKind),
+          e);
+    }
+  }
+
+  private static Filter createFilter(Expression lhs, Operator operator, Value value) {
+    return Filter.newBuilder()
+        .setLhs(lhs)
+        .setOperator(operator)
+        .setRhs(Expression.newBuilder().setLiteral(LiteralConstant.newBuilder().setValue(value)))
+        .build();
+  }
+
+  private static Filter unwrapSingleChild(Filter.Builder filter) {
+    return filter.getChildFilterCount() == 1 ? filter.getChildFilter(0) : filter.build();
+  }
+}
@@ -0,0 +1,135 @@
+package org.hypertrace.core.query.service.pagination;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isSimpleAttributeExpression;
+
+import io.grpc.Status;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import javax.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.hypertrace.core.attribute.service.cachingclient.CachingAttributeClient;
+import org.hypertrace.core.attribute.service.v1.AttributeKind;
+import org.hypertrace.core.attribute.service.v1.AttributeMetadata;
+import org.hypertrace.core.query.service.QueryTransformation;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.OrderByExpression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Value;
+
+/**
+ * Turns the continuation token of a request into a seek predicate on its order by expressions, see
+ * {@link KeysetPagination}. The offset is dropped, as the token already points past the rows of
+ * the previous pages. The sort key values are converted to the declared types of their columns
+ * first, so they are compared as such.
+ */
+@Slf4j
+final class KeysetPaginationTransformation implements QueryTransformation {
+  private final CachingAttributeClient attributeClient;
+
+  @Inject
+  KeysetPaginationTransformation(CachingAttributeClient attributeClient) {
+    this.attributeClient = attributeClient;
+  }
+
+  @Override
+  public Single<QueryRequest> transform(
+      QueryRequest queryRequest, QueryTransformationContext transformationContext) {
+    if (queryRequest.getContinuationToken().isEmpty()) {
+      return Single.just(queryRequest);
+    }
+    if (!KeysetPagination.supportsKeysetPagination(queryRequest)) {
+      return invalidArgument(
+          new IllegalArgumentException(
+              "Continuation token is only supported on ordered selections without group by or"
+                  + " aggregations"));
+    }
+    return Observable.fromIterable(queryRequest.getOrderByList())
+        .concatMapSingle(this::getSortColumnKind)
+        .toList()
+        .flatMap(
+            sortColumnKinds -> {
+              try {
+                QueryRequest transformed = applyContinuationToken(queryRequest, sortColumnKinds);
+                log.debug(
+                    "Continuation token applied. Original request: {} Transformed Request: {}",
+                    queryRequest,
+                    transformed);
+                return Single.just(transformed);
+              } catch (IllegalArgumentException e) {
+                return invalidArgument(e);
+              }
+            });
+  }
+
+  @Override
+  public int getPriority() {
+    // Run after the transformations rewriting expressions, so the predicate is built from the
+    // same order by expressions the continuation token was generated for
+    return 100;
+  }
+
+  /**
+   * Looks up the kind of a sort column. Sort expressions other than plain attributes, and
+   * attributes without metadata, keep the sort key values as they were returned.
+   */
+  private Single<Optional<AttributeKind>> getSortColumnKind(OrderByExpression orderBy) {
+    if (!isSimpleAttributeExpression(orderBy.getExpression())) {
+      return Single.just(Optional.empty());
+    }
+    return Maybe.fromOptional(getLogicalColumnName(orderBy.getExpression()))
+        .flatMapSingle(this.attributeClient::get)
+        .map(AttributeMetadata::getValueKind)
+        .onErrorComplete()
+        .map(Optional::of)
+        .defaultIfEmpty(Optional.empty());
+  }
+
+  private QueryRequest applyContinuationToken(
+      QueryRequest queryRequest, List<Optional<AttributeKind>> sortColumnKinds) {
+    List<Value> tokenValues = ContinuationToken.decode(queryRequest.getContinuationToken());
+    List<Value> sortKeyValues = new ArrayList<>(tokenValues.size());
+    for (int i = 0; i < tokenValues.size(); i++) {
+      Value tokenValue = tokenValues.get(i);
+      sortKeyValues.add(
+          i < sortColumnKinds.size()
+              ? sortColumnKinds
+                  .get(i)
+                  .map(kind -> KeysetPagination.toSortKeyType(tokenValue, kind))
+                  .orElse(tokenValue)
+              : tokenValue);
+    }
+    Filter seekFilter =
+        KeysetPagination.buildSeekFilter(queryRequest.getOrderByList(), sortKeyValues);
+
+    return queryRequest.toBuilder()
+        .setFilter(andFilters(queryRequest.getFilter(), seekFilter))
+        .clearOffset()
+        .clearContinuationToken()
+        .build();
+  }
+
+  private Single<QueryRequest> invalidArgument(IllegalArgumentException e) {
+    return Single.error(
+        Status.INVALID_ARGUMENT.withDescription(e.getMessage()).withCause(e).asException());
+  }
+
+  private Filter andFilters(Filter filter, Filter seekFilter) {
+    if (Filter.getDefaultInstance().equals(filter)) {
+      return seekFilter;
+    }
+    if (filter.getOperator() == Operator.AND && filter.getChildFilterCount() > 0) {
+      return filter.toBuilder().addChildFilter(seekFilter).build();
+    }
+    return Filter.newBuilder()
+        .setOperator(Operator.AND)
+        .addChildFilter(filter)
+        .addChildFilter(seekFilter)
+        .build();
+  }
+}
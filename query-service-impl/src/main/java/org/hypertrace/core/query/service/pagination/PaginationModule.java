@@ -0,0 +1,15 @@
+package org.hypertrace.core.query.service.pagination;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.multibindings.Multibinder;
+import org.hypertrace.core.query.service.QueryTransformation;
+
+public class PaginationModule extends AbstractModule {
+
+  @Override
+  protected void configure() {
+    Multibinder.newSetBinder(binder(), QueryTransformation.class)
+        .addBinding()
+        .to(KeysetPaginationTransformation.class);
+  }
+}
@@ -0,0 +1,71 @@
+package org.hypertrace.core.query.service.pinot;
+
+import java.io.IOException;
+import org.apache.commons.codec.DecoderException;
+import org.apache.pinot.client.ResultSet;
+import org.hypertrace.core.query.service.RowWriter;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.pinot.converters.DestinationColumnValueConverter;
+
+/**
+ * Converts the rows of a Pinot selection result of a given column layout into rows of the
+ * selections, with the result column of each selection resolved when the converter is generated
+ * instead of for each cell. The subclasses are generated and compiled at runtime by {@link
+ * SelectionConverterCompiler} in their own class loader, which is why this class and its helpers
+ * are public or protected.
+ */
+public abstract class CompiledSelectionConverter {
+  private final PinotMapConverter pinotMapConverter = new PinotMapConverter();
+  // The logical name of the attribute of each selection, for the error messages
+  private final String[] attributeNames;
+
+  protected CompiledSelectionConverter(String[] attributeNames) {
+    this.attributeNames = attributeNames;
+  }
+
+  /** Adds the selections of the given row of the result to the builder. */
+  public abstract void convert(ResultSet resultSet, int rowIndex, Row.Builder builder);
+
+  /**
+   * Writes the selections of the given row of the result as cells of the current row of the
+   * writer, with string cells written from the strings of the result as is.
+   */
+  public abstract void write(ResultSet resultSet, int rowIndex, RowWriter writer);
+
+  protected static Value stringValue(String data) {
+    return Value.newBuilder().setString(data).build();
+  }
+
+  /** Returns the map of the given keys and values as a json string. */
+  protected final Value mergedMapValue(String keyData, String valueData, int selectionIndex) {
+    try {
+      return stringValue(this.pinotMapConverter.merge(keyData, valueData));
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Unable to merge the map data for attribute " + this.attributeNames[selectionIndex], e);
+    }
+  }
+
+  /** Returns the map of the given keys and values as a string map value. */
+  protected final Value mapValue(String keyData, String valueData, int selectionIndex) {
+    Value.Builder valueBuilder = Value.newBuilder();
+    try {
+      this.pinotMapConverter.mergeInto(keyData, valueData, valueBuilder);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Unable to merge the map data for attribute " + this.attributeNames[selectionIndex], e);
+    }
+    return valueBuilder.build();
+  }
+
+  protected final Value bytesValue(String hexValue, int selectionIndex) {
+    try {
+      return DestinationColumnValueConverter.INSTANCE.convertToBytesValue(hexValue);
+    } catch (DecoderException e) {
+      throw new IllegalStateException(
+          "Unable to decode the hex data of bytes column " + this.attributeNames[selectionIndex],
+          e);
+    }
+  }
+}
@@ -1,39 +1,52 @@
 package org.hypertrace.core.query.service.pinot;
 
 import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isAttributeExpressionWithSubpath;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.util.JsonFormat;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
 import io.micrometer.core.instrument.Timer;
 import io.reactivex.rxjava3.core.Observable;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import org.apache.commons.codec.DecoderException;
 import org.apache.pinot.client.ResultSet;
 import org.apache.pinot.client.ResultSetGroup;
+import org.hypertrace.core.query.service.EncodedRows;
 import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.PartialAggregation;
 import org.hypertrace.core.query.service.QueryCost;
+import org.hypertrace.core.query.service.QueryRequestUtil;
+import org.hypertrace.core.query.service.QueryTimeRange;
+import org.hypertrace.core.query.service.RequestAnalysis;
 import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.RowWriter;
 import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.Expression.ValueCase;
 import org.hypertrace.core.query.service.api.Filter;
-import org.hypertrace.core.query.service.api.LiteralConstant;
-import org.hypertrace.core.query.service.api.Operator;
 import org.hypertrace.core.query.service.api.OrderByExpression;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.Row;
@@ -41,6 +54,8 @@ import org.hypertrace.core.query.service.api.Row.Builder;
 import org.hypertrace.core.query.service.api.Value;
 import org.hypertrace.core.query.service.api.ValueType;
 import org.hypertrace.core.query.service.pinot.PinotClientFactory.PinotClient;
+import org.hypertrace.core.query.service.pinot.TimeShardPlanner.TimeShard;
+import org.hypertrace.core.query.service.pinot.converters.DestinationColumnValueConverter;
 import org.hypertrace.core.query.service.pinot.converters.PinotFunctionConverter;
 import org.hypertrace.core.query.service.pinot.converters.PinotFunctionConverterConfig;
 import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
@@ -56,14 +71,23 @@ public class PinotBasedRequestHandler implements RequestHandler {
   private static final String TENANT_COLUMN_NAME_CONFIG_KEY = "tenantColumnName";
   private static final String START_TIME_ATTRIBUTE_NAME_CONFIG_KEY = "startTimeAttributeName";
   private static final String SLOW_QUERY_THRESHOLD_MS_CONFIG = "slowQueryThresholdMs";
+  private static final String NATIVE_MAP_VALUES_ENABLED_CONFIG = "nativeMapValuesEnabled";
+  private static final String NATIVE_BYTES_VALUES_ENABLED_CONFIG = "nativeBytesValuesEnabled";
+  private static final String TIME_SHARDING_CONFIG_KEY = "timeSharding";
+  private static final String TWO_PHASE_TOP_K_CONFIG_KEY = "twoPhaseTopK";
+  private static final String COMPILED_SELECTION_CONVERTERS_CONFIG_KEY =
+      "compiledSelectionConverters";
 
   private static final int DEFAULT_SLOW_QUERY_THRESHOLD_MS = 3000;
-  private static final Set<Operator> GTE_OPERATORS = Set.of(Operator.GE, Operator.GT, Operator.EQ);
 
   private final String name;
   private ViewDefinition viewDefinition;
   private Optional<String> startTimeAttributeName;
   private QueryRequestToPinotSQLConverter request2PinotSqlConverter;
+  private PinotFunctionConverterConfig functionConverterConfig;
+  private TimeShardPlanner timeShardPlanner;
+  private TwoPhaseTopK twoPhaseTopK;
+  private SelectionConverterCompiler selectionConverterCompiler;
   private final PinotMapConverter pinotMapConverter;
   // The implementations of ResultSet are package private and hence there's no way to determine the
   // shape of the results
@@ -82,6 +106,10 @@ public class PinotBasedRequestHandler implements RequestHandler {
 
   private Timer pinotQueryExecutionTimer;
   private int slowQueryThreshold = DEFAULT_SLOW_QUERY_THRESHOLD_MS;
+  // When enabled, map columns are returned as STRING_MAP values instead of json strings.
+  private boolean nativeMapValuesEnabled = false;
+  // When enabled, bytes columns are returned as BYTES values instead of hex strings.
+  private boolean nativeBytesValuesEnabled = false;
 
   PinotBasedRequestHandler(String name, Config config) {
     this(name, config, new DefaultResultSetTypePredicateProvider(), PinotClientFactory.get());
@@ -115,6 +143,16 @@ public class PinotBasedRequestHandler implements RequestHandler {
     return this.startTimeAttributeName;
   }
 
+  @Override
+  public Optional<Duration> getRetention() {
+    return Optional.of(Duration.ofMillis(viewDefinition.getRetentionTimeMillis()));
+  }
+
+  @Override
+  public Optional<Duration> getTimeGranularity() {
+    return Optional.of(Duration.ofMillis(viewDefinition.getTimeGranularityMillis()));
+  }
+
   private void processConfig(Config config) {
 
     if (!config.hasPath(TENANT_COLUMN_NAME_CONFIG_KEY)) {
@@ -131,9 +169,10 @@ public class PinotBasedRequestHandler implements RequestHandler {
             ? Optional.of(config.getString(START_TIME_ATTRIBUTE_NAME_CONFIG_KEY))
             : Optional.empty();
 
+    this.functionConverterConfig = new PinotFunctionConverterConfig(config);
     this.request2PinotSqlConverter =
         new QueryRequestToPinotSQLConverter(
-            viewDefinition, new PinotFunctionConverter(new PinotFunctionConverterConfig(config)));
+            viewDefinition, new PinotFunctionConverter(this.functionConverterConfig));
 
     if (config.hasPath(SLOW_QUERY_THRESHOLD_MS_CONFIG)) {
       this.slowQueryThreshold = config.getInt(SLOW_QUERY_THRESHOLD_MS_CONFIG);
@@ -143,6 +182,31 @@ public class PinotBasedRequestHandler implements RequestHandler {
         slowQueryThreshold,
         name);
 
+    if (config.hasPath(NATIVE_MAP_VALUES_ENABLED_CONFIG)) {
+      this.nativeMapValuesEnabled = config.getBoolean(NATIVE_MAP_VALUES_ENABLED_CONFIG);
+    }
+    if (config.hasPath(NATIVE_BYTES_VALUES_ENABLED_CONFIG)) {
+      this.nativeBytesValuesEnabled = config.getBoolean(NATIVE_BYTES_VALUES_ENABLED_CONFIG);
+    }
+    this.timeShardPlanner =
+        new TimeShardPlanner(
+            config.hasPath(TIME_SHARDING_CONFIG_KEY)
+                ? config.getConfig(TIME_SHARDING_CONFIG_KEY)
+                : ConfigFactory.empty());
+    this.twoPhaseTopK =
+        new TwoPhaseTopK(
+            config.hasPath(TWO_PHASE_TOP_K_CONFIG_KEY)
+                ? config.getConfig(TWO_PHASE_TOP_K_CONFIG_KEY)
+                : ConfigFactory.empty());
+    this.selectionConverterCompiler =
+        new SelectionConverterCompiler(
+            config.hasPath(COMPILED_SELECTION_CONVERTERS_CONFIG_KEY)
+                ? config.getConfig(COMPILED_SELECTION_CONVERTERS_CONFIG_KEY)
+                : ConfigFactory.empty(),
+            viewDefinition,
+            nativeMapValuesEnabled,
+            nativeBytesValuesEnabled);
+
     initMetrics();
   }
 
@@ -165,263 +229,434 @@ public class PinotBasedRequestHandler implements RequestHandler {
       }
     }
 
-    if (!this.viewDefinitionSupportsFilter(viewDefinition, request.getFilter())) {
+    // If the view has any column filters, the query must have those filters as **mandatory**
+    // filters, or the view can't serve it.
+    RequestAnalysis requestAnalysis = executionContext.getRequestAnalysis();
+    if (!requestAnalysis.matchesColumnFilters(viewDefinition.getColumnFilterMap())) {
       return QueryCost.UNSUPPORTED;
     }
 
-    //    TODO
-    //    if (!this.viewDefinitionSupportsGranularity(viewDefinition, request.getGroupByList())) {
-    //      return QueryCost.UNSUPPORTED;
-    //    }
+    if (!this.viewDefinitionSupportsGranularity(viewDefinition, executionContext)) {
+      return QueryCost.UNSUPPORTED;
+    }
 
     double cost;
 
-    long requestStartTime = getRequestStartTime(request.getFilter());
+    long requestStartTime = getRequestStartTime(requestAnalysis);
+    long timeGranularityMillis = viewDefinition.getTimeGranularityMillis();
     // check if this view contains data from the requested start time
     if (requestStartTime < System.currentTimeMillis() - viewDefinition.getRetentionTimeMillis()) {
       // prefer to get data from the view which has max retention time. Ensure 0.5 <= cost <= 1
       cost = 1 - viewDefinition.getRetentionTimeMillis() / (Long.MAX_VALUE * 2D);
+    } else if (request.getAggregationCount() > 0
+        && timeBoundsAlignedToGranularity(requestAnalysis, timeGranularityMillis)) {
+      // no time bucket of the view is partially in the time range, so it aggregates the same as
+      // the finest views. Prefer the coarsest of such views as it has the fewest rows to scan.
+      // Ensure cost <= the cost of a view of 1 ms granularity
+      cost = 1 / (timeGranularityMillis * (Long.MAX_VALUE * 2D));
     } else {
       // prefer to get data from the view which has the finest granularity. Ensure cost <= 0.5
-      cost = viewDefinition.getTimeGranularityMillis() / (Long.MAX_VALUE * 2D);
+      cost = timeGranularityMillis / (Long.MAX_VALUE * 2D);
     }
 
     return new QueryCost(cost);
   }
 
-  private boolean viewDefinitionSupportsFilter(ViewDefinition viewDefinition, Filter filter) {
-    // If the view has any column filters, check if the query has those filters as **mandatory**
-    // filters. If not, the view can't serve the query.
-    Map<String, ViewColumnFilter> viewFilterMap = viewDefinition.getColumnFilterMap();
-    return viewFilterMap.isEmpty()
-        || viewFilterMap.keySet().equals(this.getMatchingViewFilterColumns(filter, viewFilterMap));
+  /**
+   * A view can only serve time series of periods which are a multiple of its granularity, as its
+   * time buckets would otherwise straddle the ones of the time series.
+   */
+  private boolean viewDefinitionSupportsGranularity(
+      ViewDefinition viewDefinition, ExecutionContext executionContext) {
+    long timeGranularityMillis = viewDefinition.getTimeGranularityMillis();
+    return timeGranularityMillis <= 0
+        || executionContext
+            .getTimeSeriesPeriod()
+            .map(period -> period.toMillis() % timeGranularityMillis == 0)
+            .orElse(true);
   }
 
-  private long getRequestStartTime(Filter filter) {
-    long requestStartTime = Long.MAX_VALUE;
-
-    if (lhsIsStartTimeAttribute(filter.getLhs())
-        && GTE_OPERATORS.contains(filter.getOperator())
-        && rhsHasLongValue(filter.getRhs())) {
-      long filterStartTime = filter.getRhs().getLiteral().getValue().getLong();
-      requestStartTime = Math.min(requestStartTime, filterStartTime);
+  /**
+   * Returns whether the filter bounds the start time attribute from both sides, and all of its
+   * bounds fall on the boundaries of the time buckets of the given granularity, so no bucket is
+   * partially in the time range.
+   */
+  private boolean timeBoundsAlignedToGranularity(
+      RequestAnalysis requestAnalysis, long timeGranularityMillis) {
+    if (timeGranularityMillis <= 1 || startTimeAttributeName.isEmpty()) {
+      return false;
     }
-
-    for (Filter childFilter : filter.getChildFilterList()) {
-      requestStartTime = Math.min(requestStartTime, getRequestStartTime(childFilter));
+    boolean hasLowerBound = false;
+    boolean hasUpperBound = false;
+    for (Filter filter : requestAnalysis.getLeafFilters(startTimeAttributeName.get())) {
+      if (!rhsHasLongValue(filter.getRhs())) {
+        return false;
+      }
+      long bound = filter.getRhs().getLiteral().getValue().getLong();
+      switch (filter.getOperator()) {
+        case GE:
+          hasLowerBound = true;
+          break;
+        case LT:
+          hasUpperBound = true;
+          break;
+        case GT:
+          hasLowerBound = true;
+          bound++;
+          break;
+        case LE:
+          hasUpperBound = true;
+          bound++;
+          break;
+        default:
+          return false;
+      }
+      if (bound % timeGranularityMillis != 0) {
+        return false;
+      }
     }
-
-    return requestStartTime;
+    return hasLowerBound && hasUpperBound;
   }
 
-  private boolean lhsIsStartTimeAttribute(Expression lhs) {
-    return startTimeAttributeName.isPresent()
-        && startTimeAttributeName.equals(getLogicalColumnName(lhs));
+  private long getRequestStartTime(RequestAnalysis requestAnalysis) {
+    return startTimeAttributeName.map(requestAnalysis::getStartTime).orElse(Long.MAX_VALUE);
   }
 
   private boolean rhsHasLongValue(Expression rhs) {
     return rhs.hasLiteral() && rhs.getLiteral().getValue().getValueType() == ValueType.LONG;
   }
 
-  /**
-   * Method to return the set of columns from the given filter which match the columns in the given
-   * viewFilterMap.
-   */
-  private Set<String> getMatchingViewFilterColumns(
-      Filter filter, Map<String, ViewColumnFilter> viewFilterMap) {
-    // 1. Basic case: Filter is a leaf node. Check if the column exists in view filters and
-    // return it.
-    if (filter.getChildFilterCount() == 0) {
-      return doesSingleViewFilterMatchLeafQueryFilter(viewFilterMap, filter)
-          ? Set.of(getLogicalColumnName(filter.getLhs()).orElseThrow(IllegalArgumentException::new))
-          : Set.of();
-    } else {
-      // 2. Internal filter node. Recursively get the matching nodes from children.
-      List<Set<String>> results =
-          filter.getChildFilterList().stream()
-              .map(f -> getMatchingViewFilterColumns(f, viewFilterMap))
-              .collect(Collectors.toList());
-
-      Set<String> result = results.get(0);
-      for (Set<String> set : results.subList(1, results.size())) {
-        // If the operation is OR, we need to get intersection of columns from all the children.
-        // Otherwise, the operation should be AND and we can get union of all columns.
-        result =
-            filter.getOperator() == Operator.OR
-                ? Sets.intersection(result, set)
-                : Sets.union(result, set);
+  /** Checks that the values from the given expression are equal to the given set. */
+  private boolean isEquals(Set<String> values, Expression expression) {
+    if (!expression.hasLiteral()) {
+      return false;
+    }
+
+    return values.equals(RequestAnalysis.getLiteralValues(expression.getLiteral()));
+  }
+
+  @Override
+  public Observable<Row> handleRequest(
+      QueryRequest originalRequest, ExecutionContext executionContext) {
+    try {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      QueryRequest request = this.prepareRequest(originalRequest, executionContext);
+
+      // Only aggregations are sharded, so only their latencies are worth learning from
+      Optional<QueryTimeRange> timeRange =
+          this.timeShardPlanner.isEnabled() && request.getAggregationCount() > 0
+              ? this.getQueryTimeRange(request, executionContext)
+              : Optional.empty();
+      if (timeRange.isPresent()) {
+        Optional<Observable<Row>> shardedRows =
+            this.handleTimeSharded(request, executionContext, timeRange.get());
+        if (shardedRows.isPresent()) {
+          return shardedRows.get();
+        }
       }
-      return result;
+
+      // need to merge data especially for Pinot. That's why we need to track the map columns
+      return this.executeQuery(
+          request,
+          executionContext,
+          stopwatch,
+          timeRange,
+          resultSetGroup ->
+              this.convert(resultSetGroup, executionContext.getComputedSelections())
+                  .map(executionContext::expandComputedRow));
+    } catch (Throwable error) {
+      return Observable.error(error);
     }
   }
 
   /**
-   * Method to check if the given ViewColumnFilter matches the given query filter. A match here
-   * means the view column is superset of what the query filter is looking for, need not be an exact
-   * match.
+   * Writes the rows of selections straight from the Pinot result. Aggregations and selections
+   * computed once for several aliases are left to {@link #handleRequest}.
    */
-  private boolean doesSingleViewFilterMatchLeafQueryFilter(
-      Map<String, ViewColumnFilter> viewFilterMap, Filter queryFilter) {
-
-    if (queryFilter.getOperator() != Operator.IN && queryFilter.getOperator() != Operator.EQ) {
-      return false;
+  @Override
+  public Optional<Observable<EncodedRows>> handleRequestEncoded(
+      QueryRequest originalRequest, ExecutionContext executionContext) {
+    if (originalRequest.getAggregationCount() > 0
+        || originalRequest.getGroupByCount() > 0
+        || executionContext.getComputedSelections().size()
+            != executionContext.getAllSelections().size()) {
+      return Optional.empty();
     }
-
-    ViewColumnFilter viewColumnFilter =
-        getLogicalColumnName(queryFilter.getLhs()).map(viewFilterMap::get).orElse(null);
-    if (viewColumnFilter == null) {
-      return false;
+    try {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      QueryRequest request = this.prepareRequest(originalRequest, executionContext);
+      return Optional.of(
+          this.executeQuery(
+              request,
+              executionContext,
+              stopwatch,
+              Optional.empty(),
+              resultSetGroup ->
+                  Observable.just(
+                      this.encode(resultSetGroup, executionContext.getComputedSelections()))));
+    } catch (Throwable error) {
+      return Optional.of(Observable.error(error));
     }
+  }
 
-    switch (viewColumnFilter.getOperator()) {
-      case IN:
-        return isSubSet(viewColumnFilter.getValues(), queryFilter.getRhs());
-      case EQ:
-        return isEquals(viewColumnFilter.getValues(), queryFilter.getRhs());
-      default:
-        throw new IllegalArgumentException(
-            "Unsupported view filter operator: " + viewColumnFilter.getOperator());
+  /** Validates the request and rewrites it for the view. */
+  private QueryRequest prepareRequest(
+      QueryRequest originalRequest, ExecutionContext executionContext) throws Exception {
+    validateQueryRequest(executionContext, originalRequest);
+
+    QueryRequest request;
+    // Rewrite the request filter after applying the view filters.
+    if (!viewDefinition.getColumnFilterMap().isEmpty()
+        && !Filter.getDefaultInstance().equals(originalRequest.getFilter())) {
+      request =
+          rewriteRequestWithViewFiltersApplied(
+              originalRequest, viewDefinition.getColumnFilterMap());
+    } else {
+      request = originalRequest;
+    }
+    if (this.twoPhaseTopK.isEnabled()) {
+      request = this.restrictToTopKCandidates(request, executionContext);
     }
+    return request;
   }
 
-  /** Checks that the values from the given expression are a subset of the given set. */
-  private boolean isSubSet(Set<String> values, Expression expression) {
-    if (!expression.hasLiteral()) {
-      return false;
+  /** Executes the request as a single query, and converts its result with the given function. */
+  private <T> Observable<T> executeQuery(
+      QueryRequest request,
+      ExecutionContext executionContext,
+      Stopwatch stopwatch,
+      Optional<QueryTimeRange> timeRange,
+      Function<ResultSetGroup, Observable<T>> resultConverter)
+      throws InvalidProtocolBufferException {
+    Entry<String, Params> pql =
+        request2PinotSqlConverter.toSQL(
+            executionContext, request, executionContext.getComputedSelections());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Trying to execute PQL: [ {} ] by RequestHandler: [ {} ]", pql, this.getName());
     }
+    final PinotClient pinotClient = pinotClientFactory.getPinotClient(this.getName());
 
-    return values.containsAll(getExpressionValues(expression.getLiteral()));
-  }
-
-  /** Checks that the values from the given expression are a subset of the given set. */
-  private boolean isEquals(Set<String> values, Expression expression) {
-    if (!expression.hasLiteral()) {
-      return false;
+    final ResultSetGroup resultSetGroup;
+    try {
+      resultSetGroup =
+          pinotQueryExecutionTimer.recordCallable(
+              () -> pinotClient.executeQuery(pql.getKey(), pql.getValue()));
+    } catch (Exception ex) {
+      // Catch this exception to log the Pinot SQL query that caused the issue
+      LOG.error(
+          "An error occurred while executing queryRequest: {}, sqlQuery: {}, params: {}",
+          protoJsonPrinter.print(request),
+          pql.getKey(),
+          pql.getValue(),
+          ex);
+      // Rethrow for the caller to return an error.
+      throw new RuntimeException(ex);
     }
 
-    return values.equals(getExpressionValues(expression.getLiteral()));
-  }
-
-  private Set<String> getExpressionValues(LiteralConstant literalConstant) {
-    Set<String> expressionValues = new HashSet<>();
-    Value value = literalConstant.getValue();
-    switch (value.getValueType()) {
-      case STRING:
-        expressionValues.add(value.getString());
-        break;
-      case STRING_ARRAY:
-        expressionValues.addAll(value.getStringArrayList());
-        break;
-      case INT:
-        expressionValues.add(String.valueOf(value.getInt()));
-        break;
-      case INT_ARRAY:
-        expressionValues.addAll(
-            value.getIntArrayList().stream().map(Object::toString).collect(Collectors.toSet()));
-        break;
-      case LONG:
-        expressionValues.add(String.valueOf(value.getLong()));
-        break;
-      case LONG_ARRAY:
-        expressionValues.addAll(
-            value.getLongArrayList().stream().map(Object::toString).collect(Collectors.toSet()));
-        break;
-      case DOUBLE:
-        expressionValues.add(String.valueOf(value.getDouble()));
-        break;
-      case DOUBLE_ARRAY:
-        expressionValues.addAll(
-            value.getDoubleArrayList().stream().map(Object::toString).collect(Collectors.toSet()));
-        break;
-      case FLOAT:
-        expressionValues.add(String.valueOf(value.getFloat()));
-        break;
-      case FLOAT_ARRAY:
-        expressionValues.addAll(
-            value.getFloatArrayList().stream().map(Object::toString).collect(Collectors.toSet()));
-        break;
-      case BOOL:
-        expressionValues.add(String.valueOf(value.getBoolean()).toLowerCase());
-        break;
-      case BOOLEAN_ARRAY:
-        expressionValues.addAll(
-            value.getBooleanArrayList().stream()
-                .map(b -> b.toString().toLowerCase())
-                .collect(Collectors.toSet()));
-        break;
-      default:
-        // Ignore the rest of the types for now.
-        throw new IllegalArgumentException("Unsupported value type in subset check.");
-    }
-    return expressionValues;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Query results: [ {} ]", resultSetGroup.toString());
+    }
+    timeRange.ifPresent(
+        range ->
+            this.timeShardPlanner.record(range.getDuration().toMillis(), 1, stopwatch.elapsed()));
+    return resultConverter
+        .apply(resultSetGroup)
+        .doOnComplete(
+            () -> {
+              long requestTimeMs = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
+              if (requestTimeMs > slowQueryThreshold) {
+                try {
+                  LOG.warn(
+                      "Query Execution time: {} ms, sqlQuery: {}, queryRequest: {}, executionStats: {}",
+                      requestTimeMs,
+                      pql.getKey(),
+                      protoJsonPrinter.print(request),
+                      resultSetGroup.getExecutionStats());
+                } catch (InvalidProtocolBufferException ignore) {
+                }
+              }
+            });
   }
 
-  @Override
-  public Observable<Row> handleRequest(
-      QueryRequest originalRequest, ExecutionContext executionContext) {
-    try {
-      Stopwatch stopwatch = Stopwatch.createStarted();
-      validateQueryRequest(executionContext, originalRequest);
-
-      QueryRequest request;
-      // Rewrite the request filter after applying the view filters.
-      if (!viewDefinition.getColumnFilterMap().isEmpty()
-          && !Filter.getDefaultInstance().equals(originalRequest.getFilter())) {
-        request =
-            rewriteRequestWithViewFiltersApplied(
-                originalRequest, viewDefinition.getColumnFilterMap());
-      } else {
-        request = originalRequest;
-      }
+  /**
+   * Executes an aggregation over a long time range as concurrent queries over shards of the time
+   * range and merges their results, if it has more than one shard and its aggregations can be
+   * merged. Returns empty if the request has to be executed as a single query. Fails with {@link
+   * Status#DEADLINE_EXCEEDED} if the shards don't complete within the shard timeout.
+   */
+  private Optional<Observable<Row>> handleTimeSharded(
+      QueryRequest request, ExecutionContext executionContext, QueryTimeRange timeRange)
+      throws Exception {
+    List<TimeShard> shards =
+        this.timeShardPlanner.plan(
+            timeRange.getStartTime().toEpochMilli(),
+            timeRange.getEndTime().toEpochMilli(),
+            executionContext.getTimeSeriesPeriod());
+    if (shards.size() < 2) {
+      return Optional.empty();
+    }
+    // Without a limit, Pinot only returns its default number of groups
+    if (request.getAggregationCount() == 0
+        || (request.getGroupByCount() > 0 && request.getLimit() <= 0)) {
+      return Optional.empty();
+    }
+    Optional<PartialAggregation> aggregation =
+        PartialAggregation.forRequest(
+            request,
+            executionContext,
+            PinotSketchMerges.forAccuracy(
+                this.functionConverterConfig, executionContext.getAccuracy()));
+    if (aggregation.isEmpty()) {
+      return Optional.empty();
+    }
 
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    String timeFilterColumn = this.startTimeAttributeName.orElseThrow();
+    PinotClient pinotClient = pinotClientFactory.getPinotClient(this.getName());
+    List<QueryRequest> shardRequests = new ArrayList<>();
+    List<ExecutionContext> shardContexts = new ArrayList<>();
+    List<Future<ResultSetGroup>> shardResults = new ArrayList<>();
+    for (TimeShard shard : shards) {
+      QueryRequest shardRequest =
+          aggregation
+              .get()
+              .forTimeRange(
+                  timeFilterColumn, shard.getStartTimeMillis(), shard.getEndTimeMillis());
+      ExecutionContext shardContext =
+          new ExecutionContext(executionContext.getTenantId(), shardRequest);
+      shardContext.setTimeFilterColumn(timeFilterColumn);
       Entry<String, Params> pql =
           request2PinotSqlConverter.toSQL(
-              executionContext, request, executionContext.getAllSelections());
+              shardContext, shardRequest, shardContext.getComputedSelections());
       if (LOG.isDebugEnabled()) {
-        LOG.debug("Trying to execute PQL: [ {} ] by RequestHandler: [ {} ]", pql, this.getName());
-      }
-      final PinotClient pinotClient = pinotClientFactory.getPinotClient(this.getName());
-
-      final ResultSetGroup resultSetGroup;
-      try {
-        resultSetGroup =
-            pinotQueryExecutionTimer.recordCallable(
-                () -> pinotClient.executeQuery(pql.getKey(), pql.getValue()));
-      } catch (Exception ex) {
-        // Catch this exception to log the Pinot SQL query that caused the issue
-        LOG.error(
-            "An error occurred while executing queryRequest: {}, sqlQuery: {}, params: {}",
-            protoJsonPrinter.print(request),
-            pql.getKey(),
-            pql.getValue(),
-            ex);
-        // Rethrow for the caller to return an error.
-        throw new RuntimeException(ex);
+        LOG.debug("Trying to execute shard PQL: [ {} ] by RequestHandler: [ {} ]", pql, name);
       }
+      shardRequests.add(shardRequest);
+      shardContexts.add(shardContext);
+      shardResults.add(pinotClient.executeQueryAsync(pql.getKey(), pql.getValue()));
+    }
 
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Query results: [ {} ]", resultSetGroup.toString());
+    long timeoutNanos = this.getShardTimeout().toNanos();
+    long deadlineNanos = System.nanoTime() + timeoutNanos;
+    List<Row> shardRows = new ArrayList<>();
+    try {
+      for (int i = 0; i < shards.size(); i++) {
+        QueryRequest shardRequest = shardRequests.get(i);
+        List<Row> rows =
+            this.getShardRows(
+                shardResults.get(i), shardContexts.get(i), deadlineNanos - System.nanoTime());
+        int maxShardGroups = this.timeShardPlanner.getMaxShardGroups();
+        if (!aggregation.get().isComplete(shardRequest, rows.size())
+            && shardRequest.getLimit() < maxShardGroups) {
+          // Only this shard misses groups, so only it is executed again for all of its groups
+          shardRequest = shardRequest.toBuilder().setLimit(maxShardGroups).build();
+          ExecutionContext shardContext =
+              new ExecutionContext(executionContext.getTenantId(), shardRequest);
+          shardContext.setTimeFilterColumn(timeFilterColumn);
+          Entry<String, Params> pql =
+              request2PinotSqlConverter.toSQL(
+                  shardContext, shardRequest, shardContext.getComputedSelections());
+          shardResults.set(i, pinotClient.executeQueryAsync(pql.getKey(), pql.getValue()));
+          rows =
+              this.getShardRows(
+                  shardResults.get(i), shardContext, deadlineNanos - System.nanoTime());
+        }
+        if (!aggregation.get().isComplete(shardRequest, rows.size())) {
+          LOG.debug("Shard has more groups than allowed, executing the request as a single query");
+          shardResults.forEach(shardResult -> shardResult.cancel(true));
+          return Optional.empty();
+        }
+        shardRows.addAll(rows);
       }
-      // need to merge data especially for Pinot. That's why we need to track the map columns
-      return this.convert(resultSetGroup, executionContext.getSelectedColumns())
-          .doOnComplete(
-              () -> {
-                long requestTimeMs = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
-                if (requestTimeMs > slowQueryThreshold) {
-                  try {
-                    LOG.warn(
-                        "Query Execution time: {} ms, sqlQuery: {}, queryRequest: {}, executionStats: {}",
-                        requestTimeMs,
-                        pql.getKey(),
-                        protoJsonPrinter.print(request),
-                        resultSetGroup.getExecutionStats());
-                  } catch (InvalidProtocolBufferException ignore) {
-                  }
-                }
-              });
-    } catch (Throwable error) {
-      return Observable.error(error);
+    } catch (TimeoutException e) {
+      shardResults.forEach(shardResult -> shardResult.cancel(true));
+      throw Status.DEADLINE_EXCEEDED
+          .withDescription(
+              String.format(
+                  "Time shards of the request did not complete within %s ms",
+                  TimeUnit.NANOSECONDS.toMillis(timeoutNanos)))
+          .withCause(e)
+          .asRuntimeException();
     }
+
+    Duration latency = stopwatch.stop().elapsed();
+    pinotQueryExecutionTimer.record(latency);
+    this.timeShardPlanner.record(timeRange.getDuration().toMillis(), shards.size(), latency);
+    return Optional.of(Observable.fromIterable(aggregation.get().merge(shardRows)));
+  }
+
+  private List<Row> getShardRows(
+      Future<ResultSetGroup> shardResult, ExecutionContext shardContext, long timeoutNanos)
+      throws Exception {
+    return this.convert(
+            shardResult.get(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS),
+            shardContext.getComputedSelections())
+        .map(shardContext::expandComputedRow)
+        .toList()
+        .blockingGet();
+  }
+
+  /** Returns how long to wait for the shards, which is at most until the request deadline. */
+  private Duration getShardTimeout() {
+    Duration shardTimeout = this.timeShardPlanner.getShardTimeout();
+    Deadline deadline = Context.current().getDeadline();
+    if (deadline == null) {
+      return shardTimeout;
+    }
+    Duration timeRemaining = Duration.ofNanos(deadline.timeRemaining(TimeUnit.NANOSECONDS));
+    return timeRemaining.compareTo(shardTimeout) < 0 ? timeRemaining : shardTimeout;
+  }
+
+  /**
+   * Returns the request restricted to the candidate groups of its top groups, ranked by a first
+   * query, or the request as it is if it doesn't need to be executed in two phases.
+   */
+  private QueryRequest restrictToTopKCandidates(
+      QueryRequest request, ExecutionContext executionContext) throws Exception {
+    Optional<QueryRequest> candidateRequest = this.twoPhaseTopK.getCandidateRequest(request);
+    if (candidateRequest.isEmpty()
+        || this.viewDefinition.isMap(
+            getLogicalColumnName(request.getGroupBy(0)).orElseThrow())) {
+      return request;
+    }
+
+    ExecutionContext candidateContext =
+        new ExecutionContext(executionContext.getTenantId(), candidateRequest.get());
+    this.startTimeAttributeName.ifPresent(candidateContext::setTimeFilterColumn);
+    Entry<String, Params> pql =
+        request2PinotSqlConverter.toSQL(
+            candidateContext, candidateRequest.get(), candidateContext.getComputedSelections());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Trying to execute top groups PQL: [ {} ] by RequestHandler: [ {} ]", pql, name);
+    }
+    PinotClient pinotClient = pinotClientFactory.getPinotClient(this.getName());
+    ResultSetGroup resultSetGroup =
+        pinotQueryExecutionTimer.recordCallable(
+            () -> pinotClient.executeQuery(pql.getKey(), pql.getValue()));
+
+    int keyIndex =
+        new ArrayList<>(candidateContext.getAllSelections())
+            .indexOf(candidateRequest.get().getGroupBy(0));
+    List<Value> candidateKeys =
+        this.convert(resultSetGroup, candidateContext.getComputedSelections())
+            .map(candidateContext::expandComputedRow)
+            .map(row -> row.getColumn(keyIndex))
+            .toList()
+            .blockingGet();
+    return this.twoPhaseTopK
+        .restrictToCandidates(request, candidateRequest.get(), candidateKeys)
+        .orElse(request);
+  }
+
+  private Optional<QueryTimeRange> getQueryTimeRange(
+      QueryRequest request, ExecutionContext executionContext) {
+    if (this.startTimeAttributeName.isEmpty()) {
+      return Optional.empty();
+    }
+    ExecutionContext timeRangeContext =
+        new ExecutionContext(executionContext.getTenantId(), request);
+    timeRangeContext.setTimeFilterColumn(this.startTimeAttributeName.get());
+    return timeRangeContext.getQueryTimeRange();
   }
 
   @Nonnull
@@ -472,7 +707,7 @@ public class PinotBasedRequestHandler implements RequestHandler {
     return queryFilter;
   }
 
-  Observable<Row> convert(ResultSetGroup resultSetGroup, LinkedHashSet<String> selectedAttributes) {
+  Observable<Row> convert(ResultSetGroup resultSetGroup, LinkedHashSet<Expression> selections) {
     List<Row.Builder> rowBuilderList = new ArrayList<>();
     if (resultSetGroup.getResultSetCount() > 0) {
       ResultSet resultSet = resultSetGroup.getResultSet(0);
@@ -480,7 +715,7 @@ public class PinotBasedRequestHandler implements RequestHandler {
       if (resultSetTypePredicateProvider.isSelectionResultSetType(resultSet)) {
         // map merging is only supported in the selection. Filtering and Group by has its own
         // syntax in Pinot
-        handleSelection(resultSetGroup, rowBuilderList, selectedAttributes);
+        handleSelection(resultSetGroup, rowBuilderList, selections);
       } else if (resultSetTypePredicateProvider.isResultTableResultSetType(resultSet)) {
         handleTableFormatResultSet(resultSetGroup, rowBuilderList);
       } else {
@@ -492,10 +727,63 @@ public class PinotBasedRequestHandler implements RequestHandler {
         .doOnNext(row -> LOG.debug("collect a row: {}", row));
   }
 
+  /**
+   * Same as {@link #convert}, with the rows written straight into their wire format. The cells of
+   * table format results, and of selection results with a compiled converter, are written from the
+   * result as is. Aggregation results are written from their converted rows.
+   */
+  EncodedRows encode(ResultSetGroup resultSetGroup, LinkedHashSet<Expression> selections) {
+    RowWriter rowWriter = new RowWriter();
+    if (resultSetGroup.getResultSetCount() > 0) {
+      ResultSet firstResultSet = resultSetGroup.getResultSet(0);
+      if (resultSetTypePredicateProvider.isSelectionResultSetType(firstResultSet)) {
+        writeSelection(resultSetGroup, rowWriter, selections);
+      } else if (resultSetTypePredicateProvider.isResultTableResultSetType(firstResultSet)) {
+        writeTableFormatResultSet(resultSetGroup, rowWriter);
+      } else {
+        this.convert(resultSetGroup, selections).blockingForEach(rowWriter::addRow);
+      }
+    }
+    return rowWriter.build();
+  }
+
+  private void writeSelection(
+      ResultSetGroup resultSetGroup, RowWriter rowWriter, LinkedHashSet<Expression> selections) {
+    LinkedHashSet<String> selectedAttributes = getSelectedAttributes(selections);
+    for (int i = 0; i < resultSetGroup.getResultSetCount(); i++) {
+      ResultSet resultSet = resultSetGroup.getResultSet(i);
+      PinotResultAnalyzer resultAnalyzer =
+          PinotResultAnalyzer.create(resultSet, selectedAttributes, viewDefinition);
+      Optional<CompiledSelectionConverter> compiledConverter =
+          selectionConverterCompiler.getConverter(selections, resultAnalyzer);
+      if (compiledConverter.isPresent()) {
+        for (int rowId = 0; rowId < resultSet.getRowCount(); rowId++) {
+          compiledConverter.get().write(resultSet, rowId, rowWriter);
+          rowWriter.endRow();
+        }
+        continue;
+      }
+      List<Builder> rowBuilderList = new ArrayList<>();
+      convertSelectionRows(resultSet, resultAnalyzer, selections, rowBuilderList);
+      rowBuilderList.forEach(builder -> rowWriter.addRow(builder.build()));
+    }
+  }
+
+  private void writeTableFormatResultSet(ResultSetGroup resultSetGroup, RowWriter rowWriter) {
+    for (int i = 0; i < resultSetGroup.getResultSetCount(); i++) {
+      ResultSet resultSet = resultSetGroup.getResultSet(i);
+      for (int rowIdx = 0; rowIdx < resultSet.getRowCount(); rowIdx++) {
+        convertTableFormatRow(resultSet, rowIdx, rowWriter::addString, rowWriter::addValue);
+        rowWriter.endRow();
+      }
+    }
+  }
+
   private void handleSelection(
       ResultSetGroup resultSetGroup,
       List<Builder> rowBuilderList,
-      LinkedHashSet<String> selectedAttributes) {
+      LinkedHashSet<Expression> selections) {
+    LinkedHashSet<String> selectedAttributes = getSelectedAttributes(selections);
     int resultSetGroupCount = resultSetGroup.getResultSetCount();
     for (int i = 0; i < resultSetGroupCount; i++) {
       ResultSet resultSet = resultSetGroup.getResultSet(i);
@@ -503,18 +791,64 @@ public class PinotBasedRequestHandler implements RequestHandler {
       PinotResultAnalyzer resultAnalyzer =
           PinotResultAnalyzer.create(resultSet, selectedAttributes, viewDefinition);
 
-      // For each row returned from Pinot,
-      // build the row according to the selected attributes from the request
-      for (int rowId = 0; rowId < resultSet.getRowCount(); rowId++) {
-        Builder builder;
-        builder = Row.newBuilder();
-        rowBuilderList.add(builder);
+      Optional<CompiledSelectionConverter> compiledConverter =
+          selectionConverterCompiler.getConverter(selections, resultAnalyzer);
+      if (compiledConverter.isPresent()) {
+        for (int rowId = 0; rowId < resultSet.getRowCount(); rowId++) {
+          Builder builder = Row.newBuilder();
+          compiledConverter.get().convert(resultSet, rowId, builder);
+          rowBuilderList.add(builder);
+        }
+        continue;
+      }
+      convertSelectionRows(resultSet, resultAnalyzer, selections, rowBuilderList);
+    }
+  }
+
+  /** Subpaths of map attributes are extracted by Pinot, so only whole maps need merging. */
+  private static LinkedHashSet<String> getSelectedAttributes(
+      LinkedHashSet<Expression> selections) {
+    return selections.stream()
+        .filter(selection -> !isAttributeExpressionWithSubpath(selection))
+        .map(QueryRequestUtil::getLogicalColumnName)
+        .flatMap(Optional::stream)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+  }
 
-        // for each selected attributes in the request get the data from the
-        // Pinot row result
-        for (String logicalName : selectedAttributes) {
-          // colVal will never be null. But getDataRow can throw a runtime exception if it failed
-          // to retrieve data
+  private void convertSelectionRows(
+      ResultSet resultSet,
+      PinotResultAnalyzer resultAnalyzer,
+      LinkedHashSet<Expression> selections,
+      List<Builder> rowBuilderList) {
+    // For each row returned from Pinot,
+    // build the row according to the selected attributes from the request
+    for (int rowId = 0; rowId < resultSet.getRowCount(); rowId++) {
+      Builder builder;
+      builder = Row.newBuilder();
+      rowBuilderList.add(builder);
+
+      // for each selection in the request get the data from the Pinot row result. Columns
+      // follow the order of the selections, with both the keys and values of whole maps
+      int columnIndex = 0;
+      for (Expression selection : selections) {
+        Optional<String> selectedAttribute = getLogicalColumnName(selection);
+        if (isAttributeExpressionWithSubpath(selection) || selectedAttribute.isEmpty()) {
+          builder.addColumn(
+              Value.newBuilder().setString(resultSet.getString(rowId, columnIndex)).build());
+          columnIndex++;
+          continue;
+        }
+        String logicalName = selectedAttribute.get();
+        columnIndex += viewDefinition.isMap(logicalName) ? 2 : 1;
+        // colVal will never be null. But getDataRow can throw a runtime exception if it failed
+        // to retrieve data
+        if (nativeBytesValuesEnabled
+            && viewDefinition.getColumnType(logicalName) == ValueType.BYTES) {
+          builder.addColumn(
+              toBytesValue(resultAnalyzer.getDataFromRow(rowId, logicalName), logicalName));
+        } else if (nativeMapValuesEnabled) {
+          builder.addColumn(resultAnalyzer.getValueFromRow(rowId, logicalName));
+        } else {
           String colVal = resultAnalyzer.getDataFromRow(rowId, logicalName);
           builder.addColumn(Value.newBuilder().setString(colVal).build());
         }
@@ -575,33 +909,59 @@ public class PinotBasedRequestHandler implements RequestHandler {
         Builder builder;
         builder = Row.newBuilder();
         rowBuilderList.add(builder);
+        convertTableFormatRow(
+            resultSet,
+            rowIdx,
+            val -> builder.addColumn(Value.newBuilder().setString(val).build()),
+            builder::addColumn);
+      }
+    }
+  }
 
-        for (int colIdx = 0; colIdx < resultSet.getColumnCount(); colIdx++) {
-          if (resultSet.getColumnName(colIdx).endsWith(ViewDefinition.MAP_KEYS_SUFFIX)) {
-            // Read the key and value column values. The columns should be side by side. That's how
-            // the Pinot query
-            // is structured
-            String mapKeys = resultSet.getString(rowIdx, colIdx);
-            String mapVals = resultSet.getString(rowIdx, colIdx + 1);
-            try {
-              builder.addColumn(
-                  Value.newBuilder().setString(pinotMapConverter.merge(mapKeys, mapVals)).build());
-            } catch (IOException ex) {
-              LOG.error("An error occurred while merging mapKeys and mapVals", ex);
-              throw new RuntimeException(
-                  "An error occurred while parsing the Pinot Table format response", ex);
-            }
-            // advance colIdx by 1 since we have read 2 columns
-            colIdx++;
+  /** Adds the cells of the given row of a table format result, as strings or other values. */
+  private void convertTableFormatRow(
+      ResultSet resultSet, int rowIdx, Consumer<String> stringCells, Consumer<Value> valueCells) {
+    for (int colIdx = 0; colIdx < resultSet.getColumnCount(); colIdx++) {
+      if (resultSet.getColumnName(colIdx).endsWith(ViewDefinition.MAP_KEYS_SUFFIX)) {
+        // Read the key and value column values. The columns should be side by side. That's how
+        // the Pinot query
+        // is structured
+        String mapKeys = resultSet.getString(rowIdx, colIdx);
+        String mapVals = resultSet.getString(rowIdx, colIdx + 1);
+        try {
+          if (nativeMapValuesEnabled) {
+            Value.Builder valueBuilder = Value.newBuilder();
+            pinotMapConverter.mergeInto(mapKeys, mapVals, valueBuilder);
+            valueCells.accept(valueBuilder.build());
           } else {
-            String val = resultSet.getString(rowIdx, colIdx);
-            builder.addColumn(Value.newBuilder().setString(val).build());
+            stringCells.accept(pinotMapConverter.merge(mapKeys, mapVals));
           }
+        } catch (IOException ex) {
+          LOG.error("An error occurred while merging mapKeys and mapVals", ex);
+          throw new RuntimeException(
+              "An error occurred while parsing the Pinot Table format response", ex);
         }
+        // advance colIdx by 1 since we have read 2 columns
+        colIdx++;
+      } else if (nativeBytesValuesEnabled
+          && viewDefinition.isBytesColumn(resultSet.getColumnName(colIdx))) {
+        valueCells.accept(
+            toBytesValue(resultSet.getString(rowIdx, colIdx), resultSet.getColumnName(colIdx)));
+      } else {
+        stringCells.accept(resultSet.getString(rowIdx, colIdx));
       }
     }
   }
 
+  private Value toBytesValue(String hexValue, String columnName) {
+    try {
+      return DestinationColumnValueConverter.INSTANCE.convertToBytesValue(hexValue);
+    } catch (DecoderException ex) {
+      throw new IllegalStateException(
+          "Unable to decode the hex data of bytes column " + columnName, ex);
+    }
+  }
+
   private void validateQueryRequest(ExecutionContext executionContext, QueryRequest request) {
     // Validate QueryContext and tenant id presence
     Preconditions.checkNotNull(executionContext);
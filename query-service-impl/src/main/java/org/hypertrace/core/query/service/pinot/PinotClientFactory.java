@@ -1,6 +1,7 @@
 package org.hypertrace.core.query.service.pinot;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import org.apache.commons.codec.binary.Hex;
@@ -130,23 +131,20 @@ public class PinotClientFactory {
       if (query.isEmpty()) {
         return query;
       }
-      String[] queryParts = query.split("\\?");
-
-      String[] parameters = new String[queryParts.length];
-      params.getStringParams().forEach((i, p) -> parameters[i] = getStringParam(p));
-      params.getIntegerParams().forEach((i, p) -> parameters[i] = String.valueOf(p));
-      params.getLongParams().forEach((i, p) -> parameters[i] = String.valueOf(p));
-      params.getDoubleParams().forEach((i, p) -> parameters[i] = String.valueOf(p));
-      params.getFloatParams().forEach((i, p) -> parameters[i] = String.valueOf(p));
-      params
-          .getByteStringParams()
-          .forEach((i, p) -> parameters[i] = getStringParam(Hex.encodeHexString(p.toByteArray())));
-
-      StringBuilder sb = new StringBuilder();
-      for (int i = 0; i < queryParts.length; i++) {
-        sb.append(queryParts[i]);
-        sb.append(parameters[i] != null ? parameters[i] : "");
+      // Large IN lists have thousands of params, so the statement is scanned once for them rather
+      // than split by a regex, into a builder presized for ids of up to 32 bytes
+      StringBuilder sb =
+          new StringBuilder(
+              query.length()
+                  + 66 * (params.getStringParams().size() + params.getByteStringParams().size()));
+      int paramIndex = 0;
+      int start = 0;
+      for (int end = query.indexOf('?'); end >= 0; end = query.indexOf('?', start)) {
+        sb.append(query, start, end);
+        appendParam(sb, params, paramIndex++);
+        start = end + 1;
       }
+      sb.append(query, start, query.length());
       String statement = sb.toString();
       if (LOG.isDebugEnabled()) {
         LOG.debug("Resolved PQL statement: [{}]", statement);
@@ -154,6 +152,32 @@ public class PinotClientFactory {
       return statement;
     }
 
+    private static void appendParam(StringBuilder sb, Params params, int index) {
+      String stringParam = params.getStringParams().get(index);
+      if (stringParam != null) {
+        sb.append(getStringParam(stringParam));
+        return;
+      }
+      ByteString byteStringParam = params.getByteStringParams().get(index);
+      if (byteStringParam != null) {
+        sb.append(getStringParam(Hex.encodeHexString(byteStringParam.asReadOnlyByteBuffer())));
+        return;
+      }
+      Object numberParam = params.getLongParams().get(index);
+      if (numberParam == null) {
+        numberParam = params.getIntegerParams().get(index);
+      }
+      if (numberParam == null) {
+        numberParam = params.getDoubleParams().get(index);
+      }
+      if (numberParam == null) {
+        numberParam = params.getFloatParams().get(index);
+      }
+      if (numberParam != null) {
+        sb.append(numberParam);
+      }
+    }
+
     private static String getStringParam(String value) {
       return "'" + value.replace("'", "''") + "'";
     }
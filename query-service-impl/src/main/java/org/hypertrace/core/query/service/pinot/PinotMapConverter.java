@@ -1,29 +1,122 @@
 package org.hypertrace.core.query.service.pinot;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class PinotMapConverter {
   // This is how empty list is represented in Pinot
   private static final String PINOT_EMPTY_LIST = "[\"\"]";
+  private static final String EMPTY_LIST = "[]";
+  private static final String EMPTY_MAP_JSON = "{}";
   private static final Logger LOG = LoggerFactory.getLogger(PinotMapConverter.class);
   private static final TypeReference<List<String>> listOfString = new TypeReference<>() {};
 
   private final ObjectMapper objectMapper;
+  private final JsonFactory jsonFactory;
+  // The converter is shared by concurrently executing requests, hence the buffers reused across
+  // merges are kept per thread.
+  private final ThreadLocal<MergeBuffers> mergeBuffers =
+      ThreadLocal.withInitial(MergeBuffers::new);
 
   public PinotMapConverter() {
     this.objectMapper = new ObjectMapper();
+    this.jsonFactory = objectMapper.getFactory();
   }
 
+  /**
+   * Merges the Pinot key and value arrays of a map column into the json string of the map. Both
+   * arrays are streamed in lock-step and the json object is written directly into a reused buffer,
+   * so no intermediate lists or maps are created. The keys drive the map: missing values become
+   * empty strings and excessive values are dropped. Key arrays with duplicate or null keys are left
+   * to the map based merge, where the last value of a duplicate key wins.
+   */
   String merge(String keyData, String valueData) throws IOException {
+    // default should not be null
+    if (keyData == null || valueData == null) {
+      // throw IOException so that it can be caught be the caller and provide additional
+      // context
+      throw new IOException("Key Data or Value Data of this map is null.");
+    }
+    if (isEmptyList(keyData)) {
+      return EMPTY_MAP_JSON;
+    }
+
+    MergeBuffers buffers = mergeBuffers.get();
+    buffers.reset();
+    try (JsonParser keyParser = jsonFactory.createParser(keyData);
+        JsonParser valueParser =
+            isEmptyList(valueData) ? null : jsonFactory.createParser(valueData);
+        JsonGenerator generator = jsonFactory.createGenerator(buffers.writer)) {
+      startArray(keyParser, keyData, "key");
+      boolean hasMoreValues = valueParser != null && startArray(valueParser, valueData, "value");
+
+      generator.writeStartObject();
+      int keyCount = 0;
+      int valueCount = 0;
+      JsonToken keyToken;
+      while ((keyToken = nextElement(keyParser, keyData, "key")) != JsonToken.END_ARRAY) {
+        String key = keyToken == JsonToken.VALUE_NULL ? null : keyParser.getText();
+        if (key == null || buffers.isDuplicate(key)) {
+          // Rare enough to not be worth handling in the streaming path
+          return mergeUsingMap(keyData, valueData);
+        }
+        keyCount++;
+
+        // to handle unbalanced size
+        String value = "";
+        if (hasMoreValues) {
+          JsonToken valueToken = nextElement(valueParser, valueData, "value");
+          hasMoreValues = valueToken != JsonToken.END_ARRAY;
+          if (hasMoreValues) {
+            valueCount++;
+            value = valueToken == JsonToken.VALUE_NULL ? null : valueParser.getText();
+          }
+        }
+
+        generator.writeFieldName(key);
+        if (value == null) {
+          generator.writeNull();
+        } else {
+          generator.writeString(value);
+        }
+      }
+      generator.writeEndObject();
+      generator.flush();
+
+      if (hasMoreValues) {
+        // Any excessive values are dropped, only count them for the log below
+        while (nextElement(valueParser, valueData, "value") != JsonToken.END_ARRAY) {
+          valueCount++;
+        }
+      }
+      logSizeMismatch(keyCount, valueCount);
+      return buffers.builder.toString();
+    }
+  }
+
+  /**
+   * Map based merge of the Pinot key and value arrays, used by {@link #merge(String, String)} for
+   * the rare key arrays with duplicate or null keys.
+   */
+  String mergeUsingMap(String keyData, String valueData) throws IOException {
     Map<String, String> map = new HashMap<>();
     // default should not be null
     if (keyData == null || valueData == null) {
@@ -88,4 +181,166 @@ public class PinotMapConverter {
       throw e;
     }
   }
+
+  /**
+   * Merges the Pinot key and value arrays of a map column straight into the {@code string_map} of
+   * the given value builder and marks it as {@link ValueType#STRING_MAP}. Both arrays are streamed
+   * in lock-step, so no intermediate lists, maps or json strings are created. The semantics match
+   * {@link #merge(String, String)}: the keys drive the map, missing values become empty strings
+   * and, for duplicate keys, the last value wins.
+   */
+  void mergeInto(String keyData, String valueData, Value.Builder valueBuilder)
+      throws IOException {
+    if (keyData == null || valueData == null) {
+      throw new IOException("Key Data or Value Data of this map is null.");
+    }
+    valueBuilder.setValueType(ValueType.STRING_MAP);
+    if (isEmptyList(keyData)) {
+      return;
+    }
+
+    try (JsonParser keyParser = jsonFactory.createParser(keyData);
+        JsonParser valueParser =
+            isEmptyList(valueData) ? null : jsonFactory.createParser(valueData)) {
+      startArray(keyParser, keyData, "key");
+      boolean hasMoreValues = valueParser != null && startArray(valueParser, valueData, "value");
+
+      int keyCount = 0;
+      int valueCount = 0;
+      JsonToken keyToken;
+      while ((keyToken = nextElement(keyParser, keyData, "key")) != JsonToken.END_ARRAY) {
+        keyCount++;
+        String key = keyToken == JsonToken.VALUE_NULL ? "" : keyParser.getText();
+        // to handle unbalanced size
+        String value = "";
+        if (hasMoreValues) {
+          JsonToken valueToken = nextElement(valueParser, valueData, "value");
+          hasMoreValues = valueToken != JsonToken.END_ARRAY;
+          if (hasMoreValues) {
+            valueCount++;
+            value = valueToken == JsonToken.VALUE_NULL ? "" : valueParser.getText();
+          }
+        }
+        valueBuilder.putStringMap(key, value);
+      }
+
+      if (hasMoreValues) {
+        // Any excessive values are dropped, only count them for the log below
+        while (nextElement(valueParser, valueData, "value") != JsonToken.END_ARRAY) {
+          valueCount++;
+        }
+      }
+      logSizeMismatch(keyCount, valueCount);
+    }
+  }
+
+  private boolean isEmptyList(String data) {
+    return PINOT_EMPTY_LIST.equals(data) || EMPTY_LIST.equals(data);
+  }
+
+  private void logSizeMismatch(int keyCount, int valueCount) {
+    if (keyCount != valueCount) {
+      LOG.warn(
+          "Keys and Values data size does not match. Data will be return based on the kyes"
+              + "Keys Size: {},  Values Size:  {}",
+          keyCount,
+          valueCount);
+    }
+  }
+
+  private boolean startArray(JsonParser parser, String rawJson, String part) throws IOException {
+    if (parser.nextToken() != JsonToken.START_ARRAY) {
+      LOG.error(
+          "Failed to deserialize map's {} to list of string object. Raw Json String: {}",
+          part,
+          rawJson);
+      throw new JsonParseException(parser, "Expected a json array for map's " + part);
+    }
+    return true;
+  }
+
+  /**
+   * Advances to the next array element. Returns {@link JsonToken#END_ARRAY} at the end of the
+   * array, otherwise a scalar or null token whose text is the element.
+   */
+  private JsonToken nextElement(JsonParser parser, String rawJson, String part)
+      throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == null || (token != JsonToken.END_ARRAY && !token.isScalarValue())) {
+      LOG.error(
+          "Failed to deserialize map's {} to list of string object. Raw Json String: {}",
+          part,
+          rawJson);
+      throw new JsonParseException(parser, "Expected a string element in map's " + part);
+    }
+    return token;
+  }
+
+  /** Per thread state reused across merges. */
+  private static final class MergeBuffers {
+    // Below this many keys a linear scan is cheaper than hashing for the duplicate check
+    private static final int LINEAR_SCAN_MAX_KEYS = 16;
+    // Don't hold on to the buffer of an unusually large map
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private final StringBuilder builder = new StringBuilder(256);
+    private final Writer writer = new StringBuilderWriter(builder);
+    private final List<String> keys = new ArrayList<>();
+    private final Set<String> keySet = new HashSet<>();
+
+    void reset() {
+      builder.setLength(0);
+      if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+        builder.trimToSize();
+      }
+      keys.clear();
+      keySet.clear();
+    }
+
+    boolean isDuplicate(String key) {
+      if (!keySet.isEmpty()) {
+        return !keySet.add(key);
+      }
+      for (int i = 0; i < keys.size(); i++) {
+        if (keys.get(i).equals(key)) {
+          return true;
+        }
+      }
+      keys.add(key);
+      if (keys.size() > LINEAR_SCAN_MAX_KEYS) {
+        keySet.addAll(keys);
+      }
+      return false;
+    }
+  }
+
+  /** Unsynchronized writer appending to a reused {@link StringBuilder}. */
+  private static final class StringBuilderWriter extends Writer {
+    private final StringBuilder builder;
+
+    private StringBuilderWriter(StringBuilder builder) {
+      this.builder = builder;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      builder.append(chars, offset, length);
+    }
+
+    @Override
+    public void write(String str, int offset, int length) {
+      builder.append(str, offset, offset + length);
+    }
+
+    @Override
+    public void write(int c) {
+      builder.append((char) c);
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
 }
@@ -10,6 +10,8 @@ import java.util.List;
 import java.util.Map;
 import javax.annotation.Nonnull;
 import org.apache.pinot.client.ResultSet;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -117,26 +119,8 @@ class PinotResultAnalyzer {
 
     String result;
     if (viewDefinition.isMap(logicalName)) {
-      Integer keyIndex = getMapKeyIndex(logicalName);
-      if (keyIndex == null) {
-        LOG.info("Map LogicalName to Key Index: {} ", mapLogicalNameToKeyIndex);
-        LOG.info("Attributes to Index: {}", logicalNameToPhysicalNameIndex);
-        throw new IllegalStateException(
-            "Unable to find the key index to attribute: " + logicalName);
-      }
-      String keyData = resultSet.getString(rowIndex, keyIndex);
-
-      String valueData = "";
-      Integer valueIndex = getMapValueIndex(logicalName);
-      if (valueIndex == null) {
-        if (attributeLogRateLimitter.get(logicalName).tryAcquire()) {
-          LOG.error("Unable to find the map value column index for Attribute: {}.", logicalName);
-          LOG.info("Map LogicalName to Value Index: {} ", mapLogicalNameToValueIndex);
-          LOG.info("Attributes to Index: {}", logicalNameToPhysicalNameIndex);
-        }
-      } else {
-        valueData = resultSet.getString(rowIndex, valueIndex);
-      }
+      String keyData = getMapKeyData(rowIndex, logicalName);
+      String valueData = getMapValueData(rowIndex, logicalName);
       try {
         result = pinotMapConverter.merge(keyData, valueData);
       } catch (IOException e) {
@@ -149,4 +133,52 @@ class PinotResultAnalyzer {
     }
     return result;
   }
+
+  /**
+   * Gets the data from Result Set Row as a {@link Value}. Map attributes are returned as {@link
+   * ValueType#STRING_MAP} values instead of json strings.
+   *
+   * @throws IllegalStateException if index is missing for merging or there's an issue with the data
+   *     format in Pinot
+   */
+  @Nonnull
+  Value getValueFromRow(int rowIndex, String logicalName) {
+    if (!viewDefinition.isMap(logicalName)) {
+      return Value.newBuilder().setString(getDataFromRow(rowIndex, logicalName)).build();
+    }
+
+    String keyData = getMapKeyData(rowIndex, logicalName);
+    String valueData = getMapValueData(rowIndex, logicalName);
+    Value.Builder valueBuilder = Value.newBuilder();
+    try {
+      pinotMapConverter.mergeInto(keyData, valueData, valueBuilder);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Unable to merge the map data for attribute " + logicalName, e);
+    }
+    return valueBuilder.build();
+  }
+
+  private String getMapKeyData(int rowIndex, String logicalName) {
+    Integer keyIndex = getMapKeyIndex(logicalName);
+    if (keyIndex == null) {
+      LOG.info("Map LogicalName to Key Index: {} ", mapLogicalNameToKeyIndex);
+      LOG.info("Attributes to Index: {}", logicalNameToPhysicalNameIndex);
+      throw new IllegalStateException("Unable to find the key index to attribute: " + logicalName);
+    }
+    return resultSet.getString(rowIndex, keyIndex);
+  }
+
+  private String getMapValueData(int rowIndex, String logicalName) {
+    Integer valueIndex = getMapValueIndex(logicalName);
+    if (valueIndex == null) {
+      if (attributeLogRateLimitter.get(logicalName).tryAcquire()) {
+        LOG.error("Unable to find the map value column index for Attribute: {}.", logicalName);
+        LOG.info("Map LogicalName to Value Index: {} ", mapLogicalNameToValueIndex);
+        LOG.info("Attributes to Index: {}", logicalNameToPhysicalNameIndex);
+      }
+      return "";
+    }
+    return resultSet.getString(rowIndex, valueIndex);
+  }
 }
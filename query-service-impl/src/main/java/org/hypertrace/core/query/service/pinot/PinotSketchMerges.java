@@ -0,0 +1,160 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_DISTINCTCOUNT;
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_PERCENTILE;
+
+import com.clearspring.analytics.stream.cardinality.CardinalityMergeException;
+import com.clearspring.analytics.stream.cardinality.HyperLogLog;
+import com.tdunning.math.stats.MergingDigest;
+import com.tdunning.math.stats.TDigest;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.hypertrace.core.query.service.PartialAggregation.SketchMerge;
+import org.hypertrace.core.query.service.api.Accuracy;
+import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.hypertrace.core.query.service.pinot.converters.PinotFunctionConverterConfig;
+
+/**
+ * Merges distinct counts and percentiles of time shards from the raw HyperLogLog and t-digest
+ * sketches Pinot returns for them, so they are only merged if the view computes them with these
+ * sketches anyway.
+ */
+class PinotSketchMerges {
+  private static final String DISTINCT_COUNT_HLL_FUNCTION = "DISTINCTCOUNTHLL";
+  private static final String DISTINCT_COUNT_RAW_HLL_FUNCTION = "DISTINCTCOUNTRAWHLL";
+  private static final String PERCENTILE_TDIGEST_FUNCTION = "PERCENTILETDIGEST";
+  private static final String PERCENTILE_RAW_TDIGEST_FUNCTION = "PERCENTILERAWTDIGEST";
+  // The compression Pinot builds its t-digests with
+  private static final int TDIGEST_COMPRESSION = 100;
+
+  /** Returns the sketch merges of the aggregations the view computes with sketches. */
+  static List<SketchMerge> forAccuracy(
+      PinotFunctionConverterConfig functionConfig, Accuracy accuracy) {
+    return List.of(
+        new HyperLogLogMerge(functionConfig, accuracy), new TDigestMerge(functionConfig, accuracy));
+  }
+
+  private static byte[] decodeSketch(Value value) {
+    try {
+      return Hex.decodeHex(value.getString());
+    } catch (DecoderException e) {
+      throw new IllegalStateException("Invalid serialized sketch: " + value.getString(), e);
+    }
+  }
+
+  private static Value createValue(Object value) {
+    return Value.newBuilder()
+        .setValueType(ValueType.STRING)
+        .setString(String.valueOf(value))
+        .build();
+  }
+
+  private static final class HyperLogLogMerge implements SketchMerge {
+    private final boolean enabled;
+
+    private HyperLogLogMerge(PinotFunctionConverterConfig functionConfig, Accuracy accuracy) {
+      // Overrides may compute exact distinct counts for some columns
+      this.enabled =
+          DISTINCT_COUNT_HLL_FUNCTION.equalsIgnoreCase(
+                  functionConfig.getDistinctCountFunction("", accuracy))
+              && functionConfig.getDistinctCountAggOverrides().isEmpty();
+    }
+
+    @Override
+    public Optional<Function> toSketchAggregation(Function aggregation) {
+      if (!this.enabled
+          || !QUERY_FUNCTION_DISTINCTCOUNT.equalsIgnoreCase(aggregation.getFunctionName())) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          aggregation.toBuilder().setFunctionName(DISTINCT_COUNT_RAW_HLL_FUNCTION).build());
+    }
+
+    @Override
+    public String getApproximation() {
+      return DISTINCT_COUNT_HLL_FUNCTION;
+    }
+
+    @Override
+    public Value merge(Function aggregation, List<Value> sketches) {
+      HyperLogLog hyperLogLog = null;
+      try {
+        for (Value sketch : sketches) {
+          HyperLogLog shardHyperLogLog = HyperLogLog.Builder.build(decodeSketch(sketch));
+          if (hyperLogLog == null) {
+            hyperLogLog = shardHyperLogLog;
+          } else {
+            hyperLogLog.addAll(shardHyperLogLog);
+          }
+        }
+      } catch (IOException | CardinalityMergeException e) {
+        throw new IllegalStateException("Unable to merge HyperLogLog of shard", e);
+      }
+      return createValue(hyperLogLog == null ? 0 : hyperLogLog.cardinality());
+    }
+  }
+
+  private static final class TDigestMerge implements SketchMerge {
+    private final boolean enabled;
+
+    private TDigestMerge(PinotFunctionConverterConfig functionConfig, Accuracy accuracy) {
+      this.enabled =
+          PERCENTILE_TDIGEST_FUNCTION.equalsIgnoreCase(
+              functionConfig.getPercentileAggregationFunction(accuracy));
+    }
+
+    @Override
+    public Optional<Function> toSketchAggregation(Function aggregation) {
+      if (!this.enabled
+          || !QUERY_FUNCTION_PERCENTILE.equalsIgnoreCase(aggregation.getFunctionName())) {
+        return Optional.empty();
+      }
+      // The percentile is part of the name, so the converter passes the function through as is
+      return getPercentile(aggregation)
+          .map(
+              percentile ->
+                  aggregation.toBuilder()
+                      .setFunctionName(PERCENTILE_RAW_TDIGEST_FUNCTION + percentile)
+                      .removeArguments(0)
+                      .build());
+    }
+
+    @Override
+    public String getApproximation() {
+      return PERCENTILE_TDIGEST_FUNCTION;
+    }
+
+    @Override
+    public Value merge(Function aggregation, List<Value> sketches) {
+      if (sketches.isEmpty()) {
+        return createValue(Double.NEGATIVE_INFINITY);
+      }
+      TDigest tDigest = TDigest.createMergingDigest(TDIGEST_COMPRESSION);
+      for (Value sketch : sketches) {
+        tDigest.add(MergingDigest.fromBytes(ByteBuffer.wrap(decodeSketch(sketch))));
+      }
+      return createValue(tDigest.quantile(getPercentile(aggregation).orElseThrow() / 100D));
+    }
+
+    private static Optional<Integer> getPercentile(Function percentile) {
+      if (percentile.getArgumentsCount() < 2 || !percentile.getArguments(0).hasLiteral()) {
+        return Optional.empty();
+      }
+      Value value = percentile.getArguments(0).getLiteral().getValue();
+      switch (value.getValueType()) {
+        case INT:
+          return Optional.of(value.getInt());
+        case LONG:
+          return Optional.of(Math.toIntExact(value.getLong()));
+        default:
+          return Optional.empty();
+      }
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isAttributeExpressionWithSubpath;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.typesafe.config.Config;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Value;
+import org.apache.pinot.client.ResultSet;
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.SimpleCompiler;
+import org.hypertrace.core.query.service.RowWriter;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates and compiles a {@link CompiledSelectionConverter} for each layout of the columns of
+ * selection results, which is given by the view and the selections of a request. The converter
+ * reads the result column of each selection by its index, and knows whether it is a map or bytes,
+ * instead of looking them up by the logical name of the selection for each cell.
+ *
+ * <p>The compiled classes are cached by layout, as many requests share the same few layouts.
+ * Results whose layout can't be resolved, such as ones missing a column, are left to the
+ * interpreted conversion, which reports them as it always did.
+ *
+ * <p>Example config: { enabled: true, maxEntries: 1000 }
+ */
+class SelectionConverterCompiler {
+  private static final Logger LOG = LoggerFactory.getLogger(SelectionConverterCompiler.class);
+
+  private static final String ENABLED_CONFIG_KEY = "enabled";
+  private static final String MAX_ENTRIES_CONFIG_KEY = "maxEntries";
+
+  private static final long DEFAULT_MAX_ENTRIES = 1000;
+  private static final String CLASS_NAME_PREFIX = "GeneratedSelectionConverter";
+  private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+  private final boolean enabled;
+  private final ViewDefinition viewDefinition;
+  private final boolean nativeMapValuesEnabled;
+  private final boolean nativeBytesValuesEnabled;
+  private final LoadingCache<
+          List<ColumnConversion>, Optional<Constructor<? extends CompiledSelectionConverter>>>
+      compiledConverters;
+
+  SelectionConverterCompiler(
+      Config config,
+      ViewDefinition viewDefinition,
+      boolean nativeMapValuesEnabled,
+      boolean nativeBytesValuesEnabled) {
+    this.enabled = config.hasPath(ENABLED_CONFIG_KEY) && config.getBoolean(ENABLED_CONFIG_KEY);
+    this.viewDefinition = viewDefinition;
+    this.nativeMapValuesEnabled = nativeMapValuesEnabled;
+    this.nativeBytesValuesEnabled = nativeBytesValuesEnabled;
+    this.compiledConverters =
+        CacheBuilder.newBuilder()
+            .maximumSize(
+                config.hasPath(MAX_ENTRIES_CONFIG_KEY)
+                    ? config.getLong(MAX_ENTRIES_CONFIG_KEY)
+                    : DEFAULT_MAX_ENTRIES)
+            .build(CacheLoader.from(SelectionConverterCompiler::compile));
+  }
+
+  /**
+   * Returns the compiled converter of the given selection result, with the result columns of the
+   * selections found by the given analyzer, unless disabled or the layout can't be resolved.
+   */
+  Optional<CompiledSelectionConverter> getConverter(
+      LinkedHashSet<Expression> selections, PinotResultAnalyzer resultAnalyzer) {
+    if (!this.enabled) {
+      return Optional.empty();
+    }
+    List<ColumnConversion> layout = new ArrayList<>(selections.size());
+    String[] attributeNames = new String[selections.size()];
+    // Columns follow the order of the selections, with both the keys and values of whole maps
+    int columnIndex = 0;
+    for (Expression selection : selections) {
+      Optional<String> selectedAttribute = getLogicalColumnName(selection);
+      if (isAttributeExpressionWithSubpath(selection) || selectedAttribute.isEmpty()) {
+        layout.add(new ColumnConversion(Conversion.STRING, columnIndex, -1));
+        columnIndex++;
+        continue;
+      }
+      String logicalName = selectedAttribute.get();
+      attributeNames[layout.size()] = logicalName;
+      columnIndex += this.viewDefinition.isMap(logicalName) ? 2 : 1;
+      Optional<ColumnConversion> conversion = this.resolveConversion(logicalName, resultAnalyzer);
+      if (conversion.isEmpty()) {
+        return Optional.empty();
+      }
+      layout.add(conversion.get());
+    }
+
+    return this.compiledConverters
+        .getUnchecked(layout)
+        .map(constructor -> newInstance(constructor, attributeNames));
+  }
+
+  private Optional<ColumnConversion> resolveConversion(
+      String logicalName, PinotResultAnalyzer resultAnalyzer) {
+    boolean isMap = this.viewDefinition.isMap(logicalName);
+    if (this.nativeBytesValuesEnabled
+        && this.viewDefinition.getColumnType(logicalName) == ValueType.BYTES) {
+      Integer index = resultAnalyzer.getPhysicalColumnIndex(logicalName);
+      return isMap || index == null
+          ? Optional.empty()
+          : Optional.of(new ColumnConversion(Conversion.BYTES, index, -1));
+    }
+    if (isMap) {
+      Integer keyIndex = resultAnalyzer.getMapKeyIndex(logicalName);
+      Integer valueIndex = resultAnalyzer.getMapValueIndex(logicalName);
+      if (keyIndex == null || valueIndex == null) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          new ColumnConversion(
+              this.nativeMapValuesEnabled ? Conversion.MAP : Conversion.MERGED_MAP,
+              keyIndex,
+              valueIndex));
+    }
+    Integer index = resultAnalyzer.getPhysicalColumnIndex(logicalName);
+    return index == null
+        ? Optional.empty()
+        : Optional.of(new ColumnConversion(Conversion.STRING, index, -1));
+  }
+
+  private static Optional<Constructor<? extends CompiledSelectionConverter>> compile(
+      List<ColumnConversion> layout) {
+    String className = CLASS_NAME_PREFIX + CLASS_COUNTER.incrementAndGet();
+    String source = generateSource(className, layout);
+    try {
+      SimpleCompiler compiler = new SimpleCompiler();
+      compiler.setParentClassLoader(CompiledSelectionConverter.class.getClassLoader());
+      compiler.cook(source);
+      Constructor<? extends CompiledSelectionConverter> constructor =
+          compiler
+              .getClassLoader()
+              .loadClass(CompiledSelectionConverter.class.getPackageName() + "." + className)
+              .asSubclass(CompiledSelectionConverter.class)
+              .getConstructor(String[].class);
+      LOG.debug("Compiled selection converter {} for layout: {}", className, layout);
+      return Optional.of(constructor);
+    } catch (CompileException | ReflectiveOperationException e) {
+      LOG.warn("Unable to compile the selection converter, source: {}", source, e);
+      return Optional.empty();
+    }
+  }
+
+  private static String generateSource(String className, List<ColumnConversion> layout) {
+    StringBuilder source =
+        new StringBuilder()
+            .append("package ")
+            .append(CompiledSelectionConverter.class.getPackageName())
+            .append(";\n\n")
+            .append("public final class ")
+            .append(className)
+            .append(" extends ")
+            .append(CompiledSelectionConverter.class.getName())
+            .append(" {\n")
+            .append("  public ")
+            .append(className)
+            .append("(String[] attributeNames) {\n")
+            .append("    super(attributeNames);\n")
+            .append("  }\n\n")
+            .append("  public void convert(")
+            .append(ResultSet.class.getName())
+            .append(" resultSet, int rowIndex, ")
+            .append(Row.Builder.class.getCanonicalName())
+            .append(" builder) {\n");
+    for (int selectionIndex = 0; selectionIndex < layout.size(); selectionIndex++) {
+      source
+          .append("    builder.addColumn(")
+          .append(getValue(layout.get(selectionIndex), selectionIndex))
+          .append(");\n");
+    }
+    source
+        .append("  }\n\n")
+        .append("  public void write(")
+        .append(ResultSet.class.getName())
+        .append(" resultSet, int rowIndex, ")
+        .append(RowWriter.class.getName())
+        .append(" writer) {\n");
+    for (int selectionIndex = 0; selectionIndex < layout.size(); selectionIndex++) {
+      ColumnConversion conversion = layout.get(selectionIndex);
+      if (conversion.getConversion() == Conversion.STRING) {
+        source.append("    writer.addString(").append(getString(conversion.getIndex()));
+      } else {
+        source.append("    writer.addValue(").append(getValue(conversion, selectionIndex));
+      }
+      source.append(");\n");
+    }
+    return source.append("  }\n}\n").toString();
+  }
+
+  /** Returns the expression of the value of the given selection. */
+  private static String getValue(ColumnConversion conversion, int selectionIndex) {
+    switch (conversion.getConversion()) {
+      case STRING:
+        return "stringValue(" + getString(conversion.getIndex()) + ")";
+      case MERGED_MAP:
+        return "mergedMapValue("
+            + getString(conversion.getIndex())
+            + ", "
+            + getString(conversion.getValueIndex())
+            + ", "
+            + selectionIndex
+            + ")";
+      case MAP:
+        return "mapValue("
+            + getString(conversion.getIndex())
+            + ", "
+            + getString(conversion.getValueIndex())
+            + ", "
+            + selectionIndex
+            + ")";
+      case BYTES:
+        return "bytesValue(" + getString(conversion.getIndex()) + ", " + selectionIndex + ")";
+      default:
+        throw new IllegalArgumentException("Unsupported conversion: " + conversion);
+    }
+  }
+
+  private static String getString(int columnIndex) {
+    return "resultSet.getString(rowIndex, " + columnIndex + ")";
+  }
+
+  private static CompiledSelectionConverter newInstance(
+      Constructor<? extends CompiledSelectionConverter> constructor, String[] attributeNames) {
+    try {
+      return constructor.newInstance((Object) attributeNames);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unable to create the selection converter", e);
+    }
+  }
+
+  enum Conversion {
+    STRING,
+    // A map as a json string
+    MERGED_MAP,
+    // A map as a string map value
+    MAP,
+    BYTES
+  }
+
+  /**
+   * How the value of a selection is read from the result, with the index of the value column for
+   * maps.
+   */
+  @Value
+  static class ColumnConversion {
+    Conversion conversion;
+    int index;
+    int valueIndex;
+  }
+}
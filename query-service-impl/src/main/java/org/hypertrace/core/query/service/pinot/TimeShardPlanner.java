@@ -0,0 +1,160 @@
+package org.hypertrace.core.query.service.pinot;
+
+import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import lombok.Value;
+
+/**
+ * Plans the time shards of an aggregation. There is a shard per minimum shard duration of the time
+ * range, up to the maximum number of shards, and once latencies were observed only as many as
+ * needed for each shard to be expected to complete within the target latency.
+ *
+ * <p>Shard boundaries are aligned to the segments of the view, so no segment is scanned by two
+ * shards, and to the time series period of the request, so no time bucket is split.
+ *
+ * <p>The shards of a request are awaited for up to the shard timeout, or the deadline of the
+ * request if sooner. A shard having more groups than its limit is executed again with up to the
+ * maximum number of shard groups.
+ */
+class TimeShardPlanner {
+  private static final String ENABLED_CONFIG_KEY = "enabled";
+  private static final String MAX_SHARDS_CONFIG_KEY = "maxShards";
+  private static final String MIN_SHARD_DURATION_CONFIG_KEY = "minShardDuration";
+  private static final String SEGMENT_DURATION_CONFIG_KEY = "segmentDuration";
+  private static final String TARGET_SHARD_LATENCY_CONFIG_KEY = "targetShardLatency";
+  private static final String SMOOTHING_FACTOR_CONFIG_KEY = "smoothingFactor";
+  private static final String SHARD_TIMEOUT_CONFIG_KEY = "shardTimeout";
+  private static final String MAX_SHARD_GROUPS_CONFIG_KEY = "maxShardGroups";
+
+  private static final int DEFAULT_MAX_SHARDS = 8;
+  private static final Duration DEFAULT_MIN_SHARD_DURATION = Duration.ofDays(1);
+  private static final Duration DEFAULT_SEGMENT_DURATION = Duration.ofHours(1);
+  private static final Duration DEFAULT_TARGET_SHARD_LATENCY = Duration.ofSeconds(2);
+  private static final double DEFAULT_SMOOTHING_FACTOR = 0.2;
+  private static final Duration DEFAULT_SHARD_TIMEOUT = Duration.ofSeconds(30);
+  private static final int DEFAULT_MAX_SHARD_GROUPS = 10000;
+  private static final double HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+  private final boolean enabled;
+  private final int maxShards;
+  private final Duration minShardDuration;
+  private final Duration segmentDuration;
+  private final Duration targetShardLatency;
+  private final double smoothingFactor;
+  private final Duration shardTimeout;
+  private final int maxShardGroups;
+  // Moving average of the query latency per hour of time range, negative until observed
+  private double latencyMillisPerHour = -1;
+
+  TimeShardPlanner(Config config) {
+    this.enabled = config.hasPath(ENABLED_CONFIG_KEY) && config.getBoolean(ENABLED_CONFIG_KEY);
+    this.maxShards =
+        config.hasPath(MAX_SHARDS_CONFIG_KEY)
+            ? config.getInt(MAX_SHARDS_CONFIG_KEY)
+            : DEFAULT_MAX_SHARDS;
+    this.minShardDuration =
+        config.hasPath(MIN_SHARD_DURATION_CONFIG_KEY)
+            ? config.getDuration(MIN_SHARD_DURATION_CONFIG_KEY)
+            : DEFAULT_MIN_SHARD_DURATION;
+    this.segmentDuration =
+        config.hasPath(SEGMENT_DURATION_CONFIG_KEY)
+            ? config.getDuration(SEGMENT_DURATION_CONFIG_KEY)
+            : DEFAULT_SEGMENT_DURATION;
+    this.targetShardLatency =
+        config.hasPath(TARGET_SHARD_LATENCY_CONFIG_KEY)
+            ? config.getDuration(TARGET_SHARD_LATENCY_CONFIG_KEY)
+            : DEFAULT_TARGET_SHARD_LATENCY;
+    this.smoothingFactor =
+        config.hasPath(SMOOTHING_FACTOR_CONFIG_KEY)
+            ? config.getDouble(SMOOTHING_FACTOR_CONFIG_KEY)
+            : DEFAULT_SMOOTHING_FACTOR;
+    this.shardTimeout =
+        config.hasPath(SHARD_TIMEOUT_CONFIG_KEY)
+            ? config.getDuration(SHARD_TIMEOUT_CONFIG_KEY)
+            : DEFAULT_SHARD_TIMEOUT;
+    this.maxShardGroups =
+        config.hasPath(MAX_SHARD_GROUPS_CONFIG_KEY)
+            ? config.getInt(MAX_SHARD_GROUPS_CONFIG_KEY)
+            : DEFAULT_MAX_SHARD_GROUPS;
+  }
+
+  boolean isEnabled() {
+    return this.enabled;
+  }
+
+  Duration getShardTimeout() {
+    return this.shardTimeout;
+  }
+
+  int getMaxShardGroups() {
+    return this.maxShardGroups;
+  }
+
+  /**
+   * Returns the shards of the given time range, or a single shard covering all of it if it is not
+   * worth sharding.
+   */
+  List<TimeShard> plan(long startTimeMillis, long endTimeMillis, Optional<Duration> period) {
+    long timeRangeMillis = endTimeMillis - startTimeMillis;
+    long shardCount =
+        Math.min(this.maxShards, timeRangeMillis / Math.max(1, this.minShardDuration.toMillis()));
+    double latencyMillisPerHour = this.getLatencyMillisPerHour();
+    if (latencyMillisPerHour >= 0) {
+      double expectedLatencyMillis = latencyMillisPerHour * timeRangeMillis / HOUR_MILLIS;
+      shardCount =
+          Math.min(
+              shardCount,
+              (long) Math.ceil(expectedLatencyMillis / this.targetShardLatency.toMillis()));
+    }
+
+    List<TimeShard> shards = new ArrayList<>();
+    long alignmentMillis =
+        Math.max(
+            Math.max(1, this.segmentDuration.toMillis()),
+            period.map(Duration::toMillis).orElse(1L));
+    long shardStartTimeMillis = startTimeMillis;
+    for (long i = 1; i < shardCount; i++) {
+      long shardEndTimeMillis =
+          alignUp(startTimeMillis + timeRangeMillis * i / shardCount, alignmentMillis);
+      if (shardEndTimeMillis > shardStartTimeMillis && shardEndTimeMillis < endTimeMillis) {
+        shards.add(new TimeShard(shardStartTimeMillis, shardEndTimeMillis));
+        shardStartTimeMillis = shardEndTimeMillis;
+      }
+    }
+    shards.add(new TimeShard(shardStartTimeMillis, endTimeMillis));
+    return shards;
+  }
+
+  /** Records the latency of a query over the given time range executed in the given shards. */
+  void record(long timeRangeMillis, int shardCount, Duration latency) {
+    if (timeRangeMillis <= 0) {
+      return;
+    }
+    double shardHours = timeRangeMillis / HOUR_MILLIS / shardCount;
+    double sample = latency.toMillis() / shardHours;
+    synchronized (this) {
+      this.latencyMillisPerHour =
+          this.latencyMillisPerHour < 0
+              ? sample
+              : this.latencyMillisPerHour
+                  + this.smoothingFactor * (sample - this.latencyMillisPerHour);
+    }
+  }
+
+  private synchronized double getLatencyMillisPerHour() {
+    return this.latencyMillisPerHour;
+  }
+
+  private static long alignUp(long timeMillis, long alignmentMillis) {
+    return Math.floorDiv(timeMillis + alignmentMillis - 1, alignmentMillis) * alignmentMillis;
+  }
+
+  @Value
+  static class TimeShard {
+    long startTimeMillis;
+    long endTimeMillis;
+  }
+}
@@ -0,0 +1,132 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.indexOfIgnoringAlias;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isSimpleAttributeExpression;
+import static org.hypertrace.core.query.service.QueryRequestUtil.removeAlias;
+
+import com.typesafe.config.Config;
+import java.util.List;
+import java.util.Optional;
+import org.hypertrace.core.query.service.api.Accuracy;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.OrderByExpression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/**
+ * Plans the top groups of a column by an aggregation in two phases. Pinot trims the groups of each
+ * segment and server to a multiple of the limit when ordering by an aggregation, so the top groups
+ * of a high cardinality column can be missed unless a much larger limit is requested.
+ *
+ * <p>The first phase ranks the candidate groups by the ordered aggregation only, computed with
+ * sketches where the view supports them, with a limit of the safety factor times the groups the
+ * request needs. The second phase computes the exact aggregations of the request restricted to the
+ * candidate groups by an IN filter, which Pinot doesn't need to trim.
+ *
+ * <p>Example config: { enabled: true, safetyFactor: 5, maxCandidates: 1000 }
+ */
+class TwoPhaseTopK {
+  private static final String ENABLED_CONFIG_KEY = "enabled";
+  private static final String SAFETY_FACTOR_CONFIG_KEY = "safetyFactor";
+  private static final String MAX_CANDIDATES_CONFIG_KEY = "maxCandidates";
+
+  private static final double DEFAULT_SAFETY_FACTOR = 5;
+  private static final int DEFAULT_MAX_CANDIDATES = 1000;
+
+  private final boolean enabled;
+  private final double safetyFactor;
+  private final int maxCandidates;
+
+  TwoPhaseTopK(Config config) {
+    this.enabled = config.hasPath(ENABLED_CONFIG_KEY) && config.getBoolean(ENABLED_CONFIG_KEY);
+    this.safetyFactor =
+        config.hasPath(SAFETY_FACTOR_CONFIG_KEY)
+            ? config.getDouble(SAFETY_FACTOR_CONFIG_KEY)
+            : DEFAULT_SAFETY_FACTOR;
+    this.maxCandidates =
+        config.hasPath(MAX_CANDIDATES_CONFIG_KEY)
+            ? config.getInt(MAX_CANDIDATES_CONFIG_KEY)
+            : DEFAULT_MAX_CANDIDATES;
+  }
+
+  boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Returns the request ranking the candidate groups of the given request, if it orders the groups
+   * of a single column by one of its aggregations and needs fewer groups than the candidates.
+   */
+  Optional<QueryRequest> getCandidateRequest(QueryRequest request) {
+    if (!this.enabled
+        || request.getDistinctSelections()
+        || request.getGroupByCount() != 1
+        || !isSimpleAttributeExpression(request.getGroupBy(0))
+        || request.getOrderByCount() != 1
+        || request.getLimit() <= 0) {
+      return Optional.empty();
+    }
+    OrderByExpression orderBy = request.getOrderBy(0);
+    int aggregationIndex =
+        indexOfIgnoringAlias(request.getAggregationList(), orderBy.getExpression());
+    if (aggregationIndex < 0) {
+      return Optional.empty();
+    }
+
+    long groupCount = (long) request.getOffset() + request.getLimit();
+    long candidateCount =
+        Math.min(this.maxCandidates, (long) Math.ceil(groupCount * this.safetyFactor));
+    if (candidateCount <= groupCount) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        QueryRequest.newBuilder()
+            .setFilter(request.getFilter())
+            .addSelection(request.getGroupBy(0))
+            .addAggregation(request.getAggregation(aggregationIndex))
+            .addGroupBy(request.getGroupBy(0))
+            .addOrderBy(orderBy)
+            .setLimit((int) candidateCount)
+            .setAccuracy(Accuracy.APPROXIMATE)
+            .build());
+  }
+
+  /**
+   * Returns the given request restricted to the given candidate groups, if they are all strings or
+   * all bytes. If the candidate request returned fewer groups than its limit, they are all the
+   * groups, and the request is exact as it is.
+   */
+  Optional<QueryRequest> restrictToCandidates(
+      QueryRequest request, QueryRequest candidateRequest, List<Value> candidateKeys) {
+    if (candidateKeys.size() < candidateRequest.getLimit()) {
+      return Optional.empty();
+    }
+    Value.Builder keys = Value.newBuilder();
+    if (candidateKeys.stream().allMatch(key -> key.getValueType() == ValueType.STRING)) {
+      keys.setValueType(ValueType.STRING_ARRAY);
+      candidateKeys.forEach(key -> keys.addStringArray(key.getString()));
+    } else if (candidateKeys.stream().allMatch(key -> key.getValueType() == ValueType.BYTES)) {
+      keys.setValueType(ValueType.BYTES_ARRAY);
+      candidateKeys.forEach(key -> keys.addBytesArray(key.getBytes()));
+    } else {
+      return Optional.empty();
+    }
+
+    Filter candidateFilter =
+        Filter.newBuilder()
+            .setLhs(removeAlias(request.getGroupBy(0)))
+            .setOperator(Operator.IN)
+            .setRhs(Expression.newBuilder().setLiteral(LiteralConstant.newBuilder().setValue(keys)))
+            .build();
+    Filter.Builder filter = Filter.newBuilder().setOperator(Operator.AND);
+    if (!Filter.getDefaultInstance().equals(request.getFilter())) {
+      filter.addChildFilter(request.getFilter());
+    }
+    filter.addChildFilter(candidateFilter);
+    return Optional.of(request.toBuilder().setFilter(filter).build());
+  }
+}
@@ -38,6 +38,8 @@ public class ViewDefinition {
   private final long retentionTimeMillis;
   private final long timeGranularityMillis;
   private final Map<String, PinotColumnSpec> columnSpecMap;
+  /* Lower cased physical names of the BYTES columns */
+  private final Set<String> bytesColumnNames;
 
   /**
    * The name of the column which should be used as tenant id. This is configurable so that each
@@ -65,6 +67,12 @@ public class ViewDefinition {
     this.columnSpecMap = columnSpecMap;
     this.tenantColumnName = tenantColumnName;
     this.columnFilterMap = filterMap;
+    this.bytesColumnNames =
+        columnSpecMap.values().stream()
+            .filter(spec -> spec.getType() == ValueType.BYTES)
+            .flatMap(spec -> spec.getColumnNames().stream())
+            .map(String::toLowerCase)
+            .collect(Collectors.toUnmodifiableSet());
   }
 
   public static ViewDefinition parse(Config config, String tenantColumnName) {
@@ -188,6 +196,11 @@ public class ViewDefinition {
     return columnSpecMap.get(logicalName).getType();
   }
 
+  /** Returns whether the given physical column, as named in a result set, is a BYTES column. */
+  public boolean isBytesColumn(String physicalColumnName) {
+    return bytesColumnNames.contains(physicalColumnName.toLowerCase());
+  }
+
   public boolean hasTextIndex(String logicalName) {
     return columnSpecMap.get(logicalName).hasTextIndex();
   }
@@ -2,6 +2,7 @@ package org.hypertrace.core.query.service.pinot.converters;
 
 import com.google.common.base.Strings;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.hypertrace.core.query.service.api.Value;
@@ -22,14 +23,18 @@ public class DestinationColumnValueConverter {
   private DestinationColumnValueConverter() {}
 
   public Value convert(Value value, ValueType valueType) throws Exception {
-    // Currently, only Pinot's BYTES columns needs transformation since they're actually
-    // used as strings throughout.
-    // TODO: Fix the upper layers to use this BYTES columns as bytes instead of string.
+    // Currently, only Pinot's BYTES columns needs transformation since they're mostly
+    // used as hex strings throughout.
     if (valueType != ValueType.BYTES) {
       return value;
     }
 
     switch (value.getValueType()) {
+      case BYTES:
+      case BYTES_ARRAY:
+        // Already binary, nothing to decode
+        return value;
+
       case STRING:
         Value.Builder valueBuilder = Value.newBuilder();
         String inValue = value.getString();
@@ -56,6 +61,17 @@ public class DestinationColumnValueConverter {
     }
   }
 
+  /**
+   * Converts the hex string of a BYTES column, as returned by the data stores, into a {@link
+   * ValueType#BYTES} value holding the raw bytes.
+   */
+  public Value convertToBytesValue(String hexValue) throws DecoderException {
+    return Value.newBuilder()
+        .setValueType(ValueType.BYTES)
+        .setBytes(convertToByteString(hexValue))
+        .build();
+  }
+
   private ByteString convertToByteString(String inValue) throws DecoderException {
     String outValue =
         (Strings.isNullOrEmpty(inValue)
@@ -64,7 +80,10 @@ public class DestinationColumnValueConverter {
                 || inValue.trim().equals("{}"))
             ? EMPTY
             : inValue;
-    byte[] bytes = Hex.decodeHex(outValue);
-    return ByteString.copyFrom(bytes);
+    if (outValue.isEmpty()) {
+      return ByteString.EMPTY;
+    }
+    // The decoded array is never modified afterwards, so it is safe to wrap it without a copy
+    return UnsafeByteOperations.unsafeWrap(Hex.decodeHex(outValue));
   }
 }
@@ -43,13 +43,15 @@ public class PinotFunctionConverter {
       case QUERY_FUNCTION_PERCENTILE:
         // Computing PERCENTILE in Pinot is resource intensive. T-Digest calculation is much faster
         // and reasonably accurate, so support selecting the implementation to use
-        return this.functionToString(this.toPinotPercentile(function), argumentConverter);
+        return this.functionToString(
+            this.toPinotPercentile(executionContext, function), argumentConverter);
       case QUERY_FUNCTION_DISTINCTCOUNT:
-        return this.functionToStringForDistinctCount(function, argumentConverter);
+        return this.functionToStringForDistinctCount(executionContext, function, argumentConverter);
       case QUERY_FUNCTION_CONCAT:
         return this.functionToString(this.toPinotConcat(function), argumentConverter);
       case PINOT_DISTINCT_COUNT_MV_FUNCTION:
-        return this.functionToStringForDistinctCountMv(function, argumentConverter);
+        return this.functionToStringForDistinctCountMv(
+            executionContext, function, argumentConverter);
       case QUERY_FUNCTION_AVGRATE:
         // AVGRATE not supported directly in Pinot. So AVG_RATE is computed by summing over all
         // values and then dividing by a constant.
@@ -76,15 +78,32 @@ public class PinotFunctionConverter {
   }
 
   private String functionToStringForDistinctCount(
-      Function function, java.util.function.Function<Expression, String> argumentConverter) {
+      ExecutionContext executionContext,
+      Function function,
+      java.util.function.Function<Expression, String> argumentConverter) {
     String columnName = argumentConverter.apply(function.getArgumentsList().get(0));
-    return String.format("%s(%s)", this.config.getDistinctCountFunction(columnName), columnName);
+    String pinotFunctionName =
+        this.config.getDistinctCountFunction(columnName, executionContext.getAccuracy());
+    this.recordIfApproximate(executionContext, function, pinotFunctionName);
+    return String.format("%s(%s)", pinotFunctionName, columnName);
   }
 
   private String functionToStringForDistinctCountMv(
-      Function function, java.util.function.Function<Expression, String> argumentConverter) {
+      ExecutionContext executionContext,
+      Function function,
+      java.util.function.Function<Expression, String> argumentConverter) {
     String columnName = argumentConverter.apply(function.getArgumentsList().get(0));
-    return String.format("%s(%s)", this.config.getDistinctCountMvFunction(columnName), columnName);
+    String pinotFunctionName =
+        this.config.getDistinctCountMvFunction(columnName, executionContext.getAccuracy());
+    this.recordIfApproximate(executionContext, function, pinotFunctionName);
+    return String.format("%s(%s)", pinotFunctionName, columnName);
+  }
+
+  private void recordIfApproximate(
+      ExecutionContext executionContext, Function function, String pinotFunctionName) {
+    if (PinotFunctionConverterConfig.isApproximate(pinotFunctionName)) {
+      executionContext.recordApproximation(function, pinotFunctionName);
+    }
   }
 
   private String functionToStringForAvgRate(
@@ -113,7 +132,7 @@ public class PinotFunctionConverter {
     return "COUNT(*)";
   }
 
-  private Function toPinotPercentile(Function function) {
+  private Function toPinotPercentile(ExecutionContext executionContext, Function function) {
     int percentileValue =
         this.getPercentileValueFromFunction(function)
             .orElseThrow(
@@ -122,9 +141,12 @@ public class PinotFunctionConverter {
                         String.format(
                             "%s must include an integer convertible value as its first argument. Got: %s",
                             QUERY_FUNCTION_PERCENTILE, function.getArguments(0))));
+    String pinotFunctionName =
+        this.config.getPercentileAggregationFunction(executionContext.getAccuracy());
+    this.recordIfApproximate(executionContext, function, pinotFunctionName);
     return Function.newBuilder(function)
         .removeArguments(0)
-        .setFunctionName(this.config.getPercentileAggregationFunction() + percentileValue)
+        .setFunctionName(pinotFunctionName + percentileValue)
         .build();
   }
 
@@ -5,11 +5,13 @@ import com.typesafe.config.ConfigFactory;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Value;
+import org.hypertrace.core.query.service.api.Accuracy;
 
 @Value
 @AllArgsConstructor(access = AccessLevel.PACKAGE)
@@ -24,6 +26,19 @@ public class PinotFunctionConverterConfig {
   private static final String DEFAULT_PERCENTILE_AGGREGATION_FUNCTION = "PERCENTILETDIGEST";
   private static final String DEFAULT_DISTINCT_COUNT_AGGREGATION_FUNCTION = "DISTINCTCOUNT";
   private static final String DEFAULT_DISTINCT_COUNT_MV_AGGREGATION_FUNCTION = "DISTINCTCOUNTMV";
+  private static final String EXACT_PERCENTILE_AGGREGATION_FUNCTION = "PERCENTILE";
+  private static final String APPROXIMATE_DISTINCT_COUNT_AGGREGATION_FUNCTION = "DISTINCTCOUNTHLL";
+  private static final String APPROXIMATE_DISTINCT_COUNT_MV_AGGREGATION_FUNCTION =
+      "DISTINCTCOUNTHLLMV";
+  // Prefixes of the Pinot aggregation functions computed from sketches
+  private static final Set<String> APPROXIMATE_FUNCTION_PREFIXES =
+      Set.of(
+          "DISTINCTCOUNTHLL",
+          "DISTINCTCOUNTSMARTHLL",
+          "DISTINCTCOUNTTHETASKETCH",
+          "PERCENTILETDIGEST",
+          "PERCENTILEEST",
+          "PERCENTILEKLL");
 
   String percentileAggregationFunction;
   String distinctCountAggregationFunction;
@@ -73,4 +88,45 @@ public class PinotFunctionConverterConfig {
     return Optional.ofNullable(distinctCountAggOverrides.get(arg))
         .orElse(distinctCountMvAggregationFunction);
   }
+
+  public String getPercentileAggregationFunction(Accuracy accuracy) {
+    return withAccuracy(
+        percentileAggregationFunction,
+        accuracy,
+        EXACT_PERCENTILE_AGGREGATION_FUNCTION,
+        DEFAULT_PERCENTILE_AGGREGATION_FUNCTION);
+  }
+
+  public String getDistinctCountFunction(String arg, Accuracy accuracy) {
+    return withAccuracy(
+        getDistinctCountFunction(arg),
+        accuracy,
+        DEFAULT_DISTINCT_COUNT_AGGREGATION_FUNCTION,
+        APPROXIMATE_DISTINCT_COUNT_AGGREGATION_FUNCTION);
+  }
+
+  public String getDistinctCountMvFunction(String arg, Accuracy accuracy) {
+    return withAccuracy(
+        getDistinctCountMvFunction(arg),
+        accuracy,
+        DEFAULT_DISTINCT_COUNT_MV_AGGREGATION_FUNCTION,
+        APPROXIMATE_DISTINCT_COUNT_MV_AGGREGATION_FUNCTION);
+  }
+
+  /** Returns whether the given Pinot aggregation function is computed from sketches. */
+  public static boolean isApproximate(String function) {
+    String upperCaseFunction = function.toUpperCase();
+    return APPROXIMATE_FUNCTION_PREFIXES.stream().anyMatch(upperCaseFunction::startsWith);
+  }
+
+  private static String withAccuracy(
+      String function, Accuracy accuracy, String exactFunction, String approximateFunction) {
+    if (accuracy == Accuracy.EXACT && isApproximate(function)) {
+      return exactFunction;
+    }
+    if (accuracy == Accuracy.APPROXIMATE && !isApproximate(function)) {
+      return approximateFunction;
+    }
+    return function;
+  }
 }
@@ -1,14 +1,18 @@
 package org.hypertrace.core.query.service.postgres;
 
 import com.google.protobuf.ByteString;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.util.HashMap;
 import java.util.Map;
+import org.hypertrace.core.query.service.JdbcParams;
 
 /**
  * Holds the params that need to be set in the PreparedStatement for constructing the final SQL
  * query in postgres
  */
-public class Params {
+public class Params implements JdbcParams {
 
   // Map of index to the corresponding param value
   private final Map<Integer, Integer> integerParams;
@@ -57,6 +61,16 @@ public class Params {
     return byteStringParams;
   }
 
+  /**
+   * Strings are bound untyped, as the literals they used to be inlined as, so that Postgres infers
+   * their type from the column they are compared to.
+   */
+  @Override
+  public void bindString(PreparedStatement preparedStatement, int parameterIndex, String value)
+      throws SQLException {
+    preparedStatement.setObject(parameterIndex, value, Types.OTHER);
+  }
+
   @Override
   public String toString() {
     return "Params{"
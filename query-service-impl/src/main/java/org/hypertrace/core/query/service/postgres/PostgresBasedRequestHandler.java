@@ -1,15 +1,18 @@
 package org.hypertrace.core.query.service.postgres;
 
 import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.isSimpleAttributeExpression;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
 import com.google.protobuf.util.JsonFormat;
 import com.typesafe.config.Config;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Timer;
 import io.reactivex.rxjava3.core.Observable;
 import java.sql.Array;
@@ -35,12 +38,11 @@ import javax.annotation.Nonnull;
 import lombok.SneakyThrows;
 import org.hypertrace.core.query.service.ExecutionContext;
 import org.hypertrace.core.query.service.QueryCost;
+import org.hypertrace.core.query.service.RequestAnalysis;
 import org.hypertrace.core.query.service.RequestHandler;
 import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.Expression.ValueCase;
 import org.hypertrace.core.query.service.api.Filter;
-import org.hypertrace.core.query.service.api.LiteralConstant;
-import org.hypertrace.core.query.service.api.Operator;
 import org.hypertrace.core.query.service.api.OrderByExpression;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.Row;
@@ -51,6 +53,7 @@ import org.hypertrace.core.query.service.postgres.PostgresClientFactory.Postgres
 import org.hypertrace.core.query.service.postgres.converters.PostgresFunctionConverter;
 import org.hypertrace.core.query.service.postgres.converters.PostgresFunctionConverterConfig;
 import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+import org.postgresql.PGStatement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,10 +68,10 @@ public class PostgresBasedRequestHandler implements RequestHandler {
   private static final String START_TIME_ATTRIBUTE_NAME_CONFIG_KEY = "startTimeAttributeName";
   private static final String SLOW_QUERY_THRESHOLD_MS_CONFIG = "slowQueryThresholdMs";
   private static final String MIN_REQUEST_DURATION_KEY = "minRequestDuration";
+  private static final String NATIVE_MAP_VALUES_ENABLED_CONFIG = "nativeMapValuesEnabled";
+  private static final String NATIVE_BYTES_VALUES_ENABLED_CONFIG = "nativeBytesValuesEnabled";
 
   private static final int DEFAULT_SLOW_QUERY_THRESHOLD_MS = 3000;
-  private static final Set<Operator> GTE_OPERATORS = Set.of(Operator.GE, Operator.GT, Operator.EQ);
-  private static final Set<Operator> LTE_OPERATORS = Set.of(Operator.LE, Operator.LT);
 
   // string values equivalent for null value of different data types
   // this is required to keep null values equivalent to default values for
@@ -83,6 +86,7 @@ public class PostgresBasedRequestHandler implements RequestHandler {
       Value.newBuilder().setValueType(ValueType.STRING).setString("false").build();
 
   private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final PostgresMapConverter MAP_CONVERTER = new PostgresMapConverter(MAPPER);
 
   private final String name;
   private TableDefinition tableDefinition;
@@ -94,8 +98,14 @@ public class PostgresBasedRequestHandler implements RequestHandler {
       JsonFormat.printer().omittingInsignificantWhitespace();
 
   private Timer postgresQueryExecutionTimer;
+  private Counter serverPreparedCounter;
+  private Counter notServerPreparedCounter;
   private int slowQueryThreshold = DEFAULT_SLOW_QUERY_THRESHOLD_MS;
   private Duration minRequestDuration = Duration.ZERO;
+  // When enabled, map columns are returned as STRING_MAP values instead of json strings.
+  private boolean nativeMapValuesEnabled = false;
+  // When enabled, bytes columns are returned as BYTES values instead of hex strings.
+  private boolean nativeBytesValuesEnabled = false;
 
   PostgresBasedRequestHandler(String name, Config config) {
     this(name, config, PostgresClientFactory.get());
@@ -113,6 +123,13 @@ public class PostgresBasedRequestHandler implements RequestHandler {
     this.postgresQueryExecutionTimer =
         PlatformMetricsRegistry.registerTimer(
             "postgres.query.latency", Map.of("handler", name), true);
+    // Executions of statements prepared by the server reuse their cached plans
+    this.serverPreparedCounter =
+        PlatformMetricsRegistry.registerCounter(
+            "postgres.query.server.prepared", Map.of("handler", name, "prepared", "true"));
+    this.notServerPreparedCounter =
+        PlatformMetricsRegistry.registerCounter(
+            "postgres.query.server.prepared", Map.of("handler", name, "prepared", "false"));
   }
 
   @Override
@@ -147,12 +164,6 @@ public class PostgresBasedRequestHandler implements RequestHandler {
             ? Optional.of(config.getString(START_TIME_ATTRIBUTE_NAME_CONFIG_KEY))
             : Optional.empty();
 
-    this.request2PostgresSqlConverter =
-        new QueryRequestToPostgresSQLConverter(
-            tableDefinition,
-            new PostgresFunctionConverter(
-                tableDefinition, new PostgresFunctionConverterConfig(config)));
-
     if (config.hasPath(SLOW_QUERY_THRESHOLD_MS_CONFIG)) {
       this.slowQueryThreshold = config.getInt(SLOW_QUERY_THRESHOLD_MS_CONFIG);
     }
@@ -161,6 +172,20 @@ public class PostgresBasedRequestHandler implements RequestHandler {
       this.minRequestDuration = config.getDuration(MIN_REQUEST_DURATION_KEY);
     }
 
+    if (config.hasPath(NATIVE_MAP_VALUES_ENABLED_CONFIG)) {
+      this.nativeMapValuesEnabled = config.getBoolean(NATIVE_MAP_VALUES_ENABLED_CONFIG);
+    }
+    if (config.hasPath(NATIVE_BYTES_VALUES_ENABLED_CONFIG)) {
+      this.nativeBytesValuesEnabled = config.getBoolean(NATIVE_BYTES_VALUES_ENABLED_CONFIG);
+    }
+
+    this.request2PostgresSqlConverter =
+        new QueryRequestToPostgresSQLConverter(
+            tableDefinition,
+            new PostgresFunctionConverter(
+                tableDefinition, new PostgresFunctionConverterConfig(config)),
+            nativeBytesValuesEnabled);
+
     LOG.info(
         "Using {}ms as the threshold for logging slow queries of handler: {}",
         slowQueryThreshold,
@@ -189,13 +214,16 @@ public class PostgresBasedRequestHandler implements RequestHandler {
       }
     }
 
-    if (!this.viewDefinitionSupportsFilter(tableDefinition, request.getFilter())) {
+    // If the view has any column filters, the query must have those filters as **mandatory**
+    // filters, or the view can't serve it.
+    RequestAnalysis requestAnalysis = executionContext.getRequestAnalysis();
+    if (!requestAnalysis.matchesColumnFilters(tableDefinition.getColumnFilterMap())) {
       return QueryCost.UNSUPPORTED;
     }
 
     double cost;
 
-    long requestStartTime = getRequestStartTime(request.getFilter());
+    long requestStartTime = getRequestStartTime(requestAnalysis);
     // check if this view contains data from the requested start time
     if (requestStartTime < System.currentTimeMillis() - tableDefinition.getRetentionTimeMillis()) {
       // prefer to get data from the view which has max retention time. Ensure 0.5 <= cost <= 1
@@ -205,7 +233,7 @@ public class PostgresBasedRequestHandler implements RequestHandler {
       cost = tableDefinition.getTimeGranularityMillis() / (Long.MAX_VALUE * 2D);
     }
 
-    long requestEndTime = getRequestEndTime(request.getFilter());
+    long requestEndTime = getRequestEndTime(requestAnalysis);
     Duration requestDuration = Duration.ofMillis(requestEndTime - requestStartTime);
 
     // choose this handler if requestDuration >= minRequestDuration
@@ -215,188 +243,21 @@ public class PostgresBasedRequestHandler implements RequestHandler {
     return new QueryCost(cost);
   }
 
-  private boolean viewDefinitionSupportsFilter(TableDefinition tableDefinition, Filter filter) {
-    // If the view has any column filters, check if the query has those filters as **mandatory**
-    // filters. If not, the view can't serve the query.
-    Map<String, TableColumnFilter> viewFilterMap = tableDefinition.getColumnFilterMap();
-    return viewFilterMap.isEmpty()
-        || viewFilterMap.keySet().equals(this.getMatchingViewFilterColumns(filter, viewFilterMap));
+  private long getRequestStartTime(RequestAnalysis requestAnalysis) {
+    return startTimeAttributeName.map(requestAnalysis::getStartTime).orElse(Long.MAX_VALUE);
   }
 
-  private long getRequestStartTime(Filter filter) {
-    long requestStartTime = Long.MAX_VALUE;
-
-    if (lhsIsStartTimeAttribute(filter.getLhs())
-        && GTE_OPERATORS.contains(filter.getOperator())
-        && rhsHasLongValue(filter.getRhs())) {
-      long filterStartTime = filter.getRhs().getLiteral().getValue().getLong();
-      requestStartTime = Math.min(requestStartTime, filterStartTime);
-    }
-
-    for (Filter childFilter : filter.getChildFilterList()) {
-      requestStartTime = Math.min(requestStartTime, getRequestStartTime(childFilter));
-    }
-
-    return requestStartTime;
+  private long getRequestEndTime(RequestAnalysis requestAnalysis) {
+    return startTimeAttributeName.map(requestAnalysis::getEndTime).orElse(Long.MIN_VALUE);
   }
 
-  private long getRequestEndTime(Filter filter) {
-    long requestEndTime = Long.MIN_VALUE;
-
-    if (lhsIsStartTimeAttribute(filter.getLhs())
-        && LTE_OPERATORS.contains(filter.getOperator())
-        && rhsHasLongValue(filter.getRhs())) {
-      long filterEndTime = filter.getRhs().getLiteral().getValue().getLong();
-      requestEndTime = Math.max(requestEndTime, filterEndTime);
-    }
-
-    for (Filter childFilter : filter.getChildFilterList()) {
-      requestEndTime = Math.max(requestEndTime, getRequestEndTime(childFilter));
-    }
-
-    return requestEndTime;
-  }
-
-  private boolean lhsIsStartTimeAttribute(Expression lhs) {
-    return startTimeAttributeName.isPresent()
-        && startTimeAttributeName.equals(getLogicalColumnName(lhs));
-  }
-
-  private boolean rhsHasLongValue(Expression rhs) {
-    return rhs.hasLiteral() && rhs.getLiteral().getValue().getValueType() == ValueType.LONG;
-  }
-
-  /**
-   * Method to return the set of columns from the given filter which match the columns in the given
-   * viewFilterMap.
-   */
-  private Set<String> getMatchingViewFilterColumns(
-      Filter filter, Map<String, TableColumnFilter> viewFilterMap) {
-    // 1. Basic case: Filter is a leaf node. Check if the column exists in view filters and
-    // return it.
-    if (filter.getChildFilterCount() == 0) {
-      return doesSingleViewFilterMatchLeafQueryFilter(viewFilterMap, filter)
-          ? Set.of(getLogicalColumnName(filter.getLhs()).orElseThrow(IllegalArgumentException::new))
-          : Set.of();
-    } else {
-      // 2. Internal filter node. Recursively get the matching nodes from children.
-      List<Set<String>> results =
-          filter.getChildFilterList().stream()
-              .map(f -> getMatchingViewFilterColumns(f, viewFilterMap))
-              .collect(Collectors.toList());
-
-      Set<String> result = results.get(0);
-      for (Set<String> set : results.subList(1, results.size())) {
-        // If the operation is OR, we need to get intersection of columns from all the children.
-        // Otherwise, the operation should be AND and we can get union of all columns.
-        result =
-            filter.getOperator() == Operator.OR
-                ? Sets.intersection(result, set)
-                : Sets.union(result, set);
-      }
-      return result;
-    }
-  }
-
-  /**
-   * Method to check if the given ViewColumnFilter matches the given query filter. A match here
-   * means the view column is superset of what the query filter is looking for, need not be an exact
-   * match.
-   */
-  private boolean doesSingleViewFilterMatchLeafQueryFilter(
-      Map<String, TableColumnFilter> viewFilterMap, Filter queryFilter) {
-
-    if (queryFilter.getOperator() != Operator.IN && queryFilter.getOperator() != Operator.EQ) {
-      return false;
-    }
-
-    TableColumnFilter tableColumnFilter =
-        getLogicalColumnName(queryFilter.getLhs()).map(viewFilterMap::get).orElse(null);
-    if (tableColumnFilter == null) {
-      return false;
-    }
-
-    switch (tableColumnFilter.getOperator()) {
-      case IN:
-        return isSubSet(tableColumnFilter.getValues(), queryFilter.getRhs());
-      case EQ:
-        return isEquals(tableColumnFilter.getValues(), queryFilter.getRhs());
-      default:
-        throw new IllegalArgumentException(
-            "Unsupported view filter operator: " + tableColumnFilter.getOperator());
-    }
-  }
-
-  /** Checks that the values from the given expression are a subset of the given set. */
-  private boolean isSubSet(Set<String> values, Expression expression) {
-    if (!expression.hasLiteral()) {
-      return false;
-    }
-
-    return values.containsAll(getExpressionValues(expression.getLiteral()));
-  }
-
-  /** Checks that the values from the given expression are a subset of the given set. */
+  /** Checks that the values from the given expression are equal to the given set. */
   private boolean isEquals(Set<String> values, Expression expression) {
     if (!expression.hasLiteral()) {
       return false;
     }
 
-    return values.equals(getExpressionValues(expression.getLiteral()));
-  }
-
-  private Set<String> getExpressionValues(LiteralConstant literalConstant) {
-    Set<String> expressionValues = new HashSet<>();
-    Value value = literalConstant.getValue();
-    switch (value.getValueType()) {
-      case STRING:
-        expressionValues.add(value.getString());
-        break;
-      case STRING_ARRAY:
-        expressionValues.addAll(value.getStringArrayList());
-        break;
-      case INT:
-        expressionValues.add(String.valueOf(value.getInt()));
-        break;
-      case INT_ARRAY:
-        expressionValues.addAll(
-            value.getIntArrayList().stream().map(Object::toString).collect(Collectors.toSet()));
-        break;
-      case LONG:
-        expressionValues.add(String.valueOf(value.getLong()));
-        break;
-      case LONG_ARRAY:
-        expressionValues.addAll(
-            value.getLongArrayList().stream().map(Object::toString).collect(Collectors.toSet()));
-        break;
-      case DOUBLE:
-        expressionValues.add(String.valueOf(value.getDouble()));
-        break;
-      case DOUBLE_ARRAY:
-        expressionValues.addAll(
-            value.getDoubleArrayList().stream().map(Object::toString).collect(Collectors.toSet()));
-        break;
-      case FLOAT:
-        expressionValues.add(String.valueOf(value.getFloat()));
-        break;
-      case FLOAT_ARRAY:
-        expressionValues.addAll(
-            value.getFloatArrayList().stream().map(Object::toString).collect(Collectors.toSet()));
-        break;
-      case BOOL:
-        expressionValues.add(String.valueOf(value.getBoolean()).toLowerCase());
-        break;
-      case BOOLEAN_ARRAY:
-        expressionValues.addAll(
-            value.getBooleanArrayList().stream()
-                .map(b -> b.toString().toLowerCase())
-                .collect(Collectors.toSet()));
-        break;
-      default:
-        // Ignore the rest of the types for now.
-        throw new IllegalArgumentException("Unsupported value type in subset check.");
-    }
-    return expressionValues;
+    return values.equals(RequestAnalysis.getLiteralValues(expression.getLiteral()));
   }
 
   @Override
@@ -424,9 +285,19 @@ public class PostgresBasedRequestHandler implements RequestHandler {
         LOG.debug("Trying to execute SQL: [ {} ] by RequestHandler: [ {} ]", sql, this.getName());
       }
 
+      Set<Integer> mapColumnIndexes =
+          nativeMapValuesEnabled
+              ? getColumnIndexes(executionContext.getAllSelections(), ValueType.STRING_MAP)
+              : Collections.emptySet();
+      Set<Integer> bytesColumnIndexes =
+          nativeBytesValuesEnabled
+              ? getColumnIndexes(executionContext.getAllSelections(), ValueType.BYTES)
+              : Collections.emptySet();
       Observable<Row> rowObservable =
           postgresQueryExecutionTimer.recordCallable(
-              () -> executeQuery(sql.getKey(), sql.getValue()));
+              () ->
+                  executeQuery(
+                      sql.getKey(), sql.getValue(), mapColumnIndexes, bytesColumnIndexes));
 
       // need to merge data especially for Postgres. That's why we need to track the map columns
       return rowObservable.doOnComplete(
@@ -499,24 +370,73 @@ public class PostgresBasedRequestHandler implements RequestHandler {
     return queryFilter;
   }
 
+  /**
+   * Returns the (1 based) result column indexes of the selections which are plain columns of the
+   * given type, so that their text can be converted into native values.
+   */
+  private Set<Integer> getColumnIndexes(
+      LinkedHashSet<Expression> allSelections, ValueType columnType) {
+    Set<Integer> columnIndexes = new HashSet<>();
+    int columnIndex = 1;
+    for (Expression expression : allSelections) {
+      if (isSimpleAttributeExpression(expression)
+          && tableDefinition.getColumnType(
+                  getLogicalColumnName(expression).orElseThrow(IllegalArgumentException::new))
+              == columnType) {
+        columnIndexes.add(columnIndex);
+      }
+      columnIndex++;
+    }
+    return columnIndexes;
+  }
+
   public Observable<Row> executeQuery(String statement, Params params) throws SQLException {
+    return executeQuery(statement, params, Collections.emptySet(), Collections.emptySet());
+  }
+
+  private Observable<Row> executeQuery(
+      String statement,
+      Params params,
+      Set<Integer> mapColumnIndexes,
+      Set<Integer> bytesColumnIndexes)
+      throws SQLException {
     final PostgresClient postgresClient = postgresClientFactory.getPostgresClient(this.getName());
-    String resolvedStatement = request2PostgresSqlConverter.resolveStatement(statement, params);
     Connection connection = postgresClient.getConnection();
-    try (PreparedStatement preparedStatement = connection.prepareStatement(resolvedStatement);
-        ResultSet resultSet = preparedStatement.executeQuery()) {
-      LOG.debug("Query results: [ {} ]", resultSet);
-      return convert(resultSet);
+    try (PreparedStatement preparedStatement = connection.prepareStatement(statement)) {
+      params.bindTo(preparedStatement);
+      try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        LOG.debug("Query results: [ {} ]", resultSet);
+        recordServerPrepare(preparedStatement);
+        return convert(resultSet, mapColumnIndexes, bytesColumnIndexes);
+      }
     } catch (Exception ex) {
       // Catch this exception to log the Postgres SQL query that caused the issue
-      LOG.error("An error occurred while executing: {}", resolvedStatement, ex);
+      LOG.error(
+          "An error occurred while executing: {}",
+          request2PostgresSqlConverter.resolveStatement(statement, params),
+          ex);
       // Rethrow for the caller to return an error.
       throw new RuntimeException(ex);
     }
   }
 
-  @SneakyThrows
+  /** Counts the executions that reused a statement prepared by the server and those that didn't. */
+  private void recordServerPrepare(PreparedStatement preparedStatement) throws SQLException {
+    if (preparedStatement.isWrapperFor(PGStatement.class)
+        && preparedStatement.unwrap(PGStatement.class).isUseServerPrepare()) {
+      serverPreparedCounter.increment();
+    } else {
+      notServerPreparedCounter.increment();
+    }
+  }
+
   Observable<Row> convert(ResultSet resultSet) {
+    return convert(resultSet, Collections.emptySet(), Collections.emptySet());
+  }
+
+  @SneakyThrows
+  Observable<Row> convert(
+      ResultSet resultSet, Set<Integer> mapColumnIndexes, Set<Integer> bytesColumnIndexes) {
     List<Row> rowList = new ArrayList<>();
     while (resultSet.next()) {
       Builder builder = Row.newBuilder();
@@ -535,6 +455,17 @@ public class PostgresBasedRequestHandler implements RequestHandler {
                         MAPPER.writeValueAsString(
                             colVal != null ? colVal.getArray() : Collections.emptyList()))
                     .build();
+          } else if (mapColumnIndexes.contains(c)) {
+            convertedColVal = MAP_CONVERTER.convert(resultSet.getString(c));
+          } else if (bytesColumnIndexes.contains(c)) {
+            // bytes columns are selected as binary, a null one is read as empty as with hex text
+            byte[] colVal = resultSet.getBytes(c);
+            convertedColVal =
+                Value.newBuilder()
+                    .setValueType(ValueType.BYTES)
+                    .setBytes(
+                        colVal != null ? UnsafeByteOperations.unsafeWrap(colVal) : ByteString.EMPTY)
+                    .build();
           } else {
             String colVal = resultSet.getString(c);
             convertedColVal =
@@ -6,9 +6,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Duration;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import org.hypertrace.core.query.service.QueryServiceConfig.RequestHandlerClientConfig;
+import org.postgresql.PGProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,9 +63,13 @@ public class PostgresClientFactory {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PostgresClient.class);
 
+    // Executions from which the driver prepares a statement on the server, to reuse its plan
+    private static final int DEFAULT_PREPARE_THRESHOLD = 2;
+    // Statements the driver keeps prepared on the server, per connection
+    private static final int DEFAULT_PREPARED_STATEMENT_CACHE_QUERIES = 512;
+
     private final String url;
-    private final String user;
-    private final String password;
+    private final Properties connectionProperties;
     private final int maxConnectionAttempts;
     private final Duration connectionRetryBackoff;
 
@@ -72,8 +78,17 @@ public class PostgresClientFactory {
 
     public PostgresClient(RequestHandlerClientConfig clientConfig) {
       this.url = clientConfig.getConnectionString();
-      this.user = clientConfig.getUser().orElseThrow(IllegalArgumentException::new);
-      this.password = clientConfig.getPassword().orElseThrow(IllegalArgumentException::new);
+      this.connectionProperties = new Properties();
+      PGProperty.PREPARE_THRESHOLD.set(this.connectionProperties, DEFAULT_PREPARE_THRESHOLD);
+      PGProperty.PREPARED_STATEMENT_CACHE_QUERIES.set(
+          this.connectionProperties, DEFAULT_PREPARED_STATEMENT_CACHE_QUERIES);
+      this.connectionProperties.putAll(clientConfig.getConnectionProperties());
+      PGProperty.USER.set(
+          this.connectionProperties,
+          clientConfig.getUser().orElseThrow(IllegalArgumentException::new));
+      PGProperty.PASSWORD.set(
+          this.connectionProperties,
+          clientConfig.getPassword().orElseThrow(IllegalArgumentException::new));
       this.maxConnectionAttempts =
           clientConfig.getMaxConnectionAttempts().orElse(DEFAULT_MAX_CONNECTION_ATTEMPTS);
       this.connectionRetryBackoff =
@@ -118,7 +133,7 @@ public class PostgresClientFactory {
         try {
           ++attempts;
           LOGGER.info("Attempting(attempt #{}) to open connection #{} to {}", attempts, count, url);
-          connection = DriverManager.getConnection(url, user, password);
+          connection = DriverManager.getConnection(url, connectionProperties);
           return;
         } catch (SQLException sqle) {
           attempts++;
@@ -0,0 +1,55 @@
+package org.hypertrace.core.query.service.postgres;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+
+/** Converts the json text of a Postgres map column into a {@link ValueType#STRING_MAP} value. */
+class PostgresMapConverter {
+
+  private final JsonFactory jsonFactory;
+
+  PostgresMapConverter(ObjectMapper objectMapper) {
+    this.jsonFactory = objectMapper.getFactory();
+  }
+
+  /**
+   * Streams the json object straight into the {@code string_map} of a new value, without
+   * materializing an intermediate map. Nested values are kept as their json text.
+   */
+  Value convert(String jsonData) throws IOException {
+    Value.Builder valueBuilder = Value.newBuilder().setValueType(ValueType.STRING_MAP);
+    if (jsonData == null) {
+      return valueBuilder.build();
+    }
+
+    try (JsonParser parser = jsonFactory.createParser(jsonData)) {
+      JsonToken token = parser.nextToken();
+      if (token == null || token == JsonToken.VALUE_NULL) {
+        return valueBuilder.build();
+      }
+      if (token != JsonToken.START_OBJECT) {
+        throw new JsonParseException(parser, "Expected a json object for the map column");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String key = parser.getCurrentName();
+        token = parser.nextToken();
+        String value;
+        if (token == JsonToken.VALUE_NULL) {
+          value = "";
+        } else if (token.isScalarValue()) {
+          value = parser.getText();
+        } else {
+          value = parser.readValueAsTree().toString();
+        }
+        valueBuilder.putStringMap(key, value);
+      }
+    }
+    return valueBuilder.build();
+  }
+}
@@ -32,11 +32,20 @@ class QueryRequestToPostgresSQLConverter {
 
   private final TableDefinition tableDefinition;
   private final PostgresFunctionConverter functionConverter;
+  private final boolean nativeBytesValuesEnabled;
 
   QueryRequestToPostgresSQLConverter(
       TableDefinition tableDefinition, PostgresFunctionConverter functionConverter) {
+    this(tableDefinition, functionConverter, false);
+  }
+
+  QueryRequestToPostgresSQLConverter(
+      TableDefinition tableDefinition,
+      PostgresFunctionConverter functionConverter,
+      boolean nativeBytesValuesEnabled) {
     this.tableDefinition = tableDefinition;
     this.functionConverter = functionConverter;
+    this.nativeBytesValuesEnabled = nativeBytesValuesEnabled;
   }
 
   Entry<String, Params> toSQL(
@@ -46,16 +55,24 @@ class QueryRequestToPostgresSQLConverter {
     PostgresExecutionContext postgresExecutionContext =
         new PostgresExecutionContext(executionContext);
     ColumnRequestConverter columnRequestConverter =
-        ColumnRequestConverterFactory.getColumnRequestConverter(tableDefinition, functionConverter);
+        ColumnRequestConverterFactory.getColumnRequestConverter(
+            tableDefinition, functionConverter, nativeBytesValuesEnabled);
 
     // allSelections contain all the various expressions in QueryRequest that we want selections on.
     // Group bys, selections and aggregations in that order. See RequestAnalyzer#analyze() to see
     // how it is created.
+    // Only the tenant id and the filter values are bound as statement parameters. The literals of
+    // the selections, group bys and order bys, such as map keys or function arguments, are
+    // resolved into their clauses so that the same expression reads the same in each of them,
+    // which the database needs to match a group by with the selections.
     Builder paramsBuilder = Params.newBuilder();
     for (Expression expr : allSelections) {
+      Builder selectParamsBuilder = Params.newBuilder();
       String selectClause =
-          columnRequestConverter.convertSelectClause(expr, paramsBuilder, postgresExecutionContext);
-      postgresExecutionContext.addResolvedSelectColumnQuery(selectClause);
+          columnRequestConverter.convertSelectClause(
+              expr, selectParamsBuilder, postgresExecutionContext);
+      postgresExecutionContext.addResolvedSelectColumnQuery(
+          resolveStatement(selectClause, selectParamsBuilder.build()));
     }
     postgresExecutionContext.addAllSelectTableColumnNames(
         postgresExecutionContext.getActualTableColumnNames());
@@ -74,10 +91,12 @@ class QueryRequestToPostgresSQLConverter {
 
     if (request.getGroupByCount() > 0) {
       for (Expression groupByExpression : request.getGroupByList()) {
+        Builder groupByParamsBuilder = Params.newBuilder();
         String groupByClause =
             columnRequestConverter.convertGroupByClause(
-                groupByExpression, paramsBuilder, postgresExecutionContext);
-        postgresExecutionContext.addResolvedGroupByColumnQuery(groupByClause);
+                groupByExpression, groupByParamsBuilder, postgresExecutionContext);
+        postgresExecutionContext.addResolvedGroupByColumnQuery(
+            resolveStatement(groupByClause, groupByParamsBuilder.build()));
       }
       postgresExecutionContext.addAllGroupByTableColumnNames(
           postgresExecutionContext.getActualTableColumnNames());
@@ -86,9 +105,14 @@ class QueryRequestToPostgresSQLConverter {
 
     if (!request.getOrderByList().isEmpty()) {
       for (OrderByExpression orderByExpression : request.getOrderByList()) {
+        Builder orderByParamsBuilder = Params.newBuilder();
         String orderByClause =
-            columnRequestConverter.convertOrderByClause(
-                orderByExpression.getExpression(), paramsBuilder, postgresExecutionContext);
+            resolveStatement(
+                columnRequestConverter.convertOrderByClause(
+                    orderByExpression.getExpression(),
+                    orderByParamsBuilder,
+                    postgresExecutionContext),
+                orderByParamsBuilder.build());
         postgresExecutionContext.addResolvedOrderByColumnQuery(
             new SimpleEntry<>(orderByClause, SortOrder.DESC.equals(orderByExpression.getOrder())));
       }
@@ -265,7 +289,9 @@ class QueryRequestToPostgresSQLConverter {
     if (query.isEmpty()) {
       return query;
     }
-    String[] queryParts = query.split("\\?");
+    // Keep the trailing empty part, for a statement ending with a parameter. A doubled question
+    // mark is the escaped jsonb operator, not a parameter.
+    String[] queryParts = query.split("(?<!\\?)\\?(?!\\?)", -1);
 
     String[] parameters = new String[queryParts.length];
     params.getStringParams().forEach((i, p) -> parameters[i] = getStringParam(p));
@@ -276,7 +302,7 @@ class QueryRequestToPostgresSQLConverter {
 
     StringBuilder sb = new StringBuilder();
     for (int i = 0; i < queryParts.length; i++) {
-      sb.append(queryParts[i]);
+      sb.append(queryParts[i].replace("??", "?"));
       sb.append(parameters[i] != null ? parameters[i] : "");
     }
     String statement = sb.toString();
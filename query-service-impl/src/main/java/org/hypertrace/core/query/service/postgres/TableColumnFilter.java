@@ -2,6 +2,7 @@ package org.hypertrace.core.query.service.postgres;
 
 import com.typesafe.config.Config;
 import java.util.Set;
+import org.hypertrace.core.query.service.ColumnFilter;
 
 /**
  * A column level filter that's applied for a Postgres view by default. This is useful to build
@@ -14,7 +15,7 @@ import java.util.Set;
  *
  * <p>Example IN filter: { column: "EVENT.statusCode" operator: "IN" values: ["500", "401"] }
  */
-class TableColumnFilter {
+class TableColumnFilter implements ColumnFilter {
   private final Operator operator;
   private final Set<String> values;
 
@@ -44,4 +45,12 @@ class TableColumnFilter {
   public Set<String> getValues() {
     return this.values;
   }
+
+  /** The values of an IN filter may be a subset of its values, those of an EQ filter its value. */
+  @Override
+  public boolean matchesAll(Set<String> values) {
+    return this.operator == Operator.EQ
+        ? this.values.equals(values)
+        : this.values.containsAll(values);
+  }
 }
@@ -27,9 +27,12 @@ public class TableDefinition {
   private static final String MAP_FIELDS_CONFIG_KEY = "mapFields";
   private static final String FILTERS_CONFIG_KEY = "filters";
   private static final String COLUMN_CONFIG_KEY = "column";
+  private static final String GIN_INDEXED_FIELDS_CONFIG_KEY = "ginIndexedFields";
+  private static final String IN_LIST_ARRAY_THRESHOLD_CONFIG_KEY = "inListArrayThreshold";
 
   private static final long DEFAULT_RETENTION_TIME = TimeUnit.DAYS.toMillis(8);
   private static final long DEFAULT_TIME_GRANULARITY = TimeUnit.MINUTES.toMillis(1);
+  private static final int DEFAULT_IN_LIST_ARRAY_THRESHOLD = 100;
 
   private final String tableName;
   private final long retentionTimeMillis;
@@ -52,6 +55,18 @@ public class TableDefinition {
    */
   private final Map<String, TableColumnFilter> columnFilterMap;
 
+  /**
+   * The physical names of the map and array columns with a GIN index, which filters on them are
+   * converted to the containment and existence operators the index can serve.
+   */
+  private final Set<String> ginIndexedColumns;
+
+  /**
+   * The number of values from which an IN list is bound as a single array, compared with = ANY,
+   * instead of a param per value.
+   */
+  private final int inListArrayThreshold;
+
   public TableDefinition(
       String tableName,
       long retentionTimeMillis,
@@ -59,7 +74,9 @@ public class TableDefinition {
       Map<String, PostgresColumnSpec> columnSpecMap,
       String tenantColumnName,
       Optional<String> countColumnName,
-      Map<String, TableColumnFilter> filterMap) {
+      Map<String, TableColumnFilter> filterMap,
+      Set<String> ginIndexedColumns,
+      int inListArrayThreshold) {
     this.tableName = tableName;
     this.retentionTimeMillis = retentionTimeMillis;
     this.timeGranularityMillis = timeGranularityMillis;
@@ -67,6 +84,8 @@ public class TableDefinition {
     this.tenantColumnName = tenantColumnName;
     this.countColumnName = countColumnName;
     this.columnFilterMap = filterMap;
+    this.ginIndexedColumns = ginIndexedColumns;
+    this.inListArrayThreshold = inListArrayThreshold;
   }
 
   public static TableDefinition parse(
@@ -150,6 +169,17 @@ public class TableDefinition {
       }
     }
 
+    final Set<String> ginIndexedFields =
+        new HashSet<>(
+            config.hasPath(GIN_INDEXED_FIELDS_CONFIG_KEY)
+                ? config.getStringList(GIN_INDEXED_FIELDS_CONFIG_KEY)
+                : List.of());
+
+    int inListArrayThreshold =
+        config.hasPath(IN_LIST_ARRAY_THRESHOLD_CONFIG_KEY)
+            ? config.getInt(IN_LIST_ARRAY_THRESHOLD_CONFIG_KEY)
+            : DEFAULT_IN_LIST_ARRAY_THRESHOLD;
+
     return new TableDefinition(
         tableName,
         retentionTimeMillis,
@@ -157,7 +187,9 @@ public class TableDefinition {
         columnSpecMap,
         tenantColumnName,
         countColumnName,
-        filterMap);
+        filterMap,
+        ginIndexedFields,
+        inListArrayThreshold);
   }
 
   public String getTableName() {
@@ -197,6 +229,15 @@ public class TableDefinition {
     return columnSpecMap.get(logicalName).isTdigest();
   }
 
+  public boolean isGinIndexedColumn(String logicalName) {
+    return columnSpecMap.containsKey(logicalName)
+        && ginIndexedColumns.contains(columnSpecMap.get(logicalName).getColumnName());
+  }
+
+  public int getInListArrayThreshold() {
+    return inListArrayThreshold;
+  }
+
   @Nonnull
   public Map<String, TableColumnFilter> getColumnFilterMap() {
     return this.columnFilterMap;
@@ -5,13 +5,20 @@ import org.hypertrace.core.query.service.api.ValueType;
 class ColumnRequestContext {
   private QueryPart queryPart;
   private ValueType columnValueType;
+  // Whether the selection is a bytes column read as binary rather than as hex text
+  private final boolean binaryBytesSelection;
 
-  private ColumnRequestContext(QueryPart queryPart) {
+  private ColumnRequestContext(QueryPart queryPart, boolean binaryBytesSelection) {
     this.queryPart = queryPart;
+    this.binaryBytesSelection = binaryBytesSelection;
   }
 
   static ColumnRequestContext createColumnRequestContext(QueryPart queryPart) {
-    return new ColumnRequestContext(queryPart);
+    return new ColumnRequestContext(queryPart, false);
+  }
+
+  static ColumnRequestContext createBinaryBytesSelectionContext() {
+    return new ColumnRequestContext(QueryPart.SELECT, true);
   }
 
   void setColumnValueType(ValueType columnValueType) {
@@ -30,6 +37,10 @@ class ColumnRequestContext {
     return columnValueType != null && columnValueType.equals(ValueType.BYTES);
   }
 
+  boolean isBinaryBytesSelection() {
+    return binaryBytesSelection && isBytesColumnType();
+  }
+
   boolean isMapColumnType() {
     return columnValueType != null && columnValueType.equals(ValueType.STRING_MAP);
   }
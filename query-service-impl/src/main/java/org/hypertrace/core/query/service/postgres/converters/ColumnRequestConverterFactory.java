@@ -10,6 +10,14 @@ public class ColumnRequestConverterFactory {
 
   public static ColumnRequestConverter getColumnRequestConverter(
       TableDefinition tableDefinition, PostgresFunctionConverter functionConverter) {
-    return new DefaultColumnRequestConverter(tableDefinition, functionConverter);
+    return getColumnRequestConverter(tableDefinition, functionConverter, false);
+  }
+
+  public static ColumnRequestConverter getColumnRequestConverter(
+      TableDefinition tableDefinition,
+      PostgresFunctionConverter functionConverter,
+      boolean nativeBytesValuesEnabled) {
+    return new DefaultColumnRequestConverter(
+        tableDefinition, functionConverter, nativeBytesValuesEnabled);
   }
 }
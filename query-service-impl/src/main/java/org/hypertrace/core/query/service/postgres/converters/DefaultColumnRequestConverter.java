@@ -8,6 +8,7 @@ import static org.hypertrace.core.query.service.postgres.converters.ColumnReques
 import static org.hypertrace.core.query.service.postgres.converters.ColumnRequestContext.QueryPart.GROUP_BY;
 import static org.hypertrace.core.query.service.postgres.converters.ColumnRequestContext.QueryPart.ORDER_BY;
 import static org.hypertrace.core.query.service.postgres.converters.ColumnRequestContext.QueryPart.SELECT;
+import static org.hypertrace.core.query.service.postgres.converters.ColumnRequestContext.createBinaryBytesSelectionContext;
 import static org.hypertrace.core.query.service.postgres.converters.ColumnRequestContext.createColumnRequestContext;
 
 import com.google.common.base.Strings;
@@ -39,11 +40,15 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
 
   private final TableDefinition tableDefinition;
   private final PostgresFunctionConverter functionConverter;
+  private final boolean nativeBytesValuesEnabled;
 
   DefaultColumnRequestConverter(
-      TableDefinition tableDefinition, PostgresFunctionConverter functionConverter) {
+      TableDefinition tableDefinition,
+      PostgresFunctionConverter functionConverter,
+      boolean nativeBytesValuesEnabled) {
     this.tableDefinition = tableDefinition;
     this.functionConverter = functionConverter;
+    this.nativeBytesValuesEnabled = nativeBytesValuesEnabled;
   }
 
   @Override
@@ -51,7 +56,11 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
       Expression expression,
       Builder paramsBuilder,
       PostgresExecutionContext postgresExecutionContext) {
-    postgresExecutionContext.setColumnRequestContext(createColumnRequestContext(SELECT));
+    // Whole bytes columns are read as binary with native bytes, the hex text is only for functions
+    postgresExecutionContext.setColumnRequestContext(
+        this.nativeBytesValuesEnabled && isSimpleAttributeExpression(expression)
+            ? createBinaryBytesSelectionContext()
+            : createColumnRequestContext(SELECT));
     String selectClause =
         convertExpressionToString(expression, paramsBuilder, postgresExecutionContext);
     postgresExecutionContext.resetColumnRequestContext();
@@ -105,6 +114,17 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
         delim = operator + " ";
       }
       builder.append(")");
+    } else if (isEqualsFilterForGinIndexedMapSubpath(filter)) {
+      // tags->>'key' = 'value' can't be served by the index, the equivalent containment can
+      String logicalColumnName =
+          getLogicalColumnName(filter.getLhs()).orElseThrow(IllegalArgumentException::new);
+      builder.append(tableDefinition.getPhysicalColumnName(logicalColumnName));
+      builder.append(" @> ");
+      builder.append(
+          convertKeyValueToJsonbObject(
+              filter.getLhs().getAttributeExpression().getSubpath(),
+              filter.getRhs().getLiteral().getValue().getString(),
+              paramsBuilder));
     } else {
       String lhs =
           convertExpressionToString(filter.getLhs(), paramsBuilder, postgresExecutionContext);
@@ -119,6 +139,14 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
           break;
         case CONTAINS_KEY:
           builder.append(lhs);
+          if (isGinIndexedColumn(filter.getLhs())) {
+            // The jsonb key existence operator, escaped for the driver
+            builder.append(" ?? ");
+            builder.append(
+                convertLiteralToString(
+                    convertMapKeyExpressionToLiterals(filter.getRhs()), paramsBuilder));
+            break;
+          }
           builder.append("->>");
           builder.append(
               convertLiteralToString(
@@ -136,6 +164,15 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
         case CONTAINS_KEYVALUE:
           List<LiteralConstant> kvp = convertMapKeyValueExpressionToLiterals(filter.getRhs());
           builder.append(lhs);
+          if (isGinIndexedColumn(filter.getLhs())) {
+            builder.append(" @> ");
+            builder.append(
+                convertKeyValueToJsonbObject(
+                    kvp.get(MAP_KEY_INDEX).getValue().getString(),
+                    kvp.get(MAP_VALUE_INDEX).getValue().getString(),
+                    paramsBuilder));
+            break;
+          }
           builder.append("->>");
           builder.append(convertLiteralToString(kvp.get(MAP_KEY_INDEX), paramsBuilder));
           builder.append(" = ");
@@ -152,7 +189,15 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
                   convertMapLikeExpressionToLiterals(filter.getRhs()), paramsBuilder));
           break;
         default:
-          if (isFilterForBytesColumnType(filter, postgresExecutionContext)) {
+          if (isLargeInListFilter(filter)
+              && !isFilterForArrayColumnType(filter, postgresExecutionContext)) {
+            handleConversionForLargeInList(
+                lhs,
+                filter,
+                isFilterForBytesColumnType(filter, postgresExecutionContext),
+                builder,
+                paramsBuilder);
+          } else if (isFilterForBytesColumnType(filter, postgresExecutionContext)) {
             handleConversionForBytesColumnExpression(
                 lhs, operator, filter.getRhs(), builder, paramsBuilder);
           } else if (isFilterForArrayColumnType(filter, postgresExecutionContext)) {
@@ -172,6 +217,89 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
     return builder.toString();
   }
 
+  private boolean isGinIndexedColumn(Expression expression) {
+    return getLogicalColumnName(expression).map(tableDefinition::isGinIndexedColumn).orElse(false);
+  }
+
+  private boolean isEqualsFilterForGinIndexedMapSubpath(Filter filter) {
+    return filter.getOperator() == Operator.EQ
+        && isAttributeExpressionWithSubpath(filter.getLhs())
+        && isGinIndexedColumn(filter.getLhs())
+        && filter.getRhs().getValueCase().equals(LITERAL)
+        && filter.getRhs().getLiteral().getValue().getValueType() == ValueType.STRING;
+  }
+
+  /** Builds the jsonb object of a single key value pair, to check a map contains it. */
+  private String convertKeyValueToJsonbObject(String key, String value, Builder paramsBuilder) {
+    paramsBuilder.addStringParam(key);
+    paramsBuilder.addStringParam(value);
+    // Typed, as the parameters of the variadic function can't be inferred
+    return "jsonb_build_object(?::text, ?::text)";
+  }
+
+  private boolean isLargeInListFilter(Filter filter) {
+    if ((filter.getOperator() != Operator.IN && filter.getOperator() != Operator.NOT_IN)
+        || !filter.getRhs().getValueCase().equals(LITERAL)) {
+      return false;
+    }
+    Value value = filter.getRhs().getLiteral().getValue();
+    int valueCount =
+        value.getValueType() == ValueType.STRING_ARRAY
+            ? value.getStringArrayCount()
+            : value.getValueType() == ValueType.BYTES_ARRAY ? value.getBytesArrayCount() : 0;
+    return valueCount > 0 && valueCount >= tableDefinition.getInListArrayThreshold();
+  }
+
+  /**
+   * Binds the values of a large IN list as a single array param, so that the statement and its
+   * plan are the same whatever the number of values, e.g. trace_id = ANY(?). The param is an
+   * untyped array literal, which Postgres parses as an array of the type of the column.
+   */
+  private void handleConversionForLargeInList(
+      String lhs,
+      Filter filter,
+      boolean bytesColumn,
+      StringBuilder builder,
+      Builder paramsBuilder) {
+    Value value = filter.getRhs().getLiteral().getValue();
+    List<String> elements = new ArrayList<>();
+    if (value.getValueType() == ValueType.BYTES_ARRAY) {
+      for (ByteString bytes : value.getBytesArrayList()) {
+        elements.add(Hex.encodeHexString(bytes.asReadOnlyByteBuffer()));
+      }
+    } else {
+      elements.addAll(value.getStringArrayList());
+    }
+    if (bytesColumn) {
+      elements.forEach(element -> isValidHexString(element, lhs));
+      // The hex format of bytea
+      elements.replaceAll(element -> "\\x" + element);
+    } else if (value.getValueType() == ValueType.BYTES_ARRAY) {
+      throw new IllegalArgumentException(
+          String.format("Bytes values not supported for column : {%s}", lhs));
+    }
+
+    builder.append(lhs);
+    // NOT IN is equivalent to <> ALL, including for nulls
+    builder.append(filter.getOperator() == Operator.IN ? " = ANY(" : " <> ALL(");
+    builder.append(QUESTION_MARK);
+    builder.append(")");
+    paramsBuilder.addStringParam(toArrayLiteral(elements));
+  }
+
+  private static String toArrayLiteral(List<String> elements) {
+    StringBuilder arrayLiteral = new StringBuilder("{");
+    String delim = "";
+    for (String element : elements) {
+      arrayLiteral.append(delim);
+      arrayLiteral.append('"');
+      arrayLiteral.append(element.replace("\\", "\\\\").replace("\"", "\\\""));
+      arrayLiteral.append('"');
+      delim = ",";
+    }
+    return arrayLiteral.append("}").toString();
+  }
+
   private boolean isFilterForBytesColumnType(
       Filter filter, PostgresExecutionContext postgresExecutionContext) {
     return isSimpleAttributeExpression(filter.getLhs())
@@ -186,16 +314,21 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
 
     if (handleConversionForNullOrEmptyBytesLiteral(lhs, operator, builder, value)) return;
 
+    LiteralConstant literal = rhs.getLiteral();
     if (value.getValueType().equals(ValueType.STRING)) {
       isValidHexString(value.getString(), lhs);
     } else if (value.getValueType().equals(ValueType.STRING_ARRAY)) {
       value.getStringArrayList().forEach(strValue -> isValidHexString(strValue, lhs));
+    } else if (value.getValueType().equals(ValueType.BYTES)
+        || value.getValueType().equals(ValueType.BYTES_ARRAY)) {
+      // Binary literals need no validation, they are only hex encoded for the decode call below
+      literal = convertBytesLiteralToHexLiteral(value);
     } else {
       throw new IllegalArgumentException(
           String.format("Value not supported for bytes column : {%s}", value));
     }
 
-    String convertedLiteral = convertLiteralToString(rhs.getLiteral(), paramsBuilder);
+    String convertedLiteral = convertLiteralToString(literal, paramsBuilder);
     // add decode for all string values
     convertedLiteral = convertedLiteral.replace("?", "decode(?, 'hex')");
 
@@ -206,10 +339,26 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
     builder.append(convertedLiteral);
   }
 
+  private LiteralConstant convertBytesLiteralToHexLiteral(Value value) {
+    Value.Builder hexValue = Value.newBuilder();
+    if (value.getValueType().equals(ValueType.BYTES)) {
+      hexValue
+          .setValueType(ValueType.STRING)
+          .setString(Hex.encodeHexString(value.getBytes().asReadOnlyByteBuffer()));
+    } else {
+      hexValue.setValueType(ValueType.STRING_ARRAY);
+      for (ByteString bytes : value.getBytesArrayList()) {
+        hexValue.addStringArray(Hex.encodeHexString(bytes.asReadOnlyByteBuffer()));
+      }
+    }
+    return LiteralConstant.newBuilder().setValue(hexValue).build();
+  }
+
   private boolean handleConversionForNullOrEmptyBytesLiteral(
       String lhs, String operator, StringBuilder builder, Value value) {
     if (value.getValueType().equals(ValueType.NULL_STRING)
-        || (value.getValueType().equals(ValueType.STRING) && isNullOrEmpty(value.getString()))) {
+        || (value.getValueType().equals(ValueType.STRING) && isNullOrEmpty(value.getString()))
+        || (value.getValueType().equals(ValueType.BYTES) && value.getBytes().isEmpty())) {
       builder.append(lhs);
       builder.append(" ");
       if (!operator.equals("=") && !operator.equals("!=")) {
@@ -256,7 +405,6 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
           String.format(
               "Unsupported operator {%s} for array column with non-empty value", operator));
     }
-    builder.append("?");
     switch (value.getValueType()) {
       case STRING:
         paramsBuilder.addStringParam("{" + value.getString() + "}");
@@ -370,7 +518,9 @@ class DefaultColumnRequestConverter implements ColumnRequestConverter {
         postgresExecutionContext.addActualTableColumnName(columnName);
         ColumnRequestContext context = postgresExecutionContext.getColumnRequestContext();
         context.setColumnValueType(tableDefinition.getColumnType(logicalColumnName));
-        if (context.isSelect() && context.isBytesColumnType()) {
+        if (context.isBinaryBytesSelection()) {
+          return columnName;
+        } else if (context.isSelect() && context.isBytesColumnType()) {
           return String.format("encode(%s, 'hex')", columnName);
         } else if (context.isSelect() && context.isMapColumnType()) {
           return String.format("CAST(%s as text)", columnName);
@@ -51,6 +51,11 @@ final class ProjectionTransformation extends AbstractQueryTransformation {
     return log;
   }
 
+  @Override
+  protected boolean isFusable() {
+    return true;
+  }
+
   @Override
   protected Single<Expression> transformAttributeExpression(
       AttributeExpression attributeExpression) {
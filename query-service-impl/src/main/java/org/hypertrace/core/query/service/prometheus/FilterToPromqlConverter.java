@@ -1,10 +1,14 @@
 package org.hypertrace.core.query.service.prometheus;
 
 import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.removeAlias;
 
 import com.google.protobuf.ByteString;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.apache.commons.codec.binary.Hex;
 import org.hypertrace.core.query.service.QueryRequestUtil;
 import org.hypertrace.core.query.service.api.Expression;
@@ -15,29 +19,130 @@ import org.hypertrace.core.query.service.api.Value;
 
 class FilterToPromqlConverter {
 
-  /** only `AND` operator in filter is allowed rhs of leaf filter should be literal */
-  void convertFilterToString(
+  private static final String REGEX_METACHARACTERS = "\\.+*?()|[]{}^$";
+
+  /**
+   * Converts the filter to the label matchers of the selectors whose union of series it matches,
+   * one list of matchers per selector. Disjunctions of equalities on the same label are converted
+   * to a single regex matcher, other disjunctions to a selector per alternative. The rhs of leaf
+   * filters should be literal and filters on the time column are left out.
+   */
+  List<List<String>> convertFilterToSelectors(
       Filter filter,
       String timeFilterColumn,
-      Function<Expression, String> expressionToColumnConverter,
-      List<String> filterList) {
-    if (filter.getChildFilterCount() > 0) {
+      Function<Expression, String> expressionToColumnConverter) {
+    if (filter.getChildFilterCount() == 0) {
+      if (isTimeFilter(filter, timeFilterColumn)) {
+        return List.of(List.of());
+      }
+      return List.of(List.of(convertLeafFilterToString(filter, expressionToColumnConverter)));
+    }
+
+    if (filter.getOperator() == Operator.OR) {
+      Optional<String> regexMatcher =
+          convertToRegexMatcher(filter, timeFilterColumn, expressionToColumnConverter);
+      if (regexMatcher.isPresent()) {
+        return List.of(List.of(regexMatcher.get()));
+      }
+      List<List<String>> selectors = new ArrayList<>();
       for (Filter childFilter : filter.getChildFilterList()) {
-        convertFilterToString(
-            childFilter, timeFilterColumn, expressionToColumnConverter, filterList);
+        selectors.addAll(
+            convertFilterToSelectors(childFilter, timeFilterColumn, expressionToColumnConverter));
+      }
+      return selectors;
+    }
+
+    // every combination of the selectors of the children
+    List<List<String>> selectors = List.of(List.of());
+    for (Filter childFilter : filter.getChildFilterList()) {
+      List<List<String>> childSelectors =
+          convertFilterToSelectors(childFilter, timeFilterColumn, expressionToColumnConverter);
+      List<List<String>> combinedSelectors = new ArrayList<>();
+      for (List<String> selector : selectors) {
+        for (List<String> childSelector : childSelectors) {
+          List<String> combinedSelector = new ArrayList<>(selector);
+          combinedSelector.addAll(childSelector);
+          combinedSelectors.add(combinedSelector);
+        }
       }
-    } else {
-      if (QueryRequestUtil.isSimpleAttributeExpression(filter.getLhs())
-          && timeFilterColumn.equals(
-              getLogicalColumnName(filter.getLhs()).orElseThrow(IllegalArgumentException::new))) {
-        return;
+      selectors = combinedSelectors;
+    }
+    return selectors;
+  }
+
+  /** Returns the number of selectors the filter is converted to, at most. */
+  static int countSelectors(Filter filter) {
+    if (filter.getChildFilterCount() == 0) {
+      return 1;
+    }
+    int count = filter.getOperator() == Operator.OR ? 0 : 1;
+    for (Filter childFilter : filter.getChildFilterList()) {
+      count =
+          filter.getOperator() == Operator.OR
+              ? count + countSelectors(childFilter)
+              : count * countSelectors(childFilter);
+    }
+    return count;
+  }
+
+  static boolean isTimeFilter(Filter filter, String timeFilterColumn) {
+    return QueryRequestUtil.isSimpleAttributeExpression(filter.getLhs())
+        && timeFilterColumn.equals(
+            getLogicalColumnName(filter.getLhs()).orElseThrow(IllegalArgumentException::new));
+  }
+
+  private String convertLeafFilterToString(
+      Filter filter, Function<Expression, String> expressionToColumnConverter) {
+    return expressionToColumnConverter.apply(filter.getLhs())
+        + convertOperatorToString(filter.getOperator())
+        + convertLiteralToString(filter.getRhs().getLiteral());
+  }
+
+  private Optional<String> convertToRegexMatcher(
+      Filter filter,
+      String timeFilterColumn,
+      Function<Expression, String> expressionToColumnConverter) {
+    List<String> values = new ArrayList<>();
+    for (Filter childFilter : filter.getChildFilterList()) {
+      if (childFilter.getChildFilterCount() > 0
+          || isTimeFilter(childFilter, timeFilterColumn)
+          || !removeAlias(childFilter.getLhs())
+              .equals(removeAlias(filter.getChildFilter(0).getLhs()))
+          || (childFilter.getOperator() != Operator.EQ
+              && childFilter.getOperator() != Operator.IN)) {
+        return Optional.empty();
+      }
+      Value value = childFilter.getRhs().getLiteral().getValue();
+      switch (value.getValueType()) {
+        case STRING:
+          values.add(value.getString());
+          break;
+        case STRING_ARRAY:
+          values.addAll(value.getStringArrayList());
+          break;
+        default:
+          return Optional.empty();
+      }
+    }
+    return Optional.of(
+        expressionToColumnConverter.apply(filter.getChildFilter(0).getLhs())
+            + "=~\""
+            + values.stream()
+                .map(FilterToPromqlConverter::escapeRegex)
+                .collect(Collectors.joining("|"))
+            + "\"");
+  }
+
+  private static String escapeRegex(String value) {
+    StringBuilder builder = new StringBuilder();
+    for (char character : value.toCharArray()) {
+      if (REGEX_METACHARACTERS.indexOf(character) >= 0) {
+        // escaped once for the regex and once for the string literal
+        builder.append("\\\\");
       }
-      StringBuilder builder = new StringBuilder();
-      builder.append(expressionToColumnConverter.apply(filter.getLhs()));
-      builder.append(convertOperatorToString(filter.getOperator()));
-      builder.append(convertLiteralToString(filter.getRhs().getLiteral()));
-      filterList.add(builder.toString());
+      builder.append(character);
     }
+    return builder.toString();
   }
 
   private String convertOperatorToString(Operator operator) {
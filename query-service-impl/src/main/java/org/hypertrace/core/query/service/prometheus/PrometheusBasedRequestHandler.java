@@ -121,6 +121,9 @@ public class PrometheusBasedRequestHandler implements RequestHandler {
             logicalAttributeNameToMetricQueryMap,
             prepareSelectionColumnSet(executionContext.getAllSelections(), executionContext),
             executionContext.getTimeFilterColumn());
+    rows =
+        PrometheusResultPostProcessor.process(
+            rows, originalRequest, executionContext.getAllSelections());
 
     return Observable.fromIterable(rows).doOnNext(row -> LOG.debug("collect a row: {}", row));
   }
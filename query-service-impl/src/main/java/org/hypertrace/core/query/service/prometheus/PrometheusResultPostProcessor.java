@@ -0,0 +1,71 @@
+package org.hypertrace.core.query.service.prometheus;
+
+import static org.hypertrace.core.query.service.QueryRequestUtil.indexOfIgnoringAlias;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.OrderByExpression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+
+/**
+ * Applies the parts of a request PromQL has no equivalent for to the rows built from the responses:
+ * the order by, offset and limit.
+ */
+class PrometheusResultPostProcessor {
+
+  /**
+   * Orders the rows by the order by expressions of the request, each of which should be one of the
+   * given selections, then returns those within its offset and limit.
+   */
+  static List<Row> process(
+      List<Row> rows, QueryRequest request, Collection<Expression> allSelections) {
+    List<Row> processedRows = new ArrayList<>(rows);
+    if (request.getOrderByCount() > 0) {
+      Comparator<Row> rowComparator = (row, otherRow) -> 0;
+      for (OrderByExpression orderBy : request.getOrderByList()) {
+        int columnIndex = indexOfIgnoringAlias(allSelections, orderBy.getExpression());
+        Comparator<Row> columnComparator =
+            Comparator.comparing(
+                row -> row.getColumn(columnIndex), PrometheusResultPostProcessor::compare);
+        rowComparator =
+            rowComparator.thenComparing(
+                orderBy.getOrder() == SortOrder.DESC
+                    ? columnComparator.reversed()
+                    : columnComparator);
+      }
+      processedRows.sort(rowComparator);
+    }
+
+    int fromIndex = Math.min(processedRows.size(), request.getOffset());
+    int toIndex =
+        request.getLimit() > 0
+            ? (int) Math.min(processedRows.size(), (long) fromIndex + request.getLimit())
+            : processedRows.size();
+    return processedRows.subList(fromIndex, toIndex);
+  }
+
+  /** Compares numerically the values of metrics and timestamps, lexicographically the others. */
+  private static int compare(Value value, Value otherValue) {
+    Optional<Double> number = toDouble(value.getString());
+    Optional<Double> otherNumber = toDouble(otherValue.getString());
+    if (number.isPresent() && otherNumber.isPresent()) {
+      return Double.compare(number.get(), otherNumber.get());
+    }
+    return value.getString().compareTo(otherValue.getString());
+  }
+
+  private static Optional<Double> toDouble(String value) {
+    try {
+      return Optional.of(Double.parseDouble(value));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+}
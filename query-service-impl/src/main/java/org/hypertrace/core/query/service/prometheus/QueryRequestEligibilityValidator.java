@@ -1,6 +1,8 @@
 package org.hypertrace.core.query.service.prometheus;
 
+import static org.hypertrace.core.query.service.QueryFunctionConstants.QUERY_FUNCTION_SUM;
 import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
+import static org.hypertrace.core.query.service.QueryRequestUtil.indexOfIgnoringAlias;
 
 import com.google.common.base.Preconditions;
 import java.util.List;
@@ -23,6 +25,11 @@ import org.hypertrace.core.query.service.prometheus.PrometheusViewDefinition.Met
 /** Set of rules to check if the given request can be served by prometheus */
 class QueryRequestEligibilityValidator {
 
+  // bounds the number of selectors disjunctions are converted to
+  private static final int MAX_SELECTORS = 16;
+  private static final Set<Operator> SUPPORTED_LABEL_OPERATORS =
+      Set.of(Operator.EQ, Operator.IN, Operator.NEQ, Operator.LIKE);
+
   private final PrometheusViewDefinition prometheusViewDefinition;
 
   public QueryRequestEligibilityValidator(PrometheusViewDefinition prometheusViewDefinition) {
@@ -31,11 +38,6 @@ class QueryRequestEligibilityValidator {
 
   QueryCost calculateCost(QueryRequest queryRequest, ExecutionContext executionContext) {
     try {
-      // orderBy to be supported later
-      if (queryRequest.getOrderByCount() > 0) {
-        return QueryCost.UNSUPPORTED;
-      }
-
       // only aggregation queries are supported
       if (queryRequest.getAggregationCount() == 0 || queryRequest.getGroupByCount() == 0) {
         return QueryCost.UNSUPPORTED;
@@ -68,13 +70,23 @@ class QueryRequestEligibilityValidator {
         return QueryCost.UNSUPPORTED;
       }
 
-      // if selection and groupBy should be on same column or simple attribute
-      if (selectionAndGroupByOnDifferentColumn(
+      // selections should be on group by columns, returned as labels of the series
+      if (selectionNotOnGroupByColumn(
           queryRequest.getSelectionList(), queryRequest.getGroupByList())) {
         return QueryCost.UNSUPPORTED;
       }
 
-      if (isFilterNotSupported(queryRequest.getFilter())) {
+      // results are ordered in the service, by the selected columns only
+      if (queryRequest.getOrderByList().stream()
+          .anyMatch(
+              orderBy ->
+                  indexOfIgnoringAlias(executionContext.getAllSelections(), orderBy.getExpression())
+                      < 0)) {
+        return QueryCost.UNSUPPORTED;
+      }
+
+      if (isFilterNotSupported(queryRequest.getFilter(), executionContext.getTimeFilterColumn())
+          || FilterToPromqlConverter.countSelectors(queryRequest.getFilter()) > MAX_SELECTORS) {
         return QueryCost.UNSUPPORTED;
       }
     } catch (Exception e) {
@@ -84,7 +96,7 @@ class QueryRequestEligibilityValidator {
     return new QueryCost(1.0);
   }
 
-  private boolean selectionAndGroupByOnDifferentColumn(
+  private boolean selectionNotOnGroupByColumn(
       List<Expression> selectionList, List<Expression> groupByList) {
 
     Set<String> selections =
@@ -99,14 +111,14 @@ class QueryRequestEligibilityValidator {
             .map(QueryRequestUtil::getLogicalColumnName)
             .map(Optional::orElseThrow)
             .collect(Collectors.toSet());
-    return !selections.equals(groupBys);
+    return !groupBys.containsAll(selections);
   }
 
   private boolean areAggregationsNotSupported(List<Expression> aggregationList) {
     // supported aggregation must have single argument (except for dateTimeConvert)
     // prometheusViewDef must have mapping for the metric
     // function type must be supported
-    // right now only GAUGE type of metric is supported
+    // COUNTER type of metric is only supported for sum, of its increase
     return aggregationList.stream()
         .filter(Predicate.not(QueryRequestUtil::isDateTimeFunction))
         .anyMatch(
@@ -124,19 +136,23 @@ class QueryRequestEligibilityValidator {
               }
               MetricConfig metricConfig =
                   prometheusViewDefinition.getMetricConfigForLogicalMetricName(attributeId);
-              return null == metricConfig || metricConfig.getMetricType() != MetricType.GAUGE;
+              return null == metricConfig
+                  || (metricConfig.getMetricType() == MetricType.COUNTER
+                      && !QUERY_FUNCTION_SUM.equalsIgnoreCase(function.getFunctionName()));
             });
   }
 
-  private boolean isFilterNotSupported(Filter filter) {
+  private boolean isFilterNotSupported(Filter filter, String timeFilterColumn) {
     if (filter.getChildFilterCount() > 0) {
-      // Currently, `AND` high level composite operator is supported
-      // later OR operator can be supported for same column
-      if (filter.getOperator() != Operator.AND) {
+      // `AND` and `OR` composite operators are supported, `OR` not on the time column
+      if (filter.getOperator() != Operator.AND && filter.getOperator() != Operator.OR) {
         return true;
       }
       for (Filter childFilter : filter.getChildFilterList()) {
-        if (!isFilterNotSupported(childFilter)) {
+        if (isFilterNotSupported(childFilter, timeFilterColumn)
+            || (filter.getOperator() == Operator.OR
+                && childFilter.getChildFilterCount() == 0
+                && FilterToPromqlConverter.isTimeFilter(childFilter, timeFilterColumn))) {
           return true;
         }
       }
@@ -150,6 +166,10 @@ class QueryRequestEligibilityValidator {
       if (!QueryRequestUtil.isSimpleAttributeExpression(filter.getLhs())) {
         return true;
       }
+
+      // filters on the time column are applied by the time range of the query
+      return !FilterToPromqlConverter.isTimeFilter(filter, timeFilterColumn)
+          && !SUPPORTED_LABEL_OPERATORS.contains(filter.getOperator());
     }
 
     return false;
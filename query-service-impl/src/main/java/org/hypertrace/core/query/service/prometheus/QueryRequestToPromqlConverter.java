@@ -3,12 +3,12 @@ package org.hypertrace.core.query.service.prometheus;
 import static org.hypertrace.core.query.service.QueryRequestUtil.getLogicalColumnName;
 
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.hypertrace.core.query.service.ExecutionContext;
 import org.hypertrace.core.query.service.QueryRequestUtil;
 import org.hypertrace.core.query.service.QueryTimeRange;
@@ -16,6 +16,7 @@ import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.Expression.ValueCase;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.prometheus.PrometheusViewDefinition.MetricConfig;
+import org.hypertrace.core.query.service.prometheus.PrometheusViewDefinition.MetricType;
 
 class QueryRequestToPromqlConverter {
 
@@ -91,11 +92,18 @@ class QueryRequestToPromqlConverter {
       String timeFilterColumn) {
     List<String> groupByList = getGroupByList(request);
 
-    List<String> filterList = new ArrayList<>();
-    filterList.add(
-        String.format("%s=\"%s\"", prometheusViewDefinition.getTenantAttributeName(), tenantId));
-    filterToPromqlConverter.convertFilterToString(
-        request.getFilter(), timeFilterColumn, this::convertColumnAttributeToString, filterList);
+    String tenantFilter =
+        String.format("%s=\"%s\"", prometheusViewDefinition.getTenantAttributeName(), tenantId);
+    List<String> filterList =
+        filterToPromqlConverter
+            .convertFilterToSelectors(
+                request.getFilter(), timeFilterColumn, this::convertColumnAttributeToString)
+            .stream()
+            .map(
+                selector ->
+                    Stream.concat(Stream.of(tenantFilter), selector.stream())
+                        .collect(Collectors.joining(", ")))
+            .collect(Collectors.toUnmodifiableList());
 
     // iterate over all the functions in the query except for date time function (which is handled
     // separately and not a part of the query string)
@@ -119,10 +127,10 @@ class QueryRequestToPromqlConverter {
         prometheusFunctionConverter.mapToPrometheusFunctionName(functionExpression);
     MetricConfig metricConfig = getMetricConfigForFunction(functionExpression);
     return buildQuery(
-        metricConfig.getMetricName(),
+        metricConfig,
         functionName,
         String.join(", ", groupByList),
-        String.join(", ", filterList),
+        filterList,
         duration.toMillis());
   }
 
@@ -139,20 +147,28 @@ class QueryRequestToPromqlConverter {
 
   /**
    * Builds a promql query. example query `sum by (a1, a2) (sum_over_time(num_calls{a4="..",
-   * a5=".."}[xms]))`
+   * a5=".."}[xms]))`. The series of several selectors are combined with `or`, which keeps a single
+   * series of those matched by more than one. Counters are converted to their increase over the
+   * duration, the rate of the counter times the duration.
    */
   private String buildQuery(
-      String metricName, String function, String groupByList, String filter, long durationMillis) {
-    String template = "%s by (%s) (%s(%s{%s}[%sms]))";
-
-    return String.format(
-        template,
-        function,
-        groupByList,
-        function + "_over_time", // assuming gauge type of metric
-        metricName,
-        filter,
-        durationMillis);
+      MetricConfig metricConfig,
+      String function,
+      String groupByList,
+      List<String> filterList,
+      long durationMillis) {
+    String rangeFunction =
+        metricConfig.getMetricType() == MetricType.COUNTER ? "increase" : function + "_over_time";
+    String series =
+        filterList.stream()
+            .map(
+                filter ->
+                    String.format(
+                        "%s(%s{%s}[%sms])",
+                        rangeFunction, metricConfig.getMetricName(), filter, durationMillis))
+            .collect(Collectors.joining(" or "));
+
+    return String.format("%s by (%s) (%s)", function, groupByList, series);
   }
 
   private MetricConfig getMetricConfigForFunction(Expression functionSelection) {
@@ -3,12 +3,13 @@ package org.hypertrace.core.query.service.trino;
 import com.google.protobuf.ByteString;
 import java.util.HashMap;
 import java.util.Map;
+import org.hypertrace.core.query.service.JdbcParams;
 
 /**
  * Holds the params that need to be set in the PreparedStatement for constructing the final SQL
  * query in Trino
  */
-public class Params {
+public class Params implements JdbcParams {
 
   // Map of index to the corresponding param value
   private final Map<Integer, Integer> integerParams;
@@ -1,5 +1,8 @@
 package org.hypertrace.core.query.service.trino;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Collection;
 import java.util.HashMap;
@@ -12,6 +15,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryTimeRange;
 import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.OrderByExpression;
 import org.hypertrace.core.query.service.api.QueryRequest;
@@ -49,11 +53,18 @@ class QueryRequestToTrinoSQLConverter {
     // allSelections contain all the various expressions in QueryRequest that we want selections on.
     // Group bys, selections and aggregations in that order. See RequestAnalyzer#analyze() to see
     // how it is created.
+    // Only the tenant id and the filter values are bound as statement parameters. The literals of
+    // the selections, group bys and order bys, such as map keys or function arguments, are
+    // resolved into their clauses so that the same expression reads the same in each of them,
+    // which the database needs to match a group by with the selections.
     Builder paramsBuilder = Params.newBuilder();
     for (Expression expr : allSelections) {
+      Builder selectParamsBuilder = Params.newBuilder();
       String selectClause =
-          columnRequestConverter.convertSelectClause(expr, paramsBuilder, trinoExecutionContext);
-      trinoExecutionContext.addResolvedSelectColumnQuery(selectClause);
+          columnRequestConverter.convertSelectClause(
+              expr, selectParamsBuilder, trinoExecutionContext);
+      trinoExecutionContext.addResolvedSelectColumnQuery(
+          resolveStatement(selectClause, selectParamsBuilder.build()));
     }
     trinoExecutionContext.addAllSelectTableColumnNames(
         trinoExecutionContext.getActualTableColumnNames());
@@ -66,16 +77,28 @@ class QueryRequestToTrinoSQLConverter {
               request.getFilter(), paramsBuilder, trinoExecutionContext);
       trinoExecutionContext.addResolvedFilterColumnQuery(filterClause);
     }
+    tableDefinition
+        .getTimePartitionSpec()
+        .flatMap(
+            partitionSpec ->
+                executionContext
+                    .getQueryTimeRange()
+                    .map(
+                        timeRange ->
+                            convertPartitionFilter(partitionSpec, timeRange, paramsBuilder)))
+        .ifPresent(trinoExecutionContext::addResolvedFilterColumnQuery);
     trinoExecutionContext.addAllFilterTableColumnNames(
         trinoExecutionContext.getActualTableColumnNames());
     trinoExecutionContext.clearActualTableColumnNames();
 
     if (request.getGroupByCount() > 0) {
       for (Expression groupByExpression : request.getGroupByList()) {
+        Builder groupByParamsBuilder = Params.newBuilder();
         String groupByClause =
             columnRequestConverter.convertGroupByClause(
-                groupByExpression, paramsBuilder, trinoExecutionContext);
-        trinoExecutionContext.addResolvedGroupByColumnQuery(groupByClause);
+                groupByExpression, groupByParamsBuilder, trinoExecutionContext);
+        trinoExecutionContext.addResolvedGroupByColumnQuery(
+            resolveStatement(groupByClause, groupByParamsBuilder.build()));
       }
       trinoExecutionContext.addAllGroupByTableColumnNames(
           trinoExecutionContext.getActualTableColumnNames());
@@ -84,9 +107,12 @@ class QueryRequestToTrinoSQLConverter {
 
     if (!request.getOrderByList().isEmpty()) {
       for (OrderByExpression orderByExpression : request.getOrderByList()) {
+        Builder orderByParamsBuilder = Params.newBuilder();
         String orderByClause =
-            columnRequestConverter.convertOrderByClause(
-                orderByExpression.getExpression(), paramsBuilder, trinoExecutionContext);
+            resolveStatement(
+                columnRequestConverter.convertOrderByClause(
+                    orderByExpression.getExpression(), orderByParamsBuilder, trinoExecutionContext),
+                orderByParamsBuilder.build());
         trinoExecutionContext.addResolvedOrderByColumnQuery(
             new SimpleEntry<>(orderByClause, SortOrder.DESC.equals(orderByExpression.getOrder())));
       }
@@ -98,6 +124,41 @@ class QueryRequestToTrinoSQLConverter {
     return new SimpleEntry<>(buildSqlQuery(request, trinoExecutionContext), paramsBuilder.build());
   }
 
+  /**
+   * Bounds the partition column by the partitions the time range of the request spans, so that the
+   * files of the other partitions are pruned.
+   */
+  private String convertPartitionFilter(
+      TrinoPartitionSpec partitionSpec, QueryTimeRange timeRange, Builder paramsBuilder) {
+    long startTimeMillis = timeRange.getStartTime().toEpochMilli();
+    // The end of the time range is exclusive
+    long endTimeMillis = Math.max(startTimeMillis, timeRange.getEndTime().toEpochMilli() - 1);
+    String columnName = partitionSpec.getColumnName();
+    switch (partitionSpec.getType()) {
+      case DATE:
+        paramsBuilder.addStringParam(toUtcDate(startTimeMillis));
+        paramsBuilder.addStringParam(toUtcDate(endTimeMillis));
+        return "( "
+            + columnName
+            + " >= CAST(? AS DATE) AND "
+            + columnName
+            + " <= CAST(? AS DATE) )";
+      case BIGINT:
+        long granularityMillis = partitionSpec.getGranularityMillis();
+        paramsBuilder.addLongParam(
+            startTimeMillis - Math.floorMod(startTimeMillis, granularityMillis));
+        paramsBuilder.addLongParam(endTimeMillis - Math.floorMod(endTimeMillis, granularityMillis));
+        return "( " + columnName + " >= ? AND " + columnName + " <= ? )";
+      default:
+        throw new IllegalArgumentException(
+            "Unsupported partition column type: " + partitionSpec.getType());
+    }
+  }
+
+  private static String toUtcDate(long timeMillis) {
+    return LocalDate.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneOffset.UTC).toString();
+  }
+
   private String buildSqlQuery(QueryRequest request, TrinoExecutionContext trinoExecutionContext) {
     Map<String, String> selectedColumnIndexMap = new HashMap<>();
     StringBuilder sqlBuilder = new StringBuilder("SELECT ");
@@ -264,7 +325,8 @@ class QueryRequestToTrinoSQLConverter {
     if (query.isEmpty()) {
       return query;
     }
-    String[] queryParts = query.split("\\?");
+    // Keep the trailing empty part, for a statement ending with a parameter
+    String[] queryParts = query.split("\\?", -1);
 
     String[] parameters = new String[queryParts.length];
     params.getStringParams().forEach((i, p) -> parameters[i] = getStringParam(p));
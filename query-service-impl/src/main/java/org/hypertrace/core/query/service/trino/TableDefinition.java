@@ -27,6 +27,7 @@ public class TableDefinition {
   private static final String MAP_FIELDS_CONFIG_KEY = "mapFields";
   private static final String FILTERS_CONFIG_KEY = "filters";
   private static final String COLUMN_CONFIG_KEY = "column";
+  private static final String TIME_PARTITION_CONFIG_KEY = "timePartition";
 
   // TODO: revise this default value for Trino setup
   private static final long DEFAULT_RETENTION_TIME = TimeUnit.DAYS.toMillis(8);
@@ -53,6 +54,9 @@ public class TableDefinition {
    */
   private final Map<String, TableColumnFilter> columnFilterMap;
 
+  /** The column the table is partitioned on by time, if any. */
+  private final Optional<TrinoPartitionSpec> timePartitionSpec;
+
   public TableDefinition(
       String tableName,
       long retentionTimeMillis,
@@ -60,7 +64,8 @@ public class TableDefinition {
       Map<String, TrinoColumnSpec> columnSpecMap,
       String tenantColumnName,
       Optional<String> countColumnName,
-      Map<String, TableColumnFilter> filterMap) {
+      Map<String, TableColumnFilter> filterMap,
+      Optional<TrinoPartitionSpec> timePartitionSpec) {
     this.tableName = tableName;
     this.retentionTimeMillis = retentionTimeMillis;
     this.timeGranularityMillis = timeGranularityMillis;
@@ -68,6 +73,7 @@ public class TableDefinition {
     this.tenantColumnName = tenantColumnName;
     this.countColumnName = countColumnName;
     this.columnFilterMap = filterMap;
+    this.timePartitionSpec = timePartitionSpec;
   }
 
   public static TableDefinition parse(
@@ -151,6 +157,11 @@ public class TableDefinition {
       }
     }
 
+    Optional<TrinoPartitionSpec> timePartitionSpec =
+        config.hasPath(TIME_PARTITION_CONFIG_KEY)
+            ? Optional.of(TrinoPartitionSpec.from(config.getConfig(TIME_PARTITION_CONFIG_KEY)))
+            : Optional.empty();
+
     return new TableDefinition(
         tableName,
         retentionTimeMillis,
@@ -158,7 +169,8 @@ public class TableDefinition {
         columnSpecMap,
         tenantColumnName,
         countColumnName,
-        filterMap);
+        filterMap,
+        timePartitionSpec);
   }
 
   public String getTableName() {
@@ -202,4 +214,8 @@ public class TableDefinition {
   public Map<String, TableColumnFilter> getColumnFilterMap() {
     return this.columnFilterMap;
   }
+
+  public Optional<TrinoPartitionSpec> getTimePartitionSpec() {
+    return this.timePartitionSpec;
+  }
 }
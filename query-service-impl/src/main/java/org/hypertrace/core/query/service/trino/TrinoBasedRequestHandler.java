@@ -12,6 +12,7 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -21,8 +22,9 @@ import java.util.Set;
 import lombok.SneakyThrows;
 import org.hypertrace.core.query.service.ExecutionContext;
 import org.hypertrace.core.query.service.QueryCost;
+import org.hypertrace.core.query.service.RequestAnalysis;
 import org.hypertrace.core.query.service.RequestHandler;
-import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.Row;
 import org.hypertrace.core.query.service.api.Row.Builder;
@@ -43,10 +45,10 @@ public class TrinoBasedRequestHandler implements RequestHandler {
   private static final String START_TIME_ATTRIBUTE_NAME_CONFIG_KEY = "startTimeAttributeName";
   private static final String SLOW_QUERY_THRESHOLD_MS_CONFIG = "slowQueryThresholdMs";
   private static final String MIN_REQUEST_DURATION_KEY = "minRequestDuration";
+  private static final String SCAN_ESTIMATION_CONFIG_KEY = "scanEstimation";
 
   private static final int DEFAULT_SLOW_QUERY_THRESHOLD_MS = 3000;
-  private static final Set<Operator> GTE_OPERATORS = Set.of(Operator.GE, Operator.GT, Operator.EQ);
-  private static final Set<Operator> LTE_OPERATORS = Set.of(Operator.LE, Operator.LT);
+  private static final double IN_RETENTION_MIN_COST = 0.25;
 
   // string values equivalent for null value of different data types
   // this is required to keep null values equivalent to default values for
@@ -67,6 +69,8 @@ public class TrinoBasedRequestHandler implements RequestHandler {
   private Optional<String> startTimeAttributeName;
   private QueryRequestToTrinoSQLConverter request2TrinoSqlConverter;
   private final TrinoClientFactory trinoClientFactory;
+  private Duration minRequestDuration = Duration.ZERO;
+  private Optional<TrinoScanEstimator> scanEstimator = Optional.empty();
 
   private final JsonFormat.Printer protoJsonPrinter =
       JsonFormat.printer().omittingInsignificantWhitespace();
@@ -102,8 +106,51 @@ public class TrinoBasedRequestHandler implements RequestHandler {
       }
     }
 
-    // TODO: add logic
-    return new QueryCost(0);
+    // If the table has any column filters, the query must have those filters as **mandatory**
+    // filters, or the table can't serve it.
+    RequestAnalysis requestAnalysis = executionContext.getRequestAnalysis();
+    if (!requestAnalysis.matchesColumnFilters(tableDefinition.getColumnFilterMap())) {
+      return QueryCost.UNSUPPORTED;
+    }
+
+    double cost;
+
+    long requestStartTime = getRequestStartTime(requestAnalysis);
+    // check if this table contains data from the requested start time
+    if (requestStartTime < System.currentTimeMillis() - tableDefinition.getRetentionTimeMillis()) {
+      // prefer to get data from the table which has max retention time. Ensure 0.5 <= cost <= 1
+      cost = 1 - tableDefinition.getRetentionTimeMillis() / (Long.MAX_VALUE * 2D);
+    } else {
+      // Other handlers cost about 0 within their retention, but scanning the table is slower than
+      // querying their views, so it is only preferred to handlers out of retention. Prefer to get
+      // data from the table which has the finest granularity. Ensure 0.25 <= cost <= 0.375
+      cost =
+          IN_RETENTION_MIN_COST
+              + tableDefinition.getTimeGranularityMillis() / (Long.MAX_VALUE * 8D);
+    }
+
+    long requestEndTime = getRequestEndTime(requestAnalysis);
+    Duration requestDuration = Duration.ofMillis(requestEndTime - requestStartTime);
+
+    // choose this handler if requestDuration >= minRequestDuration
+    if (requestDuration.compareTo(minRequestDuration) >= 0) {
+      cost /= 2;
+    }
+
+    // A request known to scan too much is only served here if no other handler can serve it
+    if (scanEstimator.isPresent()
+        && scanEstimator.get().exceedsMaxScanBytes(request, executionContext.getTenantId())) {
+      cost = 0.5 + cost / 2;
+    }
+    return new QueryCost(cost);
+  }
+
+  private long getRequestStartTime(RequestAnalysis requestAnalysis) {
+    return startTimeAttributeName.map(requestAnalysis::getStartTime).orElse(Long.MAX_VALUE);
+  }
+
+  private long getRequestEndTime(RequestAnalysis requestAnalysis) {
+    return startTimeAttributeName.map(requestAnalysis::getEndTime).orElse(Long.MIN_VALUE);
   }
 
   @Override
@@ -148,19 +195,37 @@ public class TrinoBasedRequestHandler implements RequestHandler {
         new QueryRequestToTrinoSQLConverter(
             tableDefinition,
             new TrinoFunctionConverter(tableDefinition, new TrinoFunctionConverterConfig(config)));
+
+    if (config.hasPath(MIN_REQUEST_DURATION_KEY)) {
+      this.minRequestDuration = config.getDuration(MIN_REQUEST_DURATION_KEY);
+    }
+
+    if (config.hasPath(SCAN_ESTIMATION_CONFIG_KEY)) {
+      this.scanEstimator =
+          Optional.of(
+              new TrinoScanEstimator(
+                  config.getConfig(SCAN_ESTIMATION_CONFIG_KEY),
+                  request2TrinoSqlConverter,
+                  startTimeAttributeName,
+                  () -> trinoClientFactory.getTrinoClient(this.getName()).getConnection()));
+    }
   }
 
   public Observable<Row> executeQuery(String statement, Params params) throws SQLException {
     final TrinoClient trinoClient = trinoClientFactory.getTrinoClient(this.getName());
-    String resolvedStatement = request2TrinoSqlConverter.resolveStatement(statement, params);
     Connection connection = trinoClient.getConnection();
-    try (PreparedStatement preparedStatement = connection.prepareStatement(resolvedStatement);
-        ResultSet resultSet = preparedStatement.executeQuery()) {
-      LOG.debug("Query results: [ {} ]", resultSet);
-      return convert(resultSet);
+    try (PreparedStatement preparedStatement = connection.prepareStatement(statement)) {
+      params.bindTo(preparedStatement);
+      try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        LOG.debug("Query results: [ {} ]", resultSet);
+        return convert(resultSet);
+      }
     } catch (Exception ex) {
       // Catch this exception to log the Trino SQL query that caused the issue
-      LOG.error("An error occurred while executing: {}", resolvedStatement, ex);
+      LOG.error(
+          "An error occurred while executing: {}",
+          request2TrinoSqlConverter.resolveStatement(statement, params),
+          ex);
       // Rethrow for the caller to return an error.
       throw new RuntimeException(ex);
     }
@@ -0,0 +1,46 @@
+package org.hypertrace.core.query.service.trino;
+
+import com.typesafe.config.Config;
+import lombok.Value;
+
+/**
+ * The column a Trino table is partitioned on by time. Predicates on it are derived from the time
+ * filter of a request so that the connector can prune the files of the partitions out of range,
+ * which it can't do from the predicates on the time column alone.
+ *
+ * <p>Example: { column: "start_day", type: "DATE" } or { column: "start_hour_millis", type:
+ * "BIGINT", granularityMillis: 3600000 }
+ */
+@Value
+public class TrinoPartitionSpec {
+  private static final String COLUMN_CONFIG_KEY = "column";
+  private static final String TYPE_CONFIG_KEY = "type";
+  private static final String GRANULARITY_CONFIG_KEY = "granularityMillis";
+
+  String columnName;
+  PartitionColumnType type;
+  long granularityMillis;
+
+  public enum PartitionColumnType {
+    /** Epoch millis truncated to the granularity. */
+    BIGINT,
+    /** UTC date, the granularity is a day. */
+    DATE
+  }
+
+  static TrinoPartitionSpec from(Config config) {
+    PartitionColumnType type =
+        config.hasPath(TYPE_CONFIG_KEY)
+            ? PartitionColumnType.valueOf(config.getString(TYPE_CONFIG_KEY))
+            : PartitionColumnType.BIGINT;
+    long granularityMillis =
+        type == PartitionColumnType.DATE || !config.hasPath(GRANULARITY_CONFIG_KEY)
+            ? 0
+            : config.getLong(GRANULARITY_CONFIG_KEY);
+    if (type == PartitionColumnType.BIGINT && granularityMillis <= 0) {
+      throw new IllegalArgumentException(
+          GRANULARITY_CONFIG_KEY + " must be positive for a BIGINT partition column");
+    }
+    return new TrinoPartitionSpec(config.getString(COLUMN_CONFIG_KEY), type, granularityMillis);
+  }
+}
@@ -0,0 +1,153 @@
+package org.hypertrace.core.query.service.trino;
+
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.typesafe.config.Config;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.cost.QueryFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates the bytes a request scans in Trino from the output of EXPLAIN (TYPE IO). Estimates are
+ * cached per tenant and query fingerprint, and are computed in the background so that choosing a
+ * handler never waits on Trino: until the estimate of a fingerprint is cached, it is unknown.
+ *
+ * <p>Example config: { maxScanBytes: 10000000000, expireAfter: 1h, maxEntries: 1000 }
+ */
+class TrinoScanEstimator {
+  private static final Logger LOG = LoggerFactory.getLogger(TrinoScanEstimator.class);
+
+  private static final String MAX_SCAN_BYTES_CONFIG_KEY = "maxScanBytes";
+  private static final String EXPIRE_AFTER_CONFIG_KEY = "expireAfter";
+  private static final String MAX_ENTRIES_CONFIG_KEY = "maxEntries";
+
+  private static final Duration DEFAULT_EXPIRE_AFTER = Duration.ofHours(1);
+  private static final long DEFAULT_MAX_ENTRIES = 1000;
+
+  private static final String EXPLAIN_IO_PREFIX = "EXPLAIN (TYPE IO, FORMAT JSON) ";
+
+  // Trino writes unknown estimates as NaN
+  private static final ObjectMapper MAPPER =
+      JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build();
+
+  private final long maxScanBytes;
+  private final Cache<String, Optional<Long>> scanBytesCache;
+  private final Set<String> pendingEstimates = ConcurrentHashMap.newKeySet();
+  private final QueryRequestToTrinoSQLConverter sqlConverter;
+  private final Optional<String> startTimeAttributeName;
+  private final Supplier<Connection> connectionSupplier;
+
+  TrinoScanEstimator(
+      Config config,
+      QueryRequestToTrinoSQLConverter sqlConverter,
+      Optional<String> startTimeAttributeName,
+      Supplier<Connection> connectionSupplier) {
+    this.maxScanBytes = config.getBytes(MAX_SCAN_BYTES_CONFIG_KEY);
+    this.scanBytesCache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(
+                config.hasPath(EXPIRE_AFTER_CONFIG_KEY)
+                    ? config.getDuration(EXPIRE_AFTER_CONFIG_KEY)
+                    : DEFAULT_EXPIRE_AFTER)
+            .maximumSize(
+                config.hasPath(MAX_ENTRIES_CONFIG_KEY)
+                    ? config.getLong(MAX_ENTRIES_CONFIG_KEY)
+                    : DEFAULT_MAX_ENTRIES)
+            .build();
+    this.sqlConverter = sqlConverter;
+    this.startTimeAttributeName = startTimeAttributeName;
+    this.connectionSupplier = connectionSupplier;
+  }
+
+  /**
+   * Returns whether the request is known to scan more than the configured maximum bytes. If its
+   * estimate isn't cached yet, it is computed in the background and false is returned.
+   */
+  boolean exceedsMaxScanBytes(QueryRequest request, String tenantId) {
+    return this.getScanBytes(request, tenantId)
+        .map(scanBytes -> scanBytes > this.maxScanBytes)
+        .orElse(false);
+  }
+
+  private Optional<Long> getScanBytes(QueryRequest request, String tenantId) {
+    String key = tenantId + ":" + QueryFingerprint.of(request);
+    Optional<Long> scanBytes = this.scanBytesCache.getIfPresent(key);
+    if (scanBytes != null) {
+      return scanBytes;
+    }
+    if (this.pendingEstimates.add(key)) {
+      Completable.fromAction(() -> this.scanBytesCache.put(key, this.explain(request, tenantId)))
+          .doFinally(() -> this.pendingEstimates.remove(key))
+          .subscribeOn(Schedulers.io())
+          .subscribe(
+              () -> LOG.debug("Estimated the scan bytes of {}", key),
+              error -> {
+                LOG.warn("Unable to estimate the scan bytes of {}", key, error);
+                // Don't retry the fingerprint until the entry expires
+                this.scanBytesCache.put(key, Optional.empty());
+              });
+    }
+    return Optional.empty();
+  }
+
+  private Optional<Long> explain(QueryRequest request, String tenantId) throws SQLException {
+    // The time filter column of the request context is only set once a handler is chosen
+    ExecutionContext executionContext = new ExecutionContext(tenantId, request);
+    this.startTimeAttributeName.ifPresent(executionContext::setTimeFilterColumn);
+    Entry<String, Params> sql =
+        this.sqlConverter.toSQL(executionContext, request, executionContext.getAllSelections());
+    String statement =
+        EXPLAIN_IO_PREFIX + this.sqlConverter.resolveStatement(sql.getKey(), sql.getValue());
+
+    Connection connection = this.connectionSupplier.get();
+    try (Statement explainStatement = connection.createStatement();
+        ResultSet resultSet = explainStatement.executeQuery(statement)) {
+      return resultSet.next() ? parseScanBytes(resultSet.getString(1)) : Optional.empty();
+    }
+  }
+
+  /**
+   * Sums the estimated output bytes of the input tables of an EXPLAIN (TYPE IO, FORMAT JSON) plan,
+   * which is what the table scans read. Empty if any of them is unknown.
+   */
+  static Optional<Long> parseScanBytes(String ioPlan) {
+    JsonNode tables;
+    try {
+      tables = MAPPER.readTree(ioPlan).path("inputTableColumnInfos");
+    } catch (IOException e) {
+      LOG.warn("Unable to parse the IO plan: {}", ioPlan, e);
+      return Optional.empty();
+    }
+    if (!tables.isArray() || tables.isEmpty()) {
+      return Optional.empty();
+    }
+    double scanBytes = 0;
+    for (JsonNode table : tables) {
+      double tableBytes = table.path("estimate").path("outputSizeInBytes").asDouble(Double.NaN);
+      if (Double.isNaN(tableBytes) || Double.isInfinite(tableBytes)) {
+        return Optional.empty();
+      }
+      scanBytes += tableBytes;
+    }
+    return Optional.of((long) scanBytes);
+  }
+}
@@ -49,7 +49,7 @@ public class TrinoFunctionConverter {
       case QUERY_FUNCTION_COUNT:
         return this.convertCount();
       case QUERY_FUNCTION_PERCENTILE:
-        return this.toPercentile(function, argumentConverter);
+        return this.toPercentile(function, argumentConverter, trinoExecutionContext);
       case QUERY_FUNCTION_DISTINCTCOUNT:
       case "DISTINCTCOUNTMV":
         return this.toDistinctCount(function, argumentConverter, trinoExecutionContext);
@@ -172,7 +172,10 @@ public class TrinoFunctionConverter {
   }
 
   private String toPercentile(
-      Function function, java.util.function.Function<Expression, String> argumentConverter) {
+      Function function,
+      java.util.function.Function<Expression, String> argumentConverter,
+      TrinoExecutionContext trinoExecutionContext) {
+    ExecutionContext executionContext = trinoExecutionContext.getExecutionContext();
     int percentileValue =
         this.getPercentileValueFromFunction(function)
             .orElseThrow(
@@ -188,6 +191,9 @@ public class TrinoFunctionConverter {
             : columnNameExpr.getAttributeExpression().getAttributeId();
     boolean isTdigest = tableDefinition.isTdigestColumnType(columnName);
     if (isTdigest) {
+      // Only the digest is stored, so the percentile cannot be computed exactly
+      executionContext.recordApproximation(
+          function, this.config.getTdigestPercentileAggregationFunction());
       return this.functionToString(
           Function.newBuilder(function)
               .removeArguments(0)
@@ -196,8 +202,11 @@ public class TrinoFunctionConverter {
               .build(),
           argumentConverter);
     } else {
+      String percentileFunction =
+          this.config.getPercentileAggregationFunction(executionContext.getAccuracy());
+      this.recordIfApproximate(executionContext, function, percentileFunction);
       return String.format(
-          this.config.getPercentileAggregationFunction(),
+          percentileFunction,
           (double) percentileValue / 100,
           argumentConverter.apply(columnNameExpr));
     }
@@ -228,7 +237,21 @@ public class TrinoFunctionConverter {
     if (trinoExecutionContext.getColumnRequestContext().isArrayColumnType()) {
       trinoExecutionContext.addUnnestTableColumnName(argument);
     }
-    return String.format(this.config.getDistinctCountAggregationFunction(), argument);
+    ExecutionContext executionContext = trinoExecutionContext.getExecutionContext();
+    String distinctCountFunction =
+        this.config.getDistinctCountAggregationFunction(executionContext.getAccuracy());
+    this.recordIfApproximate(executionContext, function, distinctCountFunction);
+    return String.format(distinctCountFunction, argument);
+  }
+
+  private void recordIfApproximate(
+      ExecutionContext executionContext, Function function, String functionFormat) {
+    if (TrinoFunctionConverterConfig.isApproximate(functionFormat)) {
+      int argumentsIndex = functionFormat.indexOf('(');
+      executionContext.recordApproximation(
+          function,
+          argumentsIndex < 0 ? functionFormat : functionFormat.substring(0, argumentsIndex));
+    }
   }
 
   private boolean isHardcodedPercentile(Function function) {
@@ -4,6 +4,7 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import lombok.AllArgsConstructor;
 import lombok.Value;
+import org.hypertrace.core.query.service.api.Accuracy;
 
 @Value
 @AllArgsConstructor
@@ -25,6 +26,11 @@ public class TrinoFunctionConverterConfig {
   private static final String DEFAULT_TDIGEST_AVERAGE_AGGREGATION_FUNCTION = "tdigest_avg";
   private static final String DEFAULT_DATE_TIME_CONVERT_FUNCTION = "dateTimeConvert";
   private static final String DEFAULT_DISTINCT_COUNT_AGGREGATION_FUNCTION = "count(distinct %s)";
+  private static final String APPROXIMATE_PERCENTILE_AGGREGATION_FUNCTION =
+      "approx_percentile(%2$s, %1$f)";
+  private static final String APPROXIMATE_DISTINCT_COUNT_AGGREGATION_FUNCTION =
+      "approx_distinct(%s)";
+  private static final String APPROXIMATE_FUNCTION_PREFIX = "approx_";
 
   String percentileAggregationFunction;
   String tdigestPercentileAggregationFunction;
@@ -66,4 +72,36 @@ public class TrinoFunctionConverterConfig {
   public TrinoFunctionConverterConfig() {
     this(ConfigFactory.empty());
   }
+
+  public String getPercentileAggregationFunction(Accuracy accuracy) {
+    return withAccuracy(
+        percentileAggregationFunction,
+        accuracy,
+        DEFAULT_PERCENTILE_AGGREGATION_FUNCTION,
+        APPROXIMATE_PERCENTILE_AGGREGATION_FUNCTION);
+  }
+
+  public String getDistinctCountAggregationFunction(Accuracy accuracy) {
+    return withAccuracy(
+        distinctCountAggregationFunction,
+        accuracy,
+        DEFAULT_DISTINCT_COUNT_AGGREGATION_FUNCTION,
+        APPROXIMATE_DISTINCT_COUNT_AGGREGATION_FUNCTION);
+  }
+
+  /** Returns whether the given aggregation function format computes an approximation. */
+  public static boolean isApproximate(String functionFormat) {
+    return functionFormat.toLowerCase().startsWith(APPROXIMATE_FUNCTION_PREFIX);
+  }
+
+  private static String withAccuracy(
+      String functionFormat, Accuracy accuracy, String exactFormat, String approximateFormat) {
+    if (accuracy == Accuracy.EXACT && isApproximate(functionFormat)) {
+      return exactFormat;
+    }
+    if (accuracy == Accuracy.APPROXIMATE && !isApproximate(functionFormat)) {
+      return approximateFormat;
+    }
+    return functionFormat;
+  }
 }
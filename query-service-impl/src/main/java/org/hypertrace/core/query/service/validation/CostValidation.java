@@ -0,0 +1,110 @@
+package org.hypertrace.core.query.service.validation;
+
+import io.grpc.Status;
+import io.reactivex.rxjava3.core.Completable;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import javax.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.hypertrace.core.grpcutils.context.RequestContext;
+import org.hypertrace.core.query.service.QueryServiceConfig;
+import org.hypertrace.core.query.service.QueryServiceConfig.CostValidationConfig;
+import org.hypertrace.core.query.service.QueryServiceConfig.CostValidationConfig.CostBudget;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.cost.QueryCostEstimator;
+import org.hypertrace.core.query.service.cost.QueryCostEstimator.QueryCostEstimate;
+
+/**
+ * Rejects the requests estimated to scan more rows or to compute more groups than the budget of
+ * their tenant, suggesting how to narrow them down.
+ */
+@Slf4j
+class CostValidation implements QueryValidation {
+
+  private final CostValidationConfig config;
+  private final QueryCostEstimator costEstimator;
+
+  @Inject
+  CostValidation(QueryServiceConfig queryServiceConfig, QueryCostEstimator costEstimator) {
+    this.config = queryServiceConfig.getCostValidationConfig();
+    this.costEstimator = costEstimator;
+  }
+
+  @Override
+  public Completable validate(QueryRequest queryRequest, RequestContext requestContext) {
+    switch (config.getMode()) {
+      case ERROR:
+        Optional<String> errorMessage = this.getBudgetViolation(queryRequest, requestContext);
+        if (errorMessage.isPresent()) {
+          return Completable.error(
+              Status.RESOURCE_EXHAUSTED.withDescription(errorMessage.get()).asException());
+        }
+        return Completable.complete();
+
+      case WARN:
+        this.getBudgetViolation(queryRequest, requestContext)
+            .ifPresent(
+                warning ->
+                    log.warn(
+                        warning + ". Allowing due to warn mode.{}{}",
+                        System.lineSeparator(),
+                        queryRequest));
+        return Completable.complete();
+      case DISABLED:
+      default:
+        return Completable.complete();
+    }
+  }
+
+  private Optional<String> getBudgetViolation(
+      QueryRequest queryRequest, RequestContext requestContext) {
+    String tenantId = requestContext.getTenantId().orElse("");
+    Optional<QueryCostEstimate> estimate = this.costEstimator.estimate(tenantId, queryRequest);
+    if (estimate.isEmpty()) {
+      return Optional.empty();
+    }
+    CostBudget budget = config.getBudget(tenantId);
+    if (estimate.get().getScannedRows() > budget.getMaxScannedRows()) {
+      return Optional.of(generateErrorMessageForScannedRows(estimate.get(), budget, tenantId));
+    }
+    if (estimate.get().getGroups() > budget.getMaxGroups()) {
+      return Optional.of(generateErrorMessageForGroups(estimate.get(), budget, tenantId));
+    }
+    return Optional.empty();
+  }
+
+  private String generateErrorMessageForScannedRows(
+      QueryCostEstimate estimate, CostBudget budget, String tenantId) {
+    Duration maxTimeRange =
+        Duration.ofMillis(
+                (long)
+                    (estimate.getTimeRange().toMillis()
+                        * ((double) budget.getMaxScannedRows() / estimate.getScannedRows())))
+            .truncatedTo(ChronoUnit.MINUTES);
+    return String.format(
+        "Query is estimated to scan %s rows, exceeding the budget of %s rows of tenant %s. "
+            + "Narrow the time range to at most %s or filter on more attributes",
+        estimate.getScannedRows(), budget.getMaxScannedRows(), tenantId, maxTimeRange);
+  }
+
+  private String generateErrorMessageForGroups(
+      QueryCostEstimate estimate, CostBudget budget, String tenantId) {
+    String suggestion =
+        estimate
+            .getPeriod()
+            .map(
+                period ->
+                    String.format(
+                        "Use a period of at least %s or group by fewer attributes",
+                        period.multipliedBy(
+                            (long)
+                                Math.ceil(
+                                    (double) estimate.getGroups() / budget.getMaxGroups()))))
+            .orElse("Group by fewer attributes or narrow the time range");
+    return String.format(
+        "Query is estimated to compute %s groups, exceeding the budget of %s groups of tenant %s. "
+            + "%s",
+        estimate.getGroups(), budget.getMaxGroups(), tenantId, suggestion);
+  }
+}
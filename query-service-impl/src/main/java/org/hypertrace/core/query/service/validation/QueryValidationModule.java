@@ -10,5 +10,6 @@ public class QueryValidationModule extends AbstractModule {
         Multibinder.newSetBinder(binder(), QueryValidation.class);
     validationMultibinder.addBinding().to(TenantValidation.class);
     validationMultibinder.addBinding().to(LimitValidation.class);
+    validationMultibinder.addBinding().to(CostValidation.class);
   }
 }
@@ -0,0 +1,246 @@
+package org.hypertrace.core.query.service;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createOrderByExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createSimpleAttributeExpression;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+import io.grpc.Context;
+import io.reactivex.rxjava3.core.Single;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hypertrace.core.grpcutils.context.RequestContext;
+import org.hypertrace.core.query.service.QueryTransformation.QueryTransformationContext;
+import org.hypertrace.core.query.service.api.AttributeExpression;
+import org.hypertrace.core.query.service.api.ColumnIdentifier;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class FusedQueryTransformationTest {
+  private final QueryTransformationContext context = mock(QueryTransformationContext.class);
+
+  @Test
+  void appliesTransformationsInSinglePassLikeSequentialPasses() {
+    List<AbstractQueryTransformation> transformations =
+        List.of(
+            new ColumnToAttributeTransformation(),
+            new ProjectingTransformation(Single::just),
+            new CountRenamingTransformation());
+    QueryRequest request = createRequest();
+
+    QueryRequest sequentiallyTransformed = request;
+    for (AbstractQueryTransformation transformation : transformations) {
+      sequentiallyTransformed =
+          transformation.transform(sequentiallyTransformed, this.context).blockingGet();
+    }
+
+    assertEquals(
+        sequentiallyTransformed,
+        new FusedQueryTransformation(transformations)
+            .transform(request, this.context)
+            .blockingGet());
+  }
+
+  @Test
+  void returnsSameRequestIfNothingChanged() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(createSimpleAttributeExpression("Span.name"))
+            .setFilter(createEqualsFilter("Span.id", "span"))
+            .build();
+
+    assertSame(
+        request,
+        new FusedQueryTransformation(List.of(new CountRenamingTransformation()))
+            .transform(request, this.context)
+            .blockingGet());
+  }
+
+  @Test
+  void waitsForPendingRewrites() {
+    List<AbstractQueryTransformation> transformations =
+        List.of(
+            new ColumnToAttributeTransformation(),
+            new ProjectingTransformation(
+                expression -> Single.just(expression).delay(10, TimeUnit.MILLISECONDS)));
+    QueryRequest request = createRequest();
+
+    QueryRequest expected = request;
+    for (AbstractQueryTransformation transformation : transformations) {
+      expected = transformation.transform(expected, this.context).blockingGet();
+    }
+
+    assertEquals(
+        expected,
+        new FusedQueryTransformation(transformations)
+            .transform(request, this.context)
+            .blockingGet());
+  }
+
+  @Test
+  void rerunsPassWithPendingRewritesInRequestContext() throws Exception {
+    // Like the attribute client, the rewrites are only resolved in a request context
+    AtomicInteger lookups = new AtomicInteger();
+    List<AbstractQueryTransformation> transformations =
+        List.of(
+            new ColumnToAttributeTransformation(),
+            new ProjectingTransformation(
+                expression -> {
+                  if (RequestContext.CURRENT.get() == null) {
+                    return Single.error(new IllegalStateException("No request context"));
+                  }
+                  lookups.incrementAndGet();
+                  return Single.just(expression).delay(10, TimeUnit.MILLISECONDS);
+                }));
+    QueryRequest request = createRequest();
+    Context requestContext =
+        Context.current().withValue(RequestContext.CURRENT, RequestContext.forTenantId("tenant"));
+
+    QueryRequest expected = request;
+    for (AbstractQueryTransformation transformation : transformations) {
+      QueryRequest transformationRequest = expected;
+      expected =
+          requestContext.call(
+              () -> transformation.transform(transformationRequest, this.context).blockingGet());
+    }
+    lookups.set(0);
+
+    FusedQueryTransformation fusedTransformation = new FusedQueryTransformation(transformations);
+    assertEquals(
+        expected,
+        requestContext
+            .call(() -> fusedTransformation.transform(request, this.context))
+            .blockingGet());
+    // The aliased and unaliased display names are looked up once each, across all reruns
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  void propagatesFailedRewrites() {
+    IllegalArgumentException error = new IllegalArgumentException("unknown attribute");
+    FusedQueryTransformation transformation =
+        new FusedQueryTransformation(
+            List.of(new ProjectingTransformation(expression -> Single.error(error))));
+
+    transformation
+        .transform(
+            QueryRequest.newBuilder()
+                .addSelection(createSimpleAttributeExpression("Span.displayName"))
+                .build(),
+            this.context)
+        .test()
+        .assertError(error);
+  }
+
+  private static QueryRequest createRequest() {
+    return QueryRequest.newBuilder()
+        .addSelection(createAliasedColumnExpression("Span.displayName", "name"))
+        .addAggregation(createAliasedFunctionExpression("COUNT", "Span.id", "count"))
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter("Span.start_time_millis", Operator.GE, 1000),
+                createEqualsFilter("Span.displayName", "checkout")))
+        .addGroupBy(createColumnExpression("Span.displayName"))
+        .addOrderBy(
+            createOrderByExpression(createColumnExpression("Span.displayName"), SortOrder.ASC))
+        .build();
+  }
+
+  private static final class ColumnToAttributeTransformation extends AbstractQueryTransformation {
+    @Override
+    protected Logger getLogger() {
+      return LoggerFactory.getLogger(ColumnToAttributeTransformation.class);
+    }
+
+    @Override
+    protected boolean isFusable() {
+      return true;
+    }
+
+    @Override
+    protected Single<Expression> transformColumnIdentifier(ColumnIdentifier columnIdentifier) {
+      return Single.just(
+          Expression.newBuilder()
+              .setAttributeExpression(
+                  AttributeExpression.newBuilder()
+                      .setAttributeId(columnIdentifier.getColumnName())
+                      .setAlias(columnIdentifier.getAlias()))
+              .build());
+    }
+  }
+
+  /** Projects the display name attribute as the concatenation of two attributes. */
+  private static final class ProjectingTransformation extends AbstractQueryTransformation {
+    private final java.util.function.Function<Expression, Single<Expression>> resolver;
+
+    private ProjectingTransformation(
+        java.util.function.Function<Expression, Single<Expression>> resolver) {
+      this.resolver = resolver;
+    }
+
+    @Override
+    protected Logger getLogger() {
+      return LoggerFactory.getLogger(ProjectingTransformation.class);
+    }
+
+    @Override
+    protected boolean isFusable() {
+      return true;
+    }
+
+    @Override
+    protected Single<Expression> transformAttributeExpression(
+        AttributeExpression attributeExpression) {
+      if (!attributeExpression.getAttributeId().equals("Span.displayName")) {
+        return super.transformAttributeExpression(attributeExpression);
+      }
+      return this.resolver.apply(
+          Expression.newBuilder()
+              .setFunction(
+                  Function.newBuilder()
+                      .setFunctionName("CONCAT")
+                      .setAlias(QueryRequestUtil.getAlias(attributeExpression))
+                      .addArguments(createSimpleAttributeExpression("Span.service"))
+                      .addArguments(createSimpleAttributeExpression("Span.name")))
+              .build());
+    }
+  }
+
+  private static final class CountRenamingTransformation extends AbstractQueryTransformation {
+    @Override
+    protected Logger getLogger() {
+      return LoggerFactory.getLogger(CountRenamingTransformation.class);
+    }
+
+    @Override
+    protected boolean isFusable() {
+      return true;
+    }
+
+    @Override
+    protected Single<Expression> rewriteFunction(Function function) {
+      if (!function.getFunctionName().equals("COUNT")) {
+        return super.rewriteFunction(function);
+      }
+      return Single.just(
+          Expression.newBuilder()
+              .setFunction(function.toBuilder().setFunctionName("COUNT_STAR"))
+              .build());
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package org.hypertrace.core.query.service;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createOrderByExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeColumnGroupByExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createLongLiteralExpression;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createSimpleAttributeExpression;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.junit.jupiter.api.Test;
+
+class PartialAggregationTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final long HOUR_MILLIS = 3600000;
+
+  private static final Expression TIME_BUCKET =
+      createTimeColumnGroupByExpression(START_TIME, "1:HOURS");
+  private static final Expression COUNT =
+      createAliasedFunctionExpression("COUNT", "Span.id", "count").build();
+  private static final Expression AVG =
+      createAliasedFunctionExpression("AVG", "Span.duration_millis", "avg_duration").build();
+  private static final Expression MAX =
+      createAliasedFunctionExpression("MAX", "Span.duration_millis", "max_duration").build();
+
+  private final Filter timeFilter =
+      createCompositeFilter(
+              Operator.AND,
+              createTimeFilter(START_TIME, Operator.GE, 0),
+              createTimeFilter(START_TIME, Operator.LT, 3 * HOUR_MILLIS))
+          .build();
+
+  @Test
+  void buildsRequestOfTimeRangePart() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .setFilter(this.timeFilter)
+            .addGroupBy(TIME_BUCKET)
+            .addSelection(TIME_BUCKET)
+            .addSelection(COUNT)
+            .addSelection(AVG)
+            .addOrderBy(createOrderByExpression(TIME_BUCKET.toBuilder(), SortOrder.ASC))
+            .setOffset(1)
+            .setLimit(10)
+            .build();
+
+    QueryRequest expectedPartRequest =
+        QueryRequest.newBuilder()
+            .setFilter(
+                createCompositeFilter(
+                    Operator.AND,
+                    this.timeFilter,
+                    createPartTimeFilter(Operator.GE, HOUR_MILLIS),
+                    createPartTimeFilter(Operator.LT, 3 * HOUR_MILLIS)))
+            .addGroupBy(TIME_BUCKET)
+            .addSelection(TIME_BUCKET)
+            .addSelection(COUNT)
+            .addSelection(
+                createAliasedFunctionExpression("SUM", "Span.duration_millis", "avg_duration"))
+            .addAggregation(
+                createAliasedFunctionExpression(
+                    "COUNT", "Span.duration_millis", "avg_duration_count"))
+            .setLimit(4)
+            .build();
+
+    assertEquals(
+        expectedPartRequest,
+        forRequest(request).forTimeRange(START_TIME, HOUR_MILLIS, 3 * HOUR_MILLIS));
+  }
+
+  @Test
+  void mergesTimeBucketsOfParts() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .setFilter(this.timeFilter)
+            .addGroupBy(TIME_BUCKET)
+            .addSelection(COUNT)
+            .addSelection(AVG)
+            .addSelection(MAX)
+            .addOrderBy(createOrderByExpression(TIME_BUCKET.toBuilder(), SortOrder.ASC))
+            .setLimit(10)
+            .build();
+
+    // Time bucket, count, sum and max of the duration and the count for its average
+    List<Row> partRows =
+        List.of(
+            row("3600000", "3", "8.0", "5.0", "3"),
+            row("7200000", "1", "1.0", "1.0", "1"),
+            row("0", "2", "10.0", "7.0", "2"),
+            row("3600000", "1", "4.0", "4.0", "1"));
+
+    assertEquals(
+        List.of(
+            row("0", "2", "5.0", "7.0"),
+            row("3600000", "4", "3.0", "5.0"),
+            row("7200000", "1", "1.0", "1.0")),
+        forRequest(request).merge(partRows));
+  }
+
+  @Test
+  void ordersAndLimitsMergedRows() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .setFilter(this.timeFilter)
+            .addGroupBy(TIME_BUCKET)
+            .addSelection(COUNT)
+            .addOrderBy(
+                createOrderByExpression(
+                    createAliasedFunctionExpression("COUNT", "Span.id", "other_alias"),
+                    SortOrder.DESC))
+            .setOffset(1)
+            .setLimit(2)
+            .build();
+
+    List<Row> partRows =
+        List.of(
+            row("0", "9"),
+            row("3600000", "2"),
+            row("7200000", "10"),
+            row("3600000", "1"),
+            row("10800000", "4"));
+
+    assertEquals(
+        List.of(row("0", "9"), row("10800000", "4")), forRequest(request).merge(partRows));
+  }
+
+  @Test
+  void mergesAggregationsWithoutGroupBy() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .setFilter(this.timeFilter)
+            .addAggregation(COUNT)
+            .addAggregation(
+                createAliasedFunctionExpression("MIN", "Span.duration_millis", "min_duration"))
+            .addAggregation(
+                createAliasedFunctionExpression("SUM", "Span.duration_millis", "sum_duration"))
+            .setLimit(1)
+            .build();
+
+    List<Row> partRows =
+        List.of(row("3", "Infinity", "0.0"), row("0", "1.0", "1.5"), row("2", "3.0", "3.0"));
+
+    assertEquals(List.of(row("5", "1.0", "4.5")), forRequest(request).merge(partRows));
+  }
+
+  @Test
+  void detectsIncompletePartsOfGroupedAggregations() {
+    Expression serviceName = createColumnExpression("Span.service_name").build();
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .setFilter(this.timeFilter)
+            .addGroupBy(serviceName)
+            .addSelection(serviceName)
+            .addSelection(COUNT)
+            .addOrderBy(createOrderByExpression(COUNT.toBuilder(), SortOrder.DESC))
+            .setLimit(2)
+            .build();
+    PartialAggregation aggregation = forRequest(request);
+    QueryRequest partRequest = aggregation.forTimeRange(START_TIME, 0, HOUR_MILLIS);
+
+    assertFalse(aggregation.hasBoundedGroups());
+    assertEquals(2, partRequest.getLimit());
+    assertTrue(aggregation.isComplete(partRequest, 1));
+    assertFalse(aggregation.isComplete(partRequest, 2));
+    assertEquals(
+        List.of(row("service-2", "8"), row("service-1", "5")),
+        aggregation.merge(
+            List.of(
+                row("service-1", "5"),
+                row("service-2", "1"),
+                row("service-2", "7"),
+                row("service-3", "4"))));
+  }
+
+  @Test
+  void onlyMergesMergeableAggregations() {
+    QueryRequest.Builder request = QueryRequest.newBuilder().setFilter(this.timeFilter);
+
+    assertTrue(isNotMergeable(request.clone().addSelection(createColumnExpression("Span.id"))));
+    assertTrue(
+        isNotMergeable(
+            request
+                .clone()
+                .addSelection(
+                    createAliasedFunctionExpression(
+                        "DISTINCTCOUNT", "Span.service_name", "services"))));
+    assertTrue(
+        isNotMergeable(
+            request
+                .clone()
+                .addSelection(COUNT)
+                .addOrderBy(
+                    createOrderByExpression(createColumnExpression("Span.id"), SortOrder.ASC))));
+  }
+
+  private static boolean isNotMergeable(QueryRequest.Builder request) {
+    return PartialAggregation.forRequest(
+            request.build(), new ExecutionContext("tenant", request.build()), List.of())
+        .isEmpty();
+  }
+
+  private static PartialAggregation forRequest(QueryRequest request) {
+    return PartialAggregation.forRequest(
+            request, new ExecutionContext("tenant", request), List.of())
+        .orElseThrow();
+  }
+
+  private static Filter createPartTimeFilter(Operator operator, long timeMillis) {
+    return Filter.newBuilder()
+        .setLhs(createSimpleAttributeExpression(START_TIME))
+        .setOperator(operator)
+        .setRhs(createLongLiteralExpression(timeMillis))
+        .build();
+  }
+
+  private static Row row(String... values) {
+    return Row.newBuilder()
+        .addAllColumn(
+            Arrays.stream(values)
+                .map(value -> Value.newBuilder().setString(value).build())
+                .collect(Collectors.toList()))
+        .build();
+  }
+}
@@ -1,26 +1,41 @@
 package org.hypertrace.core.query.service;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.Lists;
+import io.grpc.BindableService;
 import io.grpc.Context;
+import io.grpc.Contexts;
 import io.grpc.Deadline;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCall.Listener;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
 import io.grpc.Status;
 import io.grpc.StatusException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.ServerCallStreamObserver;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import org.hypertrace.core.grpcutils.context.RequestContext;
@@ -38,6 +53,8 @@ import org.hypertrace.core.query.service.api.ResultSetChunk;
 import org.hypertrace.core.query.service.api.ResultSetMetadata;
 import org.hypertrace.core.query.service.api.Row;
 import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.hypertrace.core.query.service.cost.QueryCostEstimator;
 import org.hypertrace.core.query.service.validation.QueryValidator;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -68,7 +85,11 @@ public class QueryServiceImplTest {
         .withValue(RequestContext.CURRENT, mockContext)
         .run(
             () ->
-                new QueryServiceImpl(mockSelector, mockTransformationPipeline, mockValidator)
+                new QueryServiceImpl(
+                        mockSelector,
+                        mockTransformationPipeline,
+                        mockValidator,
+                        QueryCostEstimator.DISABLED)
                     .execute(originalRequest, mockObserver));
     verify(mockObserver).setOnCancelHandler(any());
     verify(mockObserver).onError(any(StatusException.class));
@@ -91,7 +112,11 @@ public class QueryServiceImplTest {
         .withValue(RequestContext.CURRENT, mockContext)
         .run(
             () ->
-                new QueryServiceImpl(mockSelector, mockTransformationPipeline, mockValidator)
+                new QueryServiceImpl(
+                        mockSelector,
+                        mockTransformationPipeline,
+                        mockValidator,
+                        QueryCostEstimator.DISABLED)
                     .execute(originalRequest, mockObserver));
 
     verify(mockObserver).setOnCancelHandler(any());
@@ -119,7 +144,11 @@ public class QueryServiceImplTest {
         .withValue(RequestContext.CURRENT, mockContext)
         .run(
             () ->
-                new QueryServiceImpl(mockSelector, mockTransformationPipeline, mockValidator)
+                new QueryServiceImpl(
+                        mockSelector,
+                        mockTransformationPipeline,
+                        mockValidator,
+                        QueryCostEstimator.DISABLED)
                     .execute(originalRequest, mockObserver));
 
     ResultSetChunk expectedChunk =
@@ -136,6 +165,161 @@ public class QueryServiceImplTest {
     verifyNoMoreInteractions(mockObserver);
   }
 
+  @Test
+  void answersAlwaysFalseFilterWithoutInvokingHandler() {
+    QueryRequest originalRequest =
+        QueryRequest.newBuilder().setFilter(QueryRequestUtil.createAlwaysFalseFilter()).build();
+    RequestHandlerSelector mockSelector = mock(RequestHandlerSelector.class);
+    QueryTransformationPipeline mockTransformationPipeline =
+        mock(QueryTransformationPipeline.class);
+    when(mockContext.getTenantId()).thenReturn(Optional.of("test-tenant"));
+    when(mockTransformationPipeline.transform(originalRequest, "test-tenant"))
+        .thenReturn(Single.just(originalRequest));
+    QueryValidator mockValidator = mock(QueryValidator.class);
+    when(mockValidator.validate(originalRequest, mockContext)).thenReturn(Completable.complete());
+    Context.current()
+        .withValue(RequestContext.CURRENT, mockContext)
+        .run(
+            () ->
+                new QueryServiceImpl(
+                        mockSelector,
+                        mockTransformationPipeline,
+                        mockValidator,
+                        QueryCostEstimator.DISABLED)
+                    .execute(originalRequest, mockObserver));
+
+    ResultSetChunk expectedChunk =
+        ResultSetChunk.newBuilder()
+            .setChunkId(0)
+            .setIsLastChunk(true)
+            .setResultSetMetadata(ResultSetMetadata.getDefaultInstance())
+            .build();
+
+    verify(mockObserver).setOnCancelHandler(any());
+    verify(mockObserver).onNext(expectedChunk);
+    verify(mockObserver).onCompleted();
+    verifyNoMoreInteractions(mockObserver, mockSelector);
+  }
+
+  @Test
+  void servesResultSetChunksToGrpcClients() throws Exception {
+    QueryRequest request = buildSimpleQuery();
+    Row row =
+        Row.newBuilder()
+            .addColumn(Value.newBuilder().setValueType(ValueType.STRING).setString("span-1"))
+            .build();
+    RequestHandler mockHandler = mock(RequestHandler.class);
+    when(mockHandler.handleRequest(eq(request), any(ExecutionContext.class)))
+        .thenReturn(Observable.just(row, row));
+    RequestHandlerSelector mockSelector = mock(RequestHandlerSelector.class);
+    when(mockSelector.select(eq(request), any())).thenReturn(Optional.of(mockHandler));
+    QueryTransformationPipeline mockTransformationPipeline =
+        mock(QueryTransformationPipeline.class);
+    when(mockTransformationPipeline.transform(request, "test-tenant"))
+        .thenReturn(Single.just(request));
+    QueryValidator mockValidator = mock(QueryValidator.class);
+    when(mockValidator.validate(eq(request), any())).thenReturn(Completable.complete());
+    QueryServiceImpl queryService =
+        new QueryServiceImpl(
+            mockSelector, mockTransformationPipeline, mockValidator, QueryCostEstimator.DISABLED);
+
+    assertEquals(
+        List.of(
+            ResultSetChunk.newBuilder()
+                .setChunkId(0)
+                .setIsLastChunk(true)
+                .addRow(row)
+                .addRow(row)
+                .setResultSetMetadata(
+                    new ExecutionContext("test-tenant", request).getResultSetMetadata())
+                .build()),
+        executeOverGrpc(queryService, request));
+  }
+
+  @Test
+  void servesEncodedRowsAsSerializedChunksToGrpcClients() throws Exception {
+    QueryRequest request = buildSimpleQuery();
+    Row row =
+        Row.newBuilder()
+            .addColumn(Value.newBuilder().setValueType(ValueType.STRING).setString("span-1"))
+            .build();
+    RowWriter rowWriter = new RowWriter();
+    rowWriter.addString("span-1");
+    rowWriter.endRow();
+    rowWriter.addString("span-1");
+    rowWriter.endRow();
+    RequestHandler mockHandler = mock(RequestHandler.class);
+    when(mockHandler.handleRequestEncoded(eq(request), any(ExecutionContext.class)))
+        .thenReturn(Optional.of(Observable.just(rowWriter.build())));
+    RequestHandlerSelector mockSelector = mock(RequestHandlerSelector.class);
+    when(mockSelector.select(eq(request), any())).thenReturn(Optional.of(mockHandler));
+    QueryTransformationPipeline mockTransformationPipeline =
+        mock(QueryTransformationPipeline.class);
+    when(mockTransformationPipeline.transform(request, "test-tenant"))
+        .thenReturn(Single.just(request));
+    QueryValidator mockValidator = mock(QueryValidator.class);
+    when(mockValidator.validate(eq(request), any())).thenReturn(Completable.complete());
+    QueryCostEstimator mockCostEstimator = mock(QueryCostEstimator.class);
+    QueryServiceImpl queryService =
+        new QueryServiceImpl(
+            mockSelector, mockTransformationPipeline, mockValidator, mockCostEstimator);
+
+    assertEquals(
+        List.of(
+            ResultSetChunk.newBuilder()
+                .setChunkId(0)
+                .setIsLastChunk(true)
+                .addRow(row)
+                .addRow(row)
+                .setResultSetMetadata(
+                    new ExecutionContext("test-tenant", request).getResultSetMetadata())
+                .build()),
+        executeOverGrpc(new SerializedChunkQueryService(queryService), request));
+    verify(mockHandler, never()).handleRequest(any(), any());
+    verify(mockCostEstimator).record("test-tenant", request, 2);
+  }
+
+  private List<ResultSetChunk> executeOverGrpc(BindableService queryService, QueryRequest request)
+      throws IOException {
+    // Stands in for the request context interceptor of the service framework
+    ServerInterceptor requestContextInterceptor =
+        new ServerInterceptor() {
+          @Override
+          public <ReqT, RespT> Listener<ReqT> interceptCall(
+              ServerCall<ReqT, RespT> call,
+              Metadata headers,
+              ServerCallHandler<ReqT, RespT> next) {
+            return Contexts.interceptCall(
+                Context.current()
+                    .withValue(RequestContext.CURRENT, RequestContext.forTenantId("test-tenant")),
+                call,
+                headers,
+                next);
+          }
+        };
+
+    String serverName = InProcessServerBuilder.generateName();
+    Server server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(
+                ServerInterceptors.intercept(queryService.bindService(), requestContextInterceptor))
+            .build()
+            .start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    try {
+      List<ResultSetChunk> chunks = new ArrayList<>();
+      QueryServiceGrpc.newBlockingStub(channel)
+          .withDeadline(Deadline.after(10, TimeUnit.SECONDS))
+          .execute(request)
+          .forEachRemaining(chunks::add);
+      return chunks;
+    } finally {
+      channel.shutdownNow();
+      server.shutdownNow();
+    }
+  }
+
   // works with query service running at localhost
   @Disabled
   public void testGrpc() {
@@ -0,0 +1,176 @@
+package org.hypertrace.core.query.service;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createInFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimestampFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.junit.jupiter.api.Test;
+
+class RequestAnalysisTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final String END_TIME = "Span.end_time_millis";
+
+  @Test
+  void collectsReferencedColumnsAndLeafFilters() {
+    Filter environmentFilter = createInFilter("Span.environment", List.of("prod", "staging"));
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(createColumnExpression("Span.name"))
+            .addAggregation(createAliasedFunctionExpression("AVG", "Span.duration", "avg"))
+            .addGroupBy(createColumnExpression("Span.name"))
+            .setFilter(
+                createCompositeFilter(
+                    Operator.AND,
+                    createTimeFilter(START_TIME, Operator.GE, 1000),
+                    createCompositeFilter(
+                            Operator.OR,
+                            environmentFilter,
+                            createEqualsFilter("Span.environment", "dev"))
+                        .build()))
+            .build();
+
+    RequestAnalysis analysis = RequestAnalysis.of(request);
+
+    assertEquals(
+        Set.of("Span.name", "Span.duration", START_TIME, "Span.environment"),
+        analysis.getReferencedColumns());
+    assertEquals(2, analysis.getLeafFilters("Span.environment").size());
+    assertTrue(analysis.hasLeafFilters(START_TIME));
+    assertFalse(analysis.hasLeafFilters("Span.name"));
+    assertEquals(Set.of("prod", "staging"), analysis.getLiteralValues(environmentFilter));
+  }
+
+  @Test
+  void computesTimeBoundsPerColumn() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(createColumnExpression("Span.name"))
+            .setFilter(
+                createCompositeFilter(
+                    Operator.AND,
+                    createTimeFilter(START_TIME, Operator.GE, 1000),
+                    createTimeFilter(START_TIME, Operator.LT, 5000),
+                    createCompositeFilter(
+                            Operator.OR,
+                            createTimeFilter(END_TIME, Operator.GT, 2000),
+                            createTimeFilter(START_TIME, Operator.GE, 500))
+                        .build()))
+            .build();
+
+    RequestAnalysis analysis = RequestAnalysis.of(request);
+
+    assertEquals(500, analysis.getStartTime(START_TIME));
+    assertEquals(5000, analysis.getEndTime(START_TIME));
+    assertEquals(2000, analysis.getStartTime(END_TIME));
+    assertEquals(Long.MIN_VALUE, analysis.getEndTime(END_TIME));
+    assertEquals(Long.MAX_VALUE, analysis.getStartTime("Span.name"));
+    assertEquals(
+        Optional.of(
+            new QueryTimeRange(
+                Instant.ofEpochMilli(1000), Instant.ofEpochMilli(5000), Duration.ofMillis(4000))),
+        analysis.getQueryTimeRange(START_TIME));
+    // Only bounded on one side, and under an OR
+    assertEquals(Optional.empty(), analysis.getQueryTimeRange(END_TIME));
+    assertEquals(Optional.empty(), analysis.getQueryTimeRange(null));
+  }
+
+  @Test
+  void findsTimeRangeInNestedAnds() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(createColumnExpression("Span.name"))
+            .setFilter(
+                createCompositeFilter(
+                    Operator.AND,
+                    createEqualsFilter("Span.environment", "prod"),
+                    createCompositeFilter(
+                            Operator.AND,
+                            createTimeFilter(START_TIME, Operator.GT, 1000),
+                            createTimeFilter(START_TIME, Operator.LE, 3000))
+                        .build()))
+            .build();
+
+    assertEquals(
+        Optional.of(Duration.ofMillis(2000)),
+        RequestAnalysis.of(request).getQueryTimeRange(START_TIME).map(QueryTimeRange::getDuration));
+  }
+
+  @Test
+  void matchesColumnFiltersRestrictingAllRows() {
+    ColumnFilter environments = values -> Set.of("prod", "staging").containsAll(values);
+    Filter timeFilter = createTimeFilter(START_TIME, Operator.GE, 1000);
+
+    assertTrue(
+        analyze(
+                createCompositeFilter(
+                        Operator.AND, timeFilter, createEqualsFilter("Span.environment", "prod"))
+                    .build())
+            .matchesColumnFilters(Map.of("Span.environment", environments)));
+    // Each branch of the disjunction restricts the column
+    assertTrue(
+        analyze(
+                createCompositeFilter(
+                        Operator.AND,
+                        timeFilter,
+                        createCompositeFilter(
+                                Operator.OR,
+                                createEqualsFilter("Span.environment", "prod"),
+                                createInFilter("Span.environment", List.of("staging")))
+                            .build())
+                    .build())
+            .matchesColumnFilters(Map.of("Span.environment", environments)));
+    // The other branch of the disjunction matches rows of any environment
+    assertFalse(
+        analyze(
+                createCompositeFilter(
+                        Operator.OR, timeFilter, createEqualsFilter("Span.environment", "prod"))
+                    .build())
+            .matchesColumnFilters(Map.of("Span.environment", environments)));
+    assertFalse(
+        analyze(
+                createCompositeFilter(
+                        Operator.AND, timeFilter, createEqualsFilter("Span.environment", "dev"))
+                    .build())
+            .matchesColumnFilters(Map.of("Span.environment", environments)));
+    assertFalse(analyze(timeFilter).matchesColumnFilters(Map.of("Span.environment", environments)));
+    assertTrue(analyze(timeFilter).matchesColumnFilters(Map.of()));
+  }
+
+  @Test
+  void rejectsUncomparableLiterals() {
+    Filter timestampFilter = createTimestampFilter(START_TIME, Operator.EQ, 1000);
+    RequestAnalysis analysis =
+        RequestAnalysis.of(
+            QueryRequest.newBuilder()
+                .addSelection(createColumnExpression("Span.name"))
+                .setFilter(timestampFilter)
+                .build());
+
+    assertThrows(IllegalArgumentException.class, () -> analysis.getLiteralValues(timestampFilter));
+  }
+
+  private static RequestAnalysis analyze(Filter filter) {
+    return RequestAnalysis.of(
+        QueryRequest.newBuilder()
+            .addSelection(createColumnExpression("Span.name"))
+            .setFilter(filter)
+            .build());
+  }
+}
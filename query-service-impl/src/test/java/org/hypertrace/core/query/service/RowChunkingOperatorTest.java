@@ -1,12 +1,22 @@
 package org.hypertrace.core.query.service;
 
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createOrderByExpression;
 import static org.hypertrace.core.query.service.RowChunkingOperator.chunkRows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.observers.TestObserver;
+import java.util.Optional;
+import org.hypertrace.core.query.service.api.ColumnMetadata;
+import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.ResultSetChunk;
 import org.hypertrace.core.query.service.api.ResultSetMetadata;
 import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.pagination.KeysetPagination;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -81,6 +91,52 @@ class RowChunkingOperatorTest {
         ResultSetChunk.newBuilder().setChunkId(1).setIsLastChunk(true).addRow(row3).build());
   }
 
+  @Test
+  void readsSuppliedMetadataOnceFirstChunkIsComplete() {
+    ResultSetMetadata.Builder metadata = ResultSetMetadata.newBuilder();
+    Row onlyRow = Row.getDefaultInstance();
+    Observable.just(onlyRow)
+        .doOnNext(
+            row -> metadata.addColumnMetadata(ColumnMetadata.newBuilder().setColumnName("count")))
+        .lift(chunkRows(metadata::build, Optional.empty()))
+        .blockingSubscribe(this.testObserver);
+    testObserver.assertResult(
+        ResultSetChunk.newBuilder()
+            .setChunkId(0)
+            .setIsLastChunk(true)
+            .setResultSetMetadata(metadata.build())
+            .addRow(onlyRow)
+            .build());
+  }
+
+  @Test
+  void addsContinuationTokenToLastChunkOfFullPage() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(createColumnExpression("Span.id"))
+            .addOrderBy(createOrderByExpression(createColumnExpression("Span.id"), SortOrder.ASC))
+            .setLimit(3)
+            .build();
+    Optional<KeysetPagination> keysetPagination =
+        KeysetPagination.forRequest(request, new ExecutionContext("tenant1", request));
+    Row row1 = Row.newBuilder().addColumn(Value.newBuilder().setString("span-1")).build();
+    Row row2 = Row.newBuilder().addColumn(Value.newBuilder().setString("span-2")).build();
+    Row row3 = Row.newBuilder().addColumn(Value.newBuilder().setString("span-3")).build();
+
+    Observable.just(row1, row2)
+        .lift(chunkRows(resultSetMetadata, 2, keysetPagination))
+        .blockingSubscribe(this.testObserver);
+    assertEquals("", this.testObserver.values().get(0).getContinuationToken());
+
+    TestObserver<ResultSetChunk> fullPageObserver = new TestObserver<>();
+    Observable.just(row1, row2, row3)
+        .lift(chunkRows(resultSetMetadata, 2, keysetPagination))
+        .blockingSubscribe(fullPageObserver);
+    fullPageObserver.assertValueCount(2);
+    assertEquals("", fullPageObserver.values().get(0).getContinuationToken());
+    assertNotEquals("", fullPageObserver.values().get(1).getContinuationToken());
+  }
+
   @Test
   void propagatesError() {
     Observable.<Row>error(UnsupportedOperationException::new)
@@ -0,0 +1,83 @@
+package org.hypertrace.core.query.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.hypertrace.core.query.service.api.ResultSetChunk;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.junit.jupiter.api.Test;
+
+class RowWriterTest {
+
+  @Test
+  void writesRowsInWireFormatOfChunkRows() {
+    Value bytesValue =
+        Value.newBuilder()
+            .setValueType(ValueType.BYTES)
+            .setBytes(ByteString.copyFrom(new byte[] {10, 11}))
+            .build();
+    Value mapValue =
+        Value.newBuilder()
+            .setValueType(ValueType.STRING_MAP)
+            .putAllStringMap(Map.of("t1", "v1"))
+            .build();
+    Row firstRow =
+        Row.newBuilder()
+            .addColumn(Value.newBuilder().setString("span-1"))
+            .addColumn(Value.newBuilder().setString(""))
+            .addColumn(Value.newBuilder().setString("été"))
+            .addColumn(bytesValue)
+            .addColumn(mapValue)
+            .build();
+    Row secondRow = Row.newBuilder().addColumn(Value.newBuilder().setString("span-2")).build();
+
+    RowWriter rowWriter = new RowWriter();
+    rowWriter.addString("span-1");
+    rowWriter.addString("");
+    rowWriter.addString("été");
+    rowWriter.addValue(bytesValue);
+    rowWriter.addValue(mapValue);
+    rowWriter.endRow();
+    rowWriter.addRow(secondRow);
+    EncodedRows rows = rowWriter.build();
+
+    assertEquals(2, rows.getRowCount());
+    assertEquals(List.of(firstRow, secondRow), rows.toRows());
+  }
+
+  @Test
+  void writesSameBytesAsChunkRows() throws IOException {
+    Row row =
+        Row.newBuilder()
+            .addColumn(Value.newBuilder().setString("span-1"))
+            .addColumn(Value.newBuilder().setString(""))
+            .build();
+
+    RowWriter rowWriter = new RowWriter();
+    for (int i = 0; i < 100; i++) {
+      rowWriter.addString("span-1");
+      rowWriter.addString("");
+      rowWriter.endRow();
+    }
+    ResultSetChunk.Builder chunkBuilder = ResultSetChunk.newBuilder();
+    for (int i = 0; i < 100; i++) {
+      chunkBuilder.addRow(row);
+    }
+
+    assertEquals(chunkBuilder.build().toByteString(), chunkBytes(rowWriter.build()));
+  }
+
+  private static ByteString chunkBytes(EncodedRows rows) throws IOException {
+    ByteString.Output output = ByteString.newOutput();
+    CodedOutputStream codedOutput = CodedOutputStream.newInstance(output);
+    rows.writeTo(codedOutput, 0, rows.getRowCount());
+    codedOutput.flush();
+    return output.toByteString();
+  }
+}
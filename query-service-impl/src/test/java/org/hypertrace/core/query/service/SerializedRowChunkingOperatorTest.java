@@ -0,0 +1,132 @@
+package org.hypertrace.core.query.service;
+
+import static org.hypertrace.core.query.service.SerializedRowChunkingOperator.chunkRows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Drainable;
+import io.reactivex.rxjava3.core.Observable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hypertrace.core.query.service.api.ColumnMetadata;
+import org.hypertrace.core.query.service.api.ResultSetChunk;
+import org.hypertrace.core.query.service.api.ResultSetMetadata;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.junit.jupiter.api.Test;
+
+class SerializedRowChunkingOperatorTest {
+  private final ResultSetMetadata resultSetMetadata =
+      ResultSetMetadata.newBuilder()
+          .addColumnMetadata(
+              ColumnMetadata.newBuilder().setColumnName("name").setValueType(ValueType.STRING))
+          .build();
+
+  @Test
+  void supportsEmptyObservable() throws InvalidProtocolBufferException {
+    assertEquals(
+        List.of(
+            ResultSetChunk.newBuilder()
+                .setChunkId(0)
+                .setIsLastChunk(true)
+                .setResultSetMetadata(this.resultSetMetadata)
+                .build()),
+        chunk(Observable.empty(), 2));
+  }
+
+  @Test
+  void splitsEncodedRowsAcrossChunks() throws InvalidProtocolBufferException {
+    Row row1 = createRow("row1");
+    Row row2 = createRow("row2");
+    Row row3 = createRow("row3");
+    Row row4 = createRow("row4");
+    Row row5 = createRow("row5");
+
+    assertEquals(
+        List.of(
+            ResultSetChunk.newBuilder()
+                .setChunkId(0)
+                .setResultSetMetadata(this.resultSetMetadata)
+                .addRow(row1)
+                .addRow(row2)
+                .build(),
+            ResultSetChunk.newBuilder().setChunkId(1).addRow(row3).addRow(row4).build(),
+            ResultSetChunk.newBuilder().setChunkId(2).setIsLastChunk(true).addRow(row5).build()),
+        chunk(Observable.just(encode(row1), encode(row2, row3, row4, row5)), 2));
+  }
+
+  @Test
+  void readsSuppliedMetadataOnceFirstChunkIsComplete() throws InvalidProtocolBufferException {
+    AtomicInteger metadataReads = new AtomicInteger();
+    List<SerializedResultSetChunk> chunks =
+        Observable.just(encode(createRow("row1"), createRow("row2")))
+            .lift(
+                chunkRows(
+                    () -> {
+                      metadataReads.incrementAndGet();
+                      return this.resultSetMetadata;
+                    },
+                    1))
+            .toList()
+            .blockingGet();
+
+    assertEquals(1, metadataReads.get());
+    assertEquals(this.resultSetMetadata, chunks.get(0).toResultSetChunk().getResultSetMetadata());
+    assertEquals(
+        ResultSetMetadata.getDefaultInstance(),
+        chunks.get(1).toResultSetChunk().getResultSetMetadata());
+  }
+
+  @Test
+  void marshalsChunkBytesAsIs() throws IOException {
+    ResultSetChunk chunk =
+        ResultSetChunk.newBuilder()
+            .setChunkId(3)
+            .setIsLastChunk(true)
+            .addRow(createRow("row1"))
+            .build();
+
+    InputStream stream =
+        SerializedResultSetChunk.MARSHALLER.stream(SerializedResultSetChunk.of(chunk));
+    assertEquals(chunk.getSerializedSize(), stream.available());
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    assertEquals(chunk.getSerializedSize(), ((Drainable) stream).drainTo(output));
+
+    assertEquals(chunk, ResultSetChunk.parseFrom(output.toByteArray()));
+    assertEquals(
+        chunk,
+        SerializedResultSetChunk.MARSHALLER
+            .parse(SerializedResultSetChunk.MARSHALLER.stream(SerializedResultSetChunk.of(chunk)))
+            .toResultSetChunk());
+  }
+
+  private List<ResultSetChunk> chunk(Observable<EncodedRows> rows, int maxRows)
+      throws InvalidProtocolBufferException {
+    List<ResultSetChunk> chunks = new ArrayList<>();
+    for (SerializedResultSetChunk serializedChunk :
+        rows.lift(chunkRows(() -> this.resultSetMetadata, maxRows)).toList().blockingGet()) {
+      chunks.add(serializedChunk.toResultSetChunk());
+    }
+    return chunks;
+  }
+
+  private static EncodedRows encode(Row... rows) {
+    RowWriter rowWriter = new RowWriter();
+    for (Row row : rows) {
+      rowWriter.addRow(row);
+    }
+    return rowWriter.build();
+  }
+
+  private Row createRow(String value) {
+    return Row.newBuilder()
+        .addColumn(Value.newBuilder().setValueType(ValueType.STRING).setString(value))
+        .addColumn(Value.newBuilder().setValueType(ValueType.LONG).setLong(value.length()))
+        .build();
+  }
+}
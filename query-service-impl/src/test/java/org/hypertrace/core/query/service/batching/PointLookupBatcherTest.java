@@ -0,0 +1,240 @@
+package org.hypertrace.core.query.service.batching;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createOrderByExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.attribute.service.cachingclient.CachingAttributeClient;
+import org.hypertrace.core.attribute.service.v1.AttributeKind;
+import org.hypertrace.core.attribute.service.v1.AttributeMetadata;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PointLookupBatcherTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final String TRACE_ID = "Span.traceId";
+  private static final String SPAN_NAME = "Span.name";
+
+  private final TestScheduler scheduler = new TestScheduler();
+  private final CachingAttributeClient attributeClient = mock(CachingAttributeClient.class);
+  private final PointLookupBatcher batcher =
+      new PointLookupBatcher(true, Duration.ofMillis(2), 3, this.scheduler, this.attributeClient);
+  private final RequestHandler handler = mock(RequestHandler.class);
+
+  @BeforeEach
+  void setup() {
+    mockAttributeKind(TRACE_ID, AttributeKind.TYPE_STRING);
+    when(this.handler.getName()).thenReturn("pinot");
+    when(this.handler.getTimeFilterColumn()).thenReturn(Optional.of(START_TIME));
+    // A span per trace id, with the trace id column if it is selected
+    when(this.handler.handleRequest(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              QueryRequest request = invocation.getArgument(0);
+              Filter keyFilter = request.getFilter().getChildFilter(1);
+              List<String> traceIds =
+                  keyFilter.getOperator() == Operator.IN
+                      ? keyFilter.getRhs().getLiteral().getValue().getStringArrayList()
+                      : List.of(keyFilter.getRhs().getLiteral().getValue().getString());
+              return Observable.fromIterable(traceIds)
+                  .map(
+                      traceId ->
+                          request.getSelectionCount() > 1
+                              ? row("span-" + traceId, traceId)
+                              : row("span-" + traceId));
+            });
+  }
+
+  @Test
+  void batchesConcurrentLookupsWithinWindow() {
+    TestObserver<Row> firstRows = this.lookup(createSpanRequest("t1", 10));
+    TestObserver<Row> secondRows = this.lookup(createSpanRequest("t2", 10));
+    firstRows.assertNoValues();
+
+    this.scheduler.advanceTimeBy(2, TimeUnit.MILLISECONDS);
+
+    firstRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t1"));
+    secondRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t2"));
+    verify(this.handler, times(1))
+        .handleRequest(
+            argThat(request -> request.getFilter().getChildFilter(1).getOperator() == Operator.IN),
+            any());
+  }
+
+  @Test
+  void executesFullBatchWithoutWaitingForWindow() {
+    TestObserver<Row> firstRows = this.lookup(createSpanRequest("t1", 10));
+    TestObserver<Row> secondRows = this.lookup(createSpanRequest("t2", 10));
+    TestObserver<Row> thirdRows = this.lookup(createSpanRequest("t3", 10));
+
+    firstRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t1"));
+    secondRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t2"));
+    thirdRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t3"));
+    verify(this.handler, times(1)).handleRequest(any(), any());
+  }
+
+  @Test
+  void executesLookupsIndividuallyIfBatchIsTruncated() {
+    // Two spans of the first trace fill the limit of the batch, none of the second is returned
+    QueryRequest secondRequest = createSpanRequest("t2", 1);
+    doReturn(Observable.just(row("span-t1", "t1"), row("span-t1", "t1")))
+        .when(this.handler)
+        .handleRequest(
+            argThat(request -> request.getFilter().getChildFilter(1).getOperator() == Operator.IN),
+            any());
+
+    TestObserver<Row> firstRows = this.lookup(createSpanRequest("t1", 1));
+    TestObserver<Row> secondRows = this.lookup(secondRequest);
+    this.scheduler.advanceTimeBy(2, TimeUnit.MILLISECONDS);
+
+    firstRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t1"));
+    secondRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t2"));
+    verify(this.handler, times(1)).handleRequest(argThat(secondRequest::equals), any());
+  }
+
+  @Test
+  void recordsApproximationsOfBatchInLookupContexts() {
+    QueryRequest firstRequest = createSpanRequest("t1", 10);
+    QueryRequest secondRequest = createSpanRequest("t2", 10);
+    ExecutionContext firstContext = new ExecutionContext("tenant", firstRequest);
+    ExecutionContext secondContext = new ExecutionContext("tenant", secondRequest);
+    doAnswer(
+            invocation -> {
+              ExecutionContext batchContext = invocation.getArgument(1);
+              batchContext.recordApproximation(
+                  Function.newBuilder().setFunctionName("NAME").setAlias(SPAN_NAME).build(),
+                  "APPROXIMATE_NAME");
+              return Observable.just(row("span-t1", "t1"), row("span-t2", "t2"));
+            })
+        .when(this.handler)
+        .handleRequest(any(), any());
+
+    TestObserver<Row> firstRows = this.lookup(firstRequest, firstContext);
+    TestObserver<Row> secondRows = this.lookup(secondRequest, secondContext);
+    this.scheduler.advanceTimeBy(2, TimeUnit.MILLISECONDS);
+
+    firstRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t1"));
+    secondRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t2"));
+    assertEquals(
+        "APPROXIMATE_NAME",
+        firstContext.getResultSetMetadata().getColumnMetadata(0).getApproximation());
+    assertEquals(
+        "APPROXIMATE_NAME",
+        secondContext.getResultSetMetadata().getColumnMetadata(0).getApproximation());
+  }
+
+  @Test
+  void executesLookupsIndividuallyIfBatchReturnsNoRowsOfTheirKey() {
+    // The second trace id is returned in another format than the requested one
+    QueryRequest secondRequest = createSpanRequest("T2", 10);
+    doReturn(Observable.just(row("span-t1", "t1"), row("span-t2", "t2")))
+        .when(this.handler)
+        .handleRequest(
+            argThat(request -> request.getFilter().getChildFilter(1).getOperator() == Operator.IN),
+            any());
+
+    TestObserver<Row> firstRows = this.lookup(createSpanRequest("t1", 10));
+    TestObserver<Row> secondRows = this.lookup(secondRequest);
+    this.scheduler.advanceTimeBy(2, TimeUnit.MILLISECONDS);
+
+    firstRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-t1"));
+    secondRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-T2"));
+    verify(this.handler, times(1)).handleRequest(argThat(secondRequest::equals), any());
+  }
+
+  @Test
+  void executesLookupsOfNonStringKeysIndividually() {
+    mockAttributeKind(TRACE_ID, AttributeKind.TYPE_INT64);
+
+    TestObserver<Row> firstRows = this.lookup(createSpanRequest("7", 10));
+    TestObserver<Row> secondRows = this.lookup(createSpanRequest("007", 10));
+
+    firstRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-7"));
+    secondRows.awaitDone(5, TimeUnit.SECONDS).assertResult(row("span-007"));
+    verify(this.handler, never())
+        .handleRequest(
+            argThat(request -> request.getFilter().getChildFilter(1).getOperator() == Operator.IN),
+            any());
+  }
+
+  @Test
+  void doesNotBatchOrderedSelections() {
+    QueryRequest request =
+        createSpanRequest("t1", 10).toBuilder()
+            .addOrderBy(createOrderByExpression(createColumnExpression(SPAN_NAME), SortOrder.ASC))
+            .build();
+
+    assertTrue(this.batcher.batch(request, this.handler).isEmpty());
+  }
+
+  @Test
+  void doesNotBatchIfDisabled() {
+    assertTrue(
+        PointLookupBatcher.DISABLED.batch(createSpanRequest("t1", 10), this.handler).isEmpty());
+  }
+
+  private TestObserver<Row> lookup(QueryRequest request) {
+    return this.lookup(request, new ExecutionContext("tenant", request));
+  }
+
+  private TestObserver<Row> lookup(QueryRequest request, ExecutionContext context) {
+    Optional<RequestHandler> batchedHandler = this.batcher.batch(request, this.handler);
+    assertEquals("batched[pinot]", batchedHandler.map(RequestHandler::getName).orElseThrow());
+    return batchedHandler.get().handleRequest(request, context).test();
+  }
+
+  private void mockAttributeKind(String attributeId, AttributeKind kind) {
+    when(this.attributeClient.get(attributeId))
+        .thenReturn(Single.just(AttributeMetadata.newBuilder().setValueKind(kind).build()));
+  }
+
+  private static QueryRequest createSpanRequest(String traceId, int limit) {
+    return QueryRequest.newBuilder()
+        .addSelection(createColumnExpression(SPAN_NAME))
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(START_TIME, Operator.GE, 1000),
+                createEqualsFilter(TRACE_ID, traceId)))
+        .setLimit(limit)
+        .build();
+  }
+
+  private static Row row(String... values) {
+    Row.Builder row = Row.newBuilder();
+    for (String value : values) {
+      row.addColumn(Value.newBuilder().setString(value));
+    }
+    return row.build();
+  }
+}
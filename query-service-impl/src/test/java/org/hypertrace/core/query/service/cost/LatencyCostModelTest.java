@@ -0,0 +1,190 @@
+package org.hypertrace.core.query.service.cost;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.typesafe.config.ConfigFactory;
+import io.reactivex.rxjava3.core.Observable;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryServiceConfig.LatencyCostModelConfig;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LatencyCostModelTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+  private final Random random = mock(Random.class);
+  private final RequestHandler fastHandler = mock(RequestHandler.class);
+  private final RequestHandler slowHandler = mock(RequestHandler.class);
+  private final RequestHandler expensiveHandler = mock(RequestHandler.class);
+
+  @BeforeEach
+  void setup() {
+    when(this.fastHandler.getName()).thenReturn("fast");
+    when(this.slowHandler.getName()).thenReturn("slow");
+    when(this.expensiveHandler.getName()).thenReturn("expensive");
+    when(this.random.nextDouble()).thenReturn(0.5);
+  }
+
+  @Test
+  void selectsLowestStaticCostWithoutSamples() {
+    LatencyCostModel model = createModel(Map.of());
+    QueryRequest request = createRequest("tenant1", 0, HOUR_MILLIS);
+
+    RequestHandler selected = model.select(request, staticCosts(0.2, 0.15, 0.9));
+
+    assertEquals("slow", selected.getName());
+  }
+
+  @Test
+  void prefersFasterHandlerWithinTolerance() {
+    LatencyCostModel model = createModel(Map.of());
+    QueryRequest request = createRequest("tenant1", 0, HOUR_MILLIS);
+    String fingerprint = QueryFingerprint.of(request);
+    for (int i = 0; i < 10; i++) {
+      model.record("fast", fingerprint, Duration.ofMillis(50), false);
+      model.record("slow", fingerprint, Duration.ofSeconds(5), false);
+      model.record("expensive", fingerprint, Duration.ofMillis(1), false);
+    }
+
+    RequestHandler selected = model.select(request, staticCosts(0.2, 0.15, 0.9));
+
+    // The expensive handler is faster, but its static cost is out of the tolerance
+    assertEquals("fast", selected.getName());
+    assertTrue(
+        model.getCost(this.fastHandler, fingerprint, 0.2)
+            < model.getCost(this.slowHandler, fingerprint, 0.15));
+  }
+
+  @Test
+  void errorsIncreaseLearnedCost() {
+    LatencyCostModel model = createModel(Map.of());
+    String fingerprint = QueryFingerprint.of(createRequest("tenant1", 0, HOUR_MILLIS));
+    for (int i = 0; i < 10; i++) {
+      model.record("fast", fingerprint, Duration.ofMillis(50), i % 2 == 0);
+      model.record("slow", fingerprint, Duration.ofMillis(50), false);
+    }
+
+    assertTrue(
+        model.getCost(this.fastHandler, fingerprint, 0.1)
+            > model.getCost(this.slowHandler, fingerprint, 0.1));
+  }
+
+  @Test
+  void learnedCostWeightGrowsWithSamples() {
+    LatencyCostModel model = createModel(Map.of());
+    String fingerprint = QueryFingerprint.of(createRequest("tenant1", 0, HOUR_MILLIS));
+
+    model.record("slow", fingerprint, Duration.ofSeconds(10), false);
+    double costAfterOneSample = model.getCost(this.slowHandler, fingerprint, 0);
+    for (int i = 0; i < 9; i++) {
+      model.record("slow", fingerprint, Duration.ofSeconds(10), false);
+    }
+    double costAfterMinSamples = model.getCost(this.slowHandler, fingerprint, 0);
+
+    assertTrue(costAfterOneSample > 0);
+    assertTrue(costAfterMinSamples > costAfterOneSample);
+  }
+
+  @Test
+  void exploresRandomCandidateWithinTolerance() {
+    LatencyCostModel model = createModel(Map.of());
+    QueryRequest request = createRequest("tenant1", 0, HOUR_MILLIS);
+    when(this.random.nextDouble()).thenReturn(0.01);
+    when(this.random.nextInt(2)).thenReturn(1);
+
+    RequestHandler selected = model.select(request, staticCosts(0.15, 0.2, 0.9));
+
+    assertEquals("slow", selected.getName());
+  }
+
+  @Test
+  void recordsLatencyOfSelectedHandler() {
+    LatencyCostModel model = createModel(Map.of());
+    QueryRequest request = createRequest("tenant1", 0, HOUR_MILLIS);
+    ExecutionContext executionContext = new ExecutionContext("tenant1", request);
+    when(this.fastHandler.handleRequest(request, executionContext)).thenReturn(Observable.empty());
+    when(this.slowHandler.handleRequest(request, executionContext))
+        .thenReturn(Observable.error(new RuntimeException()));
+    String fingerprint = QueryFingerprint.of(request);
+
+    model
+        .select(request, staticCosts(0.1, 0.5, 0.9))
+        .handleRequest(request, executionContext)
+        .blockingSubscribe();
+    model
+        .select(request, Map.of(this.slowHandler, 0.1))
+        .handleRequest(request, executionContext)
+        .onErrorComplete()
+        .blockingSubscribe();
+
+    assertNotEquals(0.1, model.getCost(this.fastHandler, fingerprint, 0.1));
+    // A handler that never succeeded has the highest learned cost
+    assertTrue(model.getCost(this.slowHandler, fingerprint, 0.1) > 0.1);
+  }
+
+  @Test
+  void stopsLearningBeyondMaxFingerprints() {
+    LatencyCostModel model = createModel(Map.of("maxFingerprints", 1));
+    String firstFingerprint = QueryFingerprint.of(createRequest("tenant1", 0, HOUR_MILLIS));
+    String secondFingerprint = QueryFingerprint.of(createRequest("tenant1", 0, 100 * HOUR_MILLIS));
+
+    model.record("slow", firstFingerprint, Duration.ofSeconds(10), false);
+    model.record("slow", secondFingerprint, Duration.ofSeconds(10), false);
+
+    assertNotEquals(0.0, model.getCost(this.slowHandler, firstFingerprint, 0));
+    assertEquals(0.0, model.getCost(this.slowHandler, secondFingerprint, 0));
+  }
+
+  @Test
+  void fingerprintIgnoresLiteralValuesButNotTimeRangeDuration() {
+    assertEquals(
+        QueryFingerprint.of(createRequest("tenant1", 0, HOUR_MILLIS)),
+        QueryFingerprint.of(createRequest("tenant2", 5 * HOUR_MILLIS, 6 * HOUR_MILLIS)));
+    assertNotEquals(
+        QueryFingerprint.of(createRequest("tenant1", 0, HOUR_MILLIS)),
+        QueryFingerprint.of(createRequest("tenant1", 0, 48 * HOUR_MILLIS)));
+  }
+
+  private LatencyCostModel createModel(Map<String, Object> overrides) {
+    Map<String, Object> config = new LinkedHashMap<>(overrides);
+    config.put("enabled", true);
+    return new LatencyCostModel(
+        new LatencyCostModelConfig(ConfigFactory.parseMap(config)), this.random);
+  }
+
+  private Map<RequestHandler, Double> staticCosts(
+      double fastCost, double slowCost, double expensiveCost) {
+    Map<RequestHandler, Double> staticCosts = new LinkedHashMap<>();
+    staticCosts.put(this.fastHandler, fastCost);
+    staticCosts.put(this.slowHandler, slowCost);
+    staticCosts.put(this.expensiveHandler, expensiveCost);
+    return staticCosts;
+  }
+
+  private static QueryRequest createRequest(String serviceId, long startTime, long endTime) {
+    return QueryRequest.newBuilder()
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createEqualsFilter("Span.serviceId", serviceId),
+                createTimeFilter(START_TIME, Operator.GE, startTime),
+                createTimeFilter(START_TIME, Operator.LT, endTime)))
+        .setLimit(10)
+        .build();
+  }
+}
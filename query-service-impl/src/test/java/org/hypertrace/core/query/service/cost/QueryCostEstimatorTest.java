@@ -0,0 +1,121 @@
+package org.hypertrace.core.query.service.cost;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeColumnGroupByExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.Optional;
+import org.hypertrace.core.query.service.QueryServiceConfig.CostValidationConfig;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.cost.QueryCostEstimator.QueryCostEstimate;
+import org.junit.jupiter.api.Test;
+
+class QueryCostEstimatorTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+  private static final Expression SERVICE_NAME = createColumnExpression("Span.serviceName").build();
+  private static final Expression COUNT =
+      createAliasedFunctionExpression("COUNT", "Span.id", "count").build();
+  private static final Expression HOURLY = createTimeColumnGroupByExpression(START_TIME, "1:HOURS");
+
+  private final QueryCostEstimator estimator =
+      new QueryCostEstimator(
+          new CostValidationConfig(
+              ConfigFactory.parseString(
+                  "mode = ERROR\n"
+                      + "rowsPerHour = 1000\n"
+                      + "rollupRowsPerHour = 10\n"
+                      + "filterSelectivity = 0.1\n"
+                      + "defaultGroupByCardinality = 100\n"
+                      + "groupByCardinalities { Span.serviceName = 5 }")));
+
+  @Test
+  void estimatesScannedRowsFromTimeRangeAndFilters() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(SERVICE_NAME)
+            .setFilter(
+                createCompositeFilter(
+                    Operator.AND,
+                    createEqualsFilter("Span.environment", "prod"),
+                    createTimeFilter(START_TIME, Operator.GE, 0),
+                    createTimeFilter(START_TIME, Operator.LT, 24 * HOUR_MILLIS)))
+            .setLimit(10)
+            .build();
+
+    assertEquals(
+        Optional.of(new QueryCostEstimate(2400, 1, Duration.ofHours(24), Optional.empty())),
+        this.estimator.estimate("tenant", request));
+  }
+
+  @Test
+  void estimatesGroupsFromTimeBucketsAndCardinalities() {
+    QueryRequest request = createAggregationRequest(24 * HOUR_MILLIS, 1000);
+
+    // Hourly counts are served by the rollup view
+    assertEquals(
+        Optional.of(
+            new QueryCostEstimate(
+                240, 120, Duration.ofHours(24), Optional.of(Duration.ofHours(1)))),
+        this.estimator.estimate("tenant", request));
+  }
+
+  @Test
+  void learnsGroupsOfResultsNotCutOffByLimit() {
+    QueryRequest request = createAggregationRequest(24 * HOUR_MILLIS, 1000);
+    QueryRequest limitedRequest = createAggregationRequest(24 * HOUR_MILLIS, 40);
+
+    this.estimator.record("tenant", request, 48);
+    assertEquals(48, this.estimator.estimate("tenant", request).orElseThrow().getGroups());
+
+    // Results cut off by the limit only tell there are at least as many groups
+    this.estimator.record("tenant", limitedRequest, 40);
+    assertEquals(120, this.estimator.estimate("tenant", request).orElseThrow().getGroups());
+  }
+
+  @Test
+  void learnsGroupsPerTenant() {
+    QueryRequest request = createAggregationRequest(24 * HOUR_MILLIS, 1000);
+
+    this.estimator.record("tenant", request, 48);
+    assertEquals(48, this.estimator.estimate("tenant", request).orElseThrow().getGroups());
+    assertEquals(120, this.estimator.estimate("other-tenant", request).orElseThrow().getGroups());
+  }
+
+  @Test
+  void doesNotEstimateWithoutTimeRange() {
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(SERVICE_NAME)
+            .setFilter(createEqualsFilter("Span.environment", "prod"))
+            .build();
+
+    assertFalse(this.estimator.estimate("tenant", request).isPresent());
+  }
+
+  private static QueryRequest createAggregationRequest(long endTime, int limit) {
+    return QueryRequest.newBuilder()
+        .addSelection(HOURLY)
+        .addSelection(SERVICE_NAME)
+        .addGroupBy(HOURLY)
+        .addGroupBy(SERVICE_NAME)
+        .addAggregation(COUNT)
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(START_TIME, Operator.GE, 0),
+                createTimeFilter(START_TIME, Operator.LT, endTime)))
+        .setLimit(limit)
+        .build();
+  }
+}
@@ -0,0 +1,202 @@
+package org.hypertrace.core.query.service.federation;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createInFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.hypertrace.core.attribute.service.cachingclient.CachingAttributeClient;
+import org.hypertrace.core.attribute.service.v1.AttributeKind;
+import org.hypertrace.core.attribute.service.v1.AttributeMetadata;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InListSplitterTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final String TRACE_ID = "Span.traceId";
+  private static final String LABELS = "Span.labels";
+
+  private final CachingAttributeClient attributeClient = mock(CachingAttributeClient.class);
+  private final InListSplitter splitter = new InListSplitter(true, 2, 4, this.attributeClient);
+  private final RequestHandler handler = mock(RequestHandler.class);
+
+  @BeforeEach
+  void setup() {
+    mockAttributeKind(TRACE_ID, AttributeKind.TYPE_STRING);
+    mockAttributeKind(LABELS, AttributeKind.TYPE_STRING_ARRAY);
+    when(this.handler.getName()).thenReturn("pinot");
+    when(this.handler.getTimeFilterColumn()).thenReturn(Optional.of(START_TIME));
+    // A row per trace id of the part
+    when(this.handler.handleRequest(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              QueryRequest partRequest = invocation.getArgument(0);
+              return Observable.fromIterable(getTraceIds(partRequest.getFilter()))
+                  .map(InListSplitterTest::row);
+            });
+  }
+
+  @Test
+  void splitsLargeInListIntoParts() {
+    QueryRequest request = createTraceRequest(List.of("t1", "t2", "t3", "t4", "t5", "t1"), 0);
+
+    Optional<RequestHandler> splitHandler = this.splitter.split(request, this.handler);
+
+    assertEquals("in-list-split[pinot]", splitHandler.map(RequestHandler::getName).orElseThrow());
+    assertEquals(Optional.of(START_TIME), splitHandler.get().getTimeFilterColumn());
+    List<Row> rows =
+        splitHandler
+            .get()
+            .handleRequest(request, new ExecutionContext("tenant", request))
+            .toList()
+            .blockingGet();
+    assertEquals(
+        Set.of(row("t1"), row("t2"), row("t3"), row("t4"), row("t5")), Set.copyOf(rows));
+    assertEquals(5, rows.size());
+  }
+
+  @Test
+  void appliesLimitToMergedRows() {
+    QueryRequest request = createTraceRequest(List.of("t1", "t2", "t3", "t4", "t5"), 3);
+
+    assertEquals(
+        3,
+        this.splitter
+            .split(request, this.handler)
+            .orElseThrow()
+            .handleRequest(request, new ExecutionContext("tenant", request))
+            .toList()
+            .blockingGet()
+            .size());
+  }
+
+  @Test
+  void recordsApproximationsOfParts() {
+    QueryRequest request = createTraceRequest(List.of("t1", "t2", "t3"), 0);
+    ExecutionContext context = new ExecutionContext("tenant", request);
+    doAnswer(
+            invocation -> {
+              ExecutionContext partContext = invocation.getArgument(1);
+              partContext.recordApproximation(
+                  Function.newBuilder().setFunctionName("ID").setAlias(TRACE_ID).build(),
+                  "APPROXIMATE_ID");
+              return Observable.empty();
+            })
+        .when(this.handler)
+        .handleRequest(any(), any());
+
+    this.splitter
+        .split(request, this.handler)
+        .orElseThrow()
+        .handleRequest(request, context)
+        .blockingSubscribe();
+
+    assertEquals(
+        "APPROXIMATE_ID", context.getResultSetMetadata().getColumnMetadata(0).getApproximation());
+  }
+
+  @Test
+  void mergesPartsOfMultiValuedColumnOnlyIfDeduplicated() {
+    // A span labeled with every value of the list
+    when(this.handler.handleRequest(any(), any())).thenReturn(Observable.just(row("span-1")));
+    QueryRequest request =
+        createTraceRequest(List.of("t1"), 0).toBuilder()
+            .setFilter(createInFilter(LABELS, List.of("l1", "l2", "l3")))
+            .build();
+
+    // Its rows would be duplicated by the parts, so the whole list is queried
+    assertEquals(List.of(row("span-1")), this.execute(request));
+    verify(this.handler).handleRequest(eq(request), any());
+
+    QueryRequest distinctRequest = request.toBuilder().setDistinctSelections(true).build();
+    assertEquals(List.of(row("span-1")), this.execute(distinctRequest));
+    verify(this.handler, never()).handleRequest(eq(distinctRequest), any());
+  }
+
+  @Test
+  void doesNotSplitSmallInList() {
+    assertTrue(
+        this.splitter.split(createTraceRequest(List.of("t1", "t2"), 0), this.handler).isEmpty());
+  }
+
+  @Test
+  void doesNotSplitAggregations() {
+    QueryRequest request =
+        createTraceRequest(List.of("t1", "t2", "t3"), 0).toBuilder()
+            .clearSelection()
+            .addAggregation(createAliasedFunctionExpression("COUNT", "Span.id", "count"))
+            .build();
+
+    assertTrue(this.splitter.split(request, this.handler).isEmpty());
+  }
+
+  @Test
+  void doesNotSplitIfDisabled() {
+    assertTrue(
+        InListSplitter.DISABLED
+            .split(createTraceRequest(List.of("t1", "t2", "t3"), 0), this.handler)
+            .isEmpty());
+  }
+
+  private List<Row> execute(QueryRequest request) {
+    return this.splitter
+        .split(request, this.handler)
+        .orElseThrow()
+        .handleRequest(request, new ExecutionContext("tenant", request))
+        .toList()
+        .blockingGet();
+  }
+
+  private void mockAttributeKind(String attributeId, AttributeKind kind) {
+    when(this.attributeClient.get(attributeId))
+        .thenReturn(Single.just(AttributeMetadata.newBuilder().setValueKind(kind).build()));
+  }
+
+  private static QueryRequest createTraceRequest(List<String> traceIds, int limit) {
+    return QueryRequest.newBuilder()
+        .addSelection(createColumnExpression(TRACE_ID))
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(START_TIME, Operator.GE, 1000),
+                createInFilter(TRACE_ID, traceIds)))
+        .setLimit(limit)
+        .build();
+  }
+
+  private static List<String> getTraceIds(Filter filter) {
+    return filter.getChildFilterList().stream()
+        .filter(childFilter -> childFilter.getOperator() == Operator.IN)
+        .map(childFilter -> childFilter.getRhs().getLiteral().getValue().getStringArrayList())
+        .flatMap(List::stream)
+        .collect(Collectors.toList());
+  }
+
+  private static Row row(String value) {
+    return Row.newBuilder().addColumn(Value.newBuilder().setString(value)).build();
+  }
+}
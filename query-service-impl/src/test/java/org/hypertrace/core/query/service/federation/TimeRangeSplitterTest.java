@@ -0,0 +1,190 @@
+package org.hypertrace.core.query.service.federation;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.reactivex.rxjava3.core.Observable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.federation.TimeRangeSplitter.TimeRangePart;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TimeRangeSplitterTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final long NOW_MILLIS = Duration.ofDays(20000).toMillis();
+  private static final long DAY_MILLIS = Duration.ofDays(1).toMillis();
+
+  private final TimeRangeSplitter splitter =
+      new TimeRangeSplitter(true, Clock.fixed(Instant.ofEpochMilli(NOW_MILLIS), ZoneOffset.UTC));
+  private final RequestHandler rawHandler = mock(RequestHandler.class);
+  private final RequestHandler hourlyHandler = mock(RequestHandler.class);
+  private final RequestHandler dailyHandler = mock(RequestHandler.class);
+
+  @BeforeEach
+  void setup() {
+    mockHandler(this.rawHandler, "raw", Duration.ofMinutes(1), Duration.ofDays(1));
+    mockHandler(this.hourlyHandler, "hourly", Duration.ofHours(1), Duration.ofDays(7));
+    mockHandler(this.dailyHandler, "daily", Duration.ofDays(1), Duration.ofDays(90));
+  }
+
+  @Test
+  void splitsTimeRangeNotRetainedByFinestHandler() {
+    QueryRequest request = createCountRequest(NOW_MILLIS - 30 * DAY_MILLIS, NOW_MILLIS);
+    ExecutionContext executionContext = new ExecutionContext("tenant", request);
+
+    Optional<RequestHandler> splitHandler =
+        this.splitter.split(
+            request,
+            executionContext,
+            List.of(this.dailyHandler, this.rawHandler, this.hourlyHandler));
+
+    assertEquals(
+        "time-range-split[daily,hourly,raw]",
+        splitHandler.map(RequestHandler::getName).orElseThrow());
+    assertEquals(Optional.of(START_TIME), splitHandler.get().getTimeFilterColumn());
+  }
+
+  @Test
+  void doesNotSplitTimeRangeRetainedByFinestHandler() {
+    QueryRequest request = createCountRequest(NOW_MILLIS - DAY_MILLIS / 2, NOW_MILLIS);
+    assertTrue(
+        this.splitter
+            .split(
+                request,
+                new ExecutionContext("tenant", request),
+                List.of(this.rawHandler, this.hourlyHandler))
+            .isEmpty());
+  }
+
+  @Test
+  void doesNotSplitAggregationGroupedByOtherThanTimeBuckets() {
+    QueryRequest request =
+        createCountRequest(NOW_MILLIS - 30 * DAY_MILLIS, NOW_MILLIS).toBuilder()
+            .addGroupBy(createColumnExpression("Span.service_name"))
+            .addSelection(createColumnExpression("Span.service_name"))
+            .setLimit(10)
+            .build();
+    assertTrue(
+        this.splitter
+            .split(
+                request,
+                new ExecutionContext("tenant", request),
+                List.of(this.rawHandler, this.hourlyHandler))
+            .isEmpty());
+  }
+
+  @Test
+  void doesNotSplitIfDisabled() {
+    QueryRequest request = createCountRequest(NOW_MILLIS - 30 * DAY_MILLIS, NOW_MILLIS);
+    assertTrue(
+        TimeRangeSplitter.DISABLED
+            .split(
+                request,
+                new ExecutionContext("tenant", request),
+                List.of(this.rawHandler, this.hourlyHandler))
+            .isEmpty());
+  }
+
+  @Test
+  void plansPartsAlignedToCoarserGranularity() {
+    // The retention of the handlers starts a second past an hour and a day boundary
+    Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW_MILLIS + 1000), ZoneOffset.UTC);
+    long rawStartMillis = NOW_MILLIS - DAY_MILLIS + Duration.ofHours(1).toMillis();
+    long hourlyStartMillis = NOW_MILLIS - 6 * DAY_MILLIS;
+
+    assertEquals(
+        List.of(
+            new TimeRangePart(this.dailyHandler, NOW_MILLIS - 30 * DAY_MILLIS, hourlyStartMillis),
+            new TimeRangePart(this.hourlyHandler, hourlyStartMillis, rawStartMillis),
+            new TimeRangePart(this.rawHandler, rawStartMillis, NOW_MILLIS)),
+        new TimeRangeSplitter(true, clock)
+            .plan(
+                List.of(this.rawHandler, this.hourlyHandler, this.dailyHandler),
+                NOW_MILLIS - 30 * DAY_MILLIS,
+                NOW_MILLIS,
+                Optional.empty()));
+  }
+
+  @Test
+  void skipsCoarserHandlersNotRetainingLonger() {
+    RequestHandler shortHourlyHandler = mock(RequestHandler.class);
+    mockHandler(shortHourlyHandler, "short-hourly", Duration.ofHours(1), Duration.ofHours(12));
+    QueryRequest request = createCountRequest(NOW_MILLIS - 3 * DAY_MILLIS, NOW_MILLIS);
+
+    assertEquals(
+        "time-range-split[hourly,raw]",
+        this.splitter
+            .split(
+                request,
+                new ExecutionContext("tenant", request),
+                List.of(shortHourlyHandler, this.rawHandler, this.hourlyHandler))
+            .map(RequestHandler::getName)
+            .orElseThrow());
+  }
+
+  @Test
+  void executesPartsAndMergesTheirRows() {
+    QueryRequest request = createCountRequest(NOW_MILLIS - 3 * DAY_MILLIS, NOW_MILLIS);
+    ExecutionContext executionContext = new ExecutionContext("tenant", request);
+    when(this.rawHandler.handleRequest(any(), any())).thenReturn(Observable.just(row("5")));
+    when(this.hourlyHandler.handleRequest(any(), any())).thenReturn(Observable.just(row("7")));
+
+    List<Row> rows =
+        this.splitter
+            .split(request, executionContext, List.of(this.rawHandler, this.hourlyHandler))
+            .orElseThrow()
+            .handleRequest(request, executionContext)
+            .toList()
+            .blockingGet();
+
+    assertEquals(List.of(row("12")), rows);
+    ArgumentCaptor<ExecutionContext> rawContext = ArgumentCaptor.forClass(ExecutionContext.class);
+    verify(this.rawHandler).handleRequest(any(), rawContext.capture());
+    assertEquals(
+        Optional.of(Duration.ofMillis(DAY_MILLIS)), rawContext.getValue().getTimeRangeDuration());
+  }
+
+  private static void mockHandler(
+      RequestHandler handler, String name, Duration granularity, Duration retention) {
+    when(handler.getName()).thenReturn(name);
+    when(handler.getTimeFilterColumn()).thenReturn(Optional.of(START_TIME));
+    when(handler.getTimeGranularity()).thenReturn(Optional.of(granularity));
+    when(handler.getRetention()).thenReturn(Optional.of(retention));
+  }
+
+  private static QueryRequest createCountRequest(long startTimeMillis, long endTimeMillis) {
+    return QueryRequest.newBuilder()
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(START_TIME, Operator.GE, startTimeMillis),
+                createTimeFilter(START_TIME, Operator.LT, endTimeMillis)))
+        .addAggregation(createAliasedFunctionExpression("COUNT", "Span.id", "count"))
+        .setLimit(1)
+        .build();
+  }
+
+  private static Row row(String value) {
+    return Row.newBuilder().addColumn(Value.newBuilder().setString(value)).build();
+  }
+}
@@ -0,0 +1,113 @@
+package org.hypertrace.core.query.service.filter;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createNotEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createAlwaysFalseFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createContainsKeyFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Set;
+import java.util.function.Predicate;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Operator;
+import org.junit.jupiter.api.Test;
+
+class CalciteFilterSimplifierTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final String SERVICE = "Span.service_name";
+  private static final String TAGS = "Span.tags";
+  private static final String LABELS = "Span.labels";
+  private static final String STATUS_CODE = "Span.status_code";
+  private static final Predicate<String> IS_SINGLE_VALUED =
+      Set.of(START_TIME, SERVICE, TAGS, STATUS_CODE)::contains;
+  private static final Predicate<String> IS_STRING = Set.of(SERVICE, LABELS)::contains;
+
+  private final CalciteFilterSimplifier simplifier = new CalciteFilterSimplifier();
+
+  @Test
+  void dropsRangesSubsumedInsideOr() {
+    Filter filter =
+        createCompositeFilter(
+                Operator.OR,
+                createTimeFilter(START_TIME, Operator.GT, 2000),
+                createTimeFilter(START_TIME, Operator.GT, 1000))
+            .build();
+
+    assertEquals(
+        createTimeFilter(START_TIME, Operator.GT, 1000),
+        this.simplifier.simplify(filter, IS_SINGLE_VALUED, IS_STRING));
+  }
+
+  @Test
+  void detectsContradictions() {
+    Filter filter =
+        createCompositeFilter(
+                Operator.AND,
+                createEqualsFilter(SERVICE, "frontend"),
+                createTimeFilter(START_TIME, Operator.GE, 2000),
+                createTimeFilter(START_TIME, Operator.LT, 1000))
+            .build();
+
+    assertEquals(
+        createAlwaysFalseFilter(), this.simplifier.simplify(filter, IS_SINGLE_VALUED, IS_STRING));
+  }
+
+  @Test
+  void dropsComparisonsImpliedByEquality() {
+    Filter filter =
+        createCompositeFilter(
+                Operator.AND,
+                createEqualsFilter(SERVICE, "frontend"),
+                createNotEqualsFilter(SERVICE, "backend"))
+            .build();
+
+    assertEquals(
+        createEqualsFilter(SERVICE, "frontend"),
+        this.simplifier.simplify(filter, IS_SINGLE_VALUED, IS_STRING));
+  }
+
+  @Test
+  void pushesNegationIntoComparisonsAndKeepsOtherFilters() {
+    Filter containsKey = createContainsKeyFilter(TAGS, "span.kind");
+    Filter filter =
+        createCompositeFilter(
+                Operator.AND,
+                containsKey,
+                createCompositeFilter(
+                        Operator.NOT, createTimeFilter(START_TIME, Operator.GE, 1000))
+                    .build())
+            .build();
+
+    assertEquals(
+        createCompositeFilter(
+                Operator.AND, containsKey, createTimeFilter(START_TIME, Operator.LT, 1000))
+            .build(),
+        this.simplifier.simplify(filter, IS_SINGLE_VALUED, IS_STRING));
+  }
+
+  @Test
+  void leavesStringValuesOfNonStringColumnsUnchanged() {
+    // The values are converted to numbers by the data stores, so both may match
+    Filter filter =
+        createCompositeFilter(
+                Operator.AND,
+                createEqualsFilter(STATUS_CODE, "200"),
+                createEqualsFilter(STATUS_CODE, "200.0"))
+            .build();
+
+    assertEquals(filter, this.simplifier.simplify(filter, IS_SINGLE_VALUED, IS_STRING));
+  }
+
+  @Test
+  void leavesMultiValuedColumnsUnchanged() {
+    // Both can match through different values of the labels
+    Filter filter =
+        createCompositeFilter(
+                Operator.AND, createEqualsFilter(LABELS, "a"), createEqualsFilter(LABELS, "b"))
+            .build();
+
+    assertEquals(filter, this.simplifier.simplify(filter, IS_SINGLE_VALUED, IS_STRING));
+  }
+}
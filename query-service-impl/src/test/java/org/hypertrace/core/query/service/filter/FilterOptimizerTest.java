@@ -0,0 +1,245 @@
+package org.hypertrace.core.query.service.filter;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createInFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createNotEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createNotInFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createAlwaysFalseFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createContainsKeyFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Operator;
+import org.junit.jupiter.api.Test;
+
+class FilterOptimizerTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final String SERVICE = "Span.service_name";
+  private static final String TAGS = "Span.tags";
+  private static final String LABELS = "Span.labels";
+  private static final String STATUS_CODE = "Span.status_code";
+
+  private final FilterOptimizer optimizer =
+      new FilterOptimizer(
+          Set.of(START_TIME, SERVICE, TAGS, STATUS_CODE)::contains,
+          Set.of(SERVICE, LABELS)::contains);
+
+  @Test
+  void flattensNestedFiltersAndDropsDuplicates() {
+    Filter containsKey = createContainsKeyFilter(TAGS, "span.kind");
+    Filter serviceFilter = createNotEqualsFilter(SERVICE, "frontend");
+    Filter filter =
+        createCompositeFilter(
+                Operator.AND,
+                createCompositeFilter(Operator.AND, containsKey).build(),
+                createCompositeFilter(
+                        Operator.AND,
+                        createCompositeFilter(Operator.AND, serviceFilter, containsKey).build())
+                    .build(),
+                containsKey)
+            .build();
+
+    assertEquals(
+        createCompositeFilter(Operator.AND, containsKey, serviceFilter).build(),
+        this.optimizer.optimize(filter));
+  }
+
+  @Test
+  void unwrapsSingleChildFilters() {
+    Filter serviceFilter = createNotEqualsFilter(SERVICE, "frontend");
+    assertEquals(
+        serviceFilter,
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.OR, createCompositeFilter(Operator.AND, serviceFilter).build())
+                .build()));
+  }
+
+  @Test
+  void mergesEqualsIntoInInsideOr() {
+    Filter filter =
+        createCompositeFilter(
+                Operator.OR,
+                createEqualsFilter(SERVICE, "frontend"),
+                createNotEqualsFilter(TAGS, "x"),
+                createInFilter(SERVICE, List.of("backend", "frontend")),
+                createEqualsFilter(SERVICE, "db"))
+            .build();
+
+    assertEquals(
+        createCompositeFilter(
+                Operator.OR,
+                createInFilter(SERVICE, List.of("frontend", "backend", "db")),
+                createNotEqualsFilter(TAGS, "x"))
+            .build(),
+        this.optimizer.optimize(filter));
+  }
+
+  @Test
+  void intersectsValuesOfSingleValuedColumnsInsideAnd() {
+    assertEquals(
+        createEqualsFilter(SERVICE, "frontend"),
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.AND,
+                    createInFilter(SERVICE, List.of("backend", "frontend")),
+                    createEqualsFilter(SERVICE, "frontend"))
+                .build()));
+
+    assertEquals(
+        createInFilter(SERVICE, List.of("frontend")),
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.AND,
+                    createInFilter(SERVICE, List.of("backend", "frontend")),
+                    createInFilter(SERVICE, List.of("frontend", "db")))
+                .build()));
+
+    assertEquals(
+        createAlwaysFalseFilter(),
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.AND,
+                    createEqualsFilter(SERVICE, "frontend"),
+                    createEqualsFilter(SERVICE, "backend"))
+                .build()));
+  }
+
+  @Test
+  void onlyDropsImpliedValueFiltersOfMultiValuedColumns() {
+    Filter labelFilter = createEqualsFilter(LABELS, "a");
+    Filter otherLabelFilter = createEqualsFilter(LABELS, "b");
+    Filter bothLabelsFilter =
+        createCompositeFilter(Operator.AND, labelFilter, otherLabelFilter).build();
+    assertEquals(bothLabelsFilter, this.optimizer.optimize(bothLabelsFilter));
+
+    assertEquals(
+        labelFilter,
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.AND, createInFilter(LABELS, List.of("a", "b")), labelFilter)
+                .build()));
+  }
+
+  @Test
+  void onlyDropsImpliedValueFiltersOfNonStringColumns() {
+    // The values are converted to numbers by the data stores, so the string values may differ
+    Filter filter =
+        createCompositeFilter(
+                Operator.AND,
+                createEqualsFilter(STATUS_CODE, "200"),
+                createInFilter(STATUS_CODE, List.of("200.0", "404")))
+            .build();
+    assertEquals(filter, this.optimizer.optimize(filter));
+
+    assertEquals(
+        createEqualsFilter(STATUS_CODE, "200"),
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.AND,
+                    createEqualsFilter(STATUS_CODE, "200"),
+                    createInFilter(STATUS_CODE, List.of("200", "404")))
+                .build()));
+  }
+
+  @Test
+  void intersectsRanges() {
+    Filter filter =
+        createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(START_TIME, Operator.GE, 100),
+                createNotEqualsFilter(SERVICE, "frontend"),
+                createTimeFilter(START_TIME, Operator.LT, 500),
+                createTimeFilter(START_TIME, Operator.GT, 200),
+                createTimeFilter(START_TIME, Operator.LE, 500),
+                createTimeFilter(START_TIME, Operator.GE, 200))
+            .build();
+
+    assertEquals(
+        createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(START_TIME, Operator.GT, 200),
+                createTimeFilter(START_TIME, Operator.LT, 500),
+                createNotEqualsFilter(SERVICE, "frontend"))
+            .build(),
+        this.optimizer.optimize(filter));
+  }
+
+  @Test
+  void detectsContradictions() {
+    assertEquals(
+        createAlwaysFalseFilter(),
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.AND,
+                    createTimeFilter(START_TIME, Operator.GE, 500),
+                    createTimeFilter(START_TIME, Operator.LT, 500))
+                .build()));
+
+    assertEquals(
+        createAlwaysFalseFilter(),
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.AND,
+                    createTimeFilter(START_TIME, Operator.GE, 100),
+                    createInFilter(SERVICE, List.of()))
+                .build()));
+
+    // A contradiction in one branch of an OR only drops that branch
+    assertEquals(
+        createNotEqualsFilter(SERVICE, "frontend"),
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.OR,
+                    createCompositeFilter(
+                            Operator.AND,
+                            createTimeFilter(START_TIME, Operator.GT, 500),
+                            createTimeFilter(START_TIME, Operator.LE, 100))
+                        .build(),
+                    createNotEqualsFilter(SERVICE, "frontend"))
+                .build()));
+
+    // Disjoint bounds can both match different values of a multi-valued column
+    Filter labelRanges =
+        createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(LABELS, Operator.GT, 500),
+                createTimeFilter(LABELS, Operator.LE, 100))
+            .build();
+    assertEquals(labelRanges, this.optimizer.optimize(labelRanges));
+  }
+
+  @Test
+  void keepsEmptyCompositeFilters() {
+    // Unlike the always false filter, a client may send an empty OR
+    Filter emptyOr = Filter.newBuilder().setOperator(Operator.OR).build();
+    assertEquals(emptyOr, this.optimizer.optimize(emptyOr));
+  }
+
+  @Test
+  void dropsTautologies() {
+    Filter serviceFilter = createNotEqualsFilter(SERVICE, "frontend");
+    assertEquals(
+        serviceFilter,
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.AND, createNotInFilter(SERVICE, List.of()), serviceFilter)
+                .build()));
+
+    assertEquals(
+        Filter.getDefaultInstance(),
+        this.optimizer.optimize(
+            createCompositeFilter(
+                    Operator.OR, createNotInFilter(SERVICE, List.of()), serviceFilter)
+                .build()));
+
+    assertEquals(
+        createAlwaysFalseFilter(),
+        this.optimizer.optimize(
+            createCompositeFilter(Operator.NOT, createNotInFilter(SERVICE, List.of())).build()));
+  }
+}
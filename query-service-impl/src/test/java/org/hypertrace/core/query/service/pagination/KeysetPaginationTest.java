@@ -0,0 +1,271 @@
+package org.hypertrace.core.query.service.pagination;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedAttributeExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCountByColumnSelection;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createOrderByExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createSimpleAttributeExpression;
+import static org.hypertrace.core.query.service.QueryRequestUtil.createStringLiteralValueExpression;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.grpc.Status;
+import io.grpc.StatusException;
+import io.reactivex.rxjava3.core.Single;
+import java.util.List;
+import java.util.Optional;
+import org.hypertrace.core.attribute.service.cachingclient.CachingAttributeClient;
+import org.hypertrace.core.attribute.service.v1.AttributeKind;
+import org.hypertrace.core.attribute.service.v1.AttributeMetadata;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryTransformation.QueryTransformationContext;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.LiteralConstant;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class KeysetPaginationTest {
+  private static final String TENANT_ID = "tenant1";
+
+  private final CachingAttributeClient attributeClient = mock(CachingAttributeClient.class);
+  private final KeysetPaginationTransformation transformation =
+      new KeysetPaginationTransformation(this.attributeClient);
+  private final QueryTransformationContext transformationContext =
+      mock(QueryTransformationContext.class);
+
+  @BeforeEach
+  void setup() {
+    when(this.attributeClient.get(any()))
+        .thenReturn(Single.error(new IllegalArgumentException("No attribute metadata")));
+  }
+
+  @Test
+  void generatesContinuationTokenForFullPage() {
+    QueryRequest request = buildTraceListingRequest().build();
+    KeysetPagination pagination =
+        KeysetPagination.forRequest(request, new ExecutionContext(TENANT_ID, request))
+            .orElseThrow();
+
+    Row lastRow =
+        Row.newBuilder()
+            .addColumn(stringValue("trace-2"))
+            .addColumn(stringValue("1000"))
+            .addColumn(stringValue("svc"))
+            .build();
+
+    assertEquals(Optional.empty(), pagination.continuationToken(lastRow, 1));
+    String token = pagination.continuationToken(lastRow, 2).orElseThrow();
+    assertEquals(
+        List.of(stringValue("1000"), stringValue("trace-2")), ContinuationToken.decode(token));
+  }
+
+  @Test
+  void doesNotPaginateAggregationsOrUnselectedSortKeys() {
+    QueryRequest aggregationRequest =
+        buildTraceListingRequest()
+            .clearSelection()
+            .addAggregation(createCountByColumnSelection("Trace.id"))
+            .build();
+    assertEquals(
+        Optional.empty(),
+        KeysetPagination.forRequest(
+            aggregationRequest, new ExecutionContext(TENANT_ID, aggregationRequest)));
+
+    QueryRequest unselectedSortKeyRequest =
+        buildTraceListingRequest()
+            .addOrderBy(
+                createOrderByExpression(
+                    createSimpleAttributeExpression("Trace.duration"), SortOrder.ASC))
+            .build();
+    assertEquals(
+        Optional.empty(),
+        KeysetPagination.forRequest(
+            unselectedSortKeyRequest, new ExecutionContext(TENANT_ID, unselectedSortKeyRequest)));
+
+    QueryRequest unlimitedRequest = buildTraceListingRequest().clearLimit().build();
+    assertEquals(
+        Optional.empty(),
+        KeysetPagination.forRequest(
+            unlimitedRequest, new ExecutionContext(TENANT_ID, unlimitedRequest)));
+  }
+
+  @Test
+  void transformsContinuationTokenIntoSeekFilter() {
+    Filter timeFilter =
+        createCompositeFilter(
+                Operator.AND,
+                createTimeFilter("Trace.startTime", Operator.GE, 100),
+                createTimeFilter("Trace.startTime", Operator.LT, 2000))
+            .build();
+    String token = ContinuationToken.encode(List.of(stringValue("1000"), stringValue("trace-2")));
+    QueryRequest request =
+        buildTraceListingRequest()
+            .setFilter(timeFilter)
+            .setOffset(40)
+            .setContinuationToken(token)
+            .build();
+
+    Expression startTime = createSimpleAttributeExpression("Trace.startTime").build();
+    Expression traceId = createSimpleAttributeExpression("Trace.id").build();
+    Filter expectedSeekFilter =
+        createCompositeFilter(
+                Operator.OR,
+                createFilter(startTime, Operator.LT, literal(stringValue("1000"))),
+                createCompositeFilter(
+                        Operator.AND,
+                        createFilter(startTime, Operator.EQ, literal(stringValue("1000"))),
+                        createFilter(traceId, Operator.GT, literal(stringValue("trace-2"))))
+                    .build())
+            .build();
+
+    assertEquals(
+        buildTraceListingRequest()
+            .setFilter(timeFilter.toBuilder().addChildFilter(expectedSeekFilter))
+            .build(),
+        this.transformation.transform(request, this.transformationContext).blockingGet());
+  }
+
+  @Test
+  void transformsSingleSortKeyIntoSingleComparison() {
+    Expression traceId = createSimpleAttributeExpression("Trace.id").build();
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(traceId)
+            .addOrderBy(createOrderByExpression(traceId.toBuilder(), SortOrder.ASC))
+            .setLimit(2)
+            .setContinuationToken(ContinuationToken.encode(List.of(stringValue("trace-2"))))
+            .build();
+
+    assertEquals(
+        request.toBuilder()
+            .clearContinuationToken()
+            .setFilter(createFilter(traceId, Operator.GT, literal(stringValue("trace-2"))))
+            .build(),
+        this.transformation.transform(request, this.transformationContext).blockingGet());
+  }
+
+  @Test
+  void convertsSortKeyValuesToSortColumnTypes() {
+    mockAttributeKind("Trace.startTime", AttributeKind.TYPE_TIMESTAMP);
+    mockAttributeKind("Trace.duration", AttributeKind.TYPE_INT64);
+    Expression startTime = createSimpleAttributeExpression("Trace.startTime").build();
+    Expression duration = createSimpleAttributeExpression("Trace.duration").build();
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(startTime)
+            .addSelection(duration)
+            .addOrderBy(createOrderByExpression(duration.toBuilder(), SortOrder.DESC))
+            .addOrderBy(createOrderByExpression(startTime.toBuilder(), SortOrder.ASC))
+            .setLimit(2)
+            .setContinuationToken(
+                ContinuationToken.encode(List.of(stringValue("9"), stringValue("1000"))))
+            .build();
+
+    Value nine = Value.newBuilder().setValueType(ValueType.LONG).setLong(9).build();
+    Value thousand =
+        Value.newBuilder().setValueType(ValueType.TIMESTAMP).setTimestamp(1000).build();
+    assertEquals(
+        request.toBuilder()
+            .clearContinuationToken()
+            .setFilter(
+                createCompositeFilter(
+                    Operator.OR,
+                    createFilter(duration, Operator.LT, literal(nine)),
+                    createCompositeFilter(
+                            Operator.AND,
+                            createFilter(duration, Operator.EQ, literal(nine)),
+                            createFilter(startTime, Operator.GT, literal(thousand)))
+                        .build()))
+            .build(),
+        this.transformation.transform(request, this.transformationContext).blockingGet());
+
+    QueryRequest invalidValueRequest =
+        request.toBuilder()
+            .setContinuationToken(
+                ContinuationToken.encode(List.of(stringValue("nine"), stringValue("1000"))))
+            .build();
+    assertInvalidArgument(invalidValueRequest);
+  }
+
+  @Test
+  void rejectsInvalidContinuationTokens() {
+    QueryRequest malformedTokenRequest =
+        buildTraceListingRequest().setContinuationToken("not a token").build();
+    assertInvalidArgument(malformedTokenRequest);
+
+    QueryRequest mismatchedTokenRequest =
+        buildTraceListingRequest()
+            .setContinuationToken(ContinuationToken.encode(List.of(stringValue("trace-2"))))
+            .build();
+    assertInvalidArgument(mismatchedTokenRequest);
+
+    QueryRequest unorderedRequest =
+        buildTraceListingRequest()
+            .clearOrderBy()
+            .setContinuationToken(ContinuationToken.encode(List.of(stringValue("trace-2"))))
+            .build();
+    assertInvalidArgument(unorderedRequest);
+  }
+
+  @Test
+  void leavesRequestsWithoutContinuationTokenUnchanged() {
+    QueryRequest request =
+        buildTraceListingRequest()
+            .setFilter(
+                createFilter("Trace.id", Operator.NEQ, createStringLiteralValueExpression("")))
+            .setOffset(40)
+            .build();
+    assertEquals(
+        request, this.transformation.transform(request, this.transformationContext).blockingGet());
+  }
+
+  private void assertInvalidArgument(QueryRequest request) {
+    Throwable throwable =
+        assertThrows(
+            RuntimeException.class,
+            () -> this.transformation.transform(request, this.transformationContext).blockingGet());
+    assertTrue(throwable.getCause() instanceof StatusException);
+    assertEquals(
+        Status.Code.INVALID_ARGUMENT,
+        ((StatusException) throwable.getCause()).getStatus().getCode());
+  }
+
+  private QueryRequest.Builder buildTraceListingRequest() {
+    return QueryRequest.newBuilder()
+        .addSelection(createAliasedAttributeExpression("Trace.id", "id"))
+        .addSelection(createSimpleAttributeExpression("Trace.startTime"))
+        .addSelection(createSimpleAttributeExpression("Trace.service"))
+        .addOrderBy(
+            createOrderByExpression(
+                createSimpleAttributeExpression("Trace.startTime"), SortOrder.DESC))
+        .addOrderBy(
+            createOrderByExpression(createSimpleAttributeExpression("Trace.id"), SortOrder.ASC))
+        .setLimit(2);
+  }
+
+  private void mockAttributeKind(String attributeId, AttributeKind kind) {
+    when(this.attributeClient.get(attributeId))
+        .thenReturn(Single.just(AttributeMetadata.newBuilder().setValueKind(kind).build()));
+  }
+
+  private Expression literal(Value value) {
+    return Expression.newBuilder().setLiteral(LiteralConstant.newBuilder().setValue(value)).build();
+  }
+
+  private Value stringValue(String value) {
+    return Value.newBuilder().setValueType(ValueType.STRING).setString(value).build();
+  }
+}
@@ -47,4 +47,40 @@ public class DestinationColumnValueConverterTest {
           converter.convert(getStringValue("abc"), ValueType.BYTES);
         });
   }
+
+  @Test
+  public void testBytesValuesArePassedThroughForBytesColumn() throws Exception {
+    DestinationColumnValueConverter converter = DestinationColumnValueConverter.INSTANCE;
+
+    Value bytesValue =
+        Value.newBuilder()
+            .setValueType(ValueType.BYTES)
+            .setBytes(ByteString.copyFrom(new byte[] {0x04, 0x2e, 0x55}))
+            .build();
+    Assertions.assertSame(bytesValue, converter.convert(bytesValue, ValueType.BYTES));
+
+    Value bytesArrayValue =
+        Value.newBuilder()
+            .setValueType(ValueType.BYTES_ARRAY)
+            .addBytesArray(ByteString.copyFrom(new byte[] {0x04, 0x2e}))
+            .build();
+    Assertions.assertSame(bytesArrayValue, converter.convert(bytesArrayValue, ValueType.BYTES));
+  }
+
+  @Test
+  public void testConvertToBytesValue() throws Exception {
+    DestinationColumnValueConverter converter = DestinationColumnValueConverter.INSTANCE;
+
+    Value value = converter.convertToBytesValue("042e5523ff6b2506");
+    Assertions.assertEquals(ValueType.BYTES, value.getValueType());
+    Assertions.assertEquals(
+        ByteString.copyFrom(new byte[] {0x04, 0x2e, 0x55, 0x23, (byte) 0xff, 0x6b, 0x25, 0x06}),
+        value.getBytes());
+
+    value = converter.convertToBytesValue("");
+    Assertions.assertEquals(ValueType.BYTES, value.getValueType());
+    Assertions.assertEquals(ByteString.EMPTY, value.getBytes());
+
+    Assertions.assertThrows(DecoderException.class, () -> converter.convertToBytesValue("abc"));
+  }
 }
@@ -14,13 +14,19 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.reactivex.rxjava3.core.Observable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.pinot.client.ResultSet;
 import org.apache.pinot.client.ResultSetGroup;
@@ -1227,6 +1233,148 @@ public class PinotBasedRequestHandlerTest {
     }
   }
 
+  @Test
+  void testCanHandle_prefersCoarsestViewForAlignedTimeRange() {
+    PinotBasedRequestHandler rawHandler =
+        createTraceViewHandler("raw-handler", TimeUnit.MINUTES.toMillis(1));
+    PinotBasedRequestHandler hourlyHandler =
+        createTraceViewHandler("hourly-handler", TimeUnit.HOURS.toMillis(1));
+    long endTime =
+        TimeUnit.HOURS.toMillis(TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis()));
+    long startTime = endTime - TimeUnit.DAYS.toMillis(7);
+
+    QueryRequest hourlyRequest = createTraceCountTimeSeriesRequest(startTime, endTime, "1:HOURS");
+    double rawCost =
+        rawHandler
+            .canHandle(hourlyRequest, new ExecutionContext("__default", hourlyRequest))
+            .getCost();
+    double hourlyCost =
+        hourlyHandler
+            .canHandle(hourlyRequest, new ExecutionContext("__default", hourlyRequest))
+            .getCost();
+    Assertions.assertTrue(rawCost >= 0.0d && rawCost < 0.5d);
+    Assertions.assertTrue(hourlyCost >= 0.0d && hourlyCost < rawCost);
+
+    // Time bounds not aligned to the hours: the hourly view would count partial buckets
+    QueryRequest unalignedRequest =
+        createTraceCountTimeSeriesRequest(
+            startTime + TimeUnit.MINUTES.toMillis(1), endTime, "1:HOURS");
+    rawCost =
+        rawHandler
+            .canHandle(unalignedRequest, new ExecutionContext("__default", unalignedRequest))
+            .getCost();
+    hourlyCost =
+        hourlyHandler
+            .canHandle(unalignedRequest, new ExecutionContext("__default", unalignedRequest))
+            .getCost();
+    Assertions.assertTrue(rawCost >= 0.0d && rawCost < hourlyCost);
+    Assertions.assertTrue(hourlyCost < 0.5d);
+
+    // The hourly view can't serve time series with periods finer than or not multiple of hours
+    QueryRequest minutelyRequest =
+        createTraceCountTimeSeriesRequest(startTime, endTime, "90:MINUTES");
+    Assertions.assertTrue(
+        rawHandler
+                .canHandle(minutelyRequest, new ExecutionContext("__default", minutelyRequest))
+                .getCost()
+            >= 0.0d);
+    Assertions.assertEquals(
+        QueryCost.UNSUPPORTED,
+        hourlyHandler.canHandle(
+            minutelyRequest, new ExecutionContext("__default", minutelyRequest)));
+  }
+
+  @Test
+  void testCanHandle_prefersFinestViewUnlessAggregatingAlignedTimeRange() {
+    PinotBasedRequestHandler rawHandler =
+        createTraceViewHandler("raw-handler", TimeUnit.MINUTES.toMillis(1));
+    PinotBasedRequestHandler hourlyHandler =
+        createTraceViewHandler("hourly-handler", TimeUnit.HOURS.toMillis(1));
+    long endTime =
+        TimeUnit.HOURS.toMillis(TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis()));
+    long startTime = endTime - TimeUnit.DAYS.toMillis(7);
+
+    // Selections return rows, which the hourly view has rolled up
+    QueryRequest selectionRequest =
+        QueryRequest.newBuilder()
+            .addSelection(QueryRequestBuilderUtils.createColumnExpression("Trace.id"))
+            .setFilter(
+                QueryRequestBuilderUtils.createCompositeFilter(
+                    Operator.AND,
+                    QueryRequestBuilderUtils.createTimeFilter(
+                        "Trace.start_time_millis", Operator.GE, startTime),
+                    QueryRequestBuilderUtils.createTimeFilter(
+                        "Trace.start_time_millis", Operator.LT, endTime)))
+            .build();
+    double rawCost =
+        rawHandler
+            .canHandle(selectionRequest, new ExecutionContext("__default", selectionRequest))
+            .getCost();
+    double hourlyCost =
+        hourlyHandler
+            .canHandle(selectionRequest, new ExecutionContext("__default", selectionRequest))
+            .getCost();
+    Assertions.assertEquals(TimeUnit.MINUTES.toMillis(1) / (Long.MAX_VALUE * 2D), rawCost);
+    Assertions.assertTrue(rawCost < hourlyCost);
+
+    // Without time bounds, no time bucket is known to be complete
+    QueryRequest unboundedRequest =
+        QueryRequest.newBuilder()
+            .addAggregation(
+                QueryRequestBuilderUtils.createAliasedFunctionExpression(
+                    "COUNT", "Trace.id", "count"))
+            .build();
+    rawCost =
+        rawHandler
+            .canHandle(unboundedRequest, new ExecutionContext("__default", unboundedRequest))
+            .getCost();
+    hourlyCost =
+        hourlyHandler
+            .canHandle(unboundedRequest, new ExecutionContext("__default", unboundedRequest))
+            .getCost();
+    Assertions.assertEquals(TimeUnit.MINUTES.toMillis(1) / (Long.MAX_VALUE * 2D), rawCost);
+    Assertions.assertTrue(rawCost < hourlyCost);
+  }
+
+  private PinotBasedRequestHandler createTraceViewHandler(String name, long timeGranularityMillis) {
+    Config config =
+        ConfigFactory.parseString(
+            "tenantColumnName = tenant_id\n"
+                + "startTimeAttributeName = \"Trace.start_time_millis\"\n"
+                + "viewDefinition = {\n"
+                + "  viewName = TraceView\n"
+                + "  retentionTimeMillis = "
+                + TimeUnit.DAYS.toMillis(30)
+                + "\n"
+                + "  timeGranularityMillis = "
+                + timeGranularityMillis
+                + "\n"
+                + "  fieldMap = {\n"
+                + "    \"Trace.id\": \"trace_id\",\n"
+                + "    \"Trace.start_time_millis\": \"start_time_millis\"\n"
+                + "  }\n"
+                + "}");
+    return new PinotBasedRequestHandler(name, config);
+  }
+
+  private QueryRequest createTraceCountTimeSeriesRequest(
+      long startTime, long endTime, String period) {
+    return QueryRequest.newBuilder()
+        .addGroupBy(
+            QueryRequestBuilderUtils.createTimeColumnGroupByExpression(
+                "Trace.start_time_millis", period))
+        .addAggregation(
+            QueryRequestBuilderUtils.createAliasedFunctionExpression("COUNT", "Trace.id", "count"))
+        .setFilter(
+            QueryRequestBuilderUtils.createCompositeFilter(
+                Operator.AND,
+                QueryRequestBuilderUtils.createTimeFilter(
+                    "Trace.start_time_millis", Operator.GE, startTime),
+                QueryRequestBuilderUtils.createTimeFilter(
+                    "Trace.start_time_millis", Operator.LT, endTime)))
+        .build();
+  }
+
   @Test
   public void testConvertSimpleSelectionsQueryResultSet() throws IOException {
     String[][] resultTable =
@@ -1324,6 +1472,133 @@ public class PinotBasedRequestHandlerTest {
         pinotBasedRequestHandler.convert(resultSetGroup, new LinkedHashSet<>()), expectedRows);
   }
 
+  @Test
+  public void testEncodesSameTableFormatRowsAsConverted() {
+    String[][] resultTable =
+        new String[][] {
+          {"operation-name-11", stringify(List.of("t1", "t2")), stringify(List.of("v1", "v2")), ""},
+          {"operation-name-12", stringify(List.of()), stringify(List.of()), "service-2"}
+        };
+    List<String> columnNames =
+        List.of(
+            "operation_name",
+            "tags1" + ViewDefinition.MAP_KEYS_SUFFIX,
+            "tags1" + ViewDefinition.MAP_VALUES_SUFFIX,
+            "service_name");
+    ResultSet resultSet = mockResultSet(2, 4, columnNames, resultTable);
+    ResultSetGroup resultSetGroup = mockResultSetGroup(List.of(resultSet));
+
+    List<Row> rows =
+        pinotBasedRequestHandler
+            .convert(resultSetGroup, new LinkedHashSet<>())
+            .toList()
+            .blockingGet();
+    Assertions.assertEquals(2, rows.size());
+    Assertions.assertEquals(
+        rows, pinotBasedRequestHandler.encode(resultSetGroup, new LinkedHashSet<>()).toRows());
+  }
+
+  @Test
+  public void testConvertSelectionsWithMapKeysAndValuesAsNativeMaps() {
+    PinotClientFactory pinotClientFactoryMock = mock(PinotClientFactory.class);
+    ResultSetTypePredicateProvider resultSetTypePredicateProviderMock =
+        mock(ResultSetTypePredicateProvider.class);
+    when(resultSetTypePredicateProviderMock.isSelectionResultSetType(any(ResultSet.class)))
+        .thenReturn(false);
+    when(resultSetTypePredicateProviderMock.isResultTableResultSetType(any(ResultSet.class)))
+        .thenReturn(true);
+    Config handlerConfig = firstOf(serviceConfig.getConfigList("queryRequestHandlersConfig"));
+    PinotBasedRequestHandler handler =
+        new PinotBasedRequestHandler(
+            handlerConfig.getString("name"),
+            handlerConfig
+                .getConfig("requestHandlerInfo")
+                .withValue("nativeMapValuesEnabled", ConfigValueFactory.fromAnyRef(true)),
+            resultSetTypePredicateProviderMock,
+            pinotClientFactoryMock);
+
+    String[][] resultTable =
+        new String[][] {
+          {"operation-name-11", "[\"t1\",\"t2\"]", "[\"v1\",\"v2\"]"},
+          {"operation-name-12", "[\"\"]", "[\"\"]"}
+        };
+    List<String> columnNames =
+        List.of(
+            "operation_name",
+            "tags1" + ViewDefinition.MAP_KEYS_SUFFIX,
+            "tags1" + ViewDefinition.MAP_VALUES_SUFFIX);
+    ResultSet resultSet = mockResultSet(2, 3, columnNames, resultTable);
+    ResultSetGroup resultSetGroup = mockResultSetGroup(List.of(resultSet));
+
+    List<Row> rows = handler.convert(resultSetGroup, new LinkedHashSet<>()).toList().blockingGet();
+    Assertions.assertEquals(2, rows.size());
+    Assertions.assertEquals("operation-name-11", rows.get(0).getColumn(0).getString());
+    Assertions.assertEquals(ValueType.STRING_MAP, rows.get(0).getColumn(1).getValueType());
+    Assertions.assertEquals(
+        Map.of("t1", "v1", "t2", "v2"), rows.get(0).getColumn(1).getStringMapMap());
+    Assertions.assertEquals(ValueType.STRING_MAP, rows.get(1).getColumn(1).getValueType());
+    Assertions.assertEquals(Map.of(), rows.get(1).getColumn(1).getStringMapMap());
+  }
+
+  @Test
+  public void testConvertSelectionsWithMapSubpathsQueryResultSet() throws IOException {
+    Config handlerConfig =
+        serviceConfig.getConfigList("queryRequestHandlersConfig").stream()
+            .filter(config -> config.getString("name").equals("trace-view-handler"))
+            .findFirst()
+            .orElseThrow();
+    ResultSetTypePredicateProvider resultSetTypePredicateProviderMock =
+        mock(ResultSetTypePredicateProvider.class);
+    when(resultSetTypePredicateProviderMock.isSelectionResultSetType(any(ResultSet.class)))
+        .thenReturn(true);
+    PinotBasedRequestHandler handler =
+        new PinotBasedRequestHandler(
+            handlerConfig.getString("name"),
+            handlerConfig.getConfig("requestHandlerInfo"),
+            resultSetTypePredicateProviderMock,
+            mock(PinotClientFactory.class));
+
+    // Subpaths are extracted by Pinot, whole maps are returned as keys and values
+    String[][] resultTable =
+        new String[][] {
+          {
+            "trace-id-1",
+            "server",
+            "200",
+            stringify(List.of("t1", "t2")),
+            stringify(List.of("v1", "v2")),
+            "80"
+          },
+          {"trace-id-2", "client", "", stringify(List.of()), stringify(List.of()), "79"}
+        };
+    List<String> columnNames =
+        List.of(
+            "trace_id",
+            "mapvalue(tags__KEYS,'span.kind',tags__VALUES)",
+            "mapvalue(tags__KEYS,'status.code',tags__VALUES)",
+            "tags" + ViewDefinition.MAP_KEYS_SUFFIX,
+            "tags" + ViewDefinition.MAP_VALUES_SUFFIX,
+            "duration_millis");
+    ResultSet resultSet = mockResultSet(2, 6, columnNames, resultTable);
+    ResultSetGroup resultSetGroup = mockResultSetGroup(List.of(resultSet));
+
+    LinkedHashSet<Expression> selections = new LinkedHashSet<>();
+    selections.add(QueryRequestBuilderUtils.createColumnExpression("Trace.id").build());
+    selections.add(createComplexAttributeExpression("Trace.tags", "span.kind").build());
+    selections.add(createComplexAttributeExpression("Trace.tags", "status.code").build());
+    selections.add(QueryRequestBuilderUtils.createColumnExpression("Trace.tags").build());
+    selections.add(
+        QueryRequestBuilderUtils.createColumnExpression("Trace.duration_millis").build());
+
+    String[][] expectedRows =
+        new String[][] {
+          {"trace-id-1", "server", "200", stringify(Map.of("t1", "v1", "t2", "v2")), "80"},
+          {"trace-id-2", "client", "", stringify(Map.of()), "79"}
+        };
+
+    verifyResponseRows(handler.convert(resultSetGroup, selections), expectedRows);
+  }
+
   @Test
   public void testConvertMultipleResultSetsInFResultSetGroup() throws IOException {
     List<String> columnNames =
@@ -1561,6 +1836,188 @@ public class PinotBasedRequestHandlerTest {
     }
   }
 
+  @Test
+  public void testTimeShardedRequestFailsOnceShardsTimeOut() {
+    Config config =
+        ConfigFactory.parseString(
+            "tenantColumnName = tenant_id\n"
+                + "startTimeAttributeName = \"Trace.start_time_millis\"\n"
+                + "timeSharding = { enabled = true, maxShards = 2, shardTimeout = 100ms }\n"
+                + "viewDefinition = {\n"
+                + "  viewName = TraceView\n"
+                + "  fieldMap = {\n"
+                + "    \"Trace.id\": \"trace_id\",\n"
+                + "    \"Trace.start_time_millis\": \"start_time_millis\"\n"
+                + "  }\n"
+                + "}");
+    PinotClient pinotClient = mock(PinotClient.class);
+    PinotClientFactory factory = mock(PinotClientFactory.class);
+    when(factory.getPinotClient(any())).thenReturn(pinotClient);
+    List<CompletableFuture<ResultSetGroup>> shardResults = new ArrayList<>();
+    when(pinotClient.executeQueryAsync(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<ResultSetGroup> shardResult = new CompletableFuture<>();
+              shardResults.add(shardResult);
+              return shardResult;
+            });
+    PinotBasedRequestHandler handler =
+        new PinotBasedRequestHandler(
+            "trace-view-handler", config, mock(ResultSetTypePredicateProvider.class), factory);
+
+    long endTime =
+        TimeUnit.HOURS.toMillis(TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis()));
+    QueryRequest request =
+        createTraceCountTimeSeriesRequest(endTime - TimeUnit.DAYS.toMillis(2), endTime, "1:HOURS")
+            .toBuilder()
+            .setLimit(100)
+            .build();
+    ExecutionContext context = new ExecutionContext("__default", request);
+    context.setTimeFilterColumn("Trace.start_time_millis");
+
+    StatusRuntimeException exception =
+        Assertions.assertThrows(
+            StatusRuntimeException.class,
+            () -> handler.handleRequest(request, context).toList().blockingGet());
+    Assertions.assertEquals(Status.Code.DEADLINE_EXCEEDED, exception.getStatus().getCode());
+    Assertions.assertEquals(2, shardResults.size());
+    Assertions.assertTrue(shardResults.stream().allMatch(CompletableFuture::isCancelled));
+  }
+
+  @Test
+  public void testComputesSelectionsDifferingOnlyByAliasOnce() throws IOException {
+    Config handlerConfig =
+        serviceConfig.getConfigList("queryRequestHandlersConfig").stream()
+            .filter(config -> config.getString("name").equals("trace-view-handler"))
+            .findFirst()
+            .orElseThrow();
+    PinotClient pinotClient = mock(PinotClient.class);
+    PinotClientFactory factory = mock(PinotClientFactory.class);
+    when(factory.getPinotClient(any())).thenReturn(pinotClient);
+    ResultSetTypePredicateProvider resultSetTypePredicateProviderMock =
+        mock(ResultSetTypePredicateProvider.class);
+    when(resultSetTypePredicateProviderMock.isResultTableResultSetType(any(ResultSet.class)))
+        .thenReturn(true);
+    PinotBasedRequestHandler handler =
+        new PinotBasedRequestHandler(
+            handlerConfig.getString("name"),
+            handlerConfig.getConfig("requestHandlerInfo"),
+            resultSetTypePredicateProviderMock,
+            factory);
+
+    String[][] resultTable = new String[][] {{"trace-id-1", "3"}, {"trace-id-2", "5"}};
+    ResultSet resultSet = mockResultSet(2, 2, List.of("trace_id", "count(*)"), resultTable);
+    // The count is computed once for both of its aliases
+    String expectedQuery =
+        "Select trace_id, COUNT(*) FROM RawTraceView WHERE tenant_id = ? GROUP BY trace_id";
+    Params params = Params.newBuilder().addStringParam("__default").build();
+    when(pinotClient.executeQuery(expectedQuery, params))
+        .thenReturn(mockResultSetGroup(List.of(resultSet)));
+
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addGroupBy(QueryRequestBuilderUtils.createColumnExpression("Trace.id"))
+            .addSelection(QueryRequestBuilderUtils.createAliasedColumnExpression("Trace.id", "id"))
+            .addAggregation(
+                QueryRequestBuilderUtils.createAliasedFunctionExpression(
+                    "COUNT", "Trace.id", "count"))
+            .addAggregation(
+                QueryRequestBuilderUtils.createAliasedFunctionExpression(
+                    "COUNT", "Trace.id", "total"))
+            .build();
+    ExecutionContext context = new ExecutionContext("__default", request);
+
+    verifyResponseRows(
+        handler.handleRequest(request, context),
+        new String[][] {
+          {"trace-id-1", "trace-id-1", "3", "3"}, {"trace-id-2", "trace-id-2", "5", "5"}
+        });
+  }
+
+  @Test
+  public void testEncodesSameSelectionRowsAsConverted() {
+    Config handlerConfig =
+        serviceConfig.getConfigList("queryRequestHandlersConfig").stream()
+            .filter(config -> config.getString("name").equals("trace-view-handler"))
+            .findFirst()
+            .orElseThrow();
+    PinotClient pinotClient = mock(PinotClient.class);
+    PinotClientFactory factory = mock(PinotClientFactory.class);
+    when(factory.getPinotClient(any())).thenReturn(pinotClient);
+    ResultSetTypePredicateProvider resultSetTypePredicateProviderMock =
+        mock(ResultSetTypePredicateProvider.class);
+    when(resultSetTypePredicateProviderMock.isSelectionResultSetType(any(ResultSet.class)))
+        .thenReturn(true);
+    String[][] resultTable =
+        new String[][] {
+          {"trace-id-1", "[\"t1\",\"t2\"]", "[\"v1\",\"v2\"]"}, {"", "[\"\"]", "[\"\"]"}
+        };
+    ResultSet resultSet =
+        mockResultSet(2, 3, List.of("trace_id", "tags__KEYS", "tags__VALUES"), resultTable);
+    when(pinotClient.executeQuery(any(), any()))
+        .thenReturn(mockResultSetGroup(List.of(resultSet)));
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addSelection(QueryRequestBuilderUtils.createColumnExpression("Trace.id"))
+            .addSelection(QueryRequestBuilderUtils.createColumnExpression("Trace.tags"))
+            .build();
+
+    for (boolean compiled : List.of(false, true)) {
+      PinotBasedRequestHandler handler =
+          new PinotBasedRequestHandler(
+              handlerConfig.getString("name"),
+              handlerConfig
+                  .getConfig("requestHandlerInfo")
+                  .withValue(
+                      "compiledSelectionConverters.enabled",
+                      ConfigValueFactory.fromAnyRef(compiled)),
+              resultSetTypePredicateProviderMock,
+              factory);
+
+      List<Row> rows =
+          handler
+              .handleRequest(request, new ExecutionContext("__default", request))
+              .toList()
+              .blockingGet();
+      List<Row> encodedRows =
+          handler
+              .handleRequestEncoded(request, new ExecutionContext("__default", request))
+              .orElseThrow()
+              .toList()
+              .blockingGet()
+              .stream()
+              .flatMap(encoded -> encoded.toRows().stream())
+              .collect(Collectors.toList());
+      Assertions.assertEquals(2, rows.size());
+      Assertions.assertEquals(rows, encodedRows);
+    }
+  }
+
+  @Test
+  public void testLeavesAggregationsToRowHandling() {
+    PinotBasedRequestHandler handler =
+        new PinotBasedRequestHandler(
+            "trace-view-handler",
+            serviceConfig.getConfigList("queryRequestHandlersConfig").stream()
+                .filter(config -> config.getString("name").equals("trace-view-handler"))
+                .findFirst()
+                .orElseThrow()
+                .getConfig("requestHandlerInfo"),
+            mock(ResultSetTypePredicateProvider.class),
+            mock(PinotClientFactory.class));
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addAggregation(
+                QueryRequestBuilderUtils.createAliasedFunctionExpression(
+                    "COUNT", "Trace.id", "count"))
+            .build();
+
+    Assertions.assertTrue(
+        handler
+            .handleRequestEncoded(request, new ExecutionContext("__default", request))
+            .isEmpty());
+  }
+
   @Test
   public void testViewColumnFilterRemoval() throws IOException {
     for (Config config : serviceConfig.getConfigList("queryRequestHandlersConfig")) {
@@ -4,13 +4,17 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -91,4 +95,97 @@ public class PinotMapConverterTest {
     String largerValuesString = objectMapper.writeValueAsString(validValues);
     assertEquals(expectedValidMapString, target.merge(validKeysJsonString, largerValuesString));
   }
+
+  @Test
+  public void test_merge_duplicateKeys_shouldKeepLastValue() throws IOException {
+    String keys = objectMapper.writeValueAsString(List.of(KEY1, KEY2, KEY1));
+    String values = objectMapper.writeValueAsString(List.of(VAL1, VAL2, "VAL3"));
+    assertEquals(Map.of(KEY1, "VAL3", KEY2, VAL2), readMap(target.merge(keys, values)));
+    assertEquals(target.mergeUsingMap(keys, values), target.merge(keys, values));
+  }
+
+  @Test
+  public void test_merge_escapedCharacters_shouldMatchMapBasedMerge() throws IOException {
+    String keys = objectMapper.writeValueAsString(List.of("k\"1", "k\\2", "k\u00e93"));
+    String values = objectMapper.writeValueAsString(List.of("v\n1", "{\"a\":1}", "v\t3"));
+    // The map based merge orders the keys by their hash instead of their position
+    assertEquals(readMap(target.mergeUsingMap(keys, values)), readMap(target.merge(keys, values)));
+  }
+
+  @Test
+  public void test_merge_manyKeys_shouldMatchMapBasedMerge() throws IOException {
+    List<String> keys = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      keys.add("key" + (i % 25));
+      values.add("value" + i);
+    }
+    String keysJson = objectMapper.writeValueAsString(keys);
+    String valuesJson = objectMapper.writeValueAsString(values);
+    assertEquals(
+        readMap(target.mergeUsingMap(keysJson, valuesJson)),
+        readMap(target.merge(keysJson, valuesJson)));
+  }
+
+  @Test
+  public void test_merge_invalidJson_shouldThrowException() {
+    assertThrows(IOException.class, () -> target.merge("{\"a\":1}", "[]"));
+  }
+
+  @Test
+  public void test_mergeInto_validKeysAndValues_shouldReturnStringMap() throws IOException {
+    Value.Builder valueBuilder = Value.newBuilder();
+    target.mergeInto(validKeysJsonString, validValueJsonString, valueBuilder);
+    assertEquals(ValueType.STRING_MAP, valueBuilder.getValueType());
+    assertEquals(expectedMap, valueBuilder.getStringMapMap());
+  }
+
+  @Test
+  public void test_mergeInto_PinotemptyList_shouldReturnEmptyStringMap() throws IOException {
+    Value.Builder valueBuilder = Value.newBuilder();
+    target.mergeInto("[\"\"]", "[\"\"]", valueBuilder);
+    assertEquals(ValueType.STRING_MAP, valueBuilder.getValueType());
+    assertEquals(Collections.emptyMap(), valueBuilder.getStringMapMap());
+  }
+
+  @Test
+  public void test_mergeInto_largerKeysThanValues_shouldReturnBasedOnKeys() throws IOException {
+    String newKey = "KEY3";
+    expectedMap.put(newKey, "");
+    validKeys.add(newKey);
+    Value.Builder valueBuilder = Value.newBuilder();
+    target.mergeInto(
+        objectMapper.writeValueAsString(validKeys), validValueJsonString, valueBuilder);
+    assertEquals(expectedMap, valueBuilder.getStringMapMap());
+  }
+
+  @Test
+  public void test_mergeInto_largerValuesThanKeys_shouldReturnBasedOnKeys() throws IOException {
+    validValues.add("VALUE3");
+    Value.Builder valueBuilder = Value.newBuilder();
+    target.mergeInto(
+        validKeysJsonString, objectMapper.writeValueAsString(validValues), valueBuilder);
+    assertEquals(expectedMap, valueBuilder.getStringMapMap());
+  }
+
+  @Test
+  public void test_mergeInto_duplicateKeys_shouldMatchMerge() throws IOException {
+    String keys = objectMapper.writeValueAsString(List.of(KEY1, KEY2, KEY1));
+    String values = objectMapper.writeValueAsString(List.of(VAL1, VAL2, "VAL3"));
+    Value.Builder valueBuilder = Value.newBuilder();
+    target.mergeInto(keys, values, valueBuilder);
+    assertEquals(
+        objectMapper.readValue(target.merge(keys, values), Map.class),
+        valueBuilder.getStringMapMap());
+  }
+
+  @Test
+  public void test_mergeInto_invalidJson_shouldThrowException() {
+    assertThrows(
+        IOException.class, () -> target.mergeInto("{\"a\":1}", "[]", Value.newBuilder()));
+  }
+
+  private Map<String, String> readMap(String json) throws IOException {
+    return objectMapper.readValue(json, new TypeReference<Map<String, String>>() {});
+  }
 }
@@ -1,5 +1,6 @@
 package org.hypertrace.core.query.service.pinot;
 
+import com.google.protobuf.ByteString;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -37,4 +38,19 @@ public class PinotQueryTest {
     Assertions.assertEquals(
         "select * from table where team in ('abc', 'pqr with (?)', 'xyz')", statement);
   }
+
+  @Test
+  public void testResolveStatementWithMixedParams() {
+    String statement =
+        PinotClientFactory.PinotClient.resolveStatement(
+            "select * from table where id in (?, ?) and duration > ? limit 10",
+            Params.newBuilder()
+                .addByteStringParam(ByteString.copyFrom(new byte[] {0x0a, 0x1b}))
+                .addStringParam("it's")
+                .addLongParam(5L)
+                .build());
+
+    Assertions.assertEquals(
+        "select * from table where id in ('0a1b', 'it''s') and duration > 5 limit 10", statement);
+  }
 }
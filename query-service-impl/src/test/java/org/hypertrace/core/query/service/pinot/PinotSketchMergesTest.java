@@ -0,0 +1,210 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createIntLiteralValueExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilterWithSimpleAttribute;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.clearspring.analytics.stream.cardinality.HyperLogLog;
+import com.tdunning.math.stats.MergingDigest;
+import com.typesafe.config.ConfigFactory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.commons.codec.binary.Hex;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.PartialAggregation;
+import org.hypertrace.core.query.service.api.Accuracy;
+import org.hypertrace.core.query.service.api.ColumnMetadata;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.pinot.converters.PinotFunctionConverterConfig;
+import org.junit.jupiter.api.Test;
+
+class PinotSketchMergesTest {
+  private static final String START_TIME = "Span.start_time_millis";
+  private static final long DAY_MILLIS = 86400000;
+
+  private static final Expression COUNT =
+      createAliasedFunctionExpression("COUNT", "Span.id", "count").build();
+  private static final Expression AVG =
+      createAliasedFunctionExpression("AVG", "Span.duration_millis", "avg_duration").build();
+  private static final Expression DISTINCT_COUNT =
+      createAliasedFunctionExpression("DISTINCTCOUNT", "Span.traceId", "traces").build();
+  private static final Expression PERCENTILE =
+      Expression.newBuilder()
+          .setFunction(
+              Function.newBuilder()
+                  .setFunctionName("PERCENTILE")
+                  .addArguments(createIntLiteralValueExpression(90))
+                  .addArguments(createColumnExpression("Span.duration_millis"))
+                  .setAlias("p90_duration"))
+          .build();
+
+  private final PinotFunctionConverterConfig sketchFunctionConfig =
+      new PinotFunctionConverterConfig(
+          ConfigFactory.parseMap(Map.of("distinctCountAggFunction", "DISTINCTCOUNTHLL")));
+
+  @Test
+  void queriesSketchesForDistinctCountsAndPercentiles() {
+    QueryRequest request =
+        createRequest(List.of(), List.of(COUNT, AVG, DISTINCT_COUNT, PERCENTILE), 0);
+    PartialAggregation aggregation = createAggregation(request, this.sketchFunctionConfig);
+
+    QueryRequest shardRequest = aggregation.forTimeRange(START_TIME, 0, DAY_MILLIS);
+
+    assertEquals(
+        List.of("COUNT", "SUM", "DISTINCTCOUNTRAWHLL", "PERCENTILERAWTDIGEST90", "COUNT"),
+        shardRequest.getAggregationList().stream()
+            .map(aggregationExpression -> aggregationExpression.getFunction().getFunctionName())
+            .collect(Collectors.toList()));
+    assertEquals(
+        List.of(createColumnExpression("Span.duration_millis").build()),
+        shardRequest.getAggregation(3).getFunction().getArgumentsList());
+    assertEquals(
+        createCompositeFilter(
+                Operator.AND,
+                request.getFilter(),
+                createTimeFilterWithSimpleAttribute(START_TIME, Operator.GE, 0),
+                createTimeFilterWithSimpleAttribute(START_TIME, Operator.LT, DAY_MILLIS))
+            .build(),
+        shardRequest.getFilter());
+  }
+
+  @Test
+  void mergesSketchesOfShards() throws IOException {
+    QueryRequest request =
+        createRequest(List.of(), List.of(COUNT, AVG, DISTINCT_COUNT, PERCENTILE), 0);
+    PartialAggregation aggregation = createAggregation(request, this.sketchFunctionConfig);
+
+    List<Row> rows =
+        aggregation.merge(
+            List.of(
+                createRow("50", "2500", hyperLogLog(0, 60), tDigest(0, 50), "50"),
+                createRow("50", "7500", hyperLogLog(40, 100), tDigest(50, 100), "50")));
+
+    assertEquals(1, rows.size());
+    assertEquals("100", rows.get(0).getColumn(0).getString());
+    assertEquals("100.0", rows.get(0).getColumn(1).getString());
+    long distinctCount = Long.parseLong(rows.get(0).getColumn(2).getString());
+    assertTrue(distinctCount > 90 && distinctCount < 110, "Distinct count: " + distinctCount);
+    double percentile = Double.parseDouble(rows.get(0).getColumn(3).getString());
+    assertTrue(percentile > 85 && percentile < 95, "Percentile: " + percentile);
+  }
+
+  @Test
+  void onlyMergesSketchesComputedByView() {
+    QueryRequest request = createRequest(List.of(), List.of(COUNT, DISTINCT_COUNT), 0);
+
+    assertFalse(
+        forRequest(
+                request,
+                new ExecutionContext("tenant", request),
+                new PinotFunctionConverterConfig())
+            .isPresent());
+    assertFalse(
+        forRequest(
+                request,
+                new ExecutionContext("tenant", request),
+                new PinotFunctionConverterConfig(
+                    ConfigFactory.parseMap(
+                        Map.of(
+                            "distinctCountAggFunction",
+                            "DISTINCTCOUNTHLL",
+                            "distinctCountAggOverrides",
+                            Map.of("trace_id", "DISTINCTCOUNT")))))
+            .isPresent());
+  }
+
+  @Test
+  void followsRequestedAccuracy() {
+    QueryRequest request = createRequest(List.of(), List.of(COUNT, DISTINCT_COUNT, PERCENTILE), 0);
+    QueryRequest approximateRequest = request.toBuilder().setAccuracy(Accuracy.APPROXIMATE).build();
+    ExecutionContext executionContext = new ExecutionContext("tenant", approximateRequest);
+
+    assertTrue(
+        forRequest(approximateRequest, executionContext, new PinotFunctionConverterConfig())
+            .isPresent());
+    assertEquals(
+        List.of("", "DISTINCTCOUNTHLL", "PERCENTILETDIGEST"),
+        executionContext.getResultSetMetadata().getColumnMetadataList().stream()
+            .map(ColumnMetadata::getApproximation)
+            .collect(Collectors.toList()));
+
+    QueryRequest exactRequest = request.toBuilder().setAccuracy(Accuracy.EXACT).build();
+    assertFalse(
+        forRequest(
+                exactRequest,
+                new ExecutionContext("tenant", exactRequest),
+                this.sketchFunctionConfig)
+            .isPresent());
+  }
+
+  private static PartialAggregation createAggregation(
+      QueryRequest request, PinotFunctionConverterConfig functionConfig) {
+    return forRequest(request, new ExecutionContext("tenant", request), functionConfig)
+        .orElseThrow();
+  }
+
+  private static Optional<PartialAggregation> forRequest(
+      QueryRequest request,
+      ExecutionContext executionContext,
+      PinotFunctionConverterConfig functionConfig) {
+    return PartialAggregation.forRequest(
+        request,
+        executionContext,
+        PinotSketchMerges.forAccuracy(functionConfig, executionContext.getAccuracy()));
+  }
+
+  private static QueryRequest createRequest(
+      List<Expression> groupBys, List<Expression> aggregations, int limit) {
+    return QueryRequest.newBuilder()
+        .addAllSelection(groupBys)
+        .addAllGroupBy(groupBys)
+        .addAllAggregation(aggregations)
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(START_TIME, Operator.GE, 0),
+                createTimeFilter(START_TIME, Operator.LT, 30 * DAY_MILLIS)))
+        .setLimit(limit)
+        .build();
+  }
+
+  private static String hyperLogLog(int fromValue, int toValue) throws IOException {
+    HyperLogLog hyperLogLog = new HyperLogLog(8);
+    IntStream.range(fromValue, toValue).forEach(value -> hyperLogLog.offer("trace-" + value));
+    return Hex.encodeHexString(hyperLogLog.getBytes());
+  }
+
+  private static String tDigest(int fromValue, int toValue) {
+    MergingDigest tDigest = new MergingDigest(100);
+    IntStream.range(fromValue, toValue).forEach(tDigest::add);
+    ByteBuffer buffer = ByteBuffer.allocate(tDigest.byteSize());
+    tDigest.asBytes(buffer);
+    return Hex.encodeHexString(buffer.array());
+  }
+
+  private static Row createRow(String... values) {
+    return Row.newBuilder()
+        .addAllColumn(
+            Arrays.stream(values)
+                .map(value -> Value.newBuilder().setString(value).build())
+                .collect(Collectors.toList()))
+        .build();
+  }
+}
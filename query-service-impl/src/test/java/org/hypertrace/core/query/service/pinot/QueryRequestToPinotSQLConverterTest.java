@@ -7,6 +7,7 @@ import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createC
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCountByColumnSelection;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createFilter;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createFunctionExpression;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createInFilter;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createLongLiteralValueExpression;
@@ -24,6 +25,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.google.protobuf.ByteString;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import java.time.Duration;
@@ -38,10 +40,13 @@ import org.hypertrace.core.query.service.QueryFunctionConstants;
 import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.Filter;
 import org.hypertrace.core.query.service.api.Function;
+import org.hypertrace.core.query.service.api.LiteralConstant;
 import org.hypertrace.core.query.service.api.Operator;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.QueryRequest.Builder;
 import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
 import org.hypertrace.core.query.service.pinot.PinotClientFactory.PinotClient;
 import org.hypertrace.core.query.service.pinot.converters.PinotFunctionConverter;
 import org.junit.jupiter.api.Assertions;
@@ -781,6 +786,38 @@ public class QueryRequestToPinotSQLConverterTest {
         executionContext);
   }
 
+  @Test
+  public void testQueryWithBytesColumnWithBytesLiteralInFilter() {
+    Builder builder = QueryRequest.newBuilder();
+    builder.addSelection(createColumnExpression("Span.metrics.duration_millis"));
+
+    ByteString spanId =
+        ByteString.copyFrom(new byte[] {0x04, 0x2e, 0x55, 0x23, (byte) 0xff, 0x6b, 0x25, 0x06});
+    Expression bytesLiteral =
+        Expression.newBuilder()
+            .setLiteral(
+                LiteralConstant.newBuilder()
+                    .setValue(
+                        Value.newBuilder().setValueType(ValueType.BYTES).setBytes(spanId)))
+            .build();
+    builder.setFilter(createFilter("Span.id", Operator.EQ, bytesLiteral));
+
+    ViewDefinition viewDefinition = getDefaultViewDefinition();
+    defaultMockingForExecutionContext();
+
+    assertPQLQuery(
+        builder.build(),
+        "SELECT duration_millis FROM SpanEventView "
+            + "WHERE "
+            + viewDefinition.getTenantIdColumn()
+            + " = '"
+            + TENANT_ID
+            + "' "
+            + "AND span_id = '042e5523ff6b2506'",
+        viewDefinition,
+        executionContext);
+  }
+
   @Test
   public void testQueryWithStringColumnWithNullString() {
     Builder builder = QueryRequest.newBuilder();
@@ -0,0 +1,200 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createComplexAttributeExpression;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.pinot.client.ResultSet;
+import org.hypertrace.core.query.service.RowWriter;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
+import org.junit.jupiter.api.Test;
+
+class SelectionConverterCompilerTest {
+  private static final Config ENABLED_CONFIG = ConfigFactory.parseMap(Map.of("enabled", true));
+
+  private final ViewDefinition viewDefinition =
+      ViewDefinition.parse(
+          ConfigFactory.parseString(
+              "viewName = spanView\n"
+                  + "mapFields = [\"tags\"]\n"
+                  + "bytesFields = [\"span_id\"]\n"
+                  + "fieldMap = {\n"
+                  + "  \"Span.id\": \"span_id\",\n"
+                  + "  \"Span.name\": \"span_name\",\n"
+                  + "  \"Span.tags\": \"tags\"\n"
+                  + "}"),
+          "tenant_id");
+  private final LinkedHashSet<Expression> selections =
+      new LinkedHashSet<>(
+          List.of(
+              createColumnExpression("Span.id").build(),
+              createColumnExpression("Span.name").build(),
+              createComplexAttributeExpression("Span.tags", "span.kind").build(),
+              createColumnExpression("Span.tags").build()));
+
+  @Test
+  void convertsRowsWithResolvedColumns() {
+    ResultSet resultSet =
+        mockResultSet(
+            List.of(
+                "span_id",
+                "span_name",
+                "mapvalue(tags__KEYS,'span.kind',tags__VALUES)",
+                "tags__KEYS",
+                "tags__VALUES"),
+            new String[] {"0a0b", "checkout", "server", "[\"t1\",\"t2\"]", "[\"v1\",\"v2\"]"});
+    SelectionConverterCompiler compiler =
+        new SelectionConverterCompiler(ENABLED_CONFIG, this.viewDefinition, true, true);
+
+    Row.Builder builder = Row.newBuilder();
+    compiler
+        .getConverter(this.selections, analyze(resultSet))
+        .orElseThrow()
+        .convert(resultSet, 0, builder);
+
+    assertEquals(
+        Row.newBuilder()
+            .addColumn(
+                Value.newBuilder()
+                    .setValueType(ValueType.BYTES)
+                    .setBytes(ByteString.copyFrom(new byte[] {10, 11})))
+            .addColumn(Value.newBuilder().setString("checkout"))
+            .addColumn(Value.newBuilder().setString("server"))
+            .addColumn(
+                Value.newBuilder()
+                    .setValueType(ValueType.STRING_MAP)
+                    .putAllStringMap(Map.of("t1", "v1", "t2", "v2")))
+            .build(),
+        builder.build());
+  }
+
+  @Test
+  void writesSameRowsAsConverted() {
+    ResultSet resultSet =
+        mockResultSet(
+            List.of(
+                "span_id",
+                "span_name",
+                "mapvalue(tags__KEYS,'span.kind',tags__VALUES)",
+                "tags__KEYS",
+                "tags__VALUES"),
+            new String[] {"0a0b", "", "server", "[\"t1\",\"t2\"]", "[\"v1\",\"v2\"]"});
+    SelectionConverterCompiler compiler =
+        new SelectionConverterCompiler(ENABLED_CONFIG, this.viewDefinition, true, true);
+    CompiledSelectionConverter converter =
+        compiler.getConverter(this.selections, analyze(resultSet)).orElseThrow();
+
+    Row.Builder builder = Row.newBuilder();
+    converter.convert(resultSet, 0, builder);
+    RowWriter rowWriter = new RowWriter();
+    converter.write(resultSet, 0, rowWriter);
+    rowWriter.endRow();
+
+    assertEquals(List.of(builder.build()), rowWriter.build().toRows());
+  }
+
+  @Test
+  void mergesMapsIntoJsonStringsUnlessNative() {
+    ResultSet resultSet =
+        mockResultSet(
+            List.of("span_name", "tags__KEYS", "tags__VALUES"),
+            new String[] {"checkout", "[\"t1\"]", "[\"v1\"]"});
+    SelectionConverterCompiler compiler =
+        new SelectionConverterCompiler(ENABLED_CONFIG, this.viewDefinition, false, false);
+    LinkedHashSet<Expression> selections =
+        new LinkedHashSet<>(
+            List.of(
+                createColumnExpression("Span.name").build(),
+                createColumnExpression("Span.tags").build()));
+
+    Row.Builder builder = Row.newBuilder();
+    compiler
+        .getConverter(selections, analyze(resultSet, selections))
+        .orElseThrow()
+        .convert(resultSet, 0, builder);
+
+    assertEquals("checkout", builder.getColumn(0).getString());
+    assertEquals("{\"t1\":\"v1\"}", builder.getColumn(1).getString());
+  }
+
+  @Test
+  void reusesCompiledClassForSameLayout() {
+    ResultSet resultSet =
+        mockResultSet(
+            List.of(
+                "span_id",
+                "span_name",
+                "mapvalue(tags__KEYS,'span.kind',tags__VALUES)",
+                "tags__KEYS",
+                "tags__VALUES"),
+            new String[] {"0a0b", "checkout", "server", "[\"\"]", "[\"\"]"});
+    SelectionConverterCompiler compiler =
+        new SelectionConverterCompiler(ENABLED_CONFIG, this.viewDefinition, true, true);
+
+    assertSame(
+        compiler.getConverter(this.selections, analyze(resultSet)).orElseThrow().getClass(),
+        compiler.getConverter(this.selections, analyze(resultSet)).orElseThrow().getClass());
+  }
+
+  @Test
+  void leavesResultsWithMissingColumnsToInterpretedConversion() {
+    ResultSet resultSet =
+        mockResultSet(
+            List.of("span_id", "span_name", "mapvalue(tags__KEYS,'span.kind',tags__VALUES)"),
+            new String[] {"0a0b", "checkout", "server"});
+    SelectionConverterCompiler compiler =
+        new SelectionConverterCompiler(ENABLED_CONFIG, this.viewDefinition, true, true);
+
+    assertEquals(Optional.empty(), compiler.getConverter(this.selections, analyze(resultSet)));
+  }
+
+  @Test
+  void doesNotCompileIfDisabled() {
+    ResultSet resultSet = mockResultSet(List.of("span_name"), new String[] {"checkout"});
+    SelectionConverterCompiler compiler =
+        new SelectionConverterCompiler(ConfigFactory.empty(), this.viewDefinition, true, true);
+    LinkedHashSet<Expression> selections =
+        new LinkedHashSet<>(List.of(createColumnExpression("Span.name").build()));
+
+    assertTrue(compiler.getConverter(selections, analyze(resultSet, selections)).isEmpty());
+  }
+
+  private PinotResultAnalyzer analyze(ResultSet resultSet) {
+    return analyze(resultSet, this.selections);
+  }
+
+  private PinotResultAnalyzer analyze(ResultSet resultSet, LinkedHashSet<Expression> selections) {
+    LinkedHashSet<String> selectedAttributes = new LinkedHashSet<>();
+    for (Expression selection : selections) {
+      if (selection.hasColumnIdentifier()) {
+        selectedAttributes.add(selection.getColumnIdentifier().getColumnName());
+      }
+    }
+    return PinotResultAnalyzer.create(resultSet, selectedAttributes, this.viewDefinition);
+  }
+
+  private static ResultSet mockResultSet(List<String> columnNames, String[] row) {
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.getRowCount()).thenReturn(1);
+    when(resultSet.getColumnCount()).thenReturn(columnNames.size());
+    for (int columnIndex = 0; columnIndex < columnNames.size(); columnIndex++) {
+      when(resultSet.getColumnName(columnIndex)).thenReturn(columnNames.get(columnIndex));
+      when(resultSet.getString(0, columnIndex)).thenReturn(row[columnIndex]);
+    }
+    return resultSet;
+  }
+}
@@ -0,0 +1,80 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.hypertrace.core.query.service.pinot.TimeShardPlanner.TimeShard;
+import org.junit.jupiter.api.Test;
+
+class TimeShardPlannerTest {
+  private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+  private static final long DAY_MILLIS = Duration.ofDays(1).toMillis();
+
+  private final TimeShardPlanner planner =
+      new TimeShardPlanner(
+          ConfigFactory.parseMap(
+              Map.of(
+                  "enabled", true,
+                  "maxShards", 4,
+                  "minShardDuration", "1d",
+                  "segmentDuration", "1h",
+                  "targetShardLatency", "2s",
+                  "smoothingFactor", 1)));
+
+  @Test
+  void isDisabledByDefault() {
+    assertFalse(new TimeShardPlanner(ConfigFactory.empty()).isEnabled());
+    assertTrue(this.planner.isEnabled());
+  }
+
+  @Test
+  void shardsBySegmentAlignedDays() {
+    long startTime = 10 * DAY_MILLIS + 30 * 60000;
+    long endTime = startTime + 3 * DAY_MILLIS;
+
+    assertEquals(
+        List.of(
+            new TimeShard(startTime, 11 * DAY_MILLIS + HOUR_MILLIS),
+            new TimeShard(11 * DAY_MILLIS + HOUR_MILLIS, 12 * DAY_MILLIS + HOUR_MILLIS),
+            new TimeShard(12 * DAY_MILLIS + HOUR_MILLIS, endTime)),
+        this.planner.plan(startTime, endTime, Optional.empty()));
+  }
+
+  @Test
+  void limitsShardsToMaximum() {
+    assertEquals(4, this.planner.plan(0, 30 * DAY_MILLIS, Optional.empty()).size());
+  }
+
+  @Test
+  void doesNotShardShortTimeRanges() {
+    assertEquals(
+        List.of(new TimeShard(0, 36 * HOUR_MILLIS)),
+        this.planner.plan(0, 36 * HOUR_MILLIS, Optional.empty()));
+  }
+
+  @Test
+  void alignsShardsToTimeSeriesPeriod() {
+    List<TimeShard> shards = this.planner.plan(0, 3 * DAY_MILLIS, Optional.of(Duration.ofDays(2)));
+
+    assertEquals(
+        List.of(new TimeShard(0, 2 * DAY_MILLIS), new TimeShard(2 * DAY_MILLIS, 3 * DAY_MILLIS)),
+        shards);
+  }
+
+  @Test
+  void adaptsShardCountToObservedLatency() {
+    // 1 second per day of time range: 4 days fit within the target latency of 2 seconds
+    this.planner.record(DAY_MILLIS, 1, Duration.ofSeconds(1));
+    assertEquals(2, this.planner.plan(0, 4 * DAY_MILLIS, Optional.empty()).size());
+
+    // Each of 2 shards of 2 days took 4 seconds
+    this.planner.record(4 * DAY_MILLIS, 2, Duration.ofSeconds(4));
+    assertEquals(4, this.planner.plan(0, 4 * DAY_MILLIS, Optional.empty()).size());
+  }
+}
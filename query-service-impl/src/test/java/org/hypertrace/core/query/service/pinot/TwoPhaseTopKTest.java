@@ -0,0 +1,140 @@
+package org.hypertrace.core.query.service.pinot;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createInFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createLongLiteralValueExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createOrderByExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.hypertrace.core.query.service.api.Accuracy;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.junit.jupiter.api.Test;
+
+class TwoPhaseTopKTest {
+  private static final Expression API_NAME = createColumnExpression("API.name").build();
+  private static final Expression DURATION = createColumnExpression("API.duration").build();
+  private static final Expression P99_LATENCY =
+      createAliasedFunctionExpression(
+          "PERCENTILE", "p99", createLongLiteralValueExpression(99), DURATION);
+  private static final Expression NUM_CALLS =
+      createAliasedFunctionExpression("COUNT", "API.id", "numCalls").build();
+  private static final Filter TIME_FILTER = createTimeFilter("API.startTime", Operator.GE, 1000);
+
+  private final TwoPhaseTopK twoPhaseTopK =
+      new TwoPhaseTopK(
+          ConfigFactory.parseMap(
+              Map.of("enabled", true, "safetyFactor", 5, "maxCandidates", 1000)));
+
+  @Test
+  void isDisabledByDefault() {
+    assertFalse(new TwoPhaseTopK(ConfigFactory.empty()).isEnabled());
+    assertTrue(this.twoPhaseTopK.isEnabled());
+  }
+
+  @Test
+  void ranksCandidatesByOrderedAggregationOnly() {
+    QueryRequest request = createTopApisRequest(10);
+
+    assertEquals(
+        Optional.of(
+            QueryRequest.newBuilder()
+                .setFilter(TIME_FILTER)
+                .addSelection(API_NAME)
+                .addAggregation(P99_LATENCY)
+                .addGroupBy(API_NAME)
+                .addOrderBy(request.getOrderBy(0))
+                .setLimit(50)
+                .setAccuracy(Accuracy.APPROXIMATE)
+                .build()),
+        this.twoPhaseTopK.getCandidateRequest(request));
+  }
+
+  @Test
+  void doesNotRankCandidatesBeyondMaximum() {
+    assertTrue(this.twoPhaseTopK.getCandidateRequest(createTopApisRequest(1000)).isEmpty());
+  }
+
+  @Test
+  void doesNotRankCandidatesOfGroupsOrderedByKey() {
+    QueryRequest request =
+        createTopApisRequest(10).toBuilder()
+            .setOrderBy(0, createOrderByExpression(API_NAME.toBuilder(), SortOrder.ASC))
+            .build();
+
+    assertTrue(this.twoPhaseTopK.getCandidateRequest(request).isEmpty());
+  }
+
+  @Test
+  void restrictsRequestToCandidates() {
+    QueryRequest request = createTopApisRequest(1);
+    QueryRequest candidateRequest = this.twoPhaseTopK.getCandidateRequest(request).orElseThrow();
+    List<Value> candidateKeys =
+        List.of(
+            stringValue("checkout"),
+            stringValue("cart"),
+            stringValue("login"),
+            stringValue("search"),
+            stringValue("payment"));
+
+    assertEquals(
+        Optional.of(
+            request.toBuilder()
+                .setFilter(
+                    Filter.newBuilder()
+                        .setOperator(Operator.AND)
+                        .addChildFilter(TIME_FILTER)
+                        .addChildFilter(
+                            createInFilter(
+                                "API.name",
+                                List.of("checkout", "cart", "login", "search", "payment"))))
+                .build()),
+        this.twoPhaseTopK.restrictToCandidates(request, candidateRequest, candidateKeys));
+  }
+
+  @Test
+  void doesNotRestrictRequestIfCandidatesAreAllGroups() {
+    QueryRequest request = createTopApisRequest(1);
+    QueryRequest candidateRequest = this.twoPhaseTopK.getCandidateRequest(request).orElseThrow();
+
+    assertTrue(
+        this.twoPhaseTopK
+            .restrictToCandidates(
+                request, candidateRequest, List.of(stringValue("checkout"), stringValue("cart")))
+            .isEmpty());
+  }
+
+  private static QueryRequest createTopApisRequest(int limit) {
+    return QueryRequest.newBuilder()
+        .setFilter(TIME_FILTER)
+        .addSelection(API_NAME)
+        .addAggregation(P99_LATENCY)
+        .addAggregation(NUM_CALLS)
+        .addGroupBy(API_NAME)
+        .addOrderBy(
+            createOrderByExpression(
+                createFunctionExpression(
+                        "PERCENTILE", createLongLiteralValueExpression(99), DURATION)
+                    .toBuilder(),
+                SortOrder.DESC))
+        .setLimit(limit)
+        .build();
+  }
+
+  private static Value stringValue(String value) {
+    return Value.newBuilder().setString(value).build();
+  }
+}
@@ -16,6 +16,8 @@ import static org.hypertrace.core.query.service.QueryRequestUtil.createStringLit
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.typesafe.config.ConfigFactory;
@@ -25,6 +27,7 @@ import java.util.Collections;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.api.Accuracy;
 import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.Expression.Builder;
 import org.hypertrace.core.query.service.api.Function;
@@ -328,6 +331,39 @@ class PinotFunctionConverterTest {
                     this.mockArgumentConverter));
   }
 
+  @Test
+  void convertsAggregationsWithRequestedAccuracy() {
+    Expression column = createColumnExpression("foo").build();
+    when(this.mockArgumentConverter.apply(column)).thenReturn("foo");
+    Function distinctCount = buildFunction(QUERY_FUNCTION_DISTINCTCOUNT, column.toBuilder());
+    Function percentile =
+        buildFunction(
+            QUERY_FUNCTION_PERCENTILE,
+            createIntLiteralValueExpression(90).toBuilder(),
+            column.toBuilder());
+    PinotFunctionConverter converter = new PinotFunctionConverter();
+
+    when(this.mockingExecutionContext.getAccuracy()).thenReturn(Accuracy.APPROXIMATE);
+    assertEquals(
+        "DISTINCTCOUNTHLL(foo)",
+        converter.convert(mockingExecutionContext, distinctCount, this.mockArgumentConverter));
+    assertEquals(
+        "PERCENTILETDIGEST90(foo)",
+        converter.convert(mockingExecutionContext, percentile, this.mockArgumentConverter));
+    verify(this.mockingExecutionContext).recordApproximation(distinctCount, "DISTINCTCOUNTHLL");
+    verify(this.mockingExecutionContext).recordApproximation(percentile, "PERCENTILETDIGEST");
+
+    when(this.mockingExecutionContext.getAccuracy()).thenReturn(Accuracy.EXACT);
+    assertEquals(
+        "DISTINCTCOUNT(foo)",
+        converter.convert(mockingExecutionContext, distinctCount, this.mockArgumentConverter));
+    assertEquals(
+        "PERCENTILE90(foo)",
+        converter.convert(mockingExecutionContext, percentile, this.mockArgumentConverter));
+    // Only the approximations above were recorded
+    verify(this.mockingExecutionContext, times(2)).recordApproximation(any(), any());
+  }
+
   private Function buildFunction(String name, Builder... arguments) {
     return Function.newBuilder()
         .setFunctionName(name)
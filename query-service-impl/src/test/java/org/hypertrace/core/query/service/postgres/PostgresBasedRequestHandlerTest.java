@@ -2,12 +2,20 @@ package org.hypertrace.core.query.service.postgres;
 
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.protobuf.ByteString;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.time.Duration;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -19,6 +27,9 @@ import org.hypertrace.core.query.service.RequestHandlerSelector;
 import org.hypertrace.core.query.service.api.Filter;
 import org.hypertrace.core.query.service.api.Operator;
 import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.Value;
+import org.hypertrace.core.query.service.api.ValueType;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -111,6 +122,35 @@ public class PostgresBasedRequestHandlerTest {
     return config.getString("type").equals("postgres");
   }
 
+  @Test
+  public void testConvertReadsBinaryBytesColumns() throws SQLException {
+    PostgresBasedRequestHandler handler =
+        (PostgresBasedRequestHandler) requestHandlers.iterator().next();
+    ResultSet resultSet = mock(ResultSet.class);
+    ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+    when(resultSet.next()).thenReturn(true, true, false);
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(metaData.getColumnCount()).thenReturn(2);
+    when(metaData.getColumnType(1)).thenReturn(Types.BINARY);
+    when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+    when(resultSet.getBytes(1)).thenReturn(new byte[] {10, 11}, (byte[]) null);
+    when(resultSet.getString(2)).thenReturn("checkout");
+
+    List<Row> rows = handler.convert(resultSet, Set.of(), Set.of(1)).toList().blockingGet();
+
+    Assertions.assertEquals(
+        List.of(
+            Value.newBuilder()
+                .setValueType(ValueType.BYTES)
+                .setBytes(ByteString.copyFrom(new byte[] {10, 11}))
+                .build(),
+            Value.newBuilder().setString("checkout").build()),
+        rows.get(0).getColumnList());
+    Assertions.assertEquals(
+        Value.newBuilder().setValueType(ValueType.BYTES).build(), rows.get(1).getColumn(0));
+    verify(resultSet, never()).getString(1);
+  }
+
   private Set<RequestHandler> preparePostgresBasedRequestHandler() {
     Set<RequestHandler> requestHandlers = new LinkedHashSet<>();
     for (Config config : serviceConfig.getConfigList("queryRequestHandlersConfig")) {
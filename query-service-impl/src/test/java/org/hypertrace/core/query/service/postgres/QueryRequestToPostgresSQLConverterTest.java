@@ -30,6 +30,7 @@ import java.sql.SQLException;
 import java.time.Duration;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import org.hypertrace.core.query.service.ExecutionContext;
@@ -455,6 +456,35 @@ class QueryRequestToPostgresSQLConverterTest {
         executionContext);
   }
 
+  @Test
+  void testQueryWithBinaryBytesSelection() {
+    QueryRequest queryRequest =
+        QueryRequest.newBuilder()
+            .addSelection(createColumnExpression("Span.id"))
+            .addGroupBy(createColumnExpression("Span.id"))
+            .addAggregation(
+                createAliasedFunctionExpression(
+                    "DISTINCTCOUNT", "Span.id", "distinctcount_span_id"))
+            .setLimit(15)
+            .build();
+
+    TableDefinition tableDefinition = getDefaultTableDefinition();
+    defaultMockingForExecutionContext();
+
+    // Only the selected column itself is read as binary, the function still gets the hex text
+    assertSQLQuery(
+        queryRequest,
+        "select span_id, count(distinct encode(span_id, 'hex')) FROM public.\"span-event-view\""
+            + " where "
+            + tableDefinition.getTenantIdColumn()
+            + " = '"
+            + TENANT_ID
+            + "' group by 1 limit 15",
+        tableDefinition,
+        executionContext,
+        true);
+  }
+
   @Test
   void testQueryWithStringArray() {
     Builder builder = QueryRequest.newBuilder();
@@ -586,6 +616,124 @@ class QueryRequestToPostgresSQLConverterTest {
         executionContext);
   }
 
+  @Test
+  void testQueryWithLargeInFilterOnBytesColumn() {
+    Builder builder = QueryRequest.newBuilder();
+    builder.addSelection(createColumnExpression("Span.id"));
+    builder.setFilter(createInFilter("Span.id", List.of("042e5523ff6b2506", "041e5523ff6b2501")));
+
+    TableDefinition tableDefinition = getTableDefinitionWithInListArrayThreshold();
+    defaultMockingForExecutionContext();
+
+    assertSQLQuery(
+        builder.build(),
+        "SELECT encode(span_id, 'hex') FROM public.\"span-event-view\" "
+            + "WHERE "
+            + tableDefinition.getTenantIdColumn()
+            + " = '"
+            + TENANT_ID
+            + "' "
+            + "AND span_id = ANY('{\"\\\\x042e5523ff6b2506\",\"\\\\x041e5523ff6b2501\"}')",
+        tableDefinition,
+        executionContext);
+  }
+
+  @Test
+  void testQueryWithLargeNotInFilter() {
+    Builder builder = QueryRequest.newBuilder();
+    builder.addSelection(createColumnExpression("Span.displaySpanName"));
+    builder.setFilter(createNotInFilter("Span.displaySpanName", List.of("GET /", "say \"hi\"")));
+
+    TableDefinition tableDefinition = getTableDefinitionWithInListArrayThreshold();
+    defaultMockingForExecutionContext();
+
+    assertSQLQuery(
+        builder.build(),
+        "SELECT span_name FROM public.\"span-event-view\" WHERE "
+            + tableDefinition.getTenantIdColumn()
+            + " = '"
+            + TENANT_ID
+            + "' "
+            + "AND span_name <> ALL('{\"GET /\",\"say \\\"hi\\\"\"}')",
+        tableDefinition,
+        executionContext);
+  }
+
+  @Test
+  void testQueryWithContainsKeyOperatorOnGinIndexedColumn() {
+    Builder builder = QueryRequest.newBuilder();
+    builder.addSelection(createColumnExpression("Span.tags"));
+    builder.setFilter(createContainsKeyFilter("Span.tags", "flags"));
+
+    TableDefinition tableDefinition = getGinIndexedTableDefinition();
+    defaultMockingForExecutionContext();
+
+    assertSQLQuery(
+        builder.build(),
+        "SELECT cast(tags as text) FROM public.\"span-event-view\" "
+            + "WHERE "
+            + tableDefinition.getTenantIdColumn()
+            + " = '"
+            + TENANT_ID
+            + "' "
+            + "AND tags ? 'flags'",
+        tableDefinition,
+        executionContext);
+  }
+
+  @Test
+  void testQueryWithContainsKeyValueOperatorOnGinIndexedColumn() {
+    Builder builder = QueryRequest.newBuilder();
+    Expression spanTag = createColumnExpression("Span.tags").build();
+    builder.addSelection(spanTag);
+    builder.setFilter(
+        Filter.newBuilder()
+            .setOperator(Operator.CONTAINS_KEYVALUE)
+            .setLhs(spanTag)
+            .setRhs(createStringArrayLiteralValueExpression(List.of("flags", "0"))));
+
+    TableDefinition tableDefinition = getGinIndexedTableDefinition();
+    defaultMockingForExecutionContext();
+
+    assertSQLQuery(
+        builder.build(),
+        "SELECT cast(tags as text) FROM public.\"span-event-view\" "
+            + "WHERE "
+            + tableDefinition.getTenantIdColumn()
+            + " = '"
+            + TENANT_ID
+            + "' "
+            + "AND tags @> jsonb_build_object('flags'::text, '0'::text)",
+        tableDefinition,
+        executionContext);
+  }
+
+  @Test
+  void testQueryWithSubpathEqualsFilterOnGinIndexedColumn() {
+    Builder builder = QueryRequest.newBuilder();
+    builder.addSelection(createColumnExpression("Span.tags"));
+    builder.setFilter(
+        Filter.newBuilder()
+            .setLhs(createComplexAttributeExpression("Span.tags", "flags"))
+            .setOperator(Operator.EQ)
+            .setRhs(createStringLiteralValueExpression("0")));
+
+    TableDefinition tableDefinition = getGinIndexedTableDefinition();
+    defaultMockingForExecutionContext();
+
+    assertSQLQuery(
+        builder.build(),
+        "SELECT cast(tags as text) FROM public.\"span-event-view\" "
+            + "WHERE "
+            + tableDefinition.getTenantIdColumn()
+            + " = '"
+            + TENANT_ID
+            + "' "
+            + "AND tags @> jsonb_build_object('flags'::text, '0'::text)",
+        tableDefinition,
+        executionContext);
+  }
+
   @Test
   void testQueryWithContainsKeyValueOperator() {
     Builder builder = QueryRequest.newBuilder();
@@ -679,6 +827,40 @@ class QueryRequestToPostgresSQLConverterTest {
         executionContext);
   }
 
+  @Test
+  void testBindsOnlyFilterValuesAsParams() {
+    Expression spanTag = createComplexAttributeExpression("Span.tags", "flags").build();
+    QueryRequest queryRequest =
+        QueryRequest.newBuilder()
+            .addSelection(spanTag)
+            .addGroupBy(spanTag)
+            .setFilter(
+                Filter.newBuilder()
+                    .setLhs(spanTag)
+                    .setOperator(Operator.EQ)
+                    .setRhs(createStringLiteralValueExpression("0")))
+            .build();
+    TableDefinition tableDefinition = getDefaultTableDefinition();
+    defaultMockingForExecutionContext();
+
+    QueryRequestToPostgresSQLConverter converter =
+        new QueryRequestToPostgresSQLConverter(
+            tableDefinition, new PostgresFunctionConverter(tableDefinition));
+    Entry<String, Params> statementToParam =
+        converter.toSQL(
+            executionContext, queryRequest, createSelectionsFromQueryRequest(queryRequest));
+
+    // The selection and group by read the same, so that Postgres can match them
+    Assertions.assertEquals(
+        "SELECT tags->>'flags' FROM public.\"span-event-view\" WHERE "
+            + tableDefinition.getTenantIdColumn()
+            + " = ? AND tags->>? = ? GROUP BY 1",
+        statementToParam.getKey());
+    Assertions.assertEquals(
+        Map.of(0, TENANT_ID, 1, "flags", 2, "0"),
+        statementToParam.getValue().getStringParams());
+  }
+
   @Test
   void testQueryWithBytesColumnWithValidId() {
     Builder builder = QueryRequest.newBuilder();
@@ -1409,9 +1591,20 @@ class QueryRequestToPostgresSQLConverterTest {
       String expectedQuery,
       TableDefinition tableDefinition,
       ExecutionContext executionContext) {
+    assertSQLQuery(queryRequest, expectedQuery, tableDefinition, executionContext, false);
+  }
+
+  private void assertSQLQuery(
+      QueryRequest queryRequest,
+      String expectedQuery,
+      TableDefinition tableDefinition,
+      ExecutionContext executionContext,
+      boolean nativeBytesValuesEnabled) {
     QueryRequestToPostgresSQLConverter converter =
         new QueryRequestToPostgresSQLConverter(
-            tableDefinition, new PostgresFunctionConverter(tableDefinition));
+            tableDefinition,
+            new PostgresFunctionConverter(tableDefinition),
+            nativeBytesValuesEnabled);
     Entry<String, Params> statementToParam =
         converter.toSQL(
             executionContext, queryRequest, createSelectionsFromQueryRequest(queryRequest));
@@ -1455,6 +1648,36 @@ class QueryRequestToPostgresSQLConverterTest {
     return selections;
   }
 
+  private TableDefinition getGinIndexedTableDefinition() {
+    Config fileConfig =
+        ConfigFactory.parseURL(
+            requireNonNull(
+                QueryRequestToPostgresSQLConverterTest.class
+                    .getClassLoader()
+                    .getResource(TEST_REQUEST_HANDLER_CONFIG_FILE)));
+
+    return TableDefinition.parse(
+        ConfigFactory.parseString("ginIndexedFields = [tags, labels]")
+            .withFallback(fileConfig.getConfig("requestHandlerInfo.tableDefinition")),
+        TENANT_COLUMN_NAME,
+        Optional.empty());
+  }
+
+  private TableDefinition getTableDefinitionWithInListArrayThreshold() {
+    Config fileConfig =
+        ConfigFactory.parseURL(
+            requireNonNull(
+                QueryRequestToPostgresSQLConverterTest.class
+                    .getClassLoader()
+                    .getResource(TEST_REQUEST_HANDLER_CONFIG_FILE)));
+
+    return TableDefinition.parse(
+        ConfigFactory.parseString("inListArrayThreshold = 2")
+            .withFallback(fileConfig.getConfig("requestHandlerInfo.tableDefinition")),
+        TENANT_COLUMN_NAME,
+        Optional.empty());
+  }
+
   private TableDefinition getDefaultTableDefinition() {
     Config fileConfig =
         ConfigFactory.parseURL(
@@ -0,0 +1,65 @@
+package org.hypertrace.core.query.service.prometheus;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createAliasedFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createFunctionExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createOrderByExpression;
+
+import java.util.List;
+import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.api.Row;
+import org.hypertrace.core.query.service.api.SortOrder;
+import org.hypertrace.core.query.service.api.Value;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PrometheusResultPostProcessorTest {
+
+  private static final Expression SERVICE_NAME = createColumnExpression("SERVICE.name").build();
+  private static final Expression NUM_CALLS =
+      createAliasedFunctionExpression("SUM", "SERVICE.numCalls", "numCalls").build();
+
+  @Test
+  void testOrdersNumericallyAndAppliesOffsetAndLimit() {
+    // ordered by the aggregation without its alias
+    Expression unaliasedNumCalls =
+        createFunctionExpression("SUM", createColumnExpression("SERVICE.numCalls").build());
+    QueryRequest request =
+        QueryRequest.newBuilder()
+            .addGroupBy(SERVICE_NAME)
+            .addAggregation(NUM_CALLS)
+            .addOrderBy(createOrderByExpression(unaliasedNumCalls.toBuilder(), SortOrder.DESC))
+            .addOrderBy(createOrderByExpression(SERVICE_NAME.toBuilder(), SortOrder.ASC))
+            .setOffset(1)
+            .setLimit(2)
+            .build();
+    List<Row> rows =
+        List.of(
+            createRow("frontend", "9.0"),
+            createRow("cart", "10.0"),
+            createRow("checkout", "9.0"),
+            createRow("payment", "1.0"));
+
+    Assertions.assertEquals(
+        List.of(createRow("checkout", "9.0"), createRow("frontend", "9.0")),
+        PrometheusResultPostProcessor.process(rows, request, List.of(SERVICE_NAME, NUM_CALLS)));
+  }
+
+  @Test
+  void testKeepsRowsWithoutOrderByOrLimit() {
+    List<Row> rows = List.of(createRow("frontend", "9.0"), createRow("cart", "10.0"));
+
+    Assertions.assertEquals(
+        rows,
+        PrometheusResultPostProcessor.process(
+            rows, QueryRequest.getDefaultInstance(), List.of(SERVICE_NAME, NUM_CALLS)));
+  }
+
+  private static Row createRow(String serviceName, String numCalls) {
+    return Row.newBuilder()
+        .addColumn(Value.newBuilder().setString(serviceName))
+        .addColumn(Value.newBuilder().setString(numCalls))
+        .build();
+  }
+}
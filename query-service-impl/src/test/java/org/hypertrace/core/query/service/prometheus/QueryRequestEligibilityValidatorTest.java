@@ -1,12 +1,16 @@
 package org.hypertrace.core.query.service.prometheus;
 
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createFunctionExpression;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createOrderByExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
 
 import org.hypertrace.core.query.service.ExecutionContext;
 import org.hypertrace.core.query.service.QueryCost;
 import org.hypertrace.core.query.service.api.Expression;
+import org.hypertrace.core.query.service.api.Filter;
+import org.hypertrace.core.query.service.api.Operator;
 import org.hypertrace.core.query.service.api.QueryRequest;
 import org.hypertrace.core.query.service.api.QueryRequest.Builder;
 import org.hypertrace.core.query.service.api.SortOrder;
@@ -78,6 +82,62 @@ class QueryRequestEligibilityValidatorTest {
         queryRequestEligibilityValidator.calculateCost(queryRequest, executionContext));
   }
 
+  @Test
+  void testCalculateCost_orderedAggregationWithDisjunction() {
+    Expression sum =
+        createFunctionExpression("SUM", createColumnExpression("SERVICE.numCalls").build());
+    QueryRequest queryRequest =
+        buildAggregationQuery(sum)
+            .addOrderBy(createOrderByExpression(sum.toBuilder(), SortOrder.DESC))
+            .setLimit(10)
+            .build();
+
+    ExecutionContext executionContext = new ExecutionContext("__default", queryRequest);
+    executionContext.setTimeFilterColumn("SERVICE.startTime");
+
+    Assertions.assertEquals(
+        1.0,
+        queryRequestEligibilityValidator.calculateCost(queryRequest, executionContext).getCost());
+  }
+
+  @Test
+  void testCalculateCost_counterAggregation() {
+    Expression callCount = createColumnExpression("SERVICE.callCount").build();
+    QueryRequest sumRequest =
+        buildAggregationQuery(createFunctionExpression("SUM", callCount)).build();
+    QueryRequest avgRequest =
+        buildAggregationQuery(createFunctionExpression("AVG", callCount)).build();
+
+    ExecutionContext sumContext = new ExecutionContext("__default", sumRequest);
+    sumContext.setTimeFilterColumn("SERVICE.startTime");
+    ExecutionContext avgContext = new ExecutionContext("__default", avgRequest);
+    avgContext.setTimeFilterColumn("SERVICE.startTime");
+
+    Assertions.assertEquals(
+        1.0, queryRequestEligibilityValidator.calculateCost(sumRequest, sumContext).getCost());
+    Assertions.assertEquals(
+        QueryCost.UNSUPPORTED,
+        queryRequestEligibilityValidator.calculateCost(avgRequest, avgContext));
+  }
+
+  private Builder buildAggregationQuery(Expression aggregation) {
+    return QueryRequest.newBuilder()
+        .addSelection(createColumnExpression("SERVICE.name"))
+        .addGroupBy(createColumnExpression("SERVICE.name"))
+        .addGroupBy(createColumnExpression("API.name"))
+        .addAggregation(aggregation)
+        .setFilter(
+            Filter.newBuilder()
+                .setOperator(Operator.AND)
+                .addChildFilter(createTimeFilter("SERVICE.startTime", Operator.GE, 100L))
+                .addChildFilter(createTimeFilter("SERVICE.startTime", Operator.LT, 200L))
+                .addChildFilter(
+                    Filter.newBuilder()
+                        .setOperator(Operator.OR)
+                        .addChildFilter(createEqualsFilter("SERVICE.name", "frontend"))
+                        .addChildFilter(createEqualsFilter("API.name", "checkout"))));
+  }
+
   private QueryRequest buildOrderByQuery() {
     Builder builder = QueryRequest.newBuilder();
     Expression startTimeColumn = createColumnExpression("SERVICE.startTime").build();
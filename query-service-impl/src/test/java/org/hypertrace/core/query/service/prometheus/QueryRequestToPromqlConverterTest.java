@@ -1,6 +1,7 @@
 package org.hypertrace.core.query.service.prometheus;
 
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createEqualsFilter;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createFunctionExpression;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createInFilter;
 import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeColumnGroupByExpression;
@@ -116,6 +117,73 @@ class QueryRequestToPromqlConverterTest {
     Assertions.assertEquals(10, promqlQuery.getPeriod().toMillis());
   }
 
+  @Test
+  void testInstantQueryWithDisjunctionsOfFilters() {
+    Filter sameLabelFilter =
+        Filter.newBuilder()
+            .setOperator(Operator.OR)
+            .addChildFilter(createEqualsFilter("SERVICE.id", "1"))
+            .addChildFilter(createInFilter("SERVICE.id", List.of("2.0", "3")))
+            .build();
+    Filter differentLabelFilter =
+        Filter.newBuilder()
+            .setOperator(Operator.OR)
+            .addChildFilter(createEqualsFilter("SERVICE.name", "frontend"))
+            .addChildFilter(createEqualsFilter("API.name", "checkout"))
+            .build();
+    QueryRequest queryRequest =
+        buildSumQueryWithFilters("SERVICE.numCalls", sameLabelFilter, differentLabelFilter);
+
+    // equalities on the same label are combined in a regex, others in several selectors
+    String serviceIdFilter = "service_id=~\"1|2\\\\.0|3\"";
+    Assertions.assertEquals(
+        List.of(
+            "sum by (service_name) (sum_over_time(num_calls{tenant_id=\"__default\", "
+                + serviceIdFilter
+                + ", service_name=\"frontend\"}[100ms])"
+                + " or sum_over_time(num_calls{tenant_id=\"__default\", "
+                + serviceIdFilter
+                + ", api_name=\"checkout\"}[100ms]))"),
+        convertToInstantQueries(queryRequest));
+  }
+
+  @Test
+  void testInstantQueryOnCounter() {
+    QueryRequest queryRequest = buildSumQueryWithFilters("SERVICE.callCount");
+
+    Assertions.assertEquals(
+        List.of(
+            "sum by (service_name) (increase(call_count_total{tenant_id=\"__default\"}[100ms]))"),
+        convertToInstantQueries(queryRequest));
+  }
+
+  private List<String> convertToInstantQueries(QueryRequest queryRequest) {
+    ExecutionContext executionContext = new ExecutionContext("__default", queryRequest);
+    executionContext.setTimeFilterColumn("SERVICE.startTime");
+    Map<String, String> metricNameToQueryMap = new LinkedHashMap<>();
+    new QueryRequestToPromqlConverter(PrometheusTestUtils.getDefaultPrometheusViewDefinition())
+        .convertToPromqlInstantQuery(
+            executionContext,
+            queryRequest,
+            createSelectionsFromQueryRequest(queryRequest),
+            metricNameToQueryMap);
+    return List.copyOf(metricNameToQueryMap.values());
+  }
+
+  private QueryRequest buildSumQueryWithFilters(String metric, Filter... filters) {
+    Filter.Builder andFilter =
+        Filter.newBuilder()
+            .setOperator(Operator.AND)
+            .addChildFilter(createTimeFilter("SERVICE.startTime", Operator.GT, 100L))
+            .addChildFilter(createTimeFilter("SERVICE.startTime", Operator.LT, 200L))
+            .addAllChildFilter(List.of(filters));
+    return QueryRequest.newBuilder()
+        .addAggregation(createFunctionExpression("SUM", createColumnExpression(metric).build()))
+        .addGroupBy(createColumnExpression("SERVICE.name"))
+        .setFilter(andFilter)
+        .build();
+  }
+
   private QueryRequest buildMultipleGroupByMultipleAggQuery() {
     Builder builder = QueryRequest.newBuilder();
     builder.addAggregation(
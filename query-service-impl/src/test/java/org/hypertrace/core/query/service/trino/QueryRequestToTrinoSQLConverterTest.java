@@ -27,12 +27,15 @@ import static org.mockito.Mockito.when;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Optional;
 import org.hypertrace.core.query.service.ExecutionContext;
 import org.hypertrace.core.query.service.QueryFunctionConstants;
+import org.hypertrace.core.query.service.QueryTimeRange;
 import org.hypertrace.core.query.service.api.Expression;
 import org.hypertrace.core.query.service.api.Filter;
 import org.hypertrace.core.query.service.api.Function;
@@ -114,6 +117,62 @@ class QueryRequestToTrinoSQLConverterTest {
         executionContext);
   }
 
+  @Test
+  void testQueryWithDatePartitionedTable() {
+    // The end of the time range is exclusive, so the partition of the next day isn't scanned
+    QueryRequest queryRequest = createTimeRangeRequest(1557780911508L, 1557878400000L);
+    TableDefinition tableDefinition =
+        getTableDefinitionWithTimePartition("{ column = start_day, type = DATE }");
+    defaultMockingForExecutionContext();
+    mockQueryTimeRange(1557780911508L, 1557878400000L);
+
+    assertSQLQuery(
+        queryRequest,
+        "select lower(to_hex(span_id)) from span-event-view where customer_id = '"
+            + TENANT_ID
+            + "' and ( start_time_millis >= 1557780911508 and start_time_millis < 1557878400000 )"
+            + " and ( start_day >= cast('2019-05-13' as date)"
+            + " and start_day <= cast('2019-05-14' as date) )",
+        tableDefinition,
+        executionContext);
+  }
+
+  @Test
+  void testQueryWithEpochMillisPartitionedTable() {
+    QueryRequest queryRequest = createTimeRangeRequest(1557780911508L, 1557878400000L);
+    TableDefinition tableDefinition =
+        getTableDefinitionWithTimePartition(
+            "{ column = start_hour_millis, granularityMillis = 3600000 }");
+    defaultMockingForExecutionContext();
+    mockQueryTimeRange(1557780911508L, 1557878400000L);
+
+    assertSQLQuery(
+        queryRequest,
+        "select lower(to_hex(span_id)) from span-event-view where customer_id = '"
+            + TENANT_ID
+            + "' and ( start_time_millis >= 1557780911508 and start_time_millis < 1557878400000 )"
+            + " and ( start_hour_millis >= 1557777600000 and start_hour_millis <= 1557874800000 )",
+        tableDefinition,
+        executionContext);
+  }
+
+  @Test
+  void testQueryWithPartitionedTableWithoutTimeRange() {
+    Builder builder = QueryRequest.newBuilder();
+    builder.addSelection(createColumnExpression("Span.id").build());
+    TableDefinition tableDefinition =
+        getTableDefinitionWithTimePartition("{ column = start_day, type = DATE }");
+    defaultMockingForExecutionContext();
+
+    assertSQLQuery(
+        builder.build(),
+        "select lower(to_hex(span_id)) from span-event-view where customer_id = '"
+            + TENANT_ID
+            + "'",
+        tableDefinition,
+        executionContext);
+  }
+
   @Test
   void testQuerySingleDistinctSelection() {
     Builder builder = QueryRequest.newBuilder();
@@ -1447,6 +1506,42 @@ class QueryRequestToTrinoSQLConverterTest {
         Optional.empty());
   }
 
+  private QueryRequest createTimeRangeRequest(long startTimeMillis, long endTimeMillis) {
+    return QueryRequest.newBuilder()
+        .addSelection(createColumnExpression("Span.id"))
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter("Span.start_time_millis", Operator.GE, startTimeMillis),
+                createTimeFilter("Span.start_time_millis", Operator.LT, endTimeMillis)))
+        .build();
+  }
+
+  private TableDefinition getTableDefinitionWithTimePartition(String timePartitionConfig) {
+    Config fileConfig =
+        ConfigFactory.parseURL(
+            requireNonNull(
+                QueryRequestToTrinoSQLConverterTest.class
+                    .getClassLoader()
+                    .getResource(TEST_REQUEST_HANDLER_CONFIG_FILE)));
+
+    return TableDefinition.parse(
+        ConfigFactory.parseString("timePartition = " + timePartitionConfig)
+            .withFallback(fileConfig.getConfig("requestHandlerInfo.tableDefinition")),
+        TENANT_COLUMN_NAME,
+        Optional.empty());
+  }
+
+  private void mockQueryTimeRange(long startTimeMillis, long endTimeMillis) {
+    when(executionContext.getQueryTimeRange())
+        .thenReturn(
+            Optional.of(
+                new QueryTimeRange(
+                    Instant.ofEpochMilli(startTimeMillis),
+                    Instant.ofEpochMilli(endTimeMillis),
+                    Duration.ofMillis(endTimeMillis - startTimeMillis))));
+  }
+
   private void defaultMockingForExecutionContext() {
     when(executionContext.getTenantId()).thenReturn(TENANT_ID);
   }
@@ -0,0 +1,131 @@
+package org.hypertrace.core.query.service.trino;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.inject.Guice;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import org.hypertrace.core.query.service.ExecutionContext;
+import org.hypertrace.core.query.service.QueryServiceConfig.RequestHandlerClientConfig;
+import org.hypertrace.core.query.service.QueryServiceConfig.RequestHandlerConfig;
+import org.hypertrace.core.query.service.RequestHandler;
+import org.hypertrace.core.query.service.RequestHandlerClientConfigRegistry;
+import org.hypertrace.core.query.service.RequestHandlerRegistry;
+import org.hypertrace.core.query.service.RequestHandlerSelector;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.pinot.PinotModule;
+import org.hypertrace.core.query.service.pinot.PinotRequestHandlerBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TrinoBasedRequestHandlerTest {
+  private static final String START_TIME = "EVENT.startTime";
+  private static final String FIELD_MAP =
+      "fieldMap = {\"EVENT.id\": \"span_id\", \"EVENT.startTime\": \"start_time_millis\"}";
+
+  private RequestHandlerSelector selector;
+
+  @BeforeEach
+  void setup() {
+    Config pinotConfig =
+        ConfigFactory.parseString(
+            "tenantColumnName = tenant_id\n"
+                + "startTimeAttributeName = \""
+                + START_TIME
+                + "\"\n"
+                + "viewDefinition = {\n"
+                + "  viewName = spanEventView\n"
+                + "  retentionTimeMillis = "
+                + Duration.ofDays(8).toMillis()
+                + "\n  "
+                + FIELD_MAP
+                + "\n}");
+    Config trinoConfig =
+        ConfigFactory.parseString(
+            "tenantColumnName = customer_id\n"
+                + "startTimeAttributeName = \""
+                + START_TIME
+                + "\"\n"
+                + "tableDefinition = {\n"
+                + "  tableName = span_event_view\n"
+                + "  retentionTimeMillis = "
+                + Duration.ofDays(90).toMillis()
+                + "\n  "
+                + FIELD_MAP
+                + "\n}");
+    RequestHandlerRegistry registry = mock(RequestHandlerRegistry.class);
+    when(registry.getAll())
+        .thenReturn(
+            Set.of(
+                buildPinotHandler("span-event-view-handler", pinotConfig),
+                new TrinoBasedRequestHandler("span-event-view-trino-handler", trinoConfig)));
+    this.selector = new RequestHandlerSelector(registry);
+  }
+
+  @Test
+  void testCanHandle_prefersPinotViewsWithinTheirRetention() {
+    QueryRequest request = createSpanRequest(Duration.ofHours(1));
+
+    assertEquals(
+        Optional.of("span-event-view-handler"),
+        this.selector
+            .select(request, new ExecutionContext("__default", request))
+            .map(RequestHandler::getName));
+  }
+
+  @Test
+  void testCanHandle_prefersTrinoOutOfPinotRetention() {
+    QueryRequest request = createSpanRequest(Duration.ofDays(30));
+
+    assertEquals(
+        Optional.of("span-event-view-trino-handler"),
+        this.selector
+            .select(request, new ExecutionContext("__default", request))
+            .map(RequestHandler::getName));
+  }
+
+  /** Builds the Pinot handler the way the registry does, from its handler and client configs. */
+  private static RequestHandler buildPinotHandler(String name, Config requestHandlerInfo) {
+    RequestHandlerClientConfig clientConfig = mock(RequestHandlerClientConfig.class);
+    when(clientConfig.getType()).thenReturn("broker");
+    when(clientConfig.getConnectionString()).thenReturn("localhost:8099");
+    RequestHandlerClientConfigRegistry clientConfigRegistry =
+        mock(RequestHandlerClientConfigRegistry.class);
+    when(clientConfigRegistry.get("broker")).thenReturn(Optional.of(clientConfig));
+    RequestHandlerConfig handlerConfig = mock(RequestHandlerConfig.class);
+    when(handlerConfig.getName()).thenReturn(name);
+    when(handlerConfig.getClientConfig()).thenReturn("broker");
+    when(handlerConfig.getRequestHandlerInfo()).thenReturn(requestHandlerInfo);
+
+    return Guice.createInjector(
+            new PinotModule(),
+            binder ->
+                binder
+                    .bind(RequestHandlerClientConfigRegistry.class)
+                    .toInstance(clientConfigRegistry))
+        .getInstance(PinotRequestHandlerBuilder.class)
+        .build(handlerConfig);
+  }
+
+  private static QueryRequest createSpanRequest(Duration timeRange) {
+    long endTime = System.currentTimeMillis();
+    return QueryRequest.newBuilder()
+        .addSelection(createColumnExpression("EVENT.id"))
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter(START_TIME, Operator.GE, endTime - timeRange.toMillis()),
+                createTimeFilter(START_TIME, Operator.LT, endTime)))
+        .setLimit(10)
+        .build();
+  }
+}
@@ -0,0 +1,32 @@
+package org.hypertrace.core.query.service.trino;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class TrinoScanEstimatorTest {
+
+  @Test
+  void sumsEstimatedBytesOfInputTables() {
+    String ioPlan =
+        "{\"inputTableColumnInfos\": ["
+            + "{\"table\": {\"schemaTable\": {\"table\": \"span_event_view\"}},"
+            + " \"estimate\": {\"outputRowCount\": 15000.0, \"outputSizeInBytes\": 1597294.0}},"
+            + "{\"table\": {\"schemaTable\": {\"table\": \"service_view\"}},"
+            + " \"estimate\": {\"outputRowCount\": 10.0, \"outputSizeInBytes\": 706.0}}],"
+            + " \"estimate\": {\"outputRowCount\": 15000.0, \"outputSizeInBytes\": 60000.0}}";
+
+    assertEquals(Optional.of(1598000L), TrinoScanEstimator.parseScanBytes(ioPlan));
+  }
+
+  @Test
+  void doesNotEstimateUnknownInputTableBytes() {
+    String ioPlan =
+        "{\"inputTableColumnInfos\": ["
+            + "{\"estimate\": {\"outputRowCount\": NaN, \"outputSizeInBytes\": NaN}}]}";
+
+    assertEquals(Optional.empty(), TrinoScanEstimator.parseScanBytes(ioPlan));
+    assertEquals(Optional.empty(), TrinoScanEstimator.parseScanBytes("not a plan"));
+  }
+}
@@ -0,0 +1,109 @@
+package org.hypertrace.core.query.service.validation;
+
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createColumnExpression;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createCompositeFilter;
+import static org.hypertrace.core.query.service.QueryRequestBuilderUtils.createTimeFilter;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.typesafe.config.ConfigFactory;
+import io.grpc.Status;
+import io.grpc.StatusException;
+import io.reactivex.rxjava3.observers.TestObserver;
+import java.time.Duration;
+import org.hypertrace.core.grpcutils.context.RequestContext;
+import org.hypertrace.core.query.service.QueryServiceConfig;
+import org.hypertrace.core.query.service.QueryServiceConfig.CostValidationConfig;
+import org.hypertrace.core.query.service.api.Operator;
+import org.hypertrace.core.query.service.api.QueryRequest;
+import org.hypertrace.core.query.service.cost.QueryCostEstimator;
+import org.junit.jupiter.api.Test;
+
+class CostValidationTest {
+  private static final long DAY_MILLIS = Duration.ofDays(1).toMillis();
+
+  @Test
+  void doesNotValidateIfDisabled() {
+    CostValidation validation = createValidation("DISABLED");
+    TestObserver<Void> observer = new TestObserver<>();
+    validation
+        .validate(createRequest(30 * DAY_MILLIS), RequestContext.forTenantId("tenant"))
+        .blockingSubscribe(observer);
+    observer.assertComplete();
+  }
+
+  @Test
+  void doesNotErrorOnExceededBudgetIfWarnMode() {
+    CostValidation validation = createValidation("WARN");
+    TestObserver<Void> observer = new TestObserver<>();
+    validation
+        .validate(createRequest(30 * DAY_MILLIS), RequestContext.forTenantId("tenant"))
+        .blockingSubscribe(observer);
+    observer.assertComplete();
+  }
+
+  @Test
+  void allowsRequestWithinBudget() {
+    CostValidation validation = createValidation("ERROR");
+    TestObserver<Void> observer = new TestObserver<>();
+    validation
+        .validate(createRequest(DAY_MILLIS), RequestContext.forTenantId("tenant"))
+        .blockingSubscribe(observer);
+    observer.assertComplete();
+  }
+
+  @Test
+  void errorsOnExceededScannedRowsWithNarrowerTimeRange() {
+    CostValidation validation = createValidation("ERROR");
+    TestObserver<Void> observer = new TestObserver<>();
+    validation
+        .validate(createRequest(30 * DAY_MILLIS), RequestContext.forTenantId("tenant"))
+        .blockingSubscribe(observer);
+    observer.assertError(
+        error ->
+            error instanceof StatusException
+                && ((StatusException) error).getStatus().getCode()
+                    == Status.Code.RESOURCE_EXHAUSTED
+                && ((StatusException) error)
+                    .getStatus()
+                    .getDescription()
+                    .contains("Narrow the time range to at most PT48H"));
+  }
+
+  @Test
+  void appliesTenantBudget() {
+    CostValidation validation = createValidation("ERROR");
+    TestObserver<Void> observer = new TestObserver<>();
+    validation
+        .validate(createRequest(30 * DAY_MILLIS), RequestContext.forTenantId("large-tenant"))
+        .blockingSubscribe(observer);
+    observer.assertComplete();
+  }
+
+  private static CostValidation createValidation(String mode) {
+    CostValidationConfig config =
+        new CostValidationConfig(
+            ConfigFactory.parseString(
+                "mode = "
+                    + mode
+                    + "\n"
+                    + "rowsPerHour = 1000\n"
+                    + "maxScannedRows = 48000\n"
+                    + "tenants { large-tenant { maxScannedRows = 1000000 } }"));
+    QueryServiceConfig mockConfig = mock(QueryServiceConfig.class);
+    when(mockConfig.getCostValidationConfig()).thenReturn(config);
+    return new CostValidation(mockConfig, new QueryCostEstimator(config));
+  }
+
+  private static QueryRequest createRequest(long endTime) {
+    return QueryRequest.newBuilder()
+        .addSelection(createColumnExpression("Span.serviceName"))
+        .setFilter(
+            createCompositeFilter(
+                Operator.AND,
+                createTimeFilter("Span.start_time_millis", Operator.GE, 0),
+                createTimeFilter("Span.start_time_millis", Operator.LT, endTime)))
+        .setLimit(10)
+        .build();
+  }
+}